@@ -0,0 +1,18 @@
+package com.github.quantranuk.protobuf.nio;
+
+/**
+ * The strategy to pin a new connection to one of the I/O event loops. All reads and writes of a connection happen on the threads of its event loop,
+ * so that the order of messages is preserved
+ */
+public enum EventLoopAssignment {
+
+    /**
+     * Assign the event loops in turn
+     */
+    ROUND_ROBIN,
+
+    /**
+     * Assign the event loop that currently has the fewest connections
+     */
+    LEAST_LOADED
+}
@@ -0,0 +1,73 @@
+package com.github.quantranuk.protobuf.nio;
+
+import com.google.protobuf.Message;
+
+import java.util.function.Function;
+
+/**
+ * <p>The policy deciding which connection of a client pool sends a message.</p>
+ * <ul>
+ *     <li>{@link #roundRobin()}: the connections are used in turn (the default)</li>
+ *     <li>{@link #leastPendingBytes()}: the connection with the fewest bytes waiting to be written is used, so that a slow connection gets fewer messages</li>
+ *     <li>{@link #keyHash(Function)}: the messages of the same key always go through the same connection, so that their order is preserved</li>
+ * </ul>
+ * <p>Messages of different connections may reach the server in any order. Only {@link #keyHash(Function)} preserves an order, per key</p>
+ */
+public final class PoolDistribution {
+
+    public enum Mode {
+        ROUND_ROBIN,
+        LEAST_PENDING_BYTES,
+        KEY_HASH
+    }
+
+    private static final PoolDistribution ROUND_ROBIN = new PoolDistribution(Mode.ROUND_ROBIN, null);
+    private static final PoolDistribution LEAST_PENDING_BYTES = new PoolDistribution(Mode.LEAST_PENDING_BYTES, null);
+
+    private final Mode mode;
+    private final Function<Message, ?> keyFunction;
+
+    private PoolDistribution(Mode mode, Function<Message, ?> keyFunction) {
+        this.mode = mode;
+        this.keyFunction = keyFunction;
+    }
+
+    /**
+     * @return the policy to use the connections in turn
+     */
+    public static PoolDistribution roundRobin() {
+        return ROUND_ROBIN;
+    }
+
+    /**
+     * @return the policy to use the connection with the fewest bytes waiting to be written
+     */
+    public static PoolDistribution leastPendingBytes() {
+        return LEAST_PENDING_BYTES;
+    }
+
+    /**
+     * The policy to pick the connection from the hash code of the key of the message
+     * @param keyFunction extracts the key of a message (e.g. an instrument or an account), it must not return null
+     * @return the policy
+     */
+    public static PoolDistribution keyHash(Function<Message, ?> keyFunction) {
+        if (keyFunction == null) {
+            throw new IllegalArgumentException("The key function must not be null");
+        }
+        return new PoolDistribution(Mode.KEY_HASH, keyFunction);
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public Function<Message, ?> getKeyFunction() {
+        return keyFunction;
+    }
+
+    @Override
+    public String toString() {
+        return mode.toString();
+    }
+}
@@ -1,13 +1,45 @@
 package com.github.quantranuk.protobuf.nio;
 
+import com.github.quantranuk.protobuf.nio.impl.AbstractProtoServerSocketChannel;
+import com.github.quantranuk.protobuf.nio.impl.AbstractProtoSocketChannel;
+import com.github.quantranuk.protobuf.nio.impl.AsyncEventLoopGroup;
 import com.github.quantranuk.protobuf.nio.impl.AsyncProtoServerSocketChannel;
 import com.github.quantranuk.protobuf.nio.impl.AsyncProtoSocketChannel;
+import com.github.quantranuk.protobuf.nio.impl.InProcessAddress;
+import com.github.quantranuk.protobuf.nio.impl.InProcessProtoServerSocketChannel;
+import com.github.quantranuk.protobuf.nio.impl.InProcessProtoSocketChannel;
+import com.github.quantranuk.protobuf.nio.impl.MulticastPublisherProtoDatagramChannel;
+import com.github.quantranuk.protobuf.nio.impl.MulticastSubscriberProtoDatagramChannel;
+import com.github.quantranuk.protobuf.nio.impl.ProtoSocketChannelPool;
+import com.github.quantranuk.protobuf.nio.impl.ReconnectingProtoSocketChannel;
+import com.github.quantranuk.protobuf.nio.impl.SelectorEventLoopGroup;
+import com.github.quantranuk.protobuf.nio.impl.SelectorProtoServerSocketChannel;
+import com.github.quantranuk.protobuf.nio.impl.SelectorProtoSocketChannel;
+import com.github.quantranuk.protobuf.nio.impl.SharedMemoryAddress;
+import com.github.quantranuk.protobuf.nio.impl.SharedMemoryProtoServerSocketChannel;
+import com.github.quantranuk.protobuf.nio.impl.SharedMemoryProtoSocketChannel;
+import com.github.quantranuk.protobuf.nio.impl.UdpProtoDatagramChannel;
+import com.github.quantranuk.protobuf.nio.impl.VirtualThreadProtoServerSocketChannel;
+import com.github.quantranuk.protobuf.nio.impl.VirtualThreadProtoSocketChannel;
+import com.github.quantranuk.protobuf.nio.serializer.MessageTypeRegistry;
+import com.github.quantranuk.protobuf.nio.serializer.ProtobufSerializer;
 import com.github.quantranuk.protobuf.nio.utils.DefaultSetting;
 
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.SocketAddress;
+import java.net.UnixDomainSocketAddress;
+import java.net.UnknownHostException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ExecutorService;
 
 /**
- * Factory for creating {@link ProtoSocketChannel} and @{@link ProtoServerSocketChannel}
+ * Factory for creating {@link ProtoSocketChannel}, @{@link ProtoServerSocketChannel} and {@link ProtoDatagramChannel}
  */
 public final class ProtoChannelFactory {
 
@@ -21,7 +53,44 @@ public final class ProtoChannelFactory {
      * @return a builder for {@link ProtoSocketChannel}
      */
     public static ClientBuilder newClient(String host, int port) {
-        return new ClientBuilder(host, port);
+        return new ClientBuilder(new InetSocketAddress(host, port), Transport.ASYNC);
+    }
+
+    /**
+     * Create a new builder for {@link ProtoSocketChannel} connecting to a server on the same host through a Unix domain socket.
+     * The {@link Transport#ASYNC} transport does not support Unix domain sockets, so the default transport is {@link Transport#SELECTOR}.
+     * With the {@link Transport#SHARED_MEMORY} transport, the path is the directory of the server instead
+     * @param path the path of the Unix domain socket to connect to
+     * @return a builder for {@link ProtoSocketChannel}
+     */
+    public static ClientBuilder newClient(Path path) {
+        return new ClientBuilder(UnixDomainSocketAddress.of(path), Transport.SELECTOR);
+    }
+
+    /**
+     * Create a new builder for {@link ProtoSocketChannel} connecting to a server of the same JVM, see {@link #newInProcessServer(String)}
+     * @param name the name of the server to connect to
+     * @return a builder for {@link ProtoSocketChannel}
+     */
+    public static ClientBuilder newInProcessClient(String name) {
+        return new ClientBuilder(new InProcessAddress(name), Transport.IN_PROCESS);
+    }
+
+    /**
+     * Create a new builder for a pool of {@link ProtoSocketChannel}, sending the messages through several connections to the same server.
+     * The settings of the builder apply to every connection of the pool, see {@link ClientBuilder#setPoolDistribution(PoolDistribution)}
+     * @param host the host to connect to
+     * @param port the port to connect to
+     * @param poolSize the number of connections
+     * @return a builder for {@link ProtoSocketChannel}
+     */
+    public static ClientBuilder newClientPool(String host, int port, int poolSize) {
+        if (poolSize <= 0) {
+            throw new IllegalArgumentException("Invalid pool size: " + poolSize);
+        }
+        ClientBuilder clientBuilder = new ClientBuilder(new InetSocketAddress(host, port), Transport.ASYNC);
+        clientBuilder.poolSize = poolSize;
+        return clientBuilder;
     }
 
     /**
@@ -30,25 +99,177 @@ public final class ProtoChannelFactory {
      * @return a builder for {@link ProtoServerSocketChannel}
      */
     public static ServerBuilder newServer( int port) {
-        return new ServerBuilder(port);
+        return new ServerBuilder(port, null, null);
+    }
+
+    /**
+     * Create a new builder for {@link ProtoServerSocketChannel} listening to a Unix domain socket, for clients on the same host.
+     * The {@link Transport#ASYNC} transport does not support Unix domain sockets, so the default transport is {@link Transport#SELECTOR}.
+     * The socket file must not exist when the server is started, and it is deleted when the server is stopped.
+     * With the {@link Transport#SHARED_MEMORY} transport, the path is the directory where the clients offer their connections instead
+     * @param path the path of the Unix domain socket to listen to
+     * @return a builder for {@link ProtoServerSocketChannel}
+     */
+    public static ServerBuilder newServer(Path path) {
+        return new ServerBuilder(0, path, null);
+    }
+
+    /**
+     * Create a new builder for {@link ProtoServerSocketChannel} bound to a name instead of a port, for clients of the same JVM
+     * (see {@link #newInProcessClient(String)}). The messages are handed over through queues, without any socket
+     * @param name the name of the server, unique within the JVM
+     * @return a builder for {@link ProtoServerSocketChannel}
+     */
+    public static ServerBuilder newInProcessServer(String name) {
+        return new ServerBuilder(0, null, name);
+    }
+
+    /**
+     * Create a new builder for {@link ProtoDatagramChannel}, sending and receiving messages in UDP datagrams
+     * @param port the local port to receive from, 0 for any free port (e.g. for a channel that only sends)
+     * @return a builder for {@link ProtoDatagramChannel}
+     */
+    public static DatagramBuilder newDatagramChannel(int port) {
+        return new DatagramBuilder(port, null, null, false);
+    }
+
+    /**
+     * Create a new builder for {@link ProtoDatagramChannel} publishing messages to a multicast group, with the missing datagrams retransmitted
+     * on request of the subscribers (see {@link #newMulticastSubscriber(String, int, NetworkInterface)})
+     * @param group the multicast group to publish to
+     * @param port the port of the subscribers
+     * @param networkInterface the network interface to publish on, e.g. the loopback interface for the subscribers of the same host
+     * @return a builder for {@link ProtoDatagramChannel}
+     * @throws IllegalArgumentException if the group is not a multicast address
+     */
+    public static DatagramBuilder newMulticastPublisher(String group, int port, NetworkInterface networkInterface) {
+        return new DatagramBuilder(port, toMulticastGroup(group), networkInterface, true);
+    }
+
+    /**
+     * Create a new builder for {@link ProtoDatagramChannel} receiving the messages published to a multicast group, see {@link #newMulticastPublisher(String, int, NetworkInterface)}.
+     * The channel only receives
+     * @param group the multicast group to join
+     * @param port the port of the group
+     * @param networkInterface the network interface to join the group on
+     * @return a builder for {@link ProtoDatagramChannel}
+     * @throws IllegalArgumentException if the group is not a multicast address
+     */
+    public static DatagramBuilder newMulticastSubscriber(String group, int port, NetworkInterface networkInterface) {
+        return new DatagramBuilder(port, toMulticastGroup(group), networkInterface, false);
+    }
+
+    private static InetAddress toMulticastGroup(String group) {
+        InetAddress address;
+        try {
+            address = InetAddress.getByName(group);
+        } catch (UnknownHostException e) {
+            throw new IllegalArgumentException("Unknown multicast group: " + group, e);
+        }
+        if (!address.isMulticastAddress()) {
+            throw new IllegalArgumentException("Not a multicast group: " + group);
+        }
+        return address;
+    }
+
+    /**
+     * Create a new group of I/O event loops of the {@link Transport#ASYNC} transport to be shared by clients and servers, see {@link ClientBuilder#setEventLoopGroup(ProtoEventLoopGroup)}
+     * and {@link ServerBuilder#setEventLoopGroup(ProtoEventLoopGroup)}
+     * @param eventLoopCount the number of event loops
+     * @return the event loop group
+     */
+    public static ProtoEventLoopGroup newEventLoopGroup(int eventLoopCount) {
+        return newEventLoopGroup(eventLoopCount, EventLoopAssignment.ROUND_ROBIN);
+    }
+
+    /**
+     * Create a new group of I/O event loops of the {@link Transport#ASYNC} transport to be shared by clients and servers
+     * @param eventLoopCount the number of event loops
+     * @param eventLoopAssignment the strategy to pin new connections to the event loops
+     * @return the event loop group
+     */
+    public static ProtoEventLoopGroup newEventLoopGroup(int eventLoopCount, EventLoopAssignment eventLoopAssignment) {
+        return new AsyncEventLoopGroup(ProtoEventLoopGroup.class.getSimpleName(), eventLoopCount, eventLoopAssignment);
+    }
+
+    /**
+     * Create a new group of I/O event loops of the {@link Transport#SELECTOR} transport to be shared by clients and servers.
+     * Each event loop is a single thread polling a selector
+     * @param eventLoopCount the number of event loops
+     * @param eventLoopAssignment the strategy to pin new connections to the event loops
+     * @param waitStrategy how the event loops wait when there is no I/O ready
+     * @return the event loop group
+     */
+    public static ProtoEventLoopGroup newSelectorEventLoopGroup(int eventLoopCount, EventLoopAssignment eventLoopAssignment, WaitStrategy waitStrategy) {
+        return new SelectorEventLoopGroup(ProtoEventLoopGroup.class.getSimpleName(), eventLoopCount, eventLoopAssignment, waitStrategy);
+    }
+
+    private static void validateNoEventLoopGroup(ProtoEventLoopGroup eventLoopGroup, Transport transport) {
+        if (eventLoopGroup != null) {
+            throw new IllegalArgumentException("The " + transport + " transport does not use event loops");
+        }
+    }
+
+    private static void validateInetSocket(boolean isUnixDomainSocket, Transport transport) {
+        if (isUnixDomainSocket) {
+            throw new IllegalArgumentException("The " + transport + " transport does not support Unix domain sockets");
+        }
+    }
+
+    private static void validateSharedMemoryDirectory(boolean hasPath, Transport transport) {
+        if (!hasPath) {
+            throw new IllegalArgumentException("The " + transport + " transport needs the directory of the server, instead of a port");
+        }
+    }
+
+    private static void validateInProcess(boolean isInProcess, Transport transport) {
+        if (isInProcess && transport != Transport.IN_PROCESS) {
+            throw new IllegalArgumentException("An in-process channel only supports the " + Transport.IN_PROCESS + " transport");
+        }
+        if (!isInProcess && transport == Transport.IN_PROCESS) {
+            throw new IllegalArgumentException("The " + transport + " transport needs the name of an in-process server");
+        }
+    }
+
+    private static <G extends ProtoEventLoopGroup> G toEventLoopGroup(ProtoEventLoopGroup eventLoopGroup, Class<G> eventLoopGroupType, Transport transport) {
+        if (eventLoopGroup != null && !eventLoopGroupType.isInstance(eventLoopGroup)) {
+            throw new IllegalArgumentException("Unsupported event loop group " + eventLoopGroup.getClass().getName() + " for the " + transport + " transport");
+        }
+        return eventLoopGroupType.cast(eventLoopGroup);
     }
 
     /**
      * The builder to build {@link ProtoSocketChannel}
      */
     public final static class ClientBuilder {
-        private final String host;
-        private final int port;
+        private final SocketAddress socketAddress;
         private int readBufferSize = DefaultSetting.DEFAULT_CLIENT_BUFFER_SIZE;
         private int writeBufferSize = DefaultSetting.DEFAULT_CLIENT_BUFFER_SIZE;
+        private boolean isDirectReadBuffer = false;
+        private boolean isGatheringWrite = false;
         private long readTimeoutMillis = DefaultSetting.DEFAULT_READ_TIMEOUT_MILLIS;
         private long writeTimeoutMillis = DefaultSetting.DEFAULT_WRITE_TIMEOUT_MILLIS;
+        private long connectTimeoutMillis = DefaultSetting.DEFAULT_CONNECT_TIMEOUT_MILLIS;
+        private long writeLowWatermark = DefaultSetting.DEFAULT_WRITE_LOW_WATERMARK;
+        private long writeHighWatermark = DefaultSetting.DEFAULT_WRITE_HIGH_WATERMARK;
+        private int flowControlWindow = DefaultSetting.DEFAULT_FLOW_CONTROL_WINDOW;
+        private final Map<Integer, Integer> streamWeights = new HashMap<>();
+        private WritePolicy writePolicy = WritePolicy.immediate();
         private ExecutorService readExecutor = null;
         private ExecutorService writeExecutor = null;
+        private MessageTypeRegistry messageTypeRegistry = null;
+        private ProtoEventLoopGroup eventLoopGroup = null;
+        private Transport transport;
+        private WaitStrategy waitStrategy = WaitStrategy.BLOCKING;
+        private int sharedMemoryRingCapacity = DefaultSetting.DEFAULT_SHARED_MEMORY_RING_CAPACITY;
+        private boolean isInProcessSerialization = false;
+        private ReconnectPolicy reconnectPolicy = ReconnectPolicy.none();
+        private PoolDistribution poolDistribution = PoolDistribution.roundRobin();
+        private int poolSize = 1;
 
-        private ClientBuilder(String host, int port) {
-            this.host = host;
-            this.port = port;
+        private ClientBuilder(SocketAddress socketAddress, Transport transport) {
+            this.socketAddress = socketAddress;
+            this.transport = transport;
         }
 
         /**
@@ -72,7 +293,31 @@ public final class ProtoChannelFactory {
         }
 
         /**
-         * The timeout in milliseconds for reading from the socket. The default value is 0 (no timeout)
+         * <p>Use a direct buffer to read from the socket channel. Incoming messages are deserialized straight from the read buffer,
+         * so a direct buffer also saves the copy from the socket into a temporary direct buffer. The default value is false (heap buffer)</p>
+         * <p>Direct buffers are allocated outside of the heap, see -XX:MaxDirectMemorySize when there are many connections</p>
+         * @param isDirectReadBuffer isDirectReadBuffer
+         * @return builder
+         */
+        public ClientBuilder setDirectReadBuffer(boolean isDirectReadBuffer) {
+            this.isDirectReadBuffer = isDirectReadBuffer;
+            return this;
+        }
+
+        /**
+         * <p>Write each batch of outgoing messages with a single gathering write. Messages are serialized into up to 16 write buffers
+         * (of the write buffer size) instead of one, and a message larger than the write buffer is written from its own buffer instead of
+         * being split into chunks. The default value is false. Only used by the {@link Transport#ASYNC} transport</p>
+         * @param isGatheringWrite isGatheringWrite
+         * @return builder
+         */
+        public ClientBuilder setGatheringWrite(boolean isGatheringWrite) {
+            this.isGatheringWrite = isGatheringWrite;
+            return this;
+        }
+
+        /**
+         * The timeout in milliseconds for reading from the socket. The default value is 0 (no timeout). Only used by the {@link Transport#ASYNC} transport
          * @param readTimeoutMillis readTimeoutMillis
          * @return builder
          */
@@ -82,7 +327,7 @@ public final class ProtoChannelFactory {
         }
 
         /**
-         * The timeout in milliseconds for reading from the socket. The default value is 10000 (10 seconds)
+         * The timeout in milliseconds for reading from the socket. The default value is 10000 (10 seconds). Only used by the {@link Transport#ASYNC} transport
          * @param writeTimeoutMillis writeTimeoutMillis
          * @return builder
          */
@@ -91,10 +336,50 @@ public final class ProtoChannelFactory {
             return this;
         }
 
+        /**
+         * <p>The timeout in milliseconds for establishing the connection, after which the channel is disconnected.
+         * The default value is 0 (wait until the operating system gives up)</p>
+         * @param connectTimeoutMillis connectTimeoutMillis
+         * @return builder
+         */
+        public ClientBuilder setConnectTimeoutMillis(long connectTimeoutMillis) {
+            this.connectTimeoutMillis = connectTimeoutMillis;
+            return this;
+        }
+
+        /**
+         * <p>The watermarks, in bytes, of the outgoing messages waiting to be written to a connection. The connection becomes unwritable
+         * when the pending bytes rise above the high watermark, and writable again when they drop below the low watermark.
+         * The default values are 524288 (512 KB) and 1048576 (1 MB)</p>
+         * <p>See {@link ProtoSocketChannel#isWritable()} and {@link com.github.quantranuk.protobuf.nio.handlers.WritabilityChangedHandler}</p>
+         * @param writeLowWatermark writeLowWatermark
+         * @param writeHighWatermark writeHighWatermark
+         * @return builder
+         */
+        public ClientBuilder setWriteWatermarks(long writeLowWatermark, long writeHighWatermark) {
+            if (writeLowWatermark < 0 || writeLowWatermark > writeHighWatermark) {
+                throw new IllegalArgumentException("Invalid write watermarks: low=" + writeLowWatermark + " high=" + writeHighWatermark);
+            }
+            this.writeLowWatermark = writeLowWatermark;
+            this.writeHighWatermark = writeHighWatermark;
+            return this;
+        }
+
+        /**
+         * <p>The policy deciding when sent messages are written to the socket, see {@link WritePolicy}. The default value is {@link WritePolicy#immediate()}</p>
+         * <p>Use {@link WritePolicy#explicitFlush()} or {@link WritePolicy#linger(long, java.util.concurrent.TimeUnit, int)} to coalesce bursts of small messages into fewer writes</p>
+         * @param writePolicy writePolicy
+         * @return builder
+         */
+        public ClientBuilder setWritePolicy(WritePolicy writePolicy) {
+            this.writePolicy = writePolicy;
+            return this;
+        }
+
         /**
          * <p>The executor that will execute read activities. This must be a single thread executor only.
          * Use this method to share the same thread between multiple clients</p>
-         * <p>If not set a new thread will be spawn by default</p>
+         * <p>If not set a new thread will be spawn by default. Only used by the {@link Transport#ASYNC} transport</p>
          * @param readExecutor readExecutor
          * @return builder
          */
@@ -106,7 +391,7 @@ public final class ProtoChannelFactory {
         /**
          * <p>The executor that will execute write activities. This must be a single thread executor only.
          * Use this method to share the same thread between multiple clients</p>
-         * <p>If not set a new thread will be spawn by default</p>
+         * <p>If not set a new thread will be spawn by default. Only used by the {@link Transport#ASYNC} transport</p>
          * @param writeExecutor writeExecutor
          * @return builder
          */
@@ -115,21 +400,233 @@ public final class ProtoChannelFactory {
             return this;
         }
 
+        /**
+         * <p>The group of I/O event loops to share with other clients and servers. The client uses the read thread, the write thread and the channel group
+         * of one of the event loops, instead of spawning its own threads. A read/write executor set explicitly takes precedence</p>
+         * <p>The group is not shut down when the client is disconnected. The group must have been created for the same transport as this builder</p>
+         * @param eventLoopGroup eventLoopGroup
+         * @return builder
+         */
+        public ClientBuilder setEventLoopGroup(ProtoEventLoopGroup eventLoopGroup) {
+            this.eventLoopGroup = eventLoopGroup;
+            return this;
+        }
+
+        /**
+         * <p>The flow control window: the number of bytes the remote peer can send before it has to wait for this side to consume them.
+         * The bytes are granted back once the message received handlers have returned, or once the response to a request has been sent.</p>
+         * <p>Flow control is only used on a connection if both peers have a window, in which case both peers wait for the window of the other one
+         * before sending. The default value is 0 (no flow control)</p>
+         * @param flowControlWindow flowControlWindow
+         * @return builder
+         */
+        public ClientBuilder setFlowControlWindow(int flowControlWindow) {
+            if (flowControlWindow < 0) {
+                throw new IllegalArgumentException("Invalid flow control window: " + flowControlWindow);
+            }
+            this.flowControlWindow = flowControlWindow;
+            return this;
+        }
+
+        /**
+         * <p>The weight of a logical stream (see {@link ProtoSocketChannel#sendMessage(int, com.google.protobuf.Message)}): when several streams have
+         * messages to write, each of them takes turns writing up to its weight times 8 KB to the connection.</p>
+         * <p>The default weight of every stream (including the default stream 0) is 1</p>
+         * @param streamId the id of the stream
+         * @param weight the weight of the stream, at least 1
+         * @return builder
+         */
+        public ClientBuilder setStreamWeight(int streamId, int weight) {
+            if (streamId < 0 || weight < 1) {
+                throw new IllegalArgumentException("Invalid weight of stream " + streamId + ": " + weight);
+            }
+            streamWeights.put(streamId, weight);
+            return this;
+        }
+
+        /**
+         * <p>The registry of message type ids. Messages of registered types are sent with a compact type id instead of their class name.
+         * The registry is announced to the remote peer when the first message is sent, so the remote peer must also be using protobuf-nio with
+         * type registry support.</p>
+         * <p>If not set all messages are sent with their class name</p>
+         * @param messageTypeRegistry messageTypeRegistry
+         * @return builder
+         */
+        public ClientBuilder setMessageTypeRegistry(MessageTypeRegistry messageTypeRegistry) {
+            this.messageTypeRegistry = messageTypeRegistry;
+            return this;
+        }
+
+        /**
+         * The I/O implementation of the channel. The default value is {@link Transport#ASYNC}, or {@link Transport#SELECTOR} for a Unix domain socket
+         * @param transport transport
+         * @return builder
+         */
+        public ClientBuilder setTransport(Transport transport) {
+            this.transport = transport;
+            return this;
+        }
+
+        /**
+         * <p>How the event loops of the {@link Transport#SELECTOR} transport (or the thread of a {@link Transport#SHARED_MEMORY} connection)
+         * wait when there is no I/O ready. The default value is {@link WaitStrategy#BLOCKING}</p>
+         * <p>Not used with the {@link Transport#ASYNC} transport, nor when an event loop group is set (the wait strategy is given to the group)</p>
+         * @param waitStrategy waitStrategy
+         * @return builder
+         */
+        public ClientBuilder setWaitStrategy(WaitStrategy waitStrategy) {
+            this.waitStrategy = waitStrategy;
+            return this;
+        }
+
+        /**
+         * The number of bytes of the ring buffer of each direction of a {@link Transport#SHARED_MEMORY} connection, a power of two.
+         * The client creates the connection, so this setting applies to both sides. The default value is 1048576 (1 MB)
+         * @param sharedMemoryRingCapacity sharedMemoryRingCapacity
+         * @return builder
+         */
+        public ClientBuilder setSharedMemoryRingCapacity(int sharedMemoryRingCapacity) {
+            if (sharedMemoryRingCapacity <= 0 || Integer.bitCount(sharedMemoryRingCapacity) != 1) {
+                throw new IllegalArgumentException("The ring capacity must be a power of two: " + sharedMemoryRingCapacity);
+            }
+            this.sharedMemoryRingCapacity = sharedMemoryRingCapacity;
+            return this;
+        }
+
+        /**
+         * <p>Whether an in-process channel serializes its messages into frames before handing them over to the server, as they would be sent
+         * on a socket. The default value is false: the message instances themselves are handed over, without any encoding</p>
+         * <p>Serializing is slower, but it tests the serialization of the messages (e.g. the type registry). Only used by the {@link Transport#IN_PROCESS} transport</p>
+         * @param isInProcessSerialization isInProcessSerialization
+         * @return builder
+         */
+        public ClientBuilder setInProcessSerialization(boolean isInProcessSerialization) {
+            this.isInProcessSerialization = isInProcessSerialization;
+            return this;
+        }
+
+        /**
+         * <p>Whether the client reconnects once its connection is lost. The default value is {@link ReconnectPolicy#none()}</p>
+         * <p>A reconnecting client creates a new channel of the transport for each connection. It keeps the messages that could not be sent
+         * and replays them once it is connected again, and {@link ProtoSocketChannel#connect()} keeps trying until the first connection is established</p>
+         * @param reconnectPolicy reconnectPolicy
+         * @return builder
+         */
+        public ClientBuilder setReconnectPolicy(ReconnectPolicy reconnectPolicy) {
+            this.reconnectPolicy = reconnectPolicy;
+            return this;
+        }
+
+        /**
+         * How the messages are spread across the connections of a pool created with {@link #newClientPool(String, int, int)}.
+         * The default value is {@link PoolDistribution#roundRobin()}
+         * @param poolDistribution poolDistribution
+         * @return builder
+         */
+        public ClientBuilder setPoolDistribution(PoolDistribution poolDistribution) {
+            this.poolDistribution = poolDistribution;
+            return this;
+        }
+
         /**
          * Build the {@link ProtoServerSocketChannel}
          * @return ProtoSocketChannel
          */
         public ProtoSocketChannel build() {
-            AsyncProtoSocketChannel channel = new AsyncProtoSocketChannel(host, port);
+            if (poolSize == 1) {
+                return newConnection();
+            }
+            List<ProtoSocketChannel> channels = new ArrayList<>(poolSize);
+            for (int i = 0; i < poolSize; i++) {
+                channels.add(newConnection());
+            }
+            return new ProtoSocketChannelPool(channels, poolDistribution);
+        }
+
+        private ProtoSocketChannel newConnection() {
+            if (reconnectPolicy.isEnabled()) {
+                SocketAddress channelAddress = transport == Transport.SHARED_MEMORY ? new SharedMemoryAddress(getSharedMemoryDirectory()) : socketAddress;
+                return new ReconnectingProtoSocketChannel(channelAddress, this::newChannel, reconnectPolicy);
+            }
+            return newChannel();
+        }
+
+        private AbstractProtoSocketChannel newChannel() {
+            validateInProcess(socketAddress instanceof InProcessAddress, transport);
+            AbstractProtoSocketChannel channel;
+            switch (transport) {
+                case SELECTOR:
+                    channel = newSelectorChannel();
+                    break;
+                case VIRTUAL_THREAD:
+                    channel = newVirtualThreadChannel();
+                    break;
+                case SHARED_MEMORY:
+                    channel = newSharedMemoryChannel();
+                    break;
+                case IN_PROCESS:
+                    channel = newInProcessChannel();
+                    break;
+                default:
+                    channel = newAsyncChannel();
+                    break;
+            }
             channel.setReadBufferSize(readBufferSize);
             channel.setWriteBufferSize(writeBufferSize);
+            channel.setDirectReadBuffer(isDirectReadBuffer);
+            channel.setGatheringWrite(isGatheringWrite);
+            channel.setWriteWatermarks(writeLowWatermark, writeHighWatermark);
+            channel.setWritePolicy(writePolicy);
+            channel.setMessageTypeRegistry(messageTypeRegistry);
+            channel.setFlowControlWindow(flowControlWindow);
+            channel.setStreamWeights(new HashMap<>(streamWeights));
+            channel.setConnectTimeoutMillis(connectTimeoutMillis);
+            channel.init();
+            return channel;
+        }
+
+        private AbstractProtoSocketChannel newAsyncChannel() {
+            validateInetSocket(socketAddress instanceof UnixDomainSocketAddress, transport);
+            AsyncProtoSocketChannel channel = new AsyncProtoSocketChannel(socketAddress);
             channel.setReadTimeoutMillis(readTimeoutMillis);
             channel.setWriteTimeoutMillis(writeTimeoutMillis);
             channel.setReadExecutor(readExecutor);
             channel.setWriteExecutor(writeExecutor);
-            channel.init();
+            channel.setEventLoopGroup(toEventLoopGroup(eventLoopGroup, AsyncEventLoopGroup.class, transport));
             return channel;
         }
+
+        private AbstractProtoSocketChannel newSelectorChannel() {
+            SelectorProtoSocketChannel channel = new SelectorProtoSocketChannel(socketAddress);
+            channel.setWaitStrategy(waitStrategy);
+            channel.setEventLoopGroup(toEventLoopGroup(eventLoopGroup, SelectorEventLoopGroup.class, transport));
+            return channel;
+        }
+
+        private AbstractProtoSocketChannel newVirtualThreadChannel() {
+            validateNoEventLoopGroup(eventLoopGroup, transport);
+            return new VirtualThreadProtoSocketChannel(socketAddress);
+        }
+
+        private AbstractProtoSocketChannel newSharedMemoryChannel() {
+            validateNoEventLoopGroup(eventLoopGroup, transport);
+            SharedMemoryProtoSocketChannel channel = new SharedMemoryProtoSocketChannel(getSharedMemoryDirectory());
+            channel.setWaitStrategy(waitStrategy);
+            channel.setRingCapacity(sharedMemoryRingCapacity);
+            return channel;
+        }
+
+        private AbstractProtoSocketChannel newInProcessChannel() {
+            validateNoEventLoopGroup(eventLoopGroup, transport);
+            InProcessProtoSocketChannel channel = new InProcessProtoSocketChannel(((InProcessAddress) socketAddress).getName());
+            channel.setSerializing(isInProcessSerialization);
+            return channel;
+        }
+
+        private Path getSharedMemoryDirectory() {
+            validateSharedMemoryDirectory(socketAddress instanceof UnixDomainSocketAddress, transport);
+            return ((UnixDomainSocketAddress) socketAddress).getPath();
+        }
     }
 
     /**
@@ -137,13 +634,36 @@ public final class ProtoChannelFactory {
      */
     public final static class ServerBuilder {
         private final int port;
+        private final Path path;
+        private final String inProcessName;
         private int readBufferSize = DefaultSetting.DEFAULT_CLIENT_BUFFER_SIZE;
         private int writeBufferSize = DefaultSetting.DEFAULT_CLIENT_BUFFER_SIZE;
+        private boolean isDirectReadBuffer = false;
+        private boolean isGatheringWrite = false;
         private long readTimeoutMillis = DefaultSetting.DEFAULT_READ_TIMEOUT_MILLIS;
         private long writeTimeoutMillis = DefaultSetting.DEFAULT_WRITE_TIMEOUT_MILLIS;
+        private long writeLowWatermark = DefaultSetting.DEFAULT_WRITE_LOW_WATERMARK;
+        private long writeHighWatermark = DefaultSetting.DEFAULT_WRITE_HIGH_WATERMARK;
+        private int flowControlWindow = DefaultSetting.DEFAULT_FLOW_CONTROL_WINDOW;
+        private final Map<Integer, Integer> streamWeights = new HashMap<>();
+        private WritePolicy writePolicy = WritePolicy.immediate();
+        private MessageTypeRegistry messageTypeRegistry = null;
+        private int eventLoopCount = DefaultSetting.DEFAULT_SERVER_EVENT_LOOP_COUNT;
+        private EventLoopAssignment eventLoopAssignment = EventLoopAssignment.ROUND_ROBIN;
+        private ProtoEventLoopGroup eventLoopGroup = null;
+        private Transport transport;
+        private WaitStrategy waitStrategy = WaitStrategy.BLOCKING;
+        private boolean isInProcessSerialization = false;
 
-        private ServerBuilder(int port) {
+        private ServerBuilder(int port, Path path, String inProcessName) {
             this.port = port;
+            this.path = path;
+            this.inProcessName = inProcessName;
+            if (inProcessName != null) {
+                this.transport = Transport.IN_PROCESS;
+            } else {
+                this.transport = path == null ? Transport.ASYNC : Transport.SELECTOR;
+            }
         }
 
         /**
@@ -167,7 +687,67 @@ public final class ProtoChannelFactory {
         }
 
         /**
-         * The timeout in milliseconds for reading from the socket. The default value is 0 (no timeout)
+         * <p>Use a direct buffer to read from the socket channel. Incoming messages are deserialized straight from the read buffer,
+         * so a direct buffer also saves the copy from the socket into a temporary direct buffer. The default value is false (heap buffer)</p>
+         * <p>Direct buffers are allocated outside of the heap, see -XX:MaxDirectMemorySize when there are many connections</p>
+         * @param isDirectReadBuffer isDirectReadBuffer
+         * @return builder
+         */
+        public ServerBuilder setDirectReadBuffer(boolean isDirectReadBuffer) {
+            this.isDirectReadBuffer = isDirectReadBuffer;
+            return this;
+        }
+
+        /**
+         * <p>Write each batch of outgoing messages with a single gathering write. Messages are serialized into up to 16 write buffers
+         * (of the write buffer size) instead of one, and a message larger than the write buffer is written from its own buffer instead of
+         * being split into chunks. The default value is false. Only used by the {@link Transport#ASYNC} transport</p>
+         * @param isGatheringWrite isGatheringWrite
+         * @return builder
+         */
+        public ServerBuilder setGatheringWrite(boolean isGatheringWrite) {
+            this.isGatheringWrite = isGatheringWrite;
+            return this;
+        }
+
+        /**
+         * <p>The number of I/O event loops, each with a thread to read and a thread to write. Every accepted connection is pinned to one event loop,
+         * so that the order of its messages is preserved while the connections are spread across more cores. The default value is 1</p>
+         * @param eventLoopCount eventLoopCount
+         * @return builder
+         */
+        public ServerBuilder setEventLoopCount(int eventLoopCount) {
+            if (eventLoopCount <= 0) {
+                throw new IllegalArgumentException("Invalid number of event loops: " + eventLoopCount);
+            }
+            this.eventLoopCount = eventLoopCount;
+            return this;
+        }
+
+        /**
+         * The strategy to pin accepted connections to the event loops. The default value is {@link EventLoopAssignment#ROUND_ROBIN}
+         * @param eventLoopAssignment eventLoopAssignment
+         * @return builder
+         */
+        public ServerBuilder setEventLoopAssignment(EventLoopAssignment eventLoopAssignment) {
+            this.eventLoopAssignment = eventLoopAssignment;
+            return this;
+        }
+
+        /**
+         * <p>The group of I/O event loops to share with other clients and servers. Accepted connections are pinned to the event loops of the group,
+         * in which case the event loop count and assignment of this builder are not used</p>
+         * <p>The group is not shut down when the server is stopped. The group must have been created for the same transport as this builder</p>
+         * @param eventLoopGroup eventLoopGroup
+         * @return builder
+         */
+        public ServerBuilder setEventLoopGroup(ProtoEventLoopGroup eventLoopGroup) {
+            this.eventLoopGroup = eventLoopGroup;
+            return this;
+        }
+
+        /**
+         * The timeout in milliseconds for reading from the socket. The default value is 0 (no timeout). Only used by the {@link Transport#ASYNC} transport
          * @param readTimeoutMillis readTimeoutMillis
          * @return builder
          */
@@ -177,7 +757,7 @@ public final class ProtoChannelFactory {
         }
 
         /**
-         * The timeout in milliseconds for reading from the socket. The default value is 10000 (10 seconds)
+         * The timeout in milliseconds for reading from the socket. The default value is 10000 (10 seconds). Only used by the {@link Transport#ASYNC} transport
          * @param writeTimeoutMillis writeTimeoutMillis
          * @return builder
          */
@@ -186,17 +766,314 @@ public final class ProtoChannelFactory {
             return this;
         }
 
+        /**
+         * <p>The watermarks, in bytes, of the outgoing messages waiting to be written to a connection. The connection becomes unwritable
+         * when the pending bytes rise above the high watermark, and writable again when they drop below the low watermark.
+         * The default values are 524288 (512 KB) and 1048576 (1 MB)</p>
+         * <p>See {@link ProtoSocketChannel#isWritable()} and {@link com.github.quantranuk.protobuf.nio.handlers.WritabilityChangedHandler}</p>
+         * @param writeLowWatermark writeLowWatermark
+         * @param writeHighWatermark writeHighWatermark
+         * @return builder
+         */
+        public ServerBuilder setWriteWatermarks(long writeLowWatermark, long writeHighWatermark) {
+            if (writeLowWatermark < 0 || writeLowWatermark > writeHighWatermark) {
+                throw new IllegalArgumentException("Invalid write watermarks: low=" + writeLowWatermark + " high=" + writeHighWatermark);
+            }
+            this.writeLowWatermark = writeLowWatermark;
+            this.writeHighWatermark = writeHighWatermark;
+            return this;
+        }
+
+        /**
+         * <p>The policy deciding when sent messages are written to the socket, see {@link WritePolicy}. The default value is {@link WritePolicy#immediate()}</p>
+         * <p>Use {@link WritePolicy#explicitFlush()} or {@link WritePolicy#linger(long, java.util.concurrent.TimeUnit, int)} to coalesce bursts of small messages into fewer writes</p>
+         * @param writePolicy writePolicy
+         * @return builder
+         */
+        public ServerBuilder setWritePolicy(WritePolicy writePolicy) {
+            this.writePolicy = writePolicy;
+            return this;
+        }
+
+        /**
+         * <p>The flow control window: the number of bytes the remote peer can send before it has to wait for this side to consume them.
+         * The bytes are granted back once the message received handlers have returned, or once the response to a request has been sent.</p>
+         * <p>Flow control is only used on a connection if both peers have a window, in which case both peers wait for the window of the other one
+         * before sending. The default value is 0 (no flow control)</p>
+         * @param flowControlWindow flowControlWindow
+         * @return builder
+         */
+        public ServerBuilder setFlowControlWindow(int flowControlWindow) {
+            if (flowControlWindow < 0) {
+                throw new IllegalArgumentException("Invalid flow control window: " + flowControlWindow);
+            }
+            this.flowControlWindow = flowControlWindow;
+            return this;
+        }
+
+        /**
+         * <p>The weight of a logical stream (see {@link ProtoSocketChannel#sendMessage(int, com.google.protobuf.Message)}): when several streams have
+         * messages to write, each of them takes turns writing up to its weight times 8 KB to the connection.</p>
+         * <p>The default weight of every stream (including the default stream 0) is 1</p>
+         * @param streamId the id of the stream
+         * @param weight the weight of the stream, at least 1
+         * @return builder
+         */
+        public ServerBuilder setStreamWeight(int streamId, int weight) {
+            if (streamId < 0 || weight < 1) {
+                throw new IllegalArgumentException("Invalid weight of stream " + streamId + ": " + weight);
+            }
+            streamWeights.put(streamId, weight);
+            return this;
+        }
+
+        /**
+         * <p>The registry of message type ids. Messages of registered types are sent with a compact type id instead of their class name.
+         * The registry is announced to the remote peer when the first message is sent, so the remote peer must also be using protobuf-nio with
+         * type registry support.</p>
+         * <p>If not set all messages are sent with their class name</p>
+         * @param messageTypeRegistry messageTypeRegistry
+         * @return builder
+         */
+        public ServerBuilder setMessageTypeRegistry(MessageTypeRegistry messageTypeRegistry) {
+            this.messageTypeRegistry = messageTypeRegistry;
+            return this;
+        }
+
+        /**
+         * The I/O implementation of the channel. The default value is {@link Transport#ASYNC}, or {@link Transport#SELECTOR} for a Unix domain socket
+         * @param transport transport
+         * @return builder
+         */
+        public ServerBuilder setTransport(Transport transport) {
+            this.transport = transport;
+            return this;
+        }
+
+        /**
+         * <p>How the event loops of the {@link Transport#SELECTOR} transport (or the threads of the {@link Transport#SHARED_MEMORY} connections)
+         * wait when there is no I/O ready. The default value is {@link WaitStrategy#BLOCKING}</p>
+         * <p>Not used with the {@link Transport#ASYNC} transport, nor when an event loop group is set (the wait strategy is given to the group)</p>
+         * @param waitStrategy waitStrategy
+         * @return builder
+         */
+        public ServerBuilder setWaitStrategy(WaitStrategy waitStrategy) {
+            this.waitStrategy = waitStrategy;
+            return this;
+        }
+
+        /**
+         * <p>Whether the connections of an in-process server serialize their messages into frames before handing them over to the clients, as they
+         * would be sent on a socket. The default value is false: the message instances themselves are handed over, without any encoding</p>
+         * <p>Only used by the {@link Transport#IN_PROCESS} transport</p>
+         * @param isInProcessSerialization isInProcessSerialization
+         * @return builder
+         */
+        public ServerBuilder setInProcessSerialization(boolean isInProcessSerialization) {
+            this.isInProcessSerialization = isInProcessSerialization;
+            return this;
+        }
+
         /**
          * Build the {@link ProtoServerSocketChannel}
          * @return ProtoSocketChannel
          */
         public ProtoServerSocketChannel build() {
-            AsyncProtoServerSocketChannel channel = new AsyncProtoServerSocketChannel(port);
+            validateInProcess(inProcessName != null, transport);
+            AbstractProtoServerSocketChannel channel;
+            switch (transport) {
+                case SELECTOR:
+                    channel = newSelectorChannel();
+                    break;
+                case VIRTUAL_THREAD:
+                    channel = newVirtualThreadChannel();
+                    break;
+                case SHARED_MEMORY:
+                    channel = newSharedMemoryChannel();
+                    break;
+                case IN_PROCESS:
+                    channel = newInProcessChannel();
+                    break;
+                default:
+                    channel = newAsyncChannel();
+                    break;
+            }
             channel.setReadBufferSize(readBufferSize);
             channel.setWriteBufferSize(writeBufferSize);
+            channel.setDirectReadBuffer(isDirectReadBuffer);
+            channel.setGatheringWrite(isGatheringWrite);
+            channel.setWriteWatermarks(writeLowWatermark, writeHighWatermark);
+            channel.setWritePolicy(writePolicy);
+            channel.setMessageTypeRegistry(messageTypeRegistry);
+            channel.setFlowControlWindow(flowControlWindow);
+            channel.setStreamWeights(new HashMap<>(streamWeights));
+            channel.setEventLoopCount(eventLoopCount);
+            channel.setEventLoopAssignment(eventLoopAssignment);
+            channel.init();
+            return channel;
+        }
+
+        private AbstractProtoServerSocketChannel newAsyncChannel() {
+            validateInetSocket(path != null, transport);
+            AsyncProtoServerSocketChannel channel = new AsyncProtoServerSocketChannel(port);
             channel.setReadTimeoutMillis(readTimeoutMillis);
             channel.setWriteTimeoutMillis(writeTimeoutMillis);
-            channel.init();
+            channel.setEventLoopGroup(toEventLoopGroup(eventLoopGroup, AsyncEventLoopGroup.class, transport));
+            return channel;
+        }
+
+        private AbstractProtoServerSocketChannel newSelectorChannel() {
+            SelectorProtoServerSocketChannel channel = path == null ? new SelectorProtoServerSocketChannel(port) : new SelectorProtoServerSocketChannel(path);
+            channel.setWaitStrategy(waitStrategy);
+            channel.setEventLoopGroup(toEventLoopGroup(eventLoopGroup, SelectorEventLoopGroup.class, transport));
+            return channel;
+        }
+
+        private AbstractProtoServerSocketChannel newVirtualThreadChannel() {
+            validateNoEventLoopGroup(eventLoopGroup, transport);
+            return path == null ? new VirtualThreadProtoServerSocketChannel(port) : new VirtualThreadProtoServerSocketChannel(path);
+        }
+
+        private AbstractProtoServerSocketChannel newInProcessChannel() {
+            validateNoEventLoopGroup(eventLoopGroup, transport);
+            InProcessProtoServerSocketChannel channel = new InProcessProtoServerSocketChannel(inProcessName);
+            channel.setSerializing(isInProcessSerialization);
+            return channel;
+        }
+
+        private AbstractProtoServerSocketChannel newSharedMemoryChannel() {
+            validateNoEventLoopGroup(eventLoopGroup, transport);
+            validateSharedMemoryDirectory(path != null, transport);
+            SharedMemoryProtoServerSocketChannel channel = new SharedMemoryProtoServerSocketChannel(path);
+            channel.setWaitStrategy(waitStrategy);
+            return channel;
+        }
+    }
+
+    /**
+     * The builder to build {@link ProtoDatagramChannel}
+     */
+    public final static class DatagramBuilder {
+        private final int port;
+        private final InetAddress multicastGroup;
+        private final NetworkInterface networkInterface;
+        private final boolean isMulticastPublisher;
+        private SocketAddress remoteAddress = null;
+        private int mtu = DefaultSetting.DEFAULT_DATAGRAM_MTU;
+        private int socketReceiveBufferSize = 0;
+        private int recoveryWindow = DefaultSetting.DEFAULT_MULTICAST_RECOVERY_WINDOW;
+        private WritePolicy writePolicy = WritePolicy.immediate();
+        private MessageTypeRegistry messageTypeRegistry = null;
+
+        private DatagramBuilder(int port, InetAddress multicastGroup, NetworkInterface networkInterface, boolean isMulticastPublisher) {
+            this.port = port;
+            this.multicastGroup = multicastGroup;
+            this.networkInterface = networkInterface;
+            this.isMulticastPublisher = isMulticastPublisher;
+        }
+
+        /**
+         * The address to send the messages to. If not set the channel only receives. A multicast channel cannot be given a remote address
+         * @param host the host to send to
+         * @param port the port to send to
+         * @return builder
+         */
+        public DatagramBuilder setRemoteAddress(String host, int port) {
+            if (multicastGroup != null) {
+                throw new IllegalArgumentException("A multicast channel only sends to its group");
+            }
+            this.remoteAddress = new InetSocketAddress(host, port);
+            return this;
+        }
+
+        /**
+         * <p>The maximum size of a datagram in bytes, header included. The messages are packed into datagrams up to this size, and a message larger than that
+         * is sent in a datagram of its own, fragmented by the IP layer.</p>
+         * <p>The default value is {@value DefaultSetting#DEFAULT_DATAGRAM_MTU}, the largest datagram that fits into an Ethernet frame</p>
+         * @param mtu mtu
+         * @return builder
+         */
+        public DatagramBuilder setMtu(int mtu) {
+            if (mtu <= ProtobufSerializer.DATAGRAM_HEADER_LENGTH + ProtobufSerializer.HEADER_LENGTH || mtu > ProtobufSerializer.MAX_DATAGRAM_LENGTH) {
+                throw new IllegalArgumentException("Invalid MTU: " + mtu);
+            }
+            this.mtu = mtu;
+            return this;
+        }
+
+        /**
+         * The size of the receive buffer of the socket (SO_RCVBUF). Datagrams arriving while the buffer is full are lost, so a larger buffer absorbs
+         * longer bursts. If not set the default of the system is used
+         * @param socketReceiveBufferSize socketReceiveBufferSize
+         * @return builder
+         */
+        public DatagramBuilder setSocketReceiveBufferSize(int socketReceiveBufferSize) {
+            if (socketReceiveBufferSize <= 0) {
+                throw new IllegalArgumentException("Invalid socket receive buffer size: " + socketReceiveBufferSize);
+            }
+            this.socketReceiveBufferSize = socketReceiveBufferSize;
+            return this;
+        }
+
+        /**
+         * <p>The number of datagrams that can be recovered after a loss, for the multicast channels only: the publisher keeps its latest datagrams
+         * for retransmission, and the subscriber holds the datagrams received after a missing one until it has been retransmitted.</p>
+         * <p>The default value is {@value DefaultSetting#DEFAULT_MULTICAST_RECOVERY_WINDOW}</p>
+         * @param recoveryWindow recoveryWindow
+         * @return builder
+         */
+        public DatagramBuilder setRecoveryWindow(int recoveryWindow) {
+            if (recoveryWindow <= 0) {
+                throw new IllegalArgumentException("Invalid recovery window: " + recoveryWindow);
+            }
+            this.recoveryWindow = recoveryWindow;
+            return this;
+        }
+
+        /**
+         * <p>The policy deciding when sent messages are written to the socket, see {@link WritePolicy}. The default value is {@link WritePolicy#immediate()}</p>
+         * <p>Use {@link WritePolicy#linger(long, java.util.concurrent.TimeUnit, int)} to pack bursts of small messages into fewer datagrams</p>
+         * @param writePolicy writePolicy
+         * @return builder
+         */
+        public DatagramBuilder setWritePolicy(WritePolicy writePolicy) {
+            this.writePolicy = writePolicy;
+            return this;
+        }
+
+        /**
+         * <p>The registry of message type ids. Messages of registered types are sent with a compact type id instead of their class name.
+         * The registry is not announced, as datagrams can be lost: the senders and the receivers must be set up with the same registry.</p>
+         * <p>If not set all messages are sent with their class name</p>
+         * @param messageTypeRegistry messageTypeRegistry
+         * @return builder
+         */
+        public DatagramBuilder setMessageTypeRegistry(MessageTypeRegistry messageTypeRegistry) {
+            this.messageTypeRegistry = messageTypeRegistry;
+            return this;
+        }
+
+        /**
+         * Build the {@link ProtoDatagramChannel}
+         * @return ProtoDatagramChannel
+         */
+        public ProtoDatagramChannel build() {
+            UdpProtoDatagramChannel channel;
+            if (multicastGroup == null) {
+                channel = new UdpProtoDatagramChannel(port, remoteAddress);
+            } else if (isMulticastPublisher) {
+                MulticastPublisherProtoDatagramChannel publisher = new MulticastPublisherProtoDatagramChannel(new InetSocketAddress(multicastGroup, port), networkInterface);
+                publisher.setRecoveryWindow(recoveryWindow);
+                channel = publisher;
+            } else {
+                MulticastSubscriberProtoDatagramChannel subscriber = new MulticastSubscriberProtoDatagramChannel(multicastGroup, port, networkInterface);
+                subscriber.setRecoveryWindow(recoveryWindow);
+                channel = subscriber;
+            }
+            channel.setMtu(mtu);
+            channel.setSocketReceiveBufferSize(socketReceiveBufferSize);
+            channel.setWritePolicy(writePolicy);
+            channel.setMessageTypeRegistry(messageTypeRegistry);
             return channel;
         }
     }
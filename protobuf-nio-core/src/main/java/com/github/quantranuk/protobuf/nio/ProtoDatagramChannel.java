@@ -0,0 +1,79 @@
+package com.github.quantranuk.protobuf.nio;
+
+import com.github.quantranuk.protobuf.nio.handlers.MessageReceivedHandler;
+import com.github.quantranuk.protobuf.nio.handlers.SequenceGapHandler;
+import com.google.protobuf.Message;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+
+/**
+ * <p>A channel to send and receive protobuf messages in UDP datagrams, for feeds where the latest data matters more than every single message.</p>
+ * <p>The messages are packed into datagrams up to the MTU, each datagram carrying a sequence number. A datagram can be lost, duplicated or reordered
+ * on the way: the receiver reports the gaps in the sequence of each sender and drops the datagrams older than the latest one received, so that the messages
+ * of a sender are never received out of order. There is no remote call nor stream.</p>
+ * <p>A point to point channel does not retransmit anything. The subscribers of a multicast group request the datagrams they have lost from the publisher,
+ * which retransmits them from a bounded history: only the datagrams that cannot be recovered are reported as gaps</p>
+ */
+public interface ProtoDatagramChannel {
+
+    /**
+     * Bind to the local port and start receiving datagrams
+     * @throws IOException if the channel is unable to bind to the port
+     */
+    void start() throws IOException;
+
+    /**
+     * Stop receiving datagrams and close the socket. After the channel is stopped it will not be started again and should be discarded
+     */
+    void stop();
+
+    /**
+     * Send a message to the remote address. The message is packed into a datagram with the messages sent before it, according to the write policy
+     * @param message the protobuf message
+     * @throws IllegalStateException if the channel is not started, or has no remote address
+     * @throws IllegalArgumentException if the message does not fit into a datagram
+     */
+    void sendMessage(Message message);
+
+    /**
+     * Start writing the messages that have been sent so far. See {@link ProtoSocketChannel#flush()}
+     * @throws IllegalStateException if the channel is not started
+     */
+    void flush();
+
+    /**
+     * @return the local address the channel is bound to, or null if the channel is not started
+     */
+    SocketAddress getLocalAddress();
+
+    /**
+     * @return the address the messages are sent to, or null if the channel only receives
+     */
+    SocketAddress getRemoteAddress();
+
+    /**
+     * Add a handler to handle incoming messages
+     * @param handler the message received handler
+     */
+    void addMessageReceivedHandler(MessageReceivedHandler handler);
+
+    /**
+     * Remove an existing handler
+     * @param handler the message received handler
+     */
+    void removeMessageReceivedHandler(MessageReceivedHandler handler);
+
+    /**
+     * Add a handler to handle the gaps in the sequence of the datagrams received
+     * @param handler the sequence gap handler
+     */
+    void addSequenceGapHandler(SequenceGapHandler handler);
+
+    /**
+     * Remove an existing handler
+     * @param handler the sequence gap handler
+     */
+    void removeSequenceGapHandler(SequenceGapHandler handler);
+
+}
@@ -0,0 +1,20 @@
+package com.github.quantranuk.protobuf.nio;
+
+/**
+ * <p>A fixed set of I/O event loops that can be shared by many clients and servers. Each event loop owns a thread to read, a thread to write and
+ * the asynchronous channel group of the client connections pinned to it, so that the number of threads does not grow with the number of connections.</p>
+ * <p>Each connection is pinned to one event loop for its lifetime, so that the order of its messages is preserved.
+ * The group is not shut down when the channels using it are disconnected or stopped, it must be shut down once it is no longer used.</p>
+ */
+public interface ProtoEventLoopGroup {
+
+    /**
+     * @return the number of event loops in the group
+     */
+    int getEventLoopCount();
+
+    /**
+     * Stop the threads of all event loops, and close the client connections still using them
+     */
+    void shutdown();
+}
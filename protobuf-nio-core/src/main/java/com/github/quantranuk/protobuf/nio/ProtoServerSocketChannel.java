@@ -5,11 +5,16 @@ import com.github.quantranuk.protobuf.nio.handlers.DisconnectionHandler;
 import com.github.quantranuk.protobuf.nio.handlers.MessageReceivedHandler;
 import com.github.quantranuk.protobuf.nio.handlers.MessageSendFailureHandler;
 import com.github.quantranuk.protobuf.nio.handlers.MessageSentHandler;
+import com.github.quantranuk.protobuf.nio.handlers.RequestHandler;
+import com.github.quantranuk.protobuf.nio.handlers.StreamMessageReceivedHandler;
+import com.github.quantranuk.protobuf.nio.handlers.WritabilityChangedHandler;
 import com.google.protobuf.Message;
 
 import java.io.IOException;
 import java.net.SocketAddress;
 import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 /**
  * A server to send and receive protobuf messages
@@ -35,12 +40,57 @@ public interface ProtoServerSocketChannel {
      */
     void sendMessage(SocketAddress socketAddress, Message message);
 
+    /**
+     * Send a message to a client and get notified when this particular message has been written to the socket. See {@link ProtoSocketChannel#sendAsync(Message)}
+     * @param socketAddress the socket address of the client
+     * @param message the protobuf message
+     * @return a future which is completed once the message has been written, or completed exceptionally if the message cannot be written or queued
+     */
+    CompletableFuture<Void> sendAsync(SocketAddress socketAddress, Message message);
+
+    /**
+     * Send a message to a client without any completion notification. See {@link ProtoSocketChannel#sendAndForget(Message)}
+     * @param socketAddress the socket address of the client
+     * @param message the protobuf message
+     * @throws IllegalStateException if the socket address is not connected
+     */
+    void sendAndForget(SocketAddress socketAddress, Message message);
+
+    /**
+     * Send a message to a client on a logical stream of the connection. See {@link ProtoSocketChannel#sendMessage(int, Message)}
+     * @param socketAddress the socket address of the client
+     * @param streamId the id of the stream, 0 is the default stream
+     * @param message the protobuf message
+     * @throws IllegalStateException if the socket address is not connected
+     */
+    void sendMessage(SocketAddress socketAddress, int streamId, Message message);
+
     /**
      * <p>Send a message to all connected clients.</p>
      * @param message the protobuf message
      */
     void sendMessageToAll(Message message);
 
+    /**
+     * Start writing the messages that have been sent to a client so far. See {@link ProtoSocketChannel#flush()}
+     * @param socketAddress the socket address of the client
+     * @throws IllegalStateException if the socket address is not connected
+     */
+    void flush(SocketAddress socketAddress);
+
+    /**
+     * Start writing the messages that have been sent to all clients so far. See {@link ProtoSocketChannel#flush()}
+     */
+    void flushAll();
+
+    /**
+     * Check if the connection to a client can accept more outgoing messages without buffering too much. See {@link ProtoSocketChannel#isWritable()}
+     * @param socketAddress the socket address of the client
+     * @return true if the connection is writable
+     * @throws IllegalStateException if the socket address is not connected
+     */
+    boolean isWritable(SocketAddress socketAddress);
+
     /**
      * Get the list of all connected clients
      * @return the list of all connected addresses
@@ -54,6 +104,21 @@ public interface ProtoServerSocketChannel {
      */
     boolean isConnected(SocketAddress socketAddress);
 
+    /**
+     * Register the handler of a type of request sent by the clients with {@link ProtoSocketChannel#call(Message, long, TimeUnit)}, replacing
+     * the previous handler of this type if any. Requests of a type without handler are answered with an error
+     * @param requestType the type of request
+     * @param handler request handler
+     * @param <Q> the type of request
+     */
+    <Q extends Message> void addRequestHandler(Class<Q> requestType, RequestHandler<Q> handler);
+
+    /**
+     * Unregister the handler of a type of request
+     * @param requestType the type of request
+     */
+    void removeRequestHandler(Class<? extends Message> requestType);
+
     /**
      * Register a handler to be called when a new connection is accepted. Handler must be registered before {@link #start()} method is called
      * @param handler connection handler
@@ -72,6 +137,12 @@ public interface ProtoServerSocketChannel {
      */
     void addMessageReceivedHandler(MessageReceivedHandler handler);
 
+    /**
+     * Register a handler to be called when a message is received from a client on a logical stream other than the default one
+     * @param handler handler for incoming stream messages
+     */
+    void addStreamMessageReceivedHandler(StreamMessageReceivedHandler handler);
+
     /**
      * Register a handler to be called after a message has been successfully written to the socket
      * @param handler handler for successfully sent messages
@@ -84,6 +155,12 @@ public interface ProtoServerSocketChannel {
      */
     void addMessageSendFailureHandler(MessageSendFailureHandler handler);
 
+    /**
+     * Register a handler to be called when the writability of a connection changes. Handlers are called from the write thread
+     * @param handler handler for writability changes
+     */
+    void addWritabilityChangedHandler(WritabilityChangedHandler handler);
+
     /**
      * Remove the connection handler
      * @param handler connection handler
@@ -102,6 +179,12 @@ public interface ProtoServerSocketChannel {
      */
     void removeMessageReceivedHandler(MessageReceivedHandler handler);
 
+    /**
+     * Remove the handler for incoming stream messages
+     * @param handler handler
+     */
+    void removeStreamMessageReceivedHandler(StreamMessageReceivedHandler handler);
+
     /**
      * Remove the handler for successfully sent messages
      * @param handler handler
@@ -114,4 +197,10 @@ public interface ProtoServerSocketChannel {
      */
     void removeMessageSendFailureHandler(MessageSendFailureHandler handler);
 
+    /**
+     * Remove the handler for writability changes
+     * @param handler handler
+     */
+    void removeWritabilityChangedHandler(WritabilityChangedHandler handler);
+
 }
\ No newline at end of file
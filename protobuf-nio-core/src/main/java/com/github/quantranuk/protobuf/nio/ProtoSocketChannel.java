@@ -5,8 +5,13 @@ import com.github.quantranuk.protobuf.nio.handlers.DisconnectionHandler;
 import com.github.quantranuk.protobuf.nio.handlers.MessageReceivedHandler;
 import com.github.quantranuk.protobuf.nio.handlers.MessageSendFailureHandler;
 import com.github.quantranuk.protobuf.nio.handlers.MessageSentHandler;
+import com.github.quantranuk.protobuf.nio.handlers.StreamMessageReceivedHandler;
+import com.github.quantranuk.protobuf.nio.handlers.WritabilityChangedHandler;
 import com.google.protobuf.Message;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
 /**
  * A client to send and receive protobuf messages
  */
@@ -17,12 +22,25 @@ public interface ProtoSocketChannel {
      *     Connect to a server. The implementation of this interface should provide the setters of the destination (host/port)
      * </p>
      * <p>
-     *     This is a non-blocking call. To handle when the connection is actually established/failed to be established,
-     *     please use {@link #addConnectionHandler(ConnectionHandler)} and {@link #addDisconnectionHandler(DisconnectionHandler)}
+     *     This call blocks until the connection is established, has failed to be established or has timed out (see the connect timeout).
+     *     A failure is not thrown, please use {@link #addConnectionHandler(ConnectionHandler)} and {@link #addDisconnectionHandler(DisconnectionHandler)}
+     *     to handle it, or {@link #connectAsync()}
      * </p>
      */
     void connect();
 
+    /**
+     * <p>
+     *     Connect to a server without blocking the calling thread, so that many connections can be established in parallel.
+     * </p>
+     * <p>
+     *     The connection handlers are called once the connection is established, before the future completes. If the connection fails to be
+     *     established or times out, the channel is disconnected (and cannot be reused) and the future completes exceptionally
+     * </p>
+     * @return the future completing once the connection is established
+     */
+    CompletableFuture<Void> connectAsync();
+
     /**
      * <p>
      * Disconnect from the host/port. After the connection is disconnected, this object cannot be reused and must be discarded. </p>
@@ -34,11 +52,72 @@ public interface ProtoSocketChannel {
     void disconnect();
 
     /**
-     * Send a protobuf message to the server
+     * Send a protobuf message to the server. The message sent handlers and the message send failure handlers are called once the message
+     * has been written to the socket
      * @param message the protobuf message
      */
     void sendMessage(Message message);
 
+    /**
+     * Send a protobuf message to the server and get notified when this particular message has been written to the socket.
+     * The message sent handlers and the message send failure handlers are also called
+     * @param message the protobuf message
+     * @return a future which is completed (on the write thread) once the message has been written, or completed exceptionally if the message
+     * cannot be written or queued
+     */
+    CompletableFuture<Void> sendAsync(Message message);
+
+    /**
+     * Send a protobuf message to the server without any completion notification. The message sent handlers and the message send failure handlers
+     * are not called for this message, which saves the bookkeeping for publishers that do not need it
+     * @param message the protobuf message
+     */
+    void sendAndForget(Message message);
+
+    /**
+     * <p>Send a protobuf message to the server on a logical stream of the connection. The messages of a stream are received in the order they are sent,
+     * and the streams with messages to write take turns on the connection, so that a stream sending large messages does not hold back the others.
+     * The remote peer receives them with its {@link StreamMessageReceivedHandler}s.</p>
+     * <p>The message sent handlers and the message send failure handlers are called once the message has been written to the socket</p>
+     * @param streamId the id of the stream, 0 is the default stream on which {@link #sendMessage(Message)} sends
+     * @param message the protobuf message
+     */
+    void sendMessage(int streamId, Message message);
+
+    /**
+     * <p>Send a request to the remote peer and wait for its response without blocking. The request carries a correlation id in its frame header,
+     * so that many calls can be in flight on the connection at once and their responses can come back in any order.</p>
+     * <p>The remote peer must have a {@link com.github.quantranuk.protobuf.nio.handlers.RequestHandler} for the type of the request
+     * (see {@link ProtoServerSocketChannel#addRequestHandler(Class, com.github.quantranuk.protobuf.nio.handlers.RequestHandler)}).
+     * Responses are not passed to the message received handlers</p>
+     * @param request the protobuf request
+     * @param timeout the time to wait for the response, 0 to wait until the connection is closed
+     * @param unit the unit of the timeout
+     * @param <R> the type of the response
+     * @return the future of the response, which fails if the remote handler fails, on timeout or if the connection is closed
+     */
+    <R extends Message> CompletableFuture<R> call(Message request, long timeout, TimeUnit unit);
+
+    /**
+     * Start writing the messages that have been sent so far. This is only needed with the {@link WritePolicy#explicitFlush()} policy,
+     * or to cut short the linger time of the {@link WritePolicy#linger(long, java.util.concurrent.TimeUnit, int)} policy
+     */
+    void flush();
+
+    /**
+     * <p>Check if the connection can accept more outgoing messages without buffering too much. The connection becomes unwritable when the bytes of
+     * messages waiting to be written rise above the high watermark, and writable again when they drop below the low watermark.</p>
+     * <p>Messages can still be sent while the connection is unwritable, it is up to the producer to slow down.
+     * Use {@link #addWritabilityChangedHandler(WritabilityChangedHandler)} to be notified when the writability changes</p>
+     * @return true if the connection is writable
+     */
+    boolean isWritable();
+
+    /**
+     * @return the number of bytes of the messages that are waiting to be written to the socket
+     */
+    long getPendingWriteBytes();
+
     /**
      * Register a handler to be called when the connection is established. Handler must be registered before {@link #connect()} is called
      * @param handler connection handler
@@ -57,6 +136,12 @@ public interface ProtoSocketChannel {
      */
     void addMessageReceivedHandler(MessageReceivedHandler handler);
 
+    /**
+     * Register a handler to be called when a message is received from the server on a logical stream other than the default one
+     * @param handler handler for incoming stream messages
+     */
+    void addStreamMessageReceivedHandler(StreamMessageReceivedHandler handler);
+
     /**
      * Register a handler to be called after a message has been successfully written to the socket
      * @param handler handler for successfully sent messages
@@ -69,6 +154,12 @@ public interface ProtoSocketChannel {
      */
     void addMessageSendFailureHandler(MessageSendFailureHandler handler);
 
+    /**
+     * Register a handler to be called when the writability of a connection changes. Handlers are called from the write thread
+     * @param handler handler for writability changes
+     */
+    void addWritabilityChangedHandler(WritabilityChangedHandler handler);
+
     /**
      * Remove the connection handler
      * @param handler connection handler
@@ -87,6 +178,12 @@ public interface ProtoSocketChannel {
      */
     void removeMessageReceivedHandler(MessageReceivedHandler handler);
 
+    /**
+     * Remove the handler for incoming stream messages
+     * @param handler handler
+     */
+    void removeStreamMessageReceivedHandler(StreamMessageReceivedHandler handler);
+
     /**
      * Remove the handler for successfully sent messages
      * @param handler handler
@@ -99,4 +196,10 @@ public interface ProtoSocketChannel {
      */
     void removeMessageSendFailureHandler(MessageSendFailureHandler handler);
 
+    /**
+     * Remove the handler for writability changes
+     * @param handler handler
+     */
+    void removeWritabilityChangedHandler(WritabilityChangedHandler handler);
+
 }
\ No newline at end of file
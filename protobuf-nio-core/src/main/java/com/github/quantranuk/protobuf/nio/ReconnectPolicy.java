@@ -0,0 +1,80 @@
+package com.github.quantranuk.protobuf.nio;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>The policy deciding whether a client reconnects once its connection is lost.</p>
+ * <ul>
+ *     <li>{@link #none()}: the client is disconnected for good and must be discarded (the default)</li>
+ *     <li>{@link #exponentialBackoff(long, long, TimeUnit, int)}: the client keeps reconnecting, waiting a jittered delay that doubles after
+ *     each failed attempt, and replays the messages it could not send once it is connected again</li>
+ * </ul>
+ */
+public final class ReconnectPolicy {
+
+    private static final ReconnectPolicy NONE = new ReconnectPolicy(0, 0, 0);
+
+    private final long initialBackoffNanos;
+    private final long maxBackoffNanos;
+    private final int maxPendingMessages;
+
+    private ReconnectPolicy(long initialBackoffNanos, long maxBackoffNanos, int maxPendingMessages) {
+        this.initialBackoffNanos = initialBackoffNanos;
+        this.maxBackoffNanos = maxBackoffNanos;
+        this.maxPendingMessages = maxPendingMessages;
+    }
+
+    /**
+     * @return the policy to never reconnect
+     */
+    public static ReconnectPolicy none() {
+        return NONE;
+    }
+
+    /**
+     * The policy to reconnect after a delay starting at the initial backoff and doubling after each failed attempt, up to the max backoff.
+     * Each delay is picked at random between half and all of it, so that many clients of a restarted server do not all come back at once
+     * @param initialBackoff the delay before the first attempt
+     * @param maxBackoff the maximum delay between two attempts
+     * @param unit the unit of the backoffs
+     * @param maxPendingMessages the maximum number of messages kept while the client is disconnected, sending more fails
+     * @return the policy
+     */
+    public static ReconnectPolicy exponentialBackoff(long initialBackoff, long maxBackoff, TimeUnit unit, int maxPendingMessages) {
+        if (initialBackoff <= 0 || maxBackoff < initialBackoff || maxPendingMessages <= 0) {
+            throw new IllegalArgumentException("Invalid backoff " + initialBackoff + "-" + maxBackoff + " " + unit + " or max pending messages " + maxPendingMessages);
+        }
+        return new ReconnectPolicy(unit.toNanos(initialBackoff), unit.toNanos(maxBackoff), maxPendingMessages);
+    }
+
+    public boolean isEnabled() {
+        return this != NONE;
+    }
+
+    public long getInitialBackoffNanos() {
+        return initialBackoffNanos;
+    }
+
+    public long getMaxBackoffNanos() {
+        return maxBackoffNanos;
+    }
+
+    public int getMaxPendingMessages() {
+        return maxPendingMessages;
+    }
+
+    /**
+     * @param attempt the number of attempts that have already failed since the connection was lost
+     * @return the jittered delay before the next attempt
+     */
+    public long getBackoffNanos(int attempt) {
+        long backoffNanos = attempt >= Long.numberOfLeadingZeros(initialBackoffNanos) - 1 ? maxBackoffNanos : Long.min(maxBackoffNanos, initialBackoffNanos << attempt);
+        return backoffNanos / 2 + ThreadLocalRandom.current().nextLong(backoffNanos / 2 + 1);
+    }
+
+    @Override
+    public String toString() {
+        return isEnabled() ? "EXPONENTIAL_BACKOFF(" + initialBackoffNanos + "-" + maxBackoffNanos + "ns, " + maxPendingMessages + " messages)" : "NONE";
+    }
+}
@@ -0,0 +1,37 @@
+package com.github.quantranuk.protobuf.nio;
+
+/**
+ * The I/O implementation behind {@link ProtoSocketChannel} and {@link ProtoServerSocketChannel}
+ */
+public enum Transport {
+
+    /**
+     * Asynchronous socket channels, completed on a read thread and a write thread per event loop. This is the default transport
+     */
+    ASYNC,
+
+    /**
+     * Non-blocking socket channels polled by a selector. Each event loop is a single thread that reads, writes and runs the handlers of its connections,
+     * and waits for I/O according to its {@link WaitStrategy}. Read and write timeouts are not supported
+     */
+    SELECTOR,
+
+    /**
+     * Blocking socket channels, with a virtual thread reading each connection and running its handlers, so that a handler can block without
+     * stalling the other connections. Suited to many mostly idle connections. Event loops, read and write timeouts are not supported
+     */
+    VIRTUAL_THREAD,
+
+    /**
+     * Ring buffers in memory mapped files, for processes of the same host, the path of the channel being the directory of the server.
+     * Each connection is polled by a thread of its own, which waits according to its {@link WaitStrategy}. Event loops, read and write timeouts
+     * are not supported
+     */
+    SHARED_MEMORY,
+
+    /**
+     * Queues between channels of the same JVM, without any socket. The messages are handed over as they are, or serialized into frames.
+     * Selected by {@link ProtoChannelFactory#newInProcessServer(String)} and {@link ProtoChannelFactory#newInProcessClient(String)}
+     */
+    IN_PROCESS
+}
@@ -0,0 +1,30 @@
+package com.github.quantranuk.protobuf.nio;
+
+/**
+ * How the thread of a {@link Transport#SELECTOR} event loop (or of a {@link Transport#SHARED_MEMORY} connection) waits when there is no I/O ready,
+ * trading CPU usage for latency
+ */
+public enum WaitStrategy {
+
+    /**
+     * Poll the selector in a tight loop. The lowest latency, but the thread keeps a core fully busy
+     */
+    BUSY_SPIN,
+
+    /**
+     * Poll the selector and yield the thread between polls. Close to busy-spin latency, while letting other threads run on the same core
+     */
+    YIELD,
+
+    /**
+     * Poll the selector, then back off progressively (spin, yield, then park up to 1 millisecond) while there is no I/O ready.
+     * Low latency under load, with little CPU usage when idle
+     */
+    BACK_OFF,
+
+    /**
+     * Block in the selector until I/O is ready. The lowest CPU usage, each wake-up costs a system call. This is the default wait strategy.
+     * A shared memory connection has nothing to block on, and backs off instead
+     */
+    BLOCKING
+}
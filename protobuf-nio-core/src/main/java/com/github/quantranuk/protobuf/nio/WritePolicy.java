@@ -0,0 +1,83 @@
+package com.github.quantranuk.protobuf.nio;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>The policy deciding when the messages queued on a connection are written to the socket.</p>
+ * <ul>
+ *     <li>{@link #immediate()}: the writer starts writing as soon as a message is sent (the default)</li>
+ *     <li>{@link #explicitFlush()}: messages are only written when {@link ProtoSocketChannel#flush()} is called, except the responses to remote calls
+ *     which are written as soon as they are ready</li>
+ *     <li>{@link #linger(long, TimeUnit, int)}: the writer waits up to the linger time after the first message for more messages to come,
+ *     unless the queued bytes reach the linger bytes first</li>
+ * </ul>
+ * <p>Once the writer has started, it keeps writing until the queue is empty, with as many messages per write as fit into the write buffer.
+ * Holding back the first message therefore lets a burst of small messages go out in a few large writes instead of many small ones.</p>
+ */
+public final class WritePolicy {
+
+    public enum Mode {
+        IMMEDIATE,
+        EXPLICIT_FLUSH,
+        LINGER
+    }
+
+    private static final WritePolicy IMMEDIATE = new WritePolicy(Mode.IMMEDIATE, 0, 0);
+    private static final WritePolicy EXPLICIT_FLUSH = new WritePolicy(Mode.EXPLICIT_FLUSH, 0, 0);
+
+    private final Mode mode;
+    private final long lingerNanos;
+    private final int lingerBytes;
+
+    private WritePolicy(Mode mode, long lingerNanos, int lingerBytes) {
+        this.mode = mode;
+        this.lingerNanos = lingerNanos;
+        this.lingerBytes = lingerBytes;
+    }
+
+    /**
+     * @return the policy to write messages as soon as they are sent
+     */
+    public static WritePolicy immediate() {
+        return IMMEDIATE;
+    }
+
+    /**
+     * @return the policy to only write messages when the channel is flushed
+     */
+    public static WritePolicy explicitFlush() {
+        return EXPLICIT_FLUSH;
+    }
+
+    /**
+     * The policy to hold back messages until either the linger time has elapsed since the first of them was sent, or their size reaches the linger bytes.
+     * The channel can still be flushed earlier
+     * @param lingerTime the maximum time to wait for more messages
+     * @param unit the unit of the linger time
+     * @param lingerBytes the number of queued bytes at which the writer starts without waiting any longer
+     * @return the policy
+     */
+    public static WritePolicy linger(long lingerTime, TimeUnit unit, int lingerBytes) {
+        if (lingerTime <= 0 || lingerBytes <= 0) {
+            throw new IllegalArgumentException("Invalid linger time " + lingerTime + " " + unit + " or linger bytes " + lingerBytes);
+        }
+        return new WritePolicy(Mode.LINGER, unit.toNanos(lingerTime), lingerBytes);
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public long getLingerNanos() {
+        return lingerNanos;
+    }
+
+    public int getLingerBytes() {
+        return lingerBytes;
+    }
+
+    @Override
+    public String toString() {
+        return mode == Mode.LINGER ? mode + "(" + lingerNanos + "ns, " + lingerBytes + " bytes)" : mode.toString();
+    }
+}
@@ -0,0 +1,23 @@
+package com.github.quantranuk.protobuf.nio.handlers;
+
+import com.google.protobuf.Message;
+
+import java.net.SocketAddress;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The handler to handle the requests of a type sent by remote peers with {@link com.github.quantranuk.protobuf.nio.ProtoSocketChannel#call}
+ * @param <Q> the type of request
+ */
+@FunctionalInterface
+public interface RequestHandler<Q extends Message> {
+
+    /**
+     * This method is called on the read thread of the connection when a request has been received. The response can be completed later from any thread,
+     * without holding up the other requests of the connection
+     * @param socketAddress address of the remote host
+     * @param request the protobuf request
+     * @return the future of the response. If the future fails (or this method throws), the error is sent back to the caller instead
+     */
+    CompletableFuture<? extends Message> onRequest(SocketAddress socketAddress, Q request);
+}
@@ -0,0 +1,19 @@
+package com.github.quantranuk.protobuf.nio.handlers;
+
+import java.net.SocketAddress;
+
+/**
+ * The handler to handle gaps in the sequence of the datagrams received from a sender
+ */
+@FunctionalInterface
+public interface SequenceGapHandler {
+
+    /**
+     * This method is called when a datagram is received ahead of its sequence. The datagrams in between have been lost, or are late and will be dropped
+     * when they arrive. A multicast subscriber only calls it once the missing datagrams cannot be retransmitted anymore
+     * @param socketAddress address of the remote host that sent the datagrams
+     * @param expectedSequence the sequence of the first missing datagram
+     * @param receivedSequence the sequence of the datagram that has been received, the missing datagrams are the ones before it
+     */
+    void onSequenceGap(SocketAddress socketAddress, long expectedSequence, long receivedSequence);
+}
@@ -0,0 +1,20 @@
+package com.github.quantranuk.protobuf.nio.handlers;
+
+import com.google.protobuf.Message;
+
+import java.net.SocketAddress;
+
+/**
+ * The handler to handle incoming messages sent on a logical stream of the connection
+ */
+@FunctionalInterface
+public interface StreamMessageReceivedHandler {
+
+    /**
+     * Handle an incoming message
+     * @param socketAddress address of the remote host that sent the message
+     * @param streamId the id of the stream the message has been sent on
+     * @param message the protobuf message
+     */
+    void onMessageReceived(SocketAddress socketAddress, int streamId, Message message);
+}
@@ -0,0 +1,18 @@
+package com.github.quantranuk.protobuf.nio.handlers;
+
+import java.net.SocketAddress;
+
+/**
+ * The handler to handle changes of the writability of a connection
+ */
+@FunctionalInterface
+public interface WritabilityChangedHandler {
+
+    /**
+     * This method is called when the bytes of outgoing messages waiting to be written to the socket rise above the high watermark
+     * (the connection becomes unwritable), or drop back below the low watermark (the connection becomes writable again)
+     * @param socketAddress address of the remote host
+     * @param isWritable true if the connection is writable
+     */
+    void onWritabilityChanged(SocketAddress socketAddress, boolean isWritable);
+}
@@ -0,0 +1,26 @@
+package com.github.quantranuk.protobuf.nio.impl;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An I/O event loop shared by all the connections pinned to it. The event loop keeps count of its connections for the
+ * {@link com.github.quantranuk.protobuf.nio.EventLoopAssignment#LEAST_LOADED} assignment
+ */
+abstract class AbstractEventLoop {
+
+    private final AtomicInteger channelCount = new AtomicInteger();
+
+    int getChannelCount() {
+        return channelCount.get();
+    }
+
+    void register() {
+        channelCount.incrementAndGet();
+    }
+
+    void deregister() {
+        channelCount.decrementAndGet();
+    }
+
+    abstract void shutdown();
+}
@@ -0,0 +1,58 @@
+package com.github.quantranuk.protobuf.nio.impl;
+
+import com.github.quantranuk.protobuf.nio.EventLoopAssignment;
+import com.github.quantranuk.protobuf.nio.ProtoEventLoopGroup;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A fixed set of I/O event loops. Each new connection is pinned to one of them according to the {@link EventLoopAssignment}
+ */
+abstract class AbstractEventLoopGroup<L extends AbstractEventLoop> implements ProtoEventLoopGroup {
+
+    private final List<L> eventLoops;
+    private final EventLoopAssignment assignment;
+    private final AtomicInteger nextIndex = new AtomicInteger();
+
+    AbstractEventLoopGroup(List<L> eventLoops, EventLoopAssignment assignment) {
+        this.eventLoops = eventLoops;
+        this.assignment = assignment;
+    }
+
+    static void validateEventLoopCount(int eventLoopCount) {
+        if (eventLoopCount <= 0) {
+            throw new IllegalArgumentException("Invalid number of event loops: " + eventLoopCount);
+        }
+    }
+
+    /**
+     * Pick the event loop of a new connection. The connection must be deregistered from the event loop once it is disconnected
+     * @return the event loop
+     */
+    L register() {
+        L eventLoop = assignment == EventLoopAssignment.LEAST_LOADED ? getLeastLoaded() : eventLoops.get(Math.floorMod(nextIndex.getAndIncrement(), eventLoops.size()));
+        eventLoop.register();
+        return eventLoop;
+    }
+
+    private L getLeastLoaded() {
+        L leastLoaded = eventLoops.get(0);
+        for (int i = 1; i < eventLoops.size(); i++) {
+            if (eventLoops.get(i).getChannelCount() < leastLoaded.getChannelCount()) {
+                leastLoaded = eventLoops.get(i);
+            }
+        }
+        return leastLoaded;
+    }
+
+    @Override
+    public int getEventLoopCount() {
+        return eventLoops.size();
+    }
+
+    @Override
+    public void shutdown() {
+        eventLoops.forEach(AbstractEventLoop::shutdown);
+    }
+}
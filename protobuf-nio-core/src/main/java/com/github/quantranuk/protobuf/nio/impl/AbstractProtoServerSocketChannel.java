@@ -0,0 +1,399 @@
+package com.github.quantranuk.protobuf.nio.impl;
+
+import com.github.quantranuk.protobuf.nio.EventLoopAssignment;
+import com.github.quantranuk.protobuf.nio.ProtoServerSocketChannel;
+import com.github.quantranuk.protobuf.nio.ProtoSocketChannel;
+import com.github.quantranuk.protobuf.nio.WritePolicy;
+import com.github.quantranuk.protobuf.nio.handlers.ConnectionHandler;
+import com.github.quantranuk.protobuf.nio.handlers.DisconnectionHandler;
+import com.github.quantranuk.protobuf.nio.handlers.MessageReceivedHandler;
+import com.github.quantranuk.protobuf.nio.handlers.MessageSendFailureHandler;
+import com.github.quantranuk.protobuf.nio.handlers.MessageSentHandler;
+import com.github.quantranuk.protobuf.nio.handlers.RequestHandler;
+import com.github.quantranuk.protobuf.nio.handlers.StreamMessageReceivedHandler;
+import com.github.quantranuk.protobuf.nio.handlers.WritabilityChangedHandler;
+import com.github.quantranuk.protobuf.nio.serializer.MessageTypeRegistry;
+import com.github.quantranuk.protobuf.nio.utils.DefaultSetting;
+import com.google.protobuf.Message;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The part of a {@link ProtoServerSocketChannel} that does not depend on the transport: the handlers, the common settings and the accepted connections
+ */
+public abstract class AbstractProtoServerSocketChannel implements ProtoServerSocketChannel {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AbstractProtoServerSocketChannel.class);
+
+    protected final SocketAddress serverSocketAddress;
+    protected final int serverPort;
+    // The port, or the path of the Unix domain socket, to name the threads of the server
+    protected final String serverName;
+    protected final List<ConnectionHandler> connectionHandlers = new CopyOnWriteArrayList<>();
+    protected final List<DisconnectionHandler> disconnectionHandlers = new CopyOnWriteArrayList<>();
+    protected final List<MessageReceivedHandler> messageReceivedHandlers = new CopyOnWriteArrayList<>();
+    protected final List<StreamMessageReceivedHandler> streamMessageReceivedHandlers = new CopyOnWriteArrayList<>();
+    protected final List<MessageSentHandler> messageSentHandlers = new CopyOnWriteArrayList<>();
+    protected final List<MessageSendFailureHandler> messageSendFailureHandlers = new CopyOnWriteArrayList<>();
+    protected final List<WritabilityChangedHandler> writabilityChangedHandlers = new CopyOnWriteArrayList<>();
+    protected final Map<SocketAddress, ProtoSocketChannel> socketChannels = new ConcurrentHashMap<>();
+    protected final Map<Class<?>, RequestHandler<?>> requestHandlers = new ConcurrentHashMap<>();
+    private final AtomicLong nextUnixDomainConnectionNumber = new AtomicLong();
+
+    protected int readBufferSize = DefaultSetting.DEFAULT_SERVER_BUFFER_SIZE;
+    protected int writeBufferSize = DefaultSetting.DEFAULT_SERVER_BUFFER_SIZE;
+    protected long writeLowWatermark = DefaultSetting.DEFAULT_WRITE_LOW_WATERMARK;
+    protected long writeHighWatermark = DefaultSetting.DEFAULT_WRITE_HIGH_WATERMARK;
+    protected WritePolicy writePolicy = WritePolicy.immediate();
+    protected MessageTypeRegistry messageTypeRegistry;
+    protected boolean isDirectReadBuffer = false;
+    protected boolean isGatheringWrite = false;
+    protected int flowControlWindow = DefaultSetting.DEFAULT_FLOW_CONTROL_WINDOW;
+    protected Map<Integer, Integer> streamWeights = Collections.emptyMap();
+    protected int eventLoopCount = DefaultSetting.DEFAULT_SERVER_EVENT_LOOP_COUNT;
+    protected EventLoopAssignment eventLoopAssignment = EventLoopAssignment.ROUND_ROBIN;
+
+    protected AbstractProtoServerSocketChannel(int port) {
+        this.serverPort = port;
+        this.serverSocketAddress = new InetSocketAddress(port);
+        this.serverName = String.valueOf(port);
+    }
+
+    /**
+     * @param path the path of the Unix domain socket to listen to
+     */
+    protected AbstractProtoServerSocketChannel(Path path) {
+        this.serverPort = 0;
+        this.serverSocketAddress = UnixDomainSocketAddress.of(path);
+        this.serverName = path.toString();
+    }
+
+    /**
+     * @param serverSocketAddress the address of a server that does not listen to a socket
+     * @param serverName the name of the threads of the server
+     */
+    protected AbstractProtoServerSocketChannel(SocketAddress serverSocketAddress, String serverName) {
+        this.serverPort = 0;
+        this.serverSocketAddress = serverSocketAddress;
+        this.serverName = serverName;
+    }
+
+    protected boolean isUnixDomainSocket() {
+        return serverSocketAddress instanceof UnixDomainSocketAddress;
+    }
+
+    protected ServerSocketChannel openServerSocketChannel() throws IOException {
+        return isUnixDomainSocket() ? ServerSocketChannel.open(StandardProtocolFamily.UNIX) : ServerSocketChannel.open();
+    }
+
+    /**
+     * Prepare an accepted socket channel for low latency, if it is a TCP connection
+     */
+    protected void configureAcceptedSocketChannel(SocketChannel socketChannel) throws IOException {
+        if (!isUnixDomainSocket()) {
+            socketChannel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        }
+    }
+
+    /**
+     * @return the address of the client of an accepted connection. The clients of a Unix domain socket are unnamed, so each of them is given its own address
+     */
+    protected SocketAddress getRemoteAddress(SocketChannel socketChannel) throws IOException {
+        if (isUnixDomainSocket()) {
+            return new UnixDomainPeerAddress((UnixDomainSocketAddress) serverSocketAddress, nextUnixDomainConnectionNumber.incrementAndGet());
+        }
+        return socketChannel.getRemoteAddress();
+    }
+
+    /**
+     * Delete the file of the Unix domain socket before the server socket channel is closed, so that the path can be bound again.
+     * The file is left alone if this server has not bound it
+     */
+    protected void deleteUnixDomainSocketFile(ServerSocketChannel serverSocketChannel) {
+        if (!isUnixDomainSocket()) {
+            return;
+        }
+        Path path = ((UnixDomainSocketAddress) serverSocketAddress).getPath();
+        try {
+            if (serverSocketChannel.isOpen() && serverSocketChannel.getLocalAddress() != null) {
+                Files.deleteIfExists(path);
+            }
+        } catch (IOException e) {
+            LOGGER.error("Unable to delete Unix domain socket file " + path, e);
+        }
+    }
+
+    /**
+     * Open the resources of the server, once all settings have been applied
+     */
+    public abstract void init();
+
+    /**
+     * Apply the settings of this server to an accepted connection, and forward its events to the handlers of this server.
+     * The connection is deregistered from its event loop (if the transport has any) once it is disconnected
+     */
+    protected void configureChannel(AbstractProtoSocketChannel protobufSocketChannel, AbstractEventLoop eventLoop) {
+        AtomicBoolean isDeregistered = new AtomicBoolean();
+        protobufSocketChannel.setReadBufferSize(readBufferSize);
+        protobufSocketChannel.setWriteBufferSize(writeBufferSize);
+        protobufSocketChannel.setDirectReadBuffer(isDirectReadBuffer);
+        protobufSocketChannel.setGatheringWrite(isGatheringWrite);
+        protobufSocketChannel.setWriteWatermarks(writeLowWatermark, writeHighWatermark);
+        protobufSocketChannel.setWritePolicy(writePolicy);
+        protobufSocketChannel.setMessageTypeRegistry(messageTypeRegistry);
+        protobufSocketChannel.setFlowControlWindow(flowControlWindow);
+        protobufSocketChannel.setStreamWeights(streamWeights);
+        protobufSocketChannel.setRequestHandlers(requestHandlers);
+        protobufSocketChannel.addDisconnectionHandler((socketAddress) -> {
+            LOGGER.info("Disconnected from " + socketAddress);
+            socketChannels.remove(socketAddress);
+            if (eventLoop != null && !isDeregistered.getAndSet(true)) {
+                eventLoop.deregister();
+            }
+            disconnectionHandlers.forEach(handler -> handler.onDisconnected(socketAddress));
+        });
+        protobufSocketChannel.addMessageReceivedHandler((socketAddress, message) -> messageReceivedHandlers.forEach(handler -> handler.onMessageReceived(socketAddress, message)));
+        protobufSocketChannel.addStreamMessageReceivedHandler((socketAddress, streamId, message) ->
+                streamMessageReceivedHandlers.forEach(handler -> handler.onMessageReceived(socketAddress, streamId, message)));
+        protobufSocketChannel.addMessageSentHandler((socketAddress, message) -> messageSentHandlers.forEach(handler -> handler.onMessageSent(socketAddress, message)));
+        protobufSocketChannel.addMessageSendFailureHandler((socketAddress, message, t) -> messageSendFailureHandlers.forEach(handler -> handler.onMessageSendFailure(socketAddress, message, t)));
+        protobufSocketChannel.addWritabilityChangedHandler((socketAddress, isWritable) -> writabilityChangedHandlers.forEach(handler -> handler.onWritabilityChanged(socketAddress, isWritable)));
+    }
+
+    /**
+     * Register an accepted connection once it has been initialized, and start reading from it
+     */
+    protected void onAccepted(SocketAddress remoteAddress, AbstractProtoSocketChannel protobufSocketChannel) {
+        LOGGER.info("Accepted connection from " + remoteAddress);
+        connectionHandlers.forEach(handler -> handler.onConnected(remoteAddress));
+        socketChannels.put(remoteAddress, protobufSocketChannel);
+        protobufSocketChannel.startReading();
+        protobufSocketChannel.announceFlowControlWindow();
+    }
+
+    protected void disconnectAll() {
+        socketChannels.values().forEach(ProtoSocketChannel::disconnect);
+        socketChannels.clear();
+    }
+
+    @Override
+    public void sendMessage(SocketAddress socketAddress, Message message) {
+        ProtoSocketChannel protoSocketChannel = socketChannels.get(socketAddress);
+        protoSocketChannel.sendMessage(message);
+    }
+
+    @Override
+    public CompletableFuture<Void> sendAsync(SocketAddress socketAddress, Message message) {
+        ProtoSocketChannel protoSocketChannel = socketChannels.get(socketAddress);
+        if (protoSocketChannel == null) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Socket address " + socketAddress + " is not connected"));
+        }
+        return protoSocketChannel.sendAsync(message);
+    }
+
+    @Override
+    public void sendAndForget(SocketAddress socketAddress, Message message) {
+        getConnectedChannel(socketAddress).sendAndForget(message);
+    }
+
+    @Override
+    public void sendMessage(SocketAddress socketAddress, int streamId, Message message) {
+        getConnectedChannel(socketAddress).sendMessage(streamId, message);
+    }
+
+    @Override
+    public void sendMessageToAll(Message message) {
+        socketChannels.values().forEach(channel -> channel.sendMessage(message));
+    }
+
+    @Override
+    public void flush(SocketAddress socketAddress) {
+        getConnectedChannel(socketAddress).flush();
+    }
+
+    @Override
+    public void flushAll() {
+        socketChannels.values().forEach(ProtoSocketChannel::flush);
+    }
+
+    @Override
+    public boolean isWritable(SocketAddress socketAddress) {
+        return getConnectedChannel(socketAddress).isWritable();
+    }
+
+    private ProtoSocketChannel getConnectedChannel(SocketAddress socketAddress) {
+        ProtoSocketChannel protoSocketChannel = socketChannels.get(socketAddress);
+        if (protoSocketChannel == null) {
+            throw new IllegalStateException("Socket address " + socketAddress + " is not connected");
+        }
+        return protoSocketChannel;
+    }
+
+    @Override
+    public Collection<SocketAddress> getConnectedAddresses() {
+        return Collections.unmodifiableCollection(socketChannels.keySet());
+    }
+
+    @Override
+    public boolean isConnected(SocketAddress socketAddress) {
+        return socketChannels.containsKey(socketAddress);
+    }
+
+    @Override
+    public <Q extends Message> void addRequestHandler(Class<Q> requestType, RequestHandler<Q> handler) {
+        requestHandlers.put(requestType, handler);
+    }
+
+    @Override
+    public void removeRequestHandler(Class<? extends Message> requestType) {
+        requestHandlers.remove(requestType);
+    }
+
+    @Override
+    public void addConnectionHandler(ConnectionHandler handler) {
+        connectionHandlers.add(handler);
+    }
+
+    @Override
+    public void removeConnectionHandler(ConnectionHandler handler) {
+        connectionHandlers.remove(handler);
+    }
+
+    @Override
+    public void addDisconnectionHandler(DisconnectionHandler handler) {
+        disconnectionHandlers.add(handler);
+    }
+
+    @Override
+    public void removeDisconnectionHandler(DisconnectionHandler handler) {
+        disconnectionHandlers.remove(handler);
+    }
+
+    @Override
+    public void addMessageReceivedHandler(MessageReceivedHandler handler) {
+        messageReceivedHandlers.add(handler);
+    }
+
+    @Override
+    public void removeMessageReceivedHandler(MessageReceivedHandler handler) {
+        messageReceivedHandlers.remove(handler);
+    }
+
+    @Override
+    public void addStreamMessageReceivedHandler(StreamMessageReceivedHandler handler) {
+        streamMessageReceivedHandlers.add(handler);
+    }
+
+    @Override
+    public void removeStreamMessageReceivedHandler(StreamMessageReceivedHandler handler) {
+        streamMessageReceivedHandlers.remove(handler);
+    }
+
+    @Override
+    public void addMessageSentHandler(MessageSentHandler handler) {
+        messageSentHandlers.add(handler);
+    }
+
+    @Override
+    public void removeMessageSentHandler(MessageSentHandler handler) {
+        messageSentHandlers.remove(handler);
+    }
+
+    @Override
+    public void addMessageSendFailureHandler(MessageSendFailureHandler handler) {
+        messageSendFailureHandlers.add(handler);
+    }
+
+    @Override
+    public void removeMessageSendFailureHandler(MessageSendFailureHandler handler) {
+        messageSendFailureHandlers.remove(handler);
+    }
+
+    @Override
+    public void addWritabilityChangedHandler(WritabilityChangedHandler handler) {
+        writabilityChangedHandlers.add(handler);
+    }
+
+    @Override
+    public void removeWritabilityChangedHandler(WritabilityChangedHandler handler) {
+        writabilityChangedHandlers.remove(handler);
+    }
+
+    public void setReadBufferSize(int readBufferSize) {
+        this.readBufferSize = readBufferSize;
+    }
+
+    public void setWriteBufferSize(int writeBufferSize) {
+        this.writeBufferSize = writeBufferSize;
+    }
+
+    public void setDirectReadBuffer(boolean isDirectReadBuffer) {
+        this.isDirectReadBuffer = isDirectReadBuffer;
+    }
+
+    public void setGatheringWrite(boolean isGatheringWrite) {
+        this.isGatheringWrite = isGatheringWrite;
+    }
+
+    public void setWriteWatermarks(long writeLowWatermark, long writeHighWatermark) {
+        if (writeLowWatermark < 0 || writeLowWatermark > writeHighWatermark) {
+            throw new IllegalArgumentException("Invalid write watermarks: low=" + writeLowWatermark + " high=" + writeHighWatermark);
+        }
+        this.writeLowWatermark = writeLowWatermark;
+        this.writeHighWatermark = writeHighWatermark;
+    }
+
+    public void setWritePolicy(WritePolicy writePolicy) {
+        this.writePolicy = writePolicy;
+    }
+
+    public void setEventLoopCount(int eventLoopCount) {
+        this.eventLoopCount = eventLoopCount;
+    }
+
+    public void setEventLoopAssignment(EventLoopAssignment eventLoopAssignment) {
+        this.eventLoopAssignment = eventLoopAssignment;
+    }
+
+    /**
+     * @param flowControlWindow the number of bytes each client can send before it has to wait for the server to consume them, 0 to not use flow control
+     */
+    public void setFlowControlWindow(int flowControlWindow) {
+        if (flowControlWindow < 0) {
+            throw new IllegalArgumentException("Invalid flow control window: " + flowControlWindow);
+        }
+        this.flowControlWindow = flowControlWindow;
+    }
+
+    /**
+     * @param streamWeights the weights of the logical streams that get more than their fair share of the connection to each client, by stream id
+     */
+    public void setStreamWeights(Map<Integer, Integer> streamWeights) {
+        this.streamWeights = streamWeights;
+    }
+
+    public void setMessageTypeRegistry(MessageTypeRegistry messageTypeRegistry) {
+        this.messageTypeRegistry = messageTypeRegistry;
+    }
+
+}
@@ -0,0 +1,584 @@
+package com.github.quantranuk.protobuf.nio.impl;
+
+import com.github.quantranuk.protobuf.nio.ProtoSocketChannel;
+import com.github.quantranuk.protobuf.nio.WritePolicy;
+import com.github.quantranuk.protobuf.nio.handlers.ConnectionHandler;
+import com.github.quantranuk.protobuf.nio.handlers.DisconnectionHandler;
+import com.github.quantranuk.protobuf.nio.handlers.MessageReceivedHandler;
+import com.github.quantranuk.protobuf.nio.handlers.MessageSendFailureHandler;
+import com.github.quantranuk.protobuf.nio.handlers.MessageSentHandler;
+import com.github.quantranuk.protobuf.nio.handlers.RequestHandler;
+import com.github.quantranuk.protobuf.nio.handlers.StreamMessageReceivedHandler;
+import com.github.quantranuk.protobuf.nio.handlers.WritabilityChangedHandler;
+import com.github.quantranuk.protobuf.nio.serializer.FlowControlListener;
+import com.github.quantranuk.protobuf.nio.serializer.MessageTypeRegistry;
+import com.github.quantranuk.protobuf.nio.serializer.ProtobufFrameDecoder;
+import com.github.quantranuk.protobuf.nio.serializer.ProtobufSerializer;
+import com.github.quantranuk.protobuf.nio.utils.DefaultSetting;
+import com.google.protobuf.Message;
+import com.google.protobuf.StringValue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.CompletionHandler;
+import java.nio.channels.SocketChannel;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The part of a {@link ProtoSocketChannel} that does not depend on the transport: the handlers, the common settings and the outbound message queue
+ */
+public abstract class AbstractProtoSocketChannel implements ProtoSocketChannel {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AbstractProtoSocketChannel.class);
+
+    protected final List<ConnectionHandler> connectionHandlers = new CopyOnWriteArrayList<>();
+    protected final List<DisconnectionHandler> disconnectionHandlers = new CopyOnWriteArrayList<>();
+    protected final List<MessageReceivedHandler> messageReceivedHandlers = new CopyOnWriteArrayList<>();
+    protected final List<StreamMessageReceivedHandler> streamMessageReceivedHandlers = new CopyOnWriteArrayList<>();
+    protected final List<MessageSentHandler> messageSentHandlers = new CopyOnWriteArrayList<>();
+    protected final List<MessageSendFailureHandler> messageSendFailureHandlers = new CopyOnWriteArrayList<>();
+    protected final List<WritabilityChangedHandler> writabilityChangedHandlers = new CopyOnWriteArrayList<>();
+    protected final SocketAddress socketAddress;
+
+    protected int readBufferSize = DefaultSetting.DEFAULT_CLIENT_BUFFER_SIZE;
+    protected int writeBufferSize = DefaultSetting.DEFAULT_CLIENT_BUFFER_SIZE;
+    protected int maxMessageWriteQueueSize = DefaultSetting.MAX_WRITE_MESSAGE_QUEUE_SIZE;
+    protected long writeLowWatermark = DefaultSetting.DEFAULT_WRITE_LOW_WATERMARK;
+    protected long writeHighWatermark = DefaultSetting.DEFAULT_WRITE_HIGH_WATERMARK;
+    protected WritePolicy writePolicy = WritePolicy.immediate();
+    protected MessageTypeRegistry messageTypeRegistry;
+    protected boolean isDirectReadBuffer = false;
+    protected boolean isGatheringWrite = false;
+    protected long connectTimeoutMillis = DefaultSetting.DEFAULT_CONNECT_TIMEOUT_MILLIS;
+    protected int flowControlWindow = DefaultSetting.DEFAULT_FLOW_CONTROL_WINDOW;
+    protected Map<Integer, Integer> streamWeights = Collections.emptyMap();
+    protected OutboundMessageQueue outboundMessageQueue;
+    private final AtomicBoolean isConnectCompleted = new AtomicBoolean();
+    private final Map<Long, CompletableFuture<Message>> pendingCalls = new ConcurrentHashMap<>();
+    private final AtomicLong nextCorrelationId = new AtomicLong();
+    private Map<Class<?>, RequestHandler<?>> requestHandlers = Collections.emptyMap();
+
+    protected AbstractProtoSocketChannel(SocketAddress socketAddress) {
+        this.socketAddress = socketAddress;
+    }
+
+    /**
+     * Open the resources of the channel, once all settings have been applied
+     */
+    public abstract void init();
+
+    /**
+     * Start reading from a connection that has been accepted by a server
+     */
+    abstract void startReading();
+
+    /**
+     * @return true if the underlying socket is open
+     */
+    protected abstract boolean isOpen();
+
+    /**
+     * @return true if the channel connects to a server on a Unix domain socket rather than on a TCP port
+     */
+    protected boolean isUnixDomainSocket() {
+        return socketAddress instanceof UnixDomainSocketAddress;
+    }
+
+    protected SocketChannel openSocketChannel() throws IOException {
+        return isUnixDomainSocket() ? SocketChannel.open(StandardProtocolFamily.UNIX) : SocketChannel.open();
+    }
+
+    /**
+     * Start connecting to the server without blocking, the transport must complete the connection with
+     * {@link #onConnected(CompletableFuture)} or {@link #onConnectFailed(CompletableFuture, Throwable)}
+     */
+    protected abstract void startConnecting(CompletableFuture<Void> connectFuture);
+
+    @Override
+    public void connect() {
+        try {
+            connectAsync().get();
+        } catch (InterruptedException e) {
+            LOGGER.debug("Interrupted while connecting to " + socketAddress, e);
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            // Already logged, and the channel is disconnected
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> connectAsync() {
+        CompletableFuture<Void> connectFuture = new CompletableFuture<>();
+        if (connectTimeoutMillis > 0) {
+            ScheduledFuture<?> timeout = SharedScheduler.schedule(
+                    () -> onConnectFailed(connectFuture, new TimeoutException("Timed out after " + connectTimeoutMillis + " ms while connecting to " + socketAddress)),
+                    connectTimeoutMillis, TimeUnit.MILLISECONDS);
+            connectFuture.whenComplete((ignored, t) -> timeout.cancel(false));
+        }
+        startConnecting(connectFuture);
+        return connectFuture;
+    }
+
+    /**
+     * Notify the connection handlers and start reading, unless the connection has already failed or timed out
+     */
+    protected void onConnected(CompletableFuture<Void> connectFuture) {
+        if (isConnectCompleted.getAndSet(true)) {
+            return;
+        }
+        LOGGER.debug("Connected to " + socketAddress);
+        fireConnected();
+        startReading();
+        announceFlowControlWindow();
+        connectFuture.complete(null);
+    }
+
+    /**
+     * Disconnect the channel, unless the connection has already been established or has already failed
+     */
+    protected void onConnectFailed(CompletableFuture<Void> connectFuture, Throwable t) {
+        if (isConnectCompleted.getAndSet(true)) {
+            return;
+        }
+        LOGGER.error("An error has occurred while trying connect to " + socketAddress, t);
+        disconnect();
+        connectFuture.completeExceptionally(t);
+    }
+
+    /**
+     * @param writeTrigger starts the writer of the transport
+     * @param notificationExecutor the executor to notify the writability changes detected outside of the writer
+     * @return the outbound message queue of this channel, reporting the completions to the handlers of this channel
+     */
+    protected OutboundMessageQueue newOutboundMessageQueue(Runnable writeTrigger, Executor notificationExecutor) {
+        return new OutboundMessageQueue(maxMessageWriteQueueSize, writeLowWatermark, writeHighWatermark, writePolicy, messageTypeRegistry, flowControlWindow,
+                streamWeights, writeTrigger, notificationExecutor, new MessageWriteCompletionHandler(),
+                isWritable -> writabilityChangedHandlers.forEach(handler -> handler.onWritabilityChanged(socketAddress, isWritable)));
+    }
+
+    /**
+     * @return a frame decoder passing the flow control frames of the remote peer to the outbound message queue of this channel
+     */
+    protected ProtobufFrameDecoder newFrameDecoder() {
+        ProtobufFrameDecoder frameDecoder = new ProtobufFrameDecoder();
+        frameDecoder.setFlowControlListener(new FlowControlListener() {
+            @Override
+            public void onWindowAnnounced(int window) {
+                outboundMessageQueue.onFlowControlWindowAnnounced(window);
+            }
+
+            @Override
+            public void onCreditGranted(int credit) {
+                outboundMessageQueue.onFlowControlCreditGranted(credit);
+            }
+        });
+        return frameDecoder;
+    }
+
+    /**
+     * Announce the flow control window of this channel (if any) to the remote peer, which holds its messages until then
+     */
+    void announceFlowControlWindow() {
+        outboundMessageQueue.announceFlowControlWindow();
+    }
+
+    @Override
+    public void sendMessage(Message message) {
+        validateOpen();
+        if (messageSentHandlers.isEmpty() && messageSendFailureHandlers.isEmpty()) {
+            validateQueued(outboundMessageQueue.add(message));
+        } else {
+            validateQueued(outboundMessageQueue.add(message, null));
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> sendAsync(Message message) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        try {
+            validateOpen();
+            validateQueued(outboundMessageQueue.add(message, future));
+        } catch (IllegalStateException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    @Override
+    public void sendAndForget(Message message) {
+        validateOpen();
+        validateQueued(outboundMessageQueue.add(message));
+    }
+
+    @Override
+    public void sendMessage(int streamId, Message message) {
+        if (streamId == ProtobufSerializer.DEFAULT_STREAM_ID) {
+            sendMessage(message);
+            return;
+        }
+        if (streamId < 0) {
+            throw new IllegalArgumentException("Invalid stream id: " + streamId);
+        }
+        validateOpen();
+        validateQueued(outboundMessageQueue.add(new StreamMessage(message, streamId, !(messageSentHandlers.isEmpty() && messageSendFailureHandlers.isEmpty()))));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <R extends Message> CompletableFuture<R> call(Message request, long timeout, TimeUnit unit) {
+        CompletableFuture<Message> future = new CompletableFuture<>();
+        long correlationId = nextCorrelationId.incrementAndGet();
+        pendingCalls.put(correlationId, future);
+        future.whenComplete((response, t) -> pendingCalls.remove(correlationId));
+        if (timeout > 0) {
+            future.orTimeout(timeout, unit);
+        }
+        try {
+            validateOpen();
+            validateQueued(outboundMessageQueue.add(new RpcMessage(request, ProtobufSerializer.RPC_KIND_REQUEST, correlationId)));
+        } catch (IllegalStateException e) {
+            future.completeExceptionally(e);
+        }
+        // A closed channel fails the pending calls once it has been disconnected, this call may have been added afterwards
+        if (!isOpen()) {
+            future.completeExceptionally(new IllegalStateException("Socket channel " + socketAddress + " is closed"));
+        }
+        return (CompletableFuture<R>) (CompletableFuture<?>) future;
+    }
+
+    @Override
+    public void flush() {
+        outboundMessageQueue.flush();
+    }
+
+    private void validateOpen() {
+        if (!isOpen()) {
+            throw new IllegalStateException("Socket channel " + socketAddress + " is closed");
+        }
+    }
+
+    /**
+     * @param isQueued false if the outbound message queue has rejected the message, as it has been closed since the channel was found open
+     */
+    private void validateQueued(boolean isQueued) {
+        if (!isQueued) {
+            throw new IllegalStateException("Socket channel " + socketAddress + " is closed");
+        }
+    }
+
+    /**
+     * @return the future completing with the messages that have not been handed over to the socket of this closed channel,
+     * see {@link OutboundMessageQueue#drainUnsent()}
+     */
+    CompletableFuture<List<Object>> drainUnsentMessages() {
+        return outboundMessageQueue.drainUnsent();
+    }
+
+    @Override
+    public boolean isWritable() {
+        return outboundMessageQueue.isWritable();
+    }
+
+    @Override
+    public long getPendingWriteBytes() {
+        return outboundMessageQueue.getPendingWriteBytes();
+    }
+
+    protected void fireConnected() {
+        connectionHandlers.forEach(handler -> handler.onConnected(socketAddress));
+    }
+
+    protected void fireDisconnected() {
+        if (!pendingCalls.isEmpty()) {
+            IllegalStateException closedException = new IllegalStateException("Socket channel " + socketAddress + " is closed");
+            pendingCalls.values().forEach(future -> future.completeExceptionally(closedException));
+        }
+        disconnectionHandlers.forEach(handler -> handler.onDisconnected(socketAddress));
+    }
+
+    /**
+     * Pass a decoded message to the message received handlers, or to the remote call it belongs to. The frame is consumed once the handlers
+     * have returned, or once the response has been sent for a request
+     * @param frameDecoder the decoder that has just decoded the message, for the RPC and stream headers of its frame
+     */
+    protected void fireMessageReceived(Message message, ProtobufFrameDecoder frameDecoder) {
+        fireMessageReceived(message, frameDecoder.getRpcKind(), frameDecoder.getCorrelationId(), frameDecoder.getStreamId(), frameDecoder.getFrameLength());
+    }
+
+    /**
+     * Pass a message received without its frame (e.g. handed over by an in-process peer) to the message received handlers, or to the remote call it belongs to
+     * @param frameLength the size of the frame the message stands for, consumed once the handlers have returned, or once the response has been sent for a request
+     */
+    protected void fireMessageReceived(Message message, int rpcKind, long correlationId, int streamId, int frameLength) {
+        if (rpcKind == ProtobufSerializer.RPC_KIND_REQUEST) {
+            onRequestReceived(message, correlationId, frameLength);
+            return;
+        }
+        try {
+            switch (rpcKind) {
+                case ProtobufSerializer.RPC_KIND_NONE:
+                    if (streamId == ProtobufSerializer.DEFAULT_STREAM_ID) {
+                        fireMessageReceived(message);
+                    } else {
+                        fireStreamMessageReceived(streamId, message);
+                    }
+                    break;
+                case ProtobufSerializer.RPC_KIND_RESPONSE:
+                    completeCall(correlationId, message, null);
+                    break;
+                case ProtobufSerializer.RPC_KIND_ERROR:
+                    // The peer decides the type of the error message, it is normally a string
+                    String error = message instanceof StringValue ? ((StringValue) message).getValue() : message.toString();
+                    completeCall(correlationId, null, new IllegalStateException("Remote call to " + socketAddress + " failed: " + error));
+                    break;
+                default:
+                    LOGGER.debug("Ignoring RPC frame of unknown kind " + rpcKind + " from " + socketAddress);
+                    break;
+            }
+        } finally {
+            // Even if a handler has thrown, otherwise the credits of the frame would never be granted back to the remote peer
+            outboundMessageQueue.onFrameConsumed(frameLength);
+        }
+    }
+
+    private void completeCall(long correlationId, Message response, Throwable t) {
+        CompletableFuture<Message> future = pendingCalls.remove(correlationId);
+        if (future == null) {
+            LOGGER.debug("Ignoring response " + correlationId + " from " + socketAddress + " after its call has completed");
+        } else if (t == null) {
+            future.complete(response);
+        } else {
+            future.completeExceptionally(t);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void onRequestReceived(Message request, long correlationId, int frameLength) {
+        RequestHandler<Message> requestHandler = (RequestHandler<Message>) requestHandlers.get(request.getClass());
+        if (requestHandler == null) {
+            sendResponse(correlationId, frameLength, null, new IllegalStateException("No request handler for " + request.getClass().getName()));
+            return;
+        }
+        CompletableFuture<? extends Message> response;
+        try {
+            response = requestHandler.onRequest(socketAddress, request);
+        } catch (RuntimeException e) {
+            sendResponse(correlationId, frameLength, null, e);
+            return;
+        }
+        response.whenComplete((message, t) -> sendResponse(correlationId, frameLength, message, t));
+    }
+
+    private void sendResponse(long correlationId, int requestFrameLength, Message response, Throwable t) {
+        if (t instanceof CompletionException && t.getCause() != null) {
+            t = t.getCause();
+        }
+        if (t == null && response == null) {
+            t = new IllegalStateException("Null response");
+        }
+        RpcMessage rpcMessage = t == null
+                ? new RpcMessage(response, ProtobufSerializer.RPC_KIND_RESPONSE, correlationId)
+                : new RpcMessage(StringValue.of(t.toString()), ProtobufSerializer.RPC_KIND_ERROR, correlationId);
+        if (!isOpen()) {
+            LOGGER.debug("Unable to respond to request " + correlationId + " of closed socket channel " + socketAddress);
+            return;
+        }
+        // This runs in the completion of the response, or on the reader for a response completed straight away: nothing else would report a failure
+        try {
+            if (!outboundMessageQueue.add(rpcMessage)) {
+                LOGGER.debug("Unable to respond to request " + correlationId + " of disconnected socket channel " + socketAddress);
+                return;
+            }
+            if (writePolicy.getMode() == WritePolicy.Mode.EXPLICIT_FLUSH) {
+                // Nothing would flush the channel of a server for the response, the caller would just time out
+                outboundMessageQueue.flush();
+            }
+        } catch (RejectedExecutionException e) {
+            LOGGER.debug("Unable to respond to request " + correlationId + " of disconnected socket channel " + socketAddress, e);
+        } catch (RuntimeException e) {
+            LOGGER.error("Unable to respond to request " + correlationId + " of " + socketAddress, e);
+        } finally {
+            outboundMessageQueue.onFrameConsumed(requestFrameLength);
+        }
+    }
+
+    protected void fireMessageReceived(Message message) {
+        messageReceivedHandlers.forEach(handler -> handler.onMessageReceived(socketAddress, message));
+    }
+
+    protected void fireStreamMessageReceived(int streamId, Message message) {
+        streamMessageReceivedHandlers.forEach(handler -> handler.onMessageReceived(socketAddress, streamId, message));
+    }
+
+    @Override
+    public void addConnectionHandler(ConnectionHandler handler) {
+        connectionHandlers.add(handler);
+    }
+
+    @Override
+    public void removeConnectionHandler(ConnectionHandler handler) {
+        connectionHandlers.remove(handler);
+    }
+
+    @Override
+    public void addDisconnectionHandler(DisconnectionHandler handler) {
+        disconnectionHandlers.add(handler);
+    }
+
+    @Override
+    public void removeDisconnectionHandler(DisconnectionHandler handler) {
+        disconnectionHandlers.remove(handler);
+    }
+
+    @Override
+    public void addMessageReceivedHandler(MessageReceivedHandler handler) {
+        messageReceivedHandlers.add(handler);
+    }
+
+    @Override
+    public void removeMessageReceivedHandler(MessageReceivedHandler handler) {
+        messageReceivedHandlers.remove(handler);
+    }
+
+    @Override
+    public void addStreamMessageReceivedHandler(StreamMessageReceivedHandler handler) {
+        streamMessageReceivedHandlers.add(handler);
+    }
+
+    @Override
+    public void removeStreamMessageReceivedHandler(StreamMessageReceivedHandler handler) {
+        streamMessageReceivedHandlers.remove(handler);
+    }
+
+    @Override
+    public void addMessageSentHandler(MessageSentHandler handler) {
+        messageSentHandlers.add(handler);
+    }
+
+    @Override
+    public void removeMessageSentHandler(MessageSentHandler handler) {
+        messageSentHandlers.remove(handler);
+    }
+
+    @Override
+    public void addMessageSendFailureHandler(MessageSendFailureHandler handler) {
+        messageSendFailureHandlers.add(handler);
+    }
+
+    @Override
+    public void removeMessageSendFailureHandler(MessageSendFailureHandler handler) {
+        messageSendFailureHandlers.remove(handler);
+    }
+
+    @Override
+    public void addWritabilityChangedHandler(WritabilityChangedHandler handler) {
+        writabilityChangedHandlers.add(handler);
+    }
+
+    @Override
+    public void removeWritabilityChangedHandler(WritabilityChangedHandler handler) {
+        writabilityChangedHandlers.remove(handler);
+    }
+
+    public void setReadBufferSize(int readBufferSize) {
+        this.readBufferSize = readBufferSize;
+    }
+
+    public void setWriteBufferSize(int writeBufferSize) {
+        this.writeBufferSize = writeBufferSize;
+    }
+
+    public void setDirectReadBuffer(boolean isDirectReadBuffer) {
+        this.isDirectReadBuffer = isDirectReadBuffer;
+    }
+
+    public void setGatheringWrite(boolean isGatheringWrite) {
+        this.isGatheringWrite = isGatheringWrite;
+    }
+
+    public void setMaxMessageWriteQueueSize(int maxMessageWriteQueueSize) {
+        this.maxMessageWriteQueueSize = maxMessageWriteQueueSize;
+    }
+
+    public void setWriteWatermarks(long writeLowWatermark, long writeHighWatermark) {
+        if (writeLowWatermark < 0 || writeLowWatermark > writeHighWatermark) {
+            throw new IllegalArgumentException("Invalid write watermarks: low=" + writeLowWatermark + " high=" + writeHighWatermark);
+        }
+        this.writeLowWatermark = writeLowWatermark;
+        this.writeHighWatermark = writeHighWatermark;
+    }
+
+    public void setWritePolicy(WritePolicy writePolicy) {
+        this.writePolicy = writePolicy;
+    }
+
+    /**
+     * @param connectTimeoutMillis the time to wait for the connection to be established, 0 to wait until the operating system gives up
+     */
+    public void setConnectTimeoutMillis(long connectTimeoutMillis) {
+        if (connectTimeoutMillis < 0) {
+            throw new IllegalArgumentException("Invalid connect timeout: " + connectTimeoutMillis);
+        }
+        this.connectTimeoutMillis = connectTimeoutMillis;
+    }
+
+    /**
+     * @param flowControlWindow the number of bytes the remote peer can send before it has to wait for this channel to consume them, 0 to not use flow control
+     */
+    public void setFlowControlWindow(int flowControlWindow) {
+        if (flowControlWindow < 0) {
+            throw new IllegalArgumentException("Invalid flow control window: " + flowControlWindow);
+        }
+        this.flowControlWindow = flowControlWindow;
+    }
+
+    /**
+     * @param streamWeights the weights of the logical streams that get more than their fair share of the connection, by stream id
+     */
+    public void setStreamWeights(Map<Integer, Integer> streamWeights) {
+        this.streamWeights = streamWeights;
+    }
+
+    public void setMessageTypeRegistry(MessageTypeRegistry messageTypeRegistry) {
+        this.messageTypeRegistry = messageTypeRegistry;
+    }
+
+    /**
+     * @param requestHandlers the request handlers by type of request, shared with the server that has accepted this channel
+     */
+    void setRequestHandlers(Map<Class<?>, RequestHandler<?>> requestHandlers) {
+        this.requestHandlers = requestHandlers;
+    }
+
+    private class MessageWriteCompletionHandler implements CompletionHandler<Long, Message> {
+
+        @Override
+        public void completed(Long sentBytes, Message message) {
+            messageSentHandlers.forEach(handler -> handler.onMessageSent(socketAddress, message));
+        }
+
+        @Override
+        public void failed(Throwable exc, Message message) {
+            messageSendFailureHandlers.forEach(handler -> handler.onMessageSendFailure(socketAddress, message, exc));
+        }
+    }
+
+}
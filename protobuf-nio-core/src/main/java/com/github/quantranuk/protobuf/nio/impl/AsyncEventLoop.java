@@ -0,0 +1,56 @@
+package com.github.quantranuk.protobuf.nio.impl;
+
+import com.github.quantranuk.protobuf.nio.utils.NamedThreadFactory;
+
+import java.io.IOException;
+import java.nio.channels.AsynchronousChannelGroup;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * An I/O event loop of the asynchronous transport: one thread to decode incoming messages and one thread to encode outgoing messages, shared by all the connections pinned to it.
+ * Client connections are also opened in the channel group of the event loop, which runs on the read thread
+ */
+final class AsyncEventLoop extends AbstractEventLoop {
+
+    private final ExecutorService readExecutor;
+    private final ExecutorService writeExecutor;
+    private AsynchronousChannelGroup channelGroup;
+
+    AsyncEventLoop(String readerName, String writerName) {
+        this.readExecutor = Executors.newSingleThreadExecutor(new NamedThreadFactory(readerName));
+        this.writeExecutor = Executors.newSingleThreadExecutor(new NamedThreadFactory(writerName));
+    }
+
+    ExecutorService getReadExecutor() {
+        return readExecutor;
+    }
+
+    ExecutorService getWriteExecutor() {
+        return writeExecutor;
+    }
+
+    synchronized AsynchronousChannelGroup getChannelGroup() throws IOException {
+        if (channelGroup == null) {
+            channelGroup = AsynchronousChannelGroup.withThreadPool(readExecutor);
+        }
+        return channelGroup;
+    }
+
+    @Override
+    synchronized void shutdown() {
+        if (channelGroup != null) {
+            try {
+                channelGroup.shutdownNow();
+            } catch (IOException e) {
+                // The channels are being closed anyway
+            }
+        }
+        if (!readExecutor.isShutdown()) {
+            readExecutor.shutdown();
+        }
+        if (!writeExecutor.isShutdown()) {
+            writeExecutor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.github.quantranuk.protobuf.nio.impl;
+
+import com.github.quantranuk.protobuf.nio.EventLoopAssignment;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A fixed set of I/O event loops of the asynchronous transport. Each new connection is pinned to one of them according to the {@link EventLoopAssignment}
+ */
+public final class AsyncEventLoopGroup extends AbstractEventLoopGroup<AsyncEventLoop> {
+
+    public AsyncEventLoopGroup(String name, int eventLoopCount, EventLoopAssignment assignment) {
+        super(newEventLoops(name, eventLoopCount), assignment);
+    }
+
+    private static List<AsyncEventLoop> newEventLoops(String name, int eventLoopCount) {
+        validateEventLoopCount(eventLoopCount);
+        List<AsyncEventLoop> eventLoops = new ArrayList<>(eventLoopCount);
+        for (int i = 0; i < eventLoopCount; i++) {
+            eventLoops.add(new AsyncEventLoop(name + "-Reader", name + "-Writer"));
+        }
+        return eventLoops;
+    }
+}
@@ -1,11 +1,5 @@
 package com.github.quantranuk.protobuf.nio.impl;
 
-import com.github.quantranuk.protobuf.nio.ProtoSocketChannel;
-import com.github.quantranuk.protobuf.nio.handlers.ConnectionHandler;
-import com.github.quantranuk.protobuf.nio.handlers.DisconnectionHandler;
-import com.github.quantranuk.protobuf.nio.handlers.MessageReceivedHandler;
-import com.github.quantranuk.protobuf.nio.handlers.MessageSendFailureHandler;
-import com.github.quantranuk.protobuf.nio.handlers.MessageSentHandler;
 import com.github.quantranuk.protobuf.nio.utils.DefaultSetting;
 import com.github.quantranuk.protobuf.nio.utils.NamedThreadFactory;
 import com.google.protobuf.Message;
@@ -17,36 +11,26 @@ import jakarta.annotation.PreDestroy;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
 import java.nio.channels.AsynchronousChannelGroup;
 import java.nio.channels.AsynchronousSocketChannel;
 import java.nio.channels.CompletionHandler;
-import java.util.List;
-import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadPoolExecutor;
 
-public class AsyncProtoSocketChannel implements ProtoSocketChannel {
+public class AsyncProtoSocketChannel extends AbstractProtoSocketChannel {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(AsyncProtoSocketChannel.class);
 
-    private final List<ConnectionHandler> connectionHandlers = new CopyOnWriteArrayList<>();
-    private final List<DisconnectionHandler> disconnectionHandlers = new CopyOnWriteArrayList<>();
-    private final List<MessageReceivedHandler> messageReceivedHandlers = new CopyOnWriteArrayList<>();
-    private final List<MessageSentHandler> messageSentHandlers = new CopyOnWriteArrayList<>();
-    private final List<MessageSendFailureHandler> messageSendFailureHandlers = new CopyOnWriteArrayList<>();
-    private final SocketAddress socketAddress;
-
     private AsynchronousSocketChannel socketChannel;
     private SocketChannelReader reader;
     private SocketChannelWriter writer;
 
-    private int readBufferSize = DefaultSetting.DEFAULT_CLIENT_BUFFER_SIZE;
-    private int writeBufferSize = DefaultSetting.DEFAULT_CLIENT_BUFFER_SIZE;
-    private int maxMessageWriteQueueSize = DefaultSetting.MAX_WRITE_MESSAGE_QUEUE_SIZE;
     private long readTimeoutMillis = DefaultSetting.DEFAULT_READ_TIMEOUT_MILLIS;
     private long writeTimeoutMillis = DefaultSetting.DEFAULT_WRITE_TIMEOUT_MILLIS;
+
     private boolean isInitialized = false;
     private boolean isShuttingDown = false;
     private boolean isInjectedReadExecutor = false;
@@ -54,21 +38,27 @@ public class AsyncProtoSocketChannel implements ProtoSocketChannel {
     private ExecutorService readExecutor;
     private ExecutorService writeExecutor;
     private AsynchronousChannelGroup channelGroup;
+    private AsyncEventLoopGroup eventLoopGroup;
+    private AsyncEventLoop eventLoop;
 
     public AsyncProtoSocketChannel(SocketAddress socketAddress) {
-        this.socketAddress = socketAddress;
+        super(socketAddress);
     }
 
     public AsyncProtoSocketChannel(String host, int port) {
-        this.socketAddress = new InetSocketAddress(host, port);
+        super(new InetSocketAddress(host, port));
     }
 
+    @Override
     @PostConstruct
     public void init() {
         if (isInitialized) {
             return;
         }
         isInitialized = true;
+        if (eventLoopGroup != null) {
+            initEventLoop();
+        }
         if (readExecutor == null) {
             readExecutor = Executors.newSingleThreadExecutor(new NamedThreadFactory(AsyncProtoSocketChannel.class.getSimpleName() + "-Reader"));
         }
@@ -83,26 +73,45 @@ public class AsyncProtoSocketChannel implements ProtoSocketChannel {
                 throw new IllegalStateException("Unable to open socket channel", e);
             }
         }
-        reader = new SocketChannelReader(socketChannel, socketAddress, readTimeoutMillis, readBufferSize, readExecutor, new MessageReadCompletionHandler());
-        writer = new SocketChannelWriter(socketChannel, writeTimeoutMillis, writeBufferSize, maxMessageWriteQueueSize, writeExecutor, new MessageWriteCompletionHandler());
+        if (flowControlWindow > 0) {
+            // The credits are small frames that the remote peer is waiting for, they must not be delayed by Nagle's algorithm
+            try {
+                socketChannel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            } catch (IOException e) {
+                LOGGER.error("Unable to disable Nagle's algorithm for " + socketAddress, e);
+            }
+        }
+        reader = new SocketChannelReader(socketChannel, socketAddress, readTimeoutMillis, readBufferSize, isDirectReadBuffer, readExecutor, newFrameDecoder(), new MessageReadCompletionHandler());
+        writer = new SocketChannelWriter(socketChannel, writeTimeoutMillis, writeBufferSize, isGatheringWrite, writeExecutor);
+        outboundMessageQueue = newOutboundMessageQueue(writer::startWriting, writeExecutor);
+        writer.setOutboundMessageQueue(outboundMessageQueue);
     }
 
-    @Override
-    public void connect() {
-        try {
-            socketChannel.connect(socketAddress).get();
-            LOGGER.debug("Connected to " + socketAddress);
-            connectionHandlers.forEach(handler -> handler.onConnected(socketAddress));
-            reader.start();
-        } catch (InterruptedException e) {
-            LOGGER.debug("Interrupted while connecting to "+ socketAddress, e);
-            Thread.currentThread().interrupt();
-        }catch (ExecutionException e) {
-            LOGGER.error("An error has occurred while trying connect to " + socketAddress, e);
-            disconnect();
+    private void initEventLoop() {
+        eventLoop = eventLoopGroup.register();
+        if (readExecutor == null) {
+            readExecutor = eventLoop.getReadExecutor();
+            isInjectedReadExecutor = true;
+        }
+        if (writeExecutor == null) {
+            writeExecutor = eventLoop.getWriteExecutor();
+            isInjectedWriteExecutor = true;
+        }
+        if (socketChannel == null) {
+            try {
+                socketChannel = AsynchronousSocketChannel.open(eventLoop.getChannelGroup());
+            } catch (IOException e) {
+                throw new IllegalStateException("Unable to open socket channel", e);
+            }
         }
     }
 
+    @Override
+    protected void startConnecting(CompletableFuture<Void> connectFuture) {
+        socketChannel.connect(socketAddress, connectFuture, new ConnectCompletionHandler());
+    }
+
+    @Override
     void startReading() {
         reader.start();
     }
@@ -122,7 +131,11 @@ public class AsyncProtoSocketChannel implements ProtoSocketChannel {
             }
         }
         LOGGER.debug("Disconnected from " + socketAddress);
-        disconnectionHandlers.forEach(handler -> handler.onDisconnected(socketAddress));
+        if (eventLoop != null) {
+            eventLoop.deregister();
+            eventLoop = null;
+        }
+        fireDisconnected();
         if (!isInjectedReadExecutor) {
             readExecutor.shutdown();
         }
@@ -132,73 +145,8 @@ public class AsyncProtoSocketChannel implements ProtoSocketChannel {
     }
 
     @Override
-    public void sendMessage(Message message) {
-        if (!socketChannel.isOpen()) {
-            throw new IllegalStateException("Socket channel " + socketAddress + " is closed");
-        }
-        writer.addToWriteQueue(message);
-    }
-
-    @Override
-    public void addConnectionHandler(ConnectionHandler handler) {
-        connectionHandlers.add(handler);
-    }
-
-    @Override
-    public void removeConnectionHandler(ConnectionHandler handler) {
-        connectionHandlers.remove(handler);
-    }
-
-    @Override
-    public void addDisconnectionHandler(DisconnectionHandler handler) {
-        disconnectionHandlers.add(handler);
-    }
-
-    @Override
-    public void removeDisconnectionHandler(DisconnectionHandler handler) {
-        disconnectionHandlers.remove(handler);
-    }
-
-    @Override
-    public void addMessageReceivedHandler(MessageReceivedHandler handler) {
-        messageReceivedHandlers.add(handler);
-    }
-
-    @Override
-    public void removeMessageReceivedHandler(MessageReceivedHandler handler) {
-        messageReceivedHandlers.remove(handler);
-    }
-
-    @Override
-    public void addMessageSentHandler(MessageSentHandler handler) {
-        messageSentHandlers.add(handler);
-    }
-
-    @Override
-    public void removeMessageSentHandler(MessageSentHandler handler) {
-        messageSentHandlers.remove(handler);
-    }
-
-    @Override
-    public void addMessageSendFailureHandler(MessageSendFailureHandler handler) {
-        messageSendFailureHandlers.add(handler);
-    }
-
-    @Override
-    public void removeMessageSendFailureHandler(MessageSendFailureHandler handler) {
-        messageSendFailureHandlers.remove(handler);
-    }
-
-    public void setReadBufferSize(int readBufferSize) {
-        this.readBufferSize = readBufferSize;
-    }
-
-    public void setWriteBufferSize(int writeBufferSize) {
-        this.writeBufferSize = writeBufferSize;
-    }
-
-    public void setMaxMessageWriteQueueSize(int maxMessageWriteQueueSize) {
-        this.maxMessageWriteQueueSize = maxMessageWriteQueueSize;
+    protected boolean isOpen() {
+        return socketChannel.isOpen();
     }
 
     public void setReadTimeoutMillis(long readTimeoutMillis) {
@@ -209,6 +157,10 @@ public class AsyncProtoSocketChannel implements ProtoSocketChannel {
         this.writeTimeoutMillis = writeTimeoutMillis;
     }
 
+    public void setEventLoopGroup(AsyncEventLoopGroup eventLoopGroup) {
+        this.eventLoopGroup = eventLoopGroup;
+    }
+
     public void setSocketChannel(AsynchronousSocketChannel socketChannel) {
         this.socketChannel = socketChannel;
     }
@@ -235,7 +187,7 @@ public class AsyncProtoSocketChannel implements ProtoSocketChannel {
 
         @Override
         public void completed(Long readBytes, Message message) {
-            messageReceivedHandlers.forEach(handler -> handler.onMessageReceived(socketAddress, message));
+            fireMessageReceived(message, reader.getFrameDecoder());
         }
 
         @Override
@@ -247,16 +199,16 @@ public class AsyncProtoSocketChannel implements ProtoSocketChannel {
         }
     }
 
-    private class MessageWriteCompletionHandler implements CompletionHandler<Long, Message> {
+    private class ConnectCompletionHandler implements CompletionHandler<Void, CompletableFuture<Void>> {
 
         @Override
-        public void completed(Long sentBytes, Message message) {
-            messageSentHandlers.forEach(handler -> handler.onMessageSent(socketAddress, message));
+        public void completed(Void result, CompletableFuture<Void> connectFuture) {
+            onConnected(connectFuture);
         }
 
         @Override
-        public void failed(Throwable exc, Message message) {
-            messageSendFailureHandlers.forEach(handler -> handler.onMessageSendFailure(socketAddress, message, exc));
+        public void failed(Throwable exc, CompletableFuture<Void> connectFuture) {
+            onConnectFailed(connectFuture, exc);
         }
     }
 
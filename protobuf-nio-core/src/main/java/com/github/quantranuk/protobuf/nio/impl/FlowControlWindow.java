@@ -0,0 +1,113 @@
+package com.github.quantranuk.protobuf.nio.impl;
+
+import com.github.quantranuk.protobuf.nio.serializer.ProtobufSerializer;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>The credit based flow control of a connection, in both directions.</p>
+ * <p>A peer with a receive window announces it once connected. The sender holds its frames until the window of the remote peer is known,
+ * then deducts the size of every frame it sends from the credits granted by the remote peer, and holds the frames again once they run out.
+ * The receiver grants the credits back once its handlers have consumed the frames, in batches of half of its window.</p>
+ * <p>Flow control is only used when both peers have a window. A peer without a window answers the announcement with an empty window,
+ * after which neither side holds frames nor grants credits.</p>
+ * <p>The credits are granted by the reader and spent by the writer, the control frames are only polled by the writer</p>
+ */
+final class FlowControlWindow {
+
+    private static final long UNLIMITED_CREDITS = Long.MAX_VALUE;
+
+    private final int receiveWindow;
+    private final long grantThreshold;
+    private final AtomicLong sendCredits;
+    private final AtomicLong consumedBytes = new AtomicLong();
+    private volatile int peerWindow;
+    private volatile boolean isWindowAnnouncementPending;
+
+    /**
+     * @param receiveWindow the number of bytes the remote peer can send before it has to wait for credits, 0 to not use flow control
+     */
+    FlowControlWindow(int receiveWindow) {
+        this.receiveWindow = receiveWindow;
+        this.grantThreshold = Integer.max(receiveWindow / 2, 1);
+        this.sendCredits = new AtomicLong(receiveWindow > 0 ? 0 : UNLIMITED_CREDITS);
+        this.isWindowAnnouncementPending = receiveWindow > 0;
+    }
+
+    boolean isSendUnlimited() {
+        return sendCredits.get() == UNLIMITED_CREDITS;
+    }
+
+    /**
+     * The remote peer may keep up to half of its window before granting it back, so any frame can be sent once half of the window is available,
+     * even if it is larger
+     * @return true if there are enough credits to send a frame of this size
+     */
+    boolean canSend(int frameSize) {
+        long credits = sendCredits.get();
+        return credits >= frameSize || (credits > 0 && credits >= peerWindow / 2);
+    }
+
+    void onSent(int frameSize) {
+        if (!isSendUnlimited()) {
+            sendCredits.addAndGet(-frameSize);
+        }
+    }
+
+    /**
+     * @return true if the writer must be started, to send the held frames or to answer the announcement
+     */
+    boolean onWindowAnnounced(int window) {
+        if (receiveWindow == 0) {
+            // Tell the remote peer not to wait for credits, this side ignores its window
+            isWindowAnnouncementPending = window > 0;
+            return isWindowAnnouncementPending;
+        }
+        if (window <= 0) {
+            sendCredits.set(UNLIMITED_CREDITS);
+        } else {
+            peerWindow = window;
+            sendCredits.addAndGet(window);
+        }
+        return true;
+    }
+
+    void onCreditGranted(int credit) {
+        if (peerWindow > 0) {
+            sendCredits.addAndGet(credit);
+        }
+    }
+
+    /**
+     * @return true if the consumed bytes have just reached the threshold to grant them back, and the writer must be started
+     */
+    boolean onConsumed(int frameSize) {
+        if (receiveWindow == 0 || peerWindow == 0) {
+            return false;
+        }
+        long bytes = consumedBytes.addAndGet(frameSize);
+        return bytes >= grantThreshold && bytes - frameSize < grantThreshold;
+    }
+
+    boolean hasControlFrame() {
+        return isWindowAnnouncementPending || consumedBytes.get() >= grantThreshold;
+    }
+
+    /**
+     * @return the announcement of the receive window if it has not been sent yet, or the credits to grant back if there are enough of them, null otherwise
+     */
+    byte[] pollControlFrame() {
+        if (isWindowAnnouncementPending) {
+            isWindowAnnouncementPending = false;
+            return ProtobufSerializer.serializeFlowControl(ProtobufSerializer.CONTROL_TYPE_FLOW_CONTROL_WINDOW, receiveWindow);
+        }
+        long bytes = consumedBytes.get();
+        if (bytes < grantThreshold) {
+            return null;
+        }
+        int credit = (int) Long.min(bytes, Integer.MAX_VALUE);
+        consumedBytes.addAndGet(-credit);
+        return ProtobufSerializer.serializeFlowControl(ProtobufSerializer.CONTROL_TYPE_FLOW_CONTROL_CREDIT, credit);
+    }
+
+}
@@ -0,0 +1,50 @@
+package com.github.quantranuk.protobuf.nio.impl;
+
+import java.net.SocketAddress;
+import java.util.Objects;
+
+/**
+ * The address of an in-process connection: the name of the server for a client, the name of the server and the number of the connection for the server
+ */
+public final class InProcessAddress extends SocketAddress {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String name;
+    private final long connectionNumber;
+
+    public InProcessAddress(String name) {
+        this(name, 0);
+    }
+
+    InProcessAddress(String name, long connectionNumber) {
+        this.name = name;
+        this.connectionNumber = connectionNumber;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof InProcessAddress)) {
+            return false;
+        }
+        InProcessAddress that = (InProcessAddress) o;
+        return connectionNumber == that.connectionNumber && name.equals(that.name);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(name, connectionNumber);
+    }
+
+    @Override
+    public String toString() {
+        return connectionNumber == 0 ? "inproc:" + name : "inproc:" + name + "#" + connectionNumber;
+    }
+}
@@ -0,0 +1,41 @@
+package com.github.quantranuk.protobuf.nio.impl;
+
+import com.github.quantranuk.protobuf.nio.serializer.ProtobufSerializer;
+import com.google.protobuf.Message;
+
+/**
+ * A message handed over to an in-process peer without being serialized, together with the RPC and stream headers its frame would carry.
+ * The message itself is immutable, so that both sides share the same instance
+ */
+final class InProcessFrame {
+
+    final Message message;
+    final int rpcKind;
+    final long correlationId;
+    final int streamId;
+    final int frameLength;
+
+    private InProcessFrame(Message message, int rpcKind, long correlationId, int streamId, int frameLength) {
+        this.message = message;
+        this.rpcKind = rpcKind;
+        this.correlationId = correlationId;
+        this.streamId = streamId;
+        this.frameLength = frameLength;
+    }
+
+    /**
+     * @param outboundEntry an entry of an {@link OutboundMessageQueue}
+     * @param frameLength the size of the frame of the entry, for the flow control of the remote peer
+     */
+    static InProcessFrame of(Object outboundEntry, int frameLength) {
+        if (outboundEntry instanceof RpcMessage) {
+            RpcMessage rpcMessage = (RpcMessage) outboundEntry;
+            return new InProcessFrame(rpcMessage.message, rpcMessage.rpcKind, rpcMessage.correlationId, ProtobufSerializer.DEFAULT_STREAM_ID, frameLength);
+        }
+        if (outboundEntry instanceof StreamMessage) {
+            StreamMessage streamMessage = (StreamMessage) outboundEntry;
+            return new InProcessFrame(streamMessage.message, ProtobufSerializer.RPC_KIND_NONE, 0, streamMessage.streamId, frameLength);
+        }
+        return new InProcessFrame(PendingMessage.getMessage(outboundEntry), ProtobufSerializer.RPC_KIND_NONE, 0, ProtobufSerializer.DEFAULT_STREAM_ID, frameLength);
+    }
+}
@@ -0,0 +1,83 @@
+package com.github.quantranuk.protobuf.nio.impl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.net.BindException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>A {@link com.github.quantranuk.protobuf.nio.ProtoServerSocketChannel} for clients of the same JVM, bound to a name instead of a port.</p>
+ * <p>There is no socket: a client connects by looking up the server by its name, and each side of a connection hands its messages over
+ * to the other side through a queue, see {@link InProcessProtoSocketChannel}</p>
+ */
+public class InProcessProtoServerSocketChannel extends AbstractProtoServerSocketChannel {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(InProcessProtoServerSocketChannel.class);
+    private static final Map<String, InProcessProtoServerSocketChannel> SERVERS = new ConcurrentHashMap<>();
+
+    private final String name;
+    private final AtomicLong nextConnectionNumber = new AtomicLong();
+    private boolean isSerializing = false;
+
+    public InProcessProtoServerSocketChannel(String name) {
+        super(new InProcessAddress(name), name);
+        this.name = name;
+    }
+
+    /**
+     * @return the started server bound to this name, or null if there is none
+     */
+    static InProcessProtoServerSocketChannel find(String name) {
+        return SERVERS.get(name);
+    }
+
+    @Override
+    @PostConstruct
+    public void init() {
+        // There is nothing to open, the server is only bound to its name once it is started
+    }
+
+    @Override
+    public void start() throws IOException {
+        if (SERVERS.putIfAbsent(name, this) != null) {
+            throw new BindException("Name already in use: " + serverSocketAddress);
+        }
+        LOGGER.info("Bind to " + serverSocketAddress);
+    }
+
+    /**
+     * Accept the connection of a client, called from the thread connecting the client
+     */
+    void accept(InProcessProtoSocketChannel client) {
+        InProcessAddress remoteAddress = new InProcessAddress(name, nextConnectionNumber.incrementAndGet());
+        InProcessProtoSocketChannel protobufSocketChannel = new InProcessProtoSocketChannel(remoteAddress);
+        configureChannel(protobufSocketChannel, null);
+        protobufSocketChannel.setSerializing(isSerializing);
+        protobufSocketChannel.init();
+        protobufSocketChannel.setPeer(client);
+        client.setPeer(protobufSocketChannel);
+        onAccepted(remoteAddress, protobufSocketChannel);
+    }
+
+    @Override
+    @PreDestroy
+    public void stop() {
+        SERVERS.remove(name, this);
+        disconnectAll();
+    }
+
+    /**
+     * @param isSerializing whether the accepted connections serialize their messages into frames before handing them over to the clients,
+     *                      or hand them over as they are
+     */
+    public void setSerializing(boolean isSerializing) {
+        this.isSerializing = isSerializing;
+    }
+
+}
@@ -0,0 +1,313 @@
+package com.github.quantranuk.protobuf.nio.impl;
+
+import com.github.quantranuk.protobuf.nio.serializer.ProtobufFrameDecoder;
+import com.github.quantranuk.protobuf.nio.utils.DefaultSetting;
+import com.github.quantranuk.protobuf.nio.utils.MpscChunkedQueue;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.Message;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NotYetConnectedException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>A {@link com.github.quantranuk.protobuf.nio.ProtoSocketChannel} connected to a peer of the same JVM, see {@link InProcessProtoServerSocketChannel}.</p>
+ * <p>The writer runs on the thread that starts it (e.g. the thread sending a message) and hands the queued messages over to the inbound queue of the peer,
+ * either as they are or serialized into frames, which the peer decodes like bytes read from a socket. The inbound queue is drained by a virtual thread
+ * started whenever it goes from empty to non-empty, which runs the handlers in the order of the messages.</p>
+ * <p>Like the receive buffer of a socket, the inbound queue is bounded (see {@link DefaultSetting#DEFAULT_IN_PROCESS_RECEIVE_BUFFER_SIZE}). Once the queue
+ * of the peer is full, the writer waits for the peer to consume some frames, and the messages stay in the outbound queue where they count towards
+ * the writability watermarks</p>
+ */
+public class InProcessProtoSocketChannel extends AbstractProtoSocketChannel {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(InProcessProtoSocketChannel.class);
+    private static final Object END_OF_STREAM = new Object();
+
+    private final AtomicBoolean isDisconnected = new AtomicBoolean();
+    private final AtomicBoolean isReading = new AtomicBoolean();
+    private final MpscChunkedQueue<Object> inboundFrames = new MpscChunkedQueue<>(Integer.MAX_VALUE);
+    // The bytes of the frames handed over by the peer that have not been consumed yet
+    private final AtomicLong inboundBytes = new AtomicLong();
+    // Set by the writer while the inbound queue of the peer is full, the peer resumes the writer once it has consumed some frames
+    private final AtomicBoolean isWaitingForRoom = new AtomicBoolean();
+    private final List<Object> messagesBeingWritten = new ArrayList<>();
+    private volatile InProcessProtoSocketChannel peer;
+    private volatile boolean isReadingStarted = false;
+    private ProtobufFrameDecoder frameDecoder;
+    private ThreadFactory readerThreadFactory;
+    private ThreadFactory writerThreadFactory;
+    private Runnable readTask;
+    private Runnable writeTask;
+
+    private boolean isInitialized = false;
+    private volatile boolean isShuttingDown = false;
+    private boolean isSerializing = false;
+
+    public InProcessProtoSocketChannel(String name) {
+        super(new InProcessAddress(name));
+    }
+
+    InProcessProtoSocketChannel(InProcessAddress socketAddress) {
+        super(socketAddress);
+    }
+
+    @Override
+    @PostConstruct
+    public void init() {
+        if (isInitialized) {
+            return;
+        }
+        isInitialized = true;
+        readerThreadFactory = Thread.ofVirtual().name(InProcessProtoSocketChannel.class.getSimpleName() + "-Reader-" + socketAddress).factory();
+        writerThreadFactory = Thread.ofVirtual().name(InProcessProtoSocketChannel.class.getSimpleName() + "-Writer-" + socketAddress).factory();
+        readTask = this::read;
+        writeTask = this::write;
+        frameDecoder = newFrameDecoder();
+        Executor notificationExecutor = task -> readerThreadFactory.newThread(task).start();
+        outboundMessageQueue = newOutboundMessageQueue(this::write, notificationExecutor);
+    }
+
+    @Override
+    protected void startConnecting(CompletableFuture<Void> connectFuture) {
+        String name = ((InProcessAddress) socketAddress).getName();
+        InProcessProtoServerSocketChannel server = InProcessProtoServerSocketChannel.find(name);
+        if (server == null) {
+            onConnectFailed(connectFuture, new ConnectException("Connection refused by " + socketAddress));
+            return;
+        }
+        server.accept(this);
+        onConnected(connectFuture);
+    }
+
+    /**
+     * Link the two sides of a connection, before either of them writes
+     */
+    void setPeer(InProcessProtoSocketChannel peer) {
+        this.peer = peer;
+    }
+
+    /**
+     * Hand the queued messages over to the peer until the queue is empty. This is called by one thread at a time, see {@link OutboundMessageQueue}
+     */
+    private void write() {
+        try {
+            while (true) {
+                InProcessProtoSocketChannel currentPeer = peer;
+                if (currentPeer == null) {
+                    throw new NotYetConnectedException();
+                }
+                byte[] controlFrame = outboundMessageQueue.pollControlFrame();
+                if (controlFrame != null) {
+                    currentPeer.receive(controlFrame, controlFrame.length);
+                    continue;
+                }
+                if (currentPeer.isInboundFull()) {
+                    if (waitForRoom(currentPeer)) {
+                        return;
+                    }
+                    continue;
+                }
+                outboundMessageQueue.pollNextBatch(messagesBeingWritten, writeBufferSize);
+                if (messagesBeingWritten.isEmpty()) {
+                    if (outboundMessageQueue.stopWriting()) {
+                        return;
+                    }
+                    continue;
+                }
+                if (isSerializing) {
+                    byte[] frames = serializeBatch();
+                    currentPeer.receive(frames, frames.length);
+                } else {
+                    for (Object outboundEntry : messagesBeingWritten) {
+                        int frameLength = outboundMessageQueue.getSerializedSize(outboundEntry);
+                        currentPeer.receive(InProcessFrame.of(outboundEntry, frameLength), frameLength);
+                    }
+                }
+                outboundMessageQueue.onMessagesWritten(messagesBeingWritten);
+                messagesBeingWritten.clear();
+            }
+        } catch (IOException | NotYetConnectedException e) {
+            outboundMessageQueue.onMessagesFailed(messagesBeingWritten, e);
+            messagesBeingWritten.clear();
+            onWriteFailed(e);
+        }
+    }
+
+    /**
+     * @return true if the writer must stop until the peer has consumed some frames, in which case the peer resumes it
+     */
+    private boolean waitForRoom(InProcessProtoSocketChannel currentPeer) {
+        isWaitingForRoom.set(true);
+        // The peer may have consumed frames before the flag was set, in which case either this writer carries on, or the peer has already resumed it
+        return currentPeer.isInboundFull() || !isWaitingForRoom.compareAndSet(true, false);
+    }
+
+    private boolean isInboundFull() {
+        return inboundBytes.get() >= DefaultSetting.DEFAULT_IN_PROCESS_RECEIVE_BUFFER_SIZE;
+    }
+
+    private byte[] serializeBatch() throws IOException {
+        int batchSize = 0;
+        for (Object outboundEntry : messagesBeingWritten) {
+            batchSize += outboundMessageQueue.getSerializedSize(outboundEntry);
+        }
+        byte[] frames = new byte[batchSize];
+        CodedOutputStream output = CodedOutputStream.newInstance(frames);
+        for (Object outboundEntry : messagesBeingWritten) {
+            outboundMessageQueue.serialize(outboundEntry, output);
+        }
+        output.checkNoSpaceLeft();
+        return frames;
+    }
+
+    /**
+     * Queue a frame handed over by the peer: serialized frames, an {@link InProcessFrame}, or the end of the stream. The frame is always accepted,
+     * the writer of the peer checks beforehand that the queue is not full
+     * @param frameLength the number of bytes the frame takes in the inbound queue
+     * @throws ClosedChannelException if this channel has been disconnected
+     */
+    private void receive(Object frame, int frameLength) throws ClosedChannelException {
+        if (isShuttingDown) {
+            throw new ClosedChannelException();
+        }
+        inboundBytes.addAndGet(frameLength);
+        inboundFrames.offer(frame);
+        if (isReadingStarted) {
+            startReadingFrames();
+        }
+    }
+
+    private void startReadingFrames() {
+        if (!isReading.get() && isReading.compareAndSet(false, true)) {
+            readerThreadFactory.newThread(readTask).start();
+        }
+    }
+
+    @Override
+    void startReading() {
+        isReadingStarted = true;
+        startReadingFrames();
+    }
+
+    private void read() {
+        while (true) {
+            Object frame;
+            while ((frame = inboundFrames.poll()) != null && !isShuttingDown) {
+                readFrame(frame);
+            }
+            isReading.set(false);
+            // A frame queued after the queue was seen empty may not have started a new reader
+            if (isShuttingDown || inboundFrames.isEmpty() || !isReading.compareAndSet(false, true)) {
+                return;
+            }
+        }
+    }
+
+    private void readFrame(Object frame) {
+        if (frame == END_OF_STREAM) {
+            onReadFailed(new IllegalStateException("Reached end-of-stream of " + socketAddress));
+        } else if (frame instanceof InProcessFrame) {
+            InProcessFrame inProcessFrame = (InProcessFrame) frame;
+            try {
+                fireMessageReceived(inProcessFrame.message, inProcessFrame.rpcKind, inProcessFrame.correlationId, inProcessFrame.streamId, inProcessFrame.frameLength);
+            } finally {
+                onFrameRead(inProcessFrame.frameLength);
+            }
+        } else {
+            byte[] frames = (byte[]) frame;
+            try {
+                frameDecoder.decode(ByteBuffer.wrap(frames), this::onMessageDecoded);
+            } catch (IllegalStateException e) {
+                onReadFailed(e);
+            } finally {
+                onFrameRead(frames.length);
+            }
+        }
+    }
+
+    /**
+     * Release the bytes of a frame that has been consumed, and resume the writer of the peer if it was waiting for room
+     */
+    private void onFrameRead(int frameLength) {
+        inboundBytes.addAndGet(-frameLength);
+        InProcessProtoSocketChannel currentPeer = peer;
+        if (currentPeer != null && currentPeer.isWaitingForRoom.get() && !isInboundFull() && currentPeer.isWaitingForRoom.compareAndSet(true, false)) {
+            currentPeer.writerThreadFactory.newThread(currentPeer.writeTask).start();
+        }
+    }
+
+    private void onMessageDecoded(Message message) {
+        if (!isShuttingDown) {
+            fireMessageReceived(message, frameDecoder);
+        }
+    }
+
+    private void onReadFailed(Throwable t) {
+        if (!isShuttingDown) {
+            LOGGER.debug("Unable to read from " + socketAddress, t);
+            disconnect();
+        }
+    }
+
+    private void onWriteFailed(Throwable t) {
+        if (!isShuttingDown) {
+            LOGGER.debug("Unable to write to " + socketAddress, t);
+            disconnect();
+        }
+    }
+
+    /**
+     * Disconnect this channel, the peer is disconnected in turn once it has read the frames already handed over to it
+     */
+    @Override
+    @PreDestroy
+    public void disconnect() {
+        if (isDisconnected.getAndSet(true)) {
+            return;
+        }
+        isShuttingDown = true;
+        InProcessProtoSocketChannel currentPeer = peer;
+        if (currentPeer != null) {
+            try {
+                currentPeer.receive(END_OF_STREAM, 0);
+            } catch (ClosedChannelException e) {
+                // The peer is already disconnected
+            }
+        }
+        if (isWaitingForRoom.compareAndSet(true, false)) {
+            // The peer does not consume frames anymore, the writer waiting for room would never be resumed
+            outboundMessageQueue.onMessagesFailed(Collections.emptyList(), new ClosedChannelException());
+        }
+        LOGGER.debug("Disconnected from " + socketAddress);
+        fireDisconnected();
+    }
+
+    @Override
+    protected boolean isOpen() {
+        return !isDisconnected.get();
+    }
+
+    /**
+     * @param isSerializing whether the messages are serialized into frames before being handed over to the peer, e.g. to test the serialization
+     *                      of the messages, or handed over as they are
+     */
+    public void setSerializing(boolean isSerializing) {
+        this.isSerializing = isSerializing;
+    }
+
+}
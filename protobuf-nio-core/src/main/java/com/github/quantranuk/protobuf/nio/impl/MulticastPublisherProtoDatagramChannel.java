@@ -0,0 +1,149 @@
+package com.github.quantranuk.protobuf.nio.impl;
+
+import com.github.quantranuk.protobuf.nio.serializer.ProtobufSerializer;
+import com.github.quantranuk.protobuf.nio.utils.DefaultSetting;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.Inet6Address;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>A {@link com.github.quantranuk.protobuf.nio.ProtoDatagramChannel} sending its messages to a multicast group, so that the cost of publishing does not depend
+ * on the number of subscribers (see {@link MulticastSubscriberProtoDatagramChannel}).</p>
+ * <p>The latest datagrams are kept in a {@link RetransmitHistory}. When a subscriber reports missing datagrams with a NAK, they are retransmitted to the whole group,
+ * so that the other subscribers that have lost them too are recovered at once. The datagrams that are no longer in the history are reported as lost for good.
+ * While the publisher has nothing to send, it sends heartbeats carrying its latest sequence, so that the subscribers also detect the loss of the last datagrams</p>
+ */
+public class MulticastPublisherProtoDatagramChannel extends UdpProtoDatagramChannel {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MulticastPublisherProtoDatagramChannel.class);
+    private static final long HEARTBEAT_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long RETRANSMIT_SUPPRESSION_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final NetworkInterface networkInterface;
+    private final ProtocolFamily protocolFamily;
+    // Used by the heartbeat timer and by the reader respectively
+    private final ByteBuffer heartbeatBuffer = ByteBuffer.allocate(ProtobufSerializer.DATAGRAM_HEADER_LENGTH);
+    private final ByteBuffer retransmitBuffer = ByteBuffer.allocateDirect(ProtobufSerializer.MAX_DATAGRAM_LENGTH);
+    private final ByteBuffer lostBuffer = ByteBuffer.allocate(ProtobufSerializer.DATAGRAM_RANGE_LENGTH);
+    private final Runnable heartbeatTask = this::sendHeartbeat;
+    private int recoveryWindow = DefaultSetting.DEFAULT_MULTICAST_RECOVERY_WINDOW;
+    private RetransmitHistory retransmitHistory;
+    private volatile long latestSequence = 0;
+    private volatile boolean hasWrittenSinceHeartbeat = false;
+
+    /**
+     * @param groupAddress the multicast group and the port of the subscribers
+     * @param networkInterface the network interface to send from
+     */
+    public MulticastPublisherProtoDatagramChannel(InetSocketAddress groupAddress, NetworkInterface networkInterface) {
+        super(new InetSocketAddress(0), groupAddress);
+        this.networkInterface = networkInterface;
+        this.protocolFamily = groupAddress.getAddress() instanceof Inet6Address ? StandardProtocolFamily.INET6 : StandardProtocolFamily.INET;
+    }
+
+    @Override
+    public void start() throws IOException {
+        retransmitHistory = new RetransmitHistory(recoveryWindow, RETRANSMIT_SUPPRESSION_NANOS);
+        super.start();
+        SharedScheduler.schedule(heartbeatTask, HEARTBEAT_INTERVAL_NANOS, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    protected DatagramChannel openChannel() throws IOException {
+        DatagramChannel channel = DatagramChannel.open(protocolFamily);
+        try {
+            channel.setOption(StandardSocketOptions.IP_MULTICAST_IF, networkInterface);
+            // The subscribers of the same host receive the datagrams too
+            channel.setOption(StandardSocketOptions.IP_MULTICAST_LOOP, true);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return channel;
+    }
+
+    @Override
+    protected void onDatagramWritten(long sequence, ByteBuffer datagram) {
+        retransmitHistory.add(sequence, datagram);
+        latestSequence = sequence;
+        if (!hasWrittenSinceHeartbeat) {
+            hasWrittenSinceHeartbeat = true;
+        }
+    }
+
+    private void sendHeartbeat() {
+        if (!isRunning()) {
+            return;
+        }
+        if (hasWrittenSinceHeartbeat) {
+            hasWrittenSinceHeartbeat = false;
+        } else {
+            heartbeatBuffer.clear();
+            heartbeatBuffer.putInt(ProtobufSerializer.DATAGRAM_HEARTBEAT_SIGNATURE).putLong(getSessionId()).putLong(latestSequence).flip();
+            try {
+                send(heartbeatBuffer, getRemoteAddress());
+            } catch (IOException e) {
+                LOGGER.debug("Unable to send heartbeat to " + getRemoteAddress(), e);
+            }
+        }
+        SharedScheduler.schedule(heartbeatTask, HEARTBEAT_INTERVAL_NANOS, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    protected void onDatagramReceived(SocketAddress sender, int signature, long senderSessionId, long sequence, ByteBuffer body) {
+        if (signature != ProtobufSerializer.DATAGRAM_NAK_SIGNATURE || body.remaining() < ProtobufSerializer.SEQUENCE_LENGTH) {
+            LOGGER.debug("Ignoring datagram of unknown kind from " + sender);
+            return;
+        }
+        if (senderSessionId != getSessionId()) {
+            // e.g. a subscriber that has not seen yet that the publisher has restarted
+            LOGGER.debug("Ignoring NAK for another session from " + sender);
+            return;
+        }
+        retransmit(sequence, body.getLong());
+    }
+
+    /**
+     * Retransmit the datagrams from the first sequence (inclusive) to the last sequence (exclusive), reporting the ones that are no longer in the history
+     */
+    private void retransmit(long fromSequence, long toSequence) {
+        long oldestSequence = retransmitHistory.getOldestSequence();
+        try {
+            if (fromSequence < oldestSequence) {
+                long lostSequence = Long.min(toSequence, oldestSequence);
+                lostBuffer.clear();
+                lostBuffer.putInt(ProtobufSerializer.DATAGRAM_LOST_SIGNATURE).putLong(getSessionId()).putLong(fromSequence).putLong(lostSequence).flip();
+                send(lostBuffer, getRemoteAddress());
+                fromSequence = lostSequence;
+            }
+            long endSequence = Long.min(toSequence, retransmitHistory.getLatestSequence() + 1);
+            long now = System.nanoTime();
+            for (long sequence = fromSequence; sequence < endSequence; sequence++) {
+                if (retransmitHistory.copy(sequence, retransmitBuffer, now)) {
+                    send(retransmitBuffer, getRemoteAddress());
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.debug("Unable to retransmit datagrams to " + getRemoteAddress(), e);
+        }
+    }
+
+    /**
+     * @param recoveryWindow the number of latest datagrams kept for retransmission
+     */
+    public void setRecoveryWindow(int recoveryWindow) {
+        this.recoveryWindow = recoveryWindow;
+    }
+
+}
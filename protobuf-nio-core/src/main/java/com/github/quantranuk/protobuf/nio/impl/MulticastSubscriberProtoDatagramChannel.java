@@ -0,0 +1,254 @@
+package com.github.quantranuk.protobuf.nio.impl;
+
+import com.github.quantranuk.protobuf.nio.serializer.ProtobufSerializer;
+import com.github.quantranuk.protobuf.nio.utils.DefaultSetting;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>A {@link com.github.quantranuk.protobuf.nio.ProtoDatagramChannel} receiving the messages of the publishers of a multicast group
+ * (see {@link MulticastPublisherProtoDatagramChannel}). Several subscribers of the same host can join the same group and port.</p>
+ * <p>The messages of each publisher are received in the order of its sequence. When a datagram is missing, the datagrams received after it are held
+ * (up to the recovery window) and the missing ones are requested from the publisher with a NAK, which is repeated until they are retransmitted.
+ * A gap is only reported to the handlers when the missing datagrams cannot be recovered: the publisher no longer has them, it does not answer,
+ * or the recovery window is full. A subscriber joining the group late starts from the first datagram it receives</p>
+ */
+public class MulticastSubscriberProtoDatagramChannel extends UdpProtoDatagramChannel {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MulticastSubscriberProtoDatagramChannel.class);
+    private static final long NAK_RETRY_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+    private static final int MAX_NAK_RETRIES = 5;
+
+    private final InetAddress group;
+    private final NetworkInterface networkInterface;
+    private final ProtocolFamily protocolFamily;
+    // The sequence of each publisher, only used by the reader
+    private final Map<SocketAddress, PublisherSequence> publisherSequences = new HashMap<>();
+    private final ByteBuffer nakBuffer = ByteBuffer.allocate(ProtobufSerializer.DATAGRAM_RANGE_LENGTH);
+    private int recoveryWindow = DefaultSetting.DEFAULT_MULTICAST_RECOVERY_WINDOW;
+
+    /**
+     * @param group the multicast group to join
+     * @param port the port of the group
+     * @param networkInterface the network interface to join the group on
+     */
+    public MulticastSubscriberProtoDatagramChannel(InetAddress group, int port, NetworkInterface networkInterface) {
+        super(new InetSocketAddress(port), null);
+        this.group = group;
+        this.networkInterface = networkInterface;
+        this.protocolFamily = group instanceof Inet6Address ? StandardProtocolFamily.INET6 : StandardProtocolFamily.INET;
+    }
+
+    @Override
+    protected DatagramChannel openChannel() throws IOException {
+        DatagramChannel channel = DatagramChannel.open(protocolFamily);
+        try {
+            channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return channel;
+    }
+
+    @Override
+    protected void bind(DatagramChannel channel) throws IOException {
+        super.bind(channel);
+        channel.join(group, networkInterface);
+    }
+
+    @Override
+    protected void onDatagramReceived(SocketAddress sender, int signature, long senderSessionId, long sequence, ByteBuffer body) {
+        switch (signature) {
+            case ProtobufSerializer.DATAGRAM_SIGNATURE:
+                onMessagesReceived(sender, getPublisherSequence(sender, senderSessionId, sequence), sequence, body);
+                break;
+            case ProtobufSerializer.DATAGRAM_HEARTBEAT_SIGNATURE:
+                PublisherSequence publisherSequence = getPublisherSequence(sender, senderSessionId, sequence + 1);
+                publisherSequence.latestSequence = Long.max(publisherSequence.latestSequence, sequence);
+                requestMissing(sender, publisherSequence);
+                break;
+            case ProtobufSerializer.DATAGRAM_LOST_SIGNATURE:
+                if (body.remaining() >= ProtobufSerializer.SEQUENCE_LENGTH) {
+                    onLost(sender, senderSessionId, sequence, body.getLong());
+                }
+                break;
+            default:
+                LOGGER.debug("Ignoring datagram of unknown kind from " + sender);
+                break;
+        }
+    }
+
+    /**
+     * @param firstSequence the next sequence expected if the publisher is new, or has restarted
+     */
+    private PublisherSequence getPublisherSequence(SocketAddress sender, long senderSessionId, long firstSequence) {
+        PublisherSequence publisherSequence = publisherSequences.get(sender);
+        if (publisherSequence == null || publisherSequence.sessionId != senderSessionId) {
+            // The datagrams sent before the subscriber has joined (or before the publisher has restarted) are not recovered
+            publisherSequence = new PublisherSequence(senderSessionId, firstSequence);
+            publisherSequences.put(sender, publisherSequence);
+        }
+        return publisherSequence;
+    }
+
+    private void onMessagesReceived(SocketAddress sender, PublisherSequence publisherSequence, long sequence, ByteBuffer frames) {
+        if (sequence < publisherSequence.expectedSequence || publisherSequence.heldDatagrams.containsKey(sequence)) {
+            // e.g. a retransmission requested by another subscriber
+            LOGGER.debug("Dropping stale datagram " + sequence + " from " + sender);
+            return;
+        }
+        if (sequence < publisherSequence.latestSequence && publisherSequence.nakCount > 1) {
+            // A missing datagram has been retransmitted: the publisher answers, the back-off starts over for the datagrams still missing
+            publisherSequence.nakCount = 1;
+        }
+        publisherSequence.latestSequence = Long.max(publisherSequence.latestSequence, sequence);
+        if (sequence == publisherSequence.expectedSequence) {
+            decodeFrames(sender, sequence, frames);
+            publisherSequence.expectedSequence++;
+            releaseHeldDatagrams(sender, publisherSequence);
+        } else {
+            ByteBuffer heldFrames = ByteBuffer.allocate(frames.remaining());
+            heldFrames.put(frames).flip();
+            publisherSequence.heldDatagrams.put(sequence, heldFrames);
+            while (publisherSequence.heldDatagrams.size() > recoveryWindow) {
+                skipMissing(sender, publisherSequence, Long.MAX_VALUE);
+            }
+        }
+        requestMissing(sender, publisherSequence);
+    }
+
+    private void releaseHeldDatagrams(SocketAddress sender, PublisherSequence publisherSequence) {
+        Map.Entry<Long, ByteBuffer> heldDatagram;
+        while ((heldDatagram = publisherSequence.heldDatagrams.firstEntry()) != null && heldDatagram.getKey() == publisherSequence.expectedSequence) {
+            publisherSequence.heldDatagrams.pollFirstEntry();
+            decodeFrames(sender, heldDatagram.getKey(), heldDatagram.getValue());
+            publisherSequence.expectedSequence++;
+        }
+    }
+
+    /**
+     * <p>Send a NAK for each run of missing datagrams. The NAKs are repeated with an exponential back-off until the missing datagrams are retransmitted,
+     * since the retransmissions can be lost too, or be queued behind a backlog of datagrams. Datagrams found missing in the meantime are requested
+     * straight away.</p>
+     * <p>Once the publisher has not answered the last retry, the first missing datagrams are skipped</p>
+     */
+    private void requestMissing(SocketAddress sender, PublisherSequence publisherSequence) {
+        long now = System.nanoTime();
+        while (publisherSequence.expectedSequence <= publisherSequence.latestSequence) {
+            if (publisherSequence.nakCount > 0 && now - publisherSequence.nakNanos < NAK_RETRY_NANOS << (publisherSequence.nakCount - 1)) {
+                if (publisherSequence.latestSequence >= publisherSequence.nakSequence) {
+                    sendNaks(sender, publisherSequence, publisherSequence.nakSequence);
+                }
+                return;
+            }
+            if (publisherSequence.nakCount <= MAX_NAK_RETRIES) {
+                sendNaks(sender, publisherSequence, publisherSequence.expectedSequence);
+                publisherSequence.nakCount++;
+                publisherSequence.nakNanos = now;
+                return;
+            }
+            LOGGER.debug("No retransmission from " + sender + " of datagram " + publisherSequence.expectedSequence);
+            skipMissing(sender, publisherSequence, Long.MAX_VALUE);
+        }
+        publisherSequence.nakCount = 0;
+    }
+
+    /**
+     * Send a NAK for each run of missing datagrams from the given sequence up to the latest one
+     */
+    private void sendNaks(SocketAddress sender, PublisherSequence publisherSequence, long fromSequence) {
+        long missingSequence = fromSequence;
+        for (long heldSequence : publisherSequence.heldDatagrams.tailMap(fromSequence).keySet()) {
+            if (heldSequence > missingSequence) {
+                sendNak(sender, publisherSequence.sessionId, missingSequence, heldSequence);
+            }
+            missingSequence = heldSequence + 1;
+        }
+        if (missingSequence <= publisherSequence.latestSequence) {
+            sendNak(sender, publisherSequence.sessionId, missingSequence, publisherSequence.latestSequence + 1);
+        }
+        publisherSequence.nakSequence = publisherSequence.latestSequence + 1;
+    }
+
+    private void sendNak(SocketAddress sender, long senderSessionId, long fromSequence, long toSequence) {
+        nakBuffer.clear();
+        nakBuffer.putInt(ProtobufSerializer.DATAGRAM_NAK_SIGNATURE).putLong(senderSessionId).putLong(fromSequence).putLong(toSequence).flip();
+        try {
+            send(nakBuffer, sender);
+        } catch (IOException e) {
+            LOGGER.debug("Unable to send NAK to " + sender, e);
+        }
+    }
+
+    private void onLost(SocketAddress sender, long senderSessionId, long fromSequence, long toSequence) {
+        PublisherSequence publisherSequence = publisherSequences.get(sender);
+        if (publisherSequence != null && publisherSequence.sessionId == senderSessionId && fromSequence <= publisherSequence.expectedSequence) {
+            skipMissing(sender, publisherSequence, toSequence);
+            requestMissing(sender, publisherSequence);
+        }
+    }
+
+    /**
+     * Give up on the first missing datagrams, up to the given sequence (exclusive), report them as a gap and release the datagrams held after them
+     */
+    private void skipMissing(SocketAddress sender, PublisherSequence publisherSequence, long toSequence) {
+        long endSequence = Long.min(publisherSequence.getMissingEndSequence(), toSequence);
+        if (endSequence <= publisherSequence.expectedSequence) {
+            return;
+        }
+        fireSequenceGap(sender, publisherSequence.expectedSequence, endSequence);
+        publisherSequence.expectedSequence = endSequence;
+        publisherSequence.nakCount = 0;
+        releaseHeldDatagrams(sender, publisherSequence);
+    }
+
+    /**
+     * @param recoveryWindow the maximum number of datagrams held after a missing one, until it is retransmitted
+     */
+    public void setRecoveryWindow(int recoveryWindow) {
+        this.recoveryWindow = recoveryWindow;
+    }
+
+    private static final class PublisherSequence {
+        private final long sessionId;
+        private final TreeMap<Long, ByteBuffer> heldDatagrams = new TreeMap<>();
+        private long expectedSequence;
+        // The latest sequence known to have been sent, from a datagram or a heartbeat
+        private long latestSequence;
+        // The number of NAKs sent for the first missing datagrams, the time of the last one, and the sequence up to which they have been requested
+        private int nakCount;
+        private long nakNanos;
+        private long nakSequence;
+
+        private PublisherSequence(long sessionId, long expectedSequence) {
+            this.sessionId = sessionId;
+            this.expectedSequence = expectedSequence;
+            this.latestSequence = expectedSequence - 1;
+        }
+
+        /**
+         * @return the sequence (exclusive) ending the first run of missing datagrams
+         */
+        private long getMissingEndSequence() {
+            return heldDatagrams.isEmpty() ? latestSequence + 1 : heldDatagrams.firstKey();
+        }
+    }
+
+}
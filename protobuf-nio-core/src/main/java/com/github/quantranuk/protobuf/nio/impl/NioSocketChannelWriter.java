@@ -0,0 +1,184 @@
+package com.github.quantranuk.protobuf.nio.impl;
+
+import com.google.protobuf.CodedOutputStream;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NotYetConnectedException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * <p>Drain the outbound message queue of a socket channel from the calling thread, one writer thread at a time.</p>
+ * <p>Batches are serialized into a direct write buffer. In non-blocking mode, on the thread of the event loop of the channel, the batches are written
+ * until the socket stops accepting bytes, in which case the writer waits for the channel to become writable again (OP_WRITE) instead of retrying.
+ * In blocking mode each write simply blocks until the whole buffer has been written.
+ * Without a selection key (e.g. on a shared memory connection) the owner of the writer resumes it once the channel can take bytes again</p>
+ */
+class NioSocketChannelWriter {
+
+    private final WritableByteChannel socketChannel;
+    private final ByteBuffer writeBuffer;
+    private final int writeBufferCapacity;
+    private final List<Object> messagesBeingWritten;
+    private final Consumer<Throwable> writeFailureHandler;
+    private OutboundMessageQueue outboundMessageQueue;
+    private SelectionKey selectionKey;
+    private ByteBuffer serializedFrame;
+    private boolean isWaitingForWritable;
+
+    /**
+     * @param writeFailureHandler called once the socket channel has failed to write, the outstanding messages have already been reported as failed
+     */
+    NioSocketChannelWriter(WritableByteChannel socketChannel, int writeBufferCapacity, Consumer<Throwable> writeFailureHandler) {
+        this.socketChannel = socketChannel;
+        this.writeBufferCapacity = writeBufferCapacity;
+        this.writeFailureHandler = writeFailureHandler;
+        this.messagesBeingWritten = new ArrayList<>();
+        this.writeBuffer = ByteBuffer.allocateDirect(writeBufferCapacity);
+        this.writeBuffer.flip();
+    }
+
+    void setOutboundMessageQueue(OutboundMessageQueue outboundMessageQueue) {
+        this.outboundMessageQueue = outboundMessageQueue;
+    }
+
+    /**
+     * @param selectionKey the selection key of the socket channel, once it has been registered with the event loop
+     */
+    void setSelectionKey(SelectionKey selectionKey) {
+        this.selectionKey = selectionKey;
+        if (isWaitingForWritable) {
+            selectionKey.interestOps(selectionKey.interestOps() | SelectionKey.OP_WRITE);
+        }
+    }
+
+    /**
+     * @return true if the channel could not take all the bytes of the last write, and the writer must be resumed once the channel is writable again
+     */
+    boolean isWaitingForWritable() {
+        return isWaitingForWritable;
+    }
+
+    /**
+     * Write the queued messages until the queue is empty or the socket channel is full. In non-blocking mode this must be called from the thread
+     * of the event loop, either when the writer is started or when the socket channel becomes writable again
+     */
+    void write() {
+        try {
+            if (!socketChannel.isOpen()) {
+                // e.g. a write task that has run after the channel was disconnected
+                throw new ClosedChannelException();
+            }
+            while (true) {
+                if (!writeBuffer()) {
+                    waitForWritable(true);
+                    return;
+                }
+                if (serializedFrame != null && serializedFrame.hasRemaining()) {
+                    fillNextChunk();
+                    continue;
+                }
+                serializedFrame = null;
+                if (!messagesBeingWritten.isEmpty()) {
+                    outboundMessageQueue.onMessagesWritten(messagesBeingWritten);
+                    messagesBeingWritten.clear();
+                }
+                if (!fillWriteBuffer() && outboundMessageQueue.stopWriting()) {
+                    waitForWritable(false);
+                    return;
+                }
+            }
+        } catch (IOException | NotYetConnectedException e) {
+            outboundMessageQueue.onMessagesFailed(messagesBeingWritten, e);
+            messagesBeingWritten.clear();
+            writeFailureHandler.accept(e);
+        }
+    }
+
+    /**
+     * Fail the messages being written once the socket channel has been closed, as a writer waiting for the channel to become writable is never resumed.
+     * This must be called from the thread that runs {@link #write()}
+     */
+    void close() {
+        if (isWaitingForWritable) {
+            write();
+        }
+    }
+
+    /**
+     * @return false if the socket channel could not accept all the bytes of the write buffer
+     */
+    private boolean writeBuffer() throws IOException {
+        while (writeBuffer.hasRemaining()) {
+            if (socketChannel.write(writeBuffer) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void waitForWritable(boolean isWaiting) {
+        if (isWaitingForWritable == isWaiting) {
+            return;
+        }
+        isWaitingForWritable = isWaiting;
+        if (selectionKey != null && selectionKey.isValid()) {
+            int interestOps = selectionKey.interestOps();
+            selectionKey.interestOps(isWaiting ? interestOps | SelectionKey.OP_WRITE : interestOps & ~SelectionKey.OP_WRITE);
+        }
+    }
+
+    /**
+     * @return false if there is nothing to write
+     */
+    private boolean fillWriteBuffer() throws IOException {
+        byte[] controlFrame = outboundMessageQueue.pollControlFrame();
+        if (controlFrame != null) {
+            fillSerializedFrame(controlFrame);
+            return true;
+        }
+        outboundMessageQueue.pollNextBatch(messagesBeingWritten, writeBufferCapacity);
+        if (messagesBeingWritten.isEmpty()) {
+            return false;
+        }
+        if (messagesBeingWritten.size() == 1) {
+            Object outboundEntry = messagesBeingWritten.get(0);
+            if (outboundMessageQueue.getSerializedSize(outboundEntry) > writeBufferCapacity) {
+                fillSerializedFrame(outboundMessageQueue.serialize(outboundEntry));
+                return true;
+            }
+        }
+
+        // Serialize the whole batch straight into the write buffer, the batch is guaranteed to fit
+        writeBuffer.clear();
+        CodedOutputStream output = CodedOutputStream.newInstance(writeBuffer);
+        for (Object outboundEntry : messagesBeingWritten) {
+            outboundMessageQueue.serialize(outboundEntry, output);
+        }
+        output.flush();
+        writeBuffer.flip();
+        return true;
+    }
+
+    /**
+     * A pre-serialized frame (e.g. a message that does not fit into the write buffer) is written in chunks through the write buffer
+     */
+    private void fillSerializedFrame(byte[] frame) {
+        serializedFrame = ByteBuffer.wrap(frame);
+        fillNextChunk();
+    }
+
+    private void fillNextChunk() {
+        writeBuffer.clear();
+        int chunkLength = Integer.min(writeBuffer.remaining(), serializedFrame.remaining());
+        writeBuffer.put(serializedFrame.array(), serializedFrame.position(), chunkLength);
+        serializedFrame.position(serializedFrame.position() + chunkLength);
+        writeBuffer.flip();
+    }
+
+}
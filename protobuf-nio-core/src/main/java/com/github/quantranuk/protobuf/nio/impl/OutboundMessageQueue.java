@@ -0,0 +1,620 @@
+package com.github.quantranuk.protobuf.nio.impl;
+
+import com.github.quantranuk.protobuf.nio.WritePolicy;
+import com.github.quantranuk.protobuf.nio.serializer.MessageTypeRegistry;
+import com.github.quantranuk.protobuf.nio.serializer.ProtobufSerializer;
+import com.github.quantranuk.protobuf.nio.utils.MpscChunkedQueue;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.Message;
+
+import java.io.IOException;
+import java.nio.channels.CompletionHandler;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * <p>The outgoing messages of a connection, independent of the transport writing them.</p>
+ * <p>Messages are queued directly from the calling threads. The writer is started (through the write trigger) according to the write policy and only when
+ * it is idle, after which it keeps draining the queue until it is empty. The queue also keeps track of the pending bytes for the writability watermarks,
+ * and reports the completion of the messages that need it. With flow control, the messages are held while the remote peer has not granted enough credits
+ * (see {@link FlowControlWindow}).</p>
+ * <p>The messages sent on logical streams are queued per stream (see {@link OutboundStream}). Once the first of them is sent, the writer takes turns between
+ * the streams that have messages, so that a stream sending large messages does not hold back the others. Until then, the messages are written straight from
+ * the queue of the default stream.</p>
+ * <p>{@link #poll()}, {@link #peek()} and the completion methods must only be called by the writer, which is a single thread at a time</p>
+ */
+final class OutboundMessageQueue {
+
+    // The bytes a stream of weight 1 can write on its turn
+    private static final int STREAM_QUANTUM_BYTES = 8 * 1024;
+
+    private final int maxMessageWriteQueueSize;
+    private final OutboundStream defaultStream;
+    private final Map<Integer, OutboundStream> streams = new ConcurrentHashMap<>();
+    private final MpscChunkedQueue<OutboundStream> readyStreams = new MpscChunkedQueue<>(Integer.MAX_VALUE);
+    private final Map<Integer, Integer> streamWeights;
+    private final MessageTypeRegistry typeRegistry;
+    private final WritePolicy writePolicy;
+    private final Runnable writeTrigger;
+    private final Executor notificationExecutor;
+    private final CompletionHandler<Long, Message> messageWriteCompletionHandler;
+    private final Consumer<Boolean> writabilityChangedHandler;
+    private final FlowControlWindow flowControlWindow;
+    private final AtomicBoolean isWritingInProgress = new AtomicBoolean();
+    private final AtomicBoolean isLingerScheduled = new AtomicBoolean();
+    private final AtomicLong pendingWriteBytes = new AtomicLong();
+    private final AtomicBoolean isWritable = new AtomicBoolean(true);
+    // The number of threads adding a message, which the queue waits for when it is closed
+    private final AtomicInteger addingThreadCount = new AtomicInteger();
+    private final AtomicBoolean isDrained = new AtomicBoolean();
+    private final CompletableFuture<List<Object>> unsentEntries = new CompletableFuture<>();
+    private volatile boolean isWriterStopped;
+    private volatile boolean isClosed;
+    private final long writeLowWatermark;
+    private final long writeHighWatermark;
+    private final Runnable lingerTask;
+    private final Runnable writabilityChangedTask;
+    private volatile boolean isMultiplexed;
+    // The size of the message held by the writer until the remote peer grants enough credits, 0 if none
+    private volatile int heldFrameSize;
+    private boolean isTypeRegistryAnnounced;
+    private boolean isNotifiedWritable = true;
+    // The stream whose turn it is, and the stream of the message returned by the last peek, only used by the writer
+    private OutboundStream currentStream;
+    private OutboundStream peekedStream;
+
+    /**
+     * @param writeTrigger starts the writer, it is called from any thread when the writer must start draining the queue
+     * @param streamWeights the weights of the streams that get more than one quantum of bytes on their turn, by stream id
+     * @param notificationExecutor the executor to notify writability changes detected outside of the writer, normally the thread of the writer
+     */
+    OutboundMessageQueue(int maxMessageWriteQueueSize, long writeLowWatermark, long writeHighWatermark, WritePolicy writePolicy, MessageTypeRegistry typeRegistry,
+                         int flowControlWindow, Map<Integer, Integer> streamWeights, Runnable writeTrigger, Executor notificationExecutor,
+                         CompletionHandler<Long, Message> messageWriteCompletionHandler, Consumer<Boolean> writabilityChangedHandler) {
+        this.maxMessageWriteQueueSize = maxMessageWriteQueueSize;
+        this.streamWeights = streamWeights;
+        this.defaultStream = newStream(ProtobufSerializer.DEFAULT_STREAM_ID);
+        this.writeLowWatermark = writeLowWatermark;
+        this.writeHighWatermark = writeHighWatermark;
+        this.writePolicy = writePolicy;
+        this.typeRegistry = typeRegistry;
+        this.isTypeRegistryAnnounced = typeRegistry == null;
+        this.flowControlWindow = new FlowControlWindow(flowControlWindow);
+        this.writeTrigger = writeTrigger;
+        this.notificationExecutor = notificationExecutor;
+        this.messageWriteCompletionHandler = messageWriteCompletionHandler;
+        this.writabilityChangedHandler = writabilityChangedHandler;
+        this.writabilityChangedTask = this::notifyWritabilityChanged;
+        this.lingerTask = () -> {
+            isLingerScheduled.set(false);
+            flush();
+        };
+    }
+
+    /**
+     * Queue a message without any completion notification
+     * @return false if the queue has been closed, see {@link #drainUnsent()}
+     */
+    boolean add(Message message) {
+        return enqueue(message);
+    }
+
+    /**
+     * Queue a message whose completion is reported to the message write completion handler and to the future (if not null)
+     * @return false if the queue has been closed, see {@link #drainUnsent()}
+     */
+    boolean add(Message message, CompletableFuture<Void> future) {
+        return enqueue(new PendingMessage(message, future));
+    }
+
+    /**
+     * Queue a message of a remote call, see {@link RpcMessage}
+     * @return false if the queue has been closed, see {@link #drainUnsent()}
+     */
+    boolean add(RpcMessage rpcMessage) {
+        return enqueue(rpcMessage);
+    }
+
+    /**
+     * Queue a message sent on a logical stream, see {@link StreamMessage}
+     * @return false if the queue has been closed, see {@link #drainUnsent()}
+     */
+    boolean add(StreamMessage streamMessage) {
+        return enqueue(streamMessage);
+    }
+
+    /**
+     * Queue an entry taken from the queue of another connection (see {@link #drainUnsent()}), keeping its completion notification
+     * @return false if the queue has been closed
+     */
+    boolean add(Object outboundEntry) {
+        return enqueue(outboundEntry);
+    }
+
+    private boolean enqueue(Object outboundEntry) {
+        OutboundStream stream = outboundEntry instanceof StreamMessage ? getStream(((StreamMessage) outboundEntry).streamId) : defaultStream;
+        int serializedSize = getSerializedSize(outboundEntry);
+        long pendingBytes;
+        addingThreadCount.incrementAndGet();
+        try {
+            if (isClosed) {
+                return false;
+            }
+            pendingBytes = pendingWriteBytes.addAndGet(serializedSize);
+            if (!stream.queue.offer(outboundEntry)) {
+                pendingWriteBytes.addAndGet(-serializedSize);
+                throw new IllegalStateException("Unable to accept more message due to outbound message queue is too large (" + stream.queue.size() + ")");
+            }
+        } finally {
+            addingThreadCount.decrementAndGet();
+        }
+        if (isMultiplexed) {
+            schedule(stream);
+        }
+        if (pendingBytes > writeHighWatermark && isWritable.get() && updateWritability()) {
+            notificationExecutor.execute(writabilityChangedTask);
+        }
+        switch (writePolicy.getMode()) {
+            case IMMEDIATE:
+                startWriting();
+                break;
+            case LINGER:
+                if (pendingBytes >= writePolicy.getLingerBytes()) {
+                    startWriting();
+                } else if (!isLingerScheduled.get() && isLingerScheduled.compareAndSet(false, true)) {
+                    // Scheduled even if the writer is busy, as it may go idle before it sees this message
+                    SharedScheduler.schedule(lingerTask, writePolicy.getLingerNanos(), TimeUnit.NANOSECONDS);
+                }
+                break;
+            default:
+                // Wait for an explicit flush
+                break;
+        }
+        return true;
+    }
+
+    private OutboundStream getStream(int streamId) {
+        OutboundStream stream = streams.get(streamId);
+        if (stream == null) {
+            stream = streams.computeIfAbsent(streamId, this::newStream);
+            if (!isMultiplexed) {
+                // From now on the writer takes turns between the streams, starting with the messages already queued on the default stream
+                isMultiplexed = true;
+                schedule(defaultStream);
+            }
+        }
+        return stream;
+    }
+
+    private OutboundStream newStream(int streamId) {
+        return new OutboundStream(streamId, maxMessageWriteQueueSize, STREAM_QUANTUM_BYTES * streamWeights.getOrDefault(streamId, 1));
+    }
+
+    private void schedule(OutboundStream stream) {
+        if (!stream.isScheduled.get() && stream.isScheduled.compareAndSet(false, true)) {
+            readyStreams.offer(stream);
+        }
+    }
+
+    /**
+     * Start writing the queued messages, unless the writer is already busy or there is nothing to write
+     */
+    void flush() {
+        if (hasQueuedMessages()) {
+            startWriting();
+        }
+    }
+
+    private boolean hasQueuedMessages() {
+        if (!defaultStream.queue.isEmpty()) {
+            return true;
+        }
+        if (isMultiplexed) {
+            for (OutboundStream stream : streams.values()) {
+                if (!stream.queue.isEmpty()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private void startWriting() {
+        if (!isWritingInProgress.get() && isWritingInProgress.compareAndSet(false, true)) {
+            try {
+                writeTrigger.run();
+            } catch (RejectedExecutionException e) {
+                // e.g. the write executor of a disconnected channel has been shut down, the writer never runs again
+                stopWriter();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Mark the writer as idle once the queue has been drained. A message queued concurrently either sees the idle flag and starts the writer,
+     * or is picked up here. Once the queue is closed, the writer stops for good and the queue is drained
+     * @return true if the writer is now idle, false if it should carry on draining the queue
+     */
+    boolean stopWriting() {
+        isWritingInProgress.set(false);
+        if (isClosed) {
+            if (isWritingInProgress.compareAndSet(false, true)) {
+                stopWriter();
+            }
+            return true;
+        }
+        return !hasFramesToWrite() || !isWritingInProgress.compareAndSet(false, true);
+    }
+
+    /**
+     * Called when the writer will not poll the queue anymore, the queue is drained if it has been closed in the meantime
+     */
+    private void stopWriter() {
+        isWriterStopped = true;
+        if (isClosed) {
+            drainClosedQueue();
+        }
+    }
+
+    private boolean hasFramesToWrite() {
+        if (flowControlWindow.hasControlFrame()) {
+            return true;
+        }
+        if (!isMultiplexed) {
+            return peek() != null;
+        }
+        // Another writer may already be running, so the turns of the streams are left alone
+        int frameSize = heldFrameSize;
+        return (frameSize == 0 || flowControlWindow.canSend(frameSize)) && hasQueuedMessages();
+    }
+
+    /**
+     * <p>Close the queue and take the messages that have not been handed over to the socket, once the connection is closed, so that they can be sent
+     * on another connection. The messages added from then on are rejected.</p>
+     * <p>The writer is stopped for good. If it is still busy writing to the closed socket, the messages are taken once it has failed or stopped,
+     * on its thread</p>
+     * @return the future completing with the outbound entries, in the order they have been queued on each stream
+     */
+    CompletableFuture<List<Object>> drainUnsent() {
+        isClosed = true;
+        // A message being added concurrently is either rejected or queued before the queue is drained
+        while (addingThreadCount.get() != 0) {
+            Thread.onSpinWait();
+        }
+        if (isWriterStopped || isWritingInProgress.compareAndSet(false, true)) {
+            stopWriter();
+        }
+        return unsentEntries;
+    }
+
+    /**
+     * Drain the closed queue once the writer has stopped, which is seen by either the thread closing the queue or the writer, or both
+     */
+    private void drainClosedQueue() {
+        if (!isDrained.compareAndSet(false, true)) {
+            return;
+        }
+        List<Object> unsent = new ArrayList<>();
+        long unsentBytes = 0;
+        unsentBytes += drainUnsent(defaultStream, unsent);
+        for (OutboundStream stream : streams.values()) {
+            unsentBytes += drainUnsent(stream, unsent);
+        }
+        pendingWriteBytes.addAndGet(-unsentBytes);
+        unsentEntries.complete(unsent);
+    }
+
+    private long drainUnsent(OutboundStream stream, List<Object> unsent) {
+        long unsentBytes = 0;
+        Object outboundEntry;
+        while ((outboundEntry = stream.queue.poll()) != null) {
+            unsent.add(outboundEntry);
+            unsentBytes += getSerializedSize(outboundEntry);
+        }
+        return unsentBytes;
+    }
+
+    /**
+     * @return the next control frame to write before any message, or null if there is none. The handshake frame announcing the type registry comes first,
+     * as the type registry must reach the remote peer before the first message that uses a type id, then the flow control frames
+     */
+    byte[] pollControlFrame() {
+        if (!isTypeRegistryAnnounced) {
+            isTypeRegistryAnnounced = true;
+            return ProtobufSerializer.serializeTypeRegistry(typeRegistry);
+        }
+        return flowControlWindow.pollControlFrame();
+    }
+
+    /**
+     * Start the writer to announce the flow control window, once the connection is established
+     */
+    void announceFlowControlWindow() {
+        if (flowControlWindow.hasControlFrame()) {
+            startWriting();
+        }
+    }
+
+    /**
+     * Called by the reader when the remote peer has announced its flow control window
+     */
+    void onFlowControlWindowAnnounced(int window) {
+        if (flowControlWindow.onWindowAnnounced(window)) {
+            startWriting();
+        }
+    }
+
+    /**
+     * Called by the reader when the remote peer has granted credits, to send the messages held so far
+     */
+    void onFlowControlCreditGranted(int credit) {
+        flowControlWindow.onCreditGranted(credit);
+        flush();
+    }
+
+    /**
+     * Called once a received frame has been consumed, so that its bytes can be granted back to the remote peer
+     */
+    void onFrameConsumed(int frameLength) {
+        if (flowControlWindow.onConsumed(frameLength)) {
+            startWriting();
+        }
+    }
+
+    /**
+     * Remove the message returned by the last {@link #peek()}
+     */
+    Object poll() {
+        OutboundStream stream = peekedStream;
+        Object outboundEntry = stream == null ? null : stream.queue.poll();
+        if (outboundEntry != null) {
+            onPolled(stream, outboundEntry);
+        }
+        return outboundEntry;
+    }
+
+    /**
+     * @return the next message, or null if the queue is empty or if the remote peer has not granted enough credits to send it
+     */
+    Object peek() {
+        OutboundStream stream = selectStream();
+        Object outboundEntry = stream == null ? null : stream.queue.peek();
+        peekedStream = stream;
+        if (outboundEntry == null || flowControlWindow.isSendUnlimited() || canSend(getSerializedSize(outboundEntry))) {
+            return outboundEntry;
+        }
+        return null;
+    }
+
+    /**
+     * <p>Get the stream to write the next message from. Until the first message is sent on a logical stream, this is always the default stream.</p>
+     * <p>Then the streams that have messages take turns (deficit round robin): the stream whose turn it is keeps being selected as long as its next
+     * message fits into its deficit, after which it goes back to the end of the ready streams and the next one gets its quantum added to its deficit.
+     * A stream that has no more messages loses its deficit and is removed from the ready streams, until a message is queued on it again</p>
+     * @return the stream, or null if no stream has messages
+     */
+    private OutboundStream selectStream() {
+        if (!isMultiplexed) {
+            return defaultStream;
+        }
+        while (true) {
+            OutboundStream stream = currentStream;
+            if (stream == null) {
+                stream = readyStreams.poll();
+                if (stream == null) {
+                    return null;
+                }
+                stream.deficit += stream.quantum;
+                currentStream = stream;
+            }
+            Object outboundEntry = stream.queue.peek();
+            if (outboundEntry == null) {
+                currentStream = null;
+                stream.deficit = 0;
+                stream.isScheduled.set(false);
+                // A message queued in the meantime may have missed the flag
+                if (!stream.queue.isEmpty()) {
+                    schedule(stream);
+                }
+            } else if (getSerializedSize(outboundEntry) > stream.deficit) {
+                currentStream = null;
+                readyStreams.offer(stream);
+            } else {
+                return stream;
+            }
+        }
+    }
+
+    private boolean canSend(int serializedSize) {
+        if (flowControlWindow.canSend(serializedSize)) {
+            if (heldFrameSize != 0) {
+                heldFrameSize = 0;
+            }
+            return true;
+        }
+        heldFrameSize = serializedSize;
+        return false;
+    }
+
+    private void onPolled(OutboundStream stream, Object outboundEntry) {
+        boolean isSendUnlimited = flowControlWindow.isSendUnlimited();
+        if (stream == currentStream || !isSendUnlimited) {
+            int serializedSize = getSerializedSize(outboundEntry);
+            if (stream == currentStream) {
+                stream.deficit -= serializedSize;
+            }
+            if (!isSendUnlimited) {
+                flowControlWindow.onSent(serializedSize);
+            }
+        }
+    }
+
+    /**
+     * Poll as many messages as fit into the write buffer (and into the credits granted by the remote peer), or a single message if it does not fit
+     */
+    void pollNextBatch(List<Object> batch, int writeBufferCapacity) {
+        int bytesToWrite = 0;
+        batch.clear();
+        boolean isSendUnlimited = flowControlWindow.isSendUnlimited();
+        OutboundStream stream;
+        Object outboundEntry;
+        while ((stream = selectStream()) != null && (outboundEntry = stream.queue.peek()) != null) {
+            int serializedSize = getSerializedSize(outboundEntry);
+            if ((!batch.isEmpty() && bytesToWrite + serializedSize >= writeBufferCapacity) || (!isSendUnlimited && !canSend(serializedSize))) {
+                break;
+            }
+            stream.queue.poll();
+            if (stream == currentStream) {
+                stream.deficit -= serializedSize;
+            }
+            if (!isSendUnlimited) {
+                flowControlWindow.onSent(serializedSize);
+            }
+            batch.add(outboundEntry);
+            bytesToWrite += serializedSize;
+        }
+    }
+
+    int getSerializedSize(Object outboundEntry) {
+        if (outboundEntry instanceof RpcMessage) {
+            return ProtobufSerializer.getRpcSerializedSize(((RpcMessage) outboundEntry).message, typeRegistry);
+        }
+        if (outboundEntry instanceof StreamMessage) {
+            return ProtobufSerializer.getStreamSerializedSize(((StreamMessage) outboundEntry).message, typeRegistry);
+        }
+        return ProtobufSerializer.getSerializedSize(PendingMessage.getMessage(outboundEntry), typeRegistry);
+    }
+
+    /**
+     * Serialize an outbound entry into an output stream with at least {@link #getSerializedSize(Object)} bytes left
+     */
+    void serialize(Object outboundEntry, CodedOutputStream output) throws IOException {
+        if (outboundEntry instanceof RpcMessage) {
+            RpcMessage rpcMessage = (RpcMessage) outboundEntry;
+            ProtobufSerializer.serializeRpc(rpcMessage.message, rpcMessage.rpcKind, rpcMessage.correlationId, typeRegistry, output);
+        } else if (outboundEntry instanceof StreamMessage) {
+            StreamMessage streamMessage = (StreamMessage) outboundEntry;
+            ProtobufSerializer.serializeStream(streamMessage.message, streamMessage.streamId, typeRegistry, output);
+        } else {
+            ProtobufSerializer.serialize(PendingMessage.getMessage(outboundEntry), typeRegistry, output);
+        }
+    }
+
+    /**
+     * Serialize an outbound entry into its own frame, e.g. when it does not fit into the write buffer
+     */
+    byte[] serialize(Object outboundEntry) {
+        if (outboundEntry instanceof RpcMessage) {
+            RpcMessage rpcMessage = (RpcMessage) outboundEntry;
+            return ProtobufSerializer.serializeRpc(rpcMessage.message, rpcMessage.rpcKind, rpcMessage.correlationId, typeRegistry);
+        }
+        if (outboundEntry instanceof StreamMessage) {
+            StreamMessage streamMessage = (StreamMessage) outboundEntry;
+            return ProtobufSerializer.serializeStream(streamMessage.message, streamMessage.streamId, typeRegistry);
+        }
+        return ProtobufSerializer.serialize(PendingMessage.getMessage(outboundEntry), typeRegistry);
+    }
+
+    boolean isWritable() {
+        return isWritable.get();
+    }
+
+    long getPendingWriteBytes() {
+        return pendingWriteBytes.get();
+    }
+
+    /**
+     * Report the messages that have been written, and release their bytes
+     */
+    void onMessagesWritten(List<Object> outboundEntries) {
+        long writtenBytes = 0;
+        for (Object outboundEntry : outboundEntries) {
+            if (outboundEntry instanceof PendingMessage) {
+                PendingMessage pendingMessage = (PendingMessage) outboundEntry;
+                int serializedSize = ProtobufSerializer.getSerializedSize(pendingMessage.message, typeRegistry);
+                writtenBytes += serializedSize;
+                messageWriteCompletionHandler.completed((long) serializedSize, pendingMessage.message);
+                if (pendingMessage.future != null) {
+                    pendingMessage.future.complete(null);
+                }
+            } else {
+                int serializedSize = getSerializedSize(outboundEntry);
+                writtenBytes += serializedSize;
+                if (outboundEntry instanceof StreamMessage && ((StreamMessage) outboundEntry).isReported) {
+                    messageWriteCompletionHandler.completed((long) serializedSize, ((StreamMessage) outboundEntry).message);
+                }
+            }
+        }
+        releasePendingBytes(writtenBytes);
+    }
+
+    /**
+     * Report the messages that have failed to be written, and release their bytes
+     */
+    void onMessagesFailed(List<Object> outboundEntries, Throwable exc) {
+        long failedBytes = 0;
+        for (Object outboundEntry : outboundEntries) {
+            failedBytes += getSerializedSize(outboundEntry);
+            if (outboundEntry instanceof PendingMessage) {
+                PendingMessage pendingMessage = (PendingMessage) outboundEntry;
+                messageWriteCompletionHandler.failed(exc, pendingMessage.message);
+                if (pendingMessage.future != null) {
+                    pendingMessage.future.completeExceptionally(exc);
+                }
+            } else if (outboundEntry instanceof StreamMessage && ((StreamMessage) outboundEntry).isReported) {
+                messageWriteCompletionHandler.failed(exc, ((StreamMessage) outboundEntry).message);
+            }
+        }
+        releasePendingBytes(failedBytes);
+        // The writers never poll again once they have failed
+        stopWriter();
+    }
+
+    /**
+     * Flip the writability flag if the pending bytes have crossed one of the watermarks. The counter is re-checked after each flip,
+     * since it may have moved the other way while the flag was being changed, so the flag can never be stuck on a stale value.
+     * @return true if the flag has been changed
+     */
+    private boolean updateWritability() {
+        boolean isChanged = false;
+        while (true) {
+            long pendingBytes = pendingWriteBytes.get();
+            if ((pendingBytes > writeHighWatermark && isWritable.compareAndSet(true, false))
+                    || (pendingBytes < writeLowWatermark && isWritable.compareAndSet(false, true))) {
+                isChanged = true;
+            } else {
+                return isChanged;
+            }
+        }
+    }
+
+    /**
+     * Notifications carry the latest state, so that the handler never sees the transitions out of order
+     */
+    private synchronized void notifyWritabilityChanged() {
+        boolean writable = isWritable.get();
+        if (writable != isNotifiedWritable) {
+            isNotifiedWritable = writable;
+            writabilityChangedHandler.accept(writable);
+        }
+    }
+
+    private void releasePendingBytes(long bytes) {
+        long pendingBytes = pendingWriteBytes.addAndGet(-bytes);
+        if (pendingBytes < writeLowWatermark && !isWritable.get() && updateWritability()) {
+            notifyWritabilityChanged();
+        }
+    }
+
+}
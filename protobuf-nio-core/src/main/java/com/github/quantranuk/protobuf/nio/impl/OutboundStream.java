@@ -0,0 +1,27 @@
+package com.github.quantranuk.protobuf.nio.impl;
+
+import com.github.quantranuk.protobuf.nio.utils.MpscChunkedQueue;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * <p>The outgoing messages of one logical stream of a connection, see {@link OutboundMessageQueue}.</p>
+ * <p>The writer takes turns between the streams that have messages (deficit round robin): on its turn, a stream gets its quantum of bytes added to
+ * its deficit, and its messages are written as long as they fit into the deficit</p>
+ */
+final class OutboundStream {
+
+    final int streamId;
+    final MpscChunkedQueue<Object> queue;
+    final int quantum;
+    // Set while the stream is waiting for its turn or being written, so that it is scheduled only once
+    final AtomicBoolean isScheduled = new AtomicBoolean();
+    // Only used by the writer
+    long deficit;
+
+    OutboundStream(int streamId, int maxMessageWriteQueueSize, int quantum) {
+        this.streamId = streamId;
+        this.queue = new MpscChunkedQueue<>(maxMessageWriteQueueSize);
+        this.quantum = quantum;
+    }
+}
@@ -0,0 +1,30 @@
+package com.github.quantranuk.protobuf.nio.impl;
+
+import com.google.protobuf.Message;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * An outgoing message whose completion must be reported, either to the message sent/send failure handlers of the channel or to a future.
+ * Messages sent without any completion notification are queued as they are, without this wrapper.
+ */
+final class PendingMessage {
+
+    final Message message;
+    final CompletableFuture<Void> future;
+
+    PendingMessage(Message message, CompletableFuture<Void> future) {
+        this.message = message;
+        this.future = future;
+    }
+
+    static Message getMessage(Object outboundEntry) {
+        if (outboundEntry instanceof PendingMessage) {
+            return ((PendingMessage) outboundEntry).message;
+        }
+        if (outboundEntry instanceof StreamMessage) {
+            return ((StreamMessage) outboundEntry).message;
+        }
+        return outboundEntry instanceof RpcMessage ? ((RpcMessage) outboundEntry).message : (Message) outboundEntry;
+    }
+}
@@ -0,0 +1,277 @@
+package com.github.quantranuk.protobuf.nio.impl;
+
+import com.github.quantranuk.protobuf.nio.PoolDistribution;
+import com.github.quantranuk.protobuf.nio.ProtoSocketChannel;
+import com.github.quantranuk.protobuf.nio.handlers.ConnectionHandler;
+import com.github.quantranuk.protobuf.nio.handlers.DisconnectionHandler;
+import com.github.quantranuk.protobuf.nio.handlers.MessageReceivedHandler;
+import com.github.quantranuk.protobuf.nio.handlers.MessageSendFailureHandler;
+import com.github.quantranuk.protobuf.nio.handlers.MessageSentHandler;
+import com.github.quantranuk.protobuf.nio.handlers.StreamMessageReceivedHandler;
+import com.github.quantranuk.protobuf.nio.handlers.WritabilityChangedHandler;
+import com.github.quantranuk.protobuf.nio.serializer.ProtobufSerializer;
+import com.google.protobuf.Message;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jakarta.annotation.PreDestroy;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * <p>A {@link ProtoSocketChannel} spreading the messages it sends across several connections to the same server, according to a {@link PoolDistribution}.</p>
+ * <p>Each connection has its own outbound queue and writer, so that a single producer is not limited by the throughput of one socket.
+ * The messages of a logical stream (other than the default stream) always go through the same connection, so that they stay in order.
+ * The handlers are registered on every connection of the pool, and are called for each of them</p>
+ */
+public class ProtoSocketChannelPool implements ProtoSocketChannel {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ProtoSocketChannelPool.class);
+
+    private final ProtoSocketChannel[] channels;
+    private final PoolDistribution poolDistribution;
+    private final Function<Message, ?> keyFunction;
+    private final AtomicInteger nextChannelIndex = new AtomicInteger();
+
+    public ProtoSocketChannelPool(List<? extends ProtoSocketChannel> channels, PoolDistribution poolDistribution) {
+        if (channels.isEmpty()) {
+            throw new IllegalArgumentException("A pool needs at least one channel");
+        }
+        this.channels = channels.toArray(new ProtoSocketChannel[0]);
+        this.poolDistribution = poolDistribution;
+        this.keyFunction = poolDistribution.getKeyFunction();
+    }
+
+    /**
+     * Connect all the channels of the pool in parallel, and block until they are all connected or have failed to connect
+     */
+    @Override
+    public void connect() {
+        try {
+            connectAsync().get();
+        } catch (InterruptedException e) {
+            LOGGER.debug("Interrupted while connecting the pool", e);
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            // Already logged by the channel that has failed to connect
+        }
+    }
+
+    /**
+     * @return the future completing once all the channels of the pool are connected, or failing as soon as one of them fails to connect
+     */
+    @Override
+    public CompletableFuture<Void> connectAsync() {
+        CompletableFuture<?>[] connectFutures = new CompletableFuture<?>[channels.length];
+        for (int i = 0; i < channels.length; i++) {
+            connectFutures[i] = channels[i].connectAsync();
+        }
+        return CompletableFuture.allOf(connectFutures);
+    }
+
+    @Override
+    @PreDestroy
+    public void disconnect() {
+        for (ProtoSocketChannel channel : channels) {
+            channel.disconnect();
+        }
+    }
+
+    private ProtoSocketChannel selectChannel(Message message) {
+        switch (poolDistribution.getMode()) {
+            case LEAST_PENDING_BYTES:
+                return selectLeastPendingBytesChannel();
+            case KEY_HASH:
+                return channels[Math.floorMod(keyFunction.apply(message).hashCode(), channels.length)];
+            default:
+                return channels[Math.floorMod(nextChannelIndex.getAndIncrement(), channels.length)];
+        }
+    }
+
+    private ProtoSocketChannel selectLeastPendingBytesChannel() {
+        // Start from a different channel every time, so that idle channels share the load instead of the first one taking it all
+        int startIndex = Math.floorMod(nextChannelIndex.getAndIncrement(), channels.length);
+        ProtoSocketChannel selectedChannel = channels[startIndex];
+        long selectedPendingBytes = selectedChannel.getPendingWriteBytes();
+        for (int i = 1; i < channels.length && selectedPendingBytes > 0; i++) {
+            ProtoSocketChannel channel = channels[(startIndex + i) % channels.length];
+            long pendingBytes = channel.getPendingWriteBytes();
+            if (pendingBytes < selectedPendingBytes) {
+                selectedChannel = channel;
+                selectedPendingBytes = pendingBytes;
+            }
+        }
+        return selectedChannel;
+    }
+
+    @Override
+    public void sendMessage(Message message) {
+        selectChannel(message).sendMessage(message);
+    }
+
+    @Override
+    public CompletableFuture<Void> sendAsync(Message message) {
+        return selectChannel(message).sendAsync(message);
+    }
+
+    @Override
+    public void sendAndForget(Message message) {
+        selectChannel(message).sendAndForget(message);
+    }
+
+    @Override
+    public void sendMessage(int streamId, Message message) {
+        if (streamId == ProtobufSerializer.DEFAULT_STREAM_ID) {
+            sendMessage(message);
+        } else {
+            channels[Math.floorMod(streamId, channels.length)].sendMessage(streamId, message);
+        }
+    }
+
+    @Override
+    public <R extends Message> CompletableFuture<R> call(Message request, long timeout, TimeUnit unit) {
+        return selectChannel(request).call(request, timeout, unit);
+    }
+
+    @Override
+    public void flush() {
+        for (ProtoSocketChannel channel : channels) {
+            channel.flush();
+        }
+    }
+
+    /**
+     * @return true if all the channels of the pool are writable, as a message may be sent through any of them
+     */
+    @Override
+    public boolean isWritable() {
+        for (ProtoSocketChannel channel : channels) {
+            if (!channel.isWritable()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the pending bytes of all the channels of the pool
+     */
+    @Override
+    public long getPendingWriteBytes() {
+        long pendingWriteBytes = 0;
+        for (ProtoSocketChannel channel : channels) {
+            pendingWriteBytes += channel.getPendingWriteBytes();
+        }
+        return pendingWriteBytes;
+    }
+
+    /**
+     * @return the number of channels of the pool
+     */
+    public int getPoolSize() {
+        return channels.length;
+    }
+
+    @Override
+    public void addConnectionHandler(ConnectionHandler handler) {
+        for (ProtoSocketChannel channel : channels) {
+            channel.addConnectionHandler(handler);
+        }
+    }
+
+    @Override
+    public void removeConnectionHandler(ConnectionHandler handler) {
+        for (ProtoSocketChannel channel : channels) {
+            channel.removeConnectionHandler(handler);
+        }
+    }
+
+    @Override
+    public void addDisconnectionHandler(DisconnectionHandler handler) {
+        for (ProtoSocketChannel channel : channels) {
+            channel.addDisconnectionHandler(handler);
+        }
+    }
+
+    @Override
+    public void removeDisconnectionHandler(DisconnectionHandler handler) {
+        for (ProtoSocketChannel channel : channels) {
+            channel.removeDisconnectionHandler(handler);
+        }
+    }
+
+    @Override
+    public void addMessageReceivedHandler(MessageReceivedHandler handler) {
+        for (ProtoSocketChannel channel : channels) {
+            channel.addMessageReceivedHandler(handler);
+        }
+    }
+
+    @Override
+    public void removeMessageReceivedHandler(MessageReceivedHandler handler) {
+        for (ProtoSocketChannel channel : channels) {
+            channel.removeMessageReceivedHandler(handler);
+        }
+    }
+
+    @Override
+    public void addStreamMessageReceivedHandler(StreamMessageReceivedHandler handler) {
+        for (ProtoSocketChannel channel : channels) {
+            channel.addStreamMessageReceivedHandler(handler);
+        }
+    }
+
+    @Override
+    public void removeStreamMessageReceivedHandler(StreamMessageReceivedHandler handler) {
+        for (ProtoSocketChannel channel : channels) {
+            channel.removeStreamMessageReceivedHandler(handler);
+        }
+    }
+
+    @Override
+    public void addMessageSentHandler(MessageSentHandler handler) {
+        for (ProtoSocketChannel channel : channels) {
+            channel.addMessageSentHandler(handler);
+        }
+    }
+
+    @Override
+    public void removeMessageSentHandler(MessageSentHandler handler) {
+        for (ProtoSocketChannel channel : channels) {
+            channel.removeMessageSentHandler(handler);
+        }
+    }
+
+    @Override
+    public void addMessageSendFailureHandler(MessageSendFailureHandler handler) {
+        for (ProtoSocketChannel channel : channels) {
+            channel.addMessageSendFailureHandler(handler);
+        }
+    }
+
+    @Override
+    public void removeMessageSendFailureHandler(MessageSendFailureHandler handler) {
+        for (ProtoSocketChannel channel : channels) {
+            channel.removeMessageSendFailureHandler(handler);
+        }
+    }
+
+    @Override
+    public void addWritabilityChangedHandler(WritabilityChangedHandler handler) {
+        for (ProtoSocketChannel channel : channels) {
+            channel.addWritabilityChangedHandler(handler);
+        }
+    }
+
+    @Override
+    public void removeWritabilityChangedHandler(WritabilityChangedHandler handler) {
+        for (ProtoSocketChannel channel : channels) {
+            channel.removeWritabilityChangedHandler(handler);
+        }
+    }
+
+}
@@ -0,0 +1,508 @@
+package com.github.quantranuk.protobuf.nio.impl;
+
+import com.github.quantranuk.protobuf.nio.ProtoSocketChannel;
+import com.github.quantranuk.protobuf.nio.ReconnectPolicy;
+import com.github.quantranuk.protobuf.nio.handlers.ConnectionHandler;
+import com.github.quantranuk.protobuf.nio.handlers.DisconnectionHandler;
+import com.github.quantranuk.protobuf.nio.handlers.MessageReceivedHandler;
+import com.github.quantranuk.protobuf.nio.handlers.MessageSendFailureHandler;
+import com.github.quantranuk.protobuf.nio.handlers.MessageSentHandler;
+import com.github.quantranuk.protobuf.nio.handlers.StreamMessageReceivedHandler;
+import com.github.quantranuk.protobuf.nio.handlers.WritabilityChangedHandler;
+import com.github.quantranuk.protobuf.nio.serializer.ProtobufSerializer;
+import com.github.quantranuk.protobuf.nio.utils.MpscChunkedQueue;
+import com.google.protobuf.Message;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jakarta.annotation.PreDestroy;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * <p>A {@link ProtoSocketChannel} that reconnects according to a {@link ReconnectPolicy} once its connection is lost.</p>
+ * <p>Each connection is a new channel of the underlying transport. While there is no connection, the messages sent are kept (up to the max pending
+ * messages of the policy) together with the messages the lost connection had not handed over to its socket yet, and they are all replayed in order
+ * once the client is connected again, before the connection handlers are called. Messages that were being written when the connection was lost
+ * are reported to the message send failure handlers instead, as they may have partly reached the server</p>
+ */
+public class ReconnectingProtoSocketChannel implements ProtoSocketChannel {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReconnectingProtoSocketChannel.class);
+
+    private final List<ConnectionHandler> connectionHandlers = new CopyOnWriteArrayList<>();
+    private final List<DisconnectionHandler> disconnectionHandlers = new CopyOnWriteArrayList<>();
+    private final List<MessageReceivedHandler> messageReceivedHandlers = new CopyOnWriteArrayList<>();
+    private final List<StreamMessageReceivedHandler> streamMessageReceivedHandlers = new CopyOnWriteArrayList<>();
+    private final List<MessageSentHandler> messageSentHandlers = new CopyOnWriteArrayList<>();
+    private final List<MessageSendFailureHandler> messageSendFailureHandlers = new CopyOnWriteArrayList<>();
+    private final List<WritabilityChangedHandler> writabilityChangedHandlers = new CopyOnWriteArrayList<>();
+    private final SocketAddress socketAddress;
+    private final Supplier<AbstractProtoSocketChannel> channelFactory;
+    private final ReconnectPolicy reconnectPolicy;
+    private final MpscChunkedQueue<Object> pendingMessages;
+    private final CompletableFuture<Void> connectFuture = new CompletableFuture<>();
+    private final AtomicBoolean isConnectStarted = new AtomicBoolean();
+    private final AtomicReference<AbstractProtoSocketChannel> connectedChannel = new AtomicReference<>();
+
+    // Guards the consumer side of the pending messages, and the switch to a new connection
+    private final Object lock = new Object();
+    private volatile boolean isStopped = false;
+    private volatile AbstractProtoSocketChannel channel;
+    private volatile ScheduledFuture<?> scheduledAttempt;
+    // The messages the lost connection has not written, available once its writer has stopped
+    private CompletableFuture<List<Object>> lostMessages;
+    // Only one attempt is in progress at a time, but the attempts run on the scheduler and their outcome on the thread completing the connection
+    private volatile int failedAttempts;
+
+    /**
+     * @param channelFactory creates and initializes a new channel of the underlying transport for each connection
+     */
+    public ReconnectingProtoSocketChannel(SocketAddress socketAddress, Supplier<AbstractProtoSocketChannel> channelFactory, ReconnectPolicy reconnectPolicy) {
+        if (!reconnectPolicy.isEnabled()) {
+            throw new IllegalArgumentException("Reconnection is disabled by the policy " + reconnectPolicy);
+        }
+        this.socketAddress = socketAddress;
+        this.channelFactory = channelFactory;
+        this.reconnectPolicy = reconnectPolicy;
+        this.pendingMessages = new MpscChunkedQueue<>(reconnectPolicy.getMaxPendingMessages());
+    }
+
+    /**
+     * Block until the client is connected for the first time, the attempts that fail are retried according to the reconnect policy
+     */
+    @Override
+    public void connect() {
+        try {
+            connectAsync().get();
+        } catch (InterruptedException e) {
+            LOGGER.debug("Interrupted while connecting to " + socketAddress, e);
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            LOGGER.debug("Disconnected while connecting to " + socketAddress, e);
+        }
+    }
+
+    /**
+     * @return the future completing once the client is connected for the first time, the attempts that fail are retried according to the reconnect policy.
+     * The future only fails if the client is disconnected before
+     */
+    @Override
+    public CompletableFuture<Void> connectAsync() {
+        if (isStopped) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Socket channel " + socketAddress + " is closed"));
+        }
+        if (isConnectStarted.compareAndSet(false, true)) {
+            attemptConnect();
+        }
+        return connectFuture;
+    }
+
+    private void attemptConnect() {
+        if (isStopped) {
+            return;
+        }
+        AbstractProtoSocketChannel newChannel;
+        try {
+            newChannel = channelFactory.get();
+        } catch (RuntimeException e) {
+            LOGGER.error("Unable to create socket channel to " + socketAddress, e);
+            scheduleAttempt();
+            return;
+        }
+        newChannel.addDisconnectionHandler(address -> onChannelDisconnected(newChannel));
+        newChannel.addMessageReceivedHandler((address, message) -> messageReceivedHandlers.forEach(handler -> handler.onMessageReceived(address, message)));
+        newChannel.addStreamMessageReceivedHandler((address, streamId, message) ->
+                streamMessageReceivedHandlers.forEach(handler -> handler.onMessageReceived(address, streamId, message)));
+        newChannel.addMessageSentHandler((address, message) -> messageSentHandlers.forEach(handler -> handler.onMessageSent(address, message)));
+        newChannel.addMessageSendFailureHandler((address, message, t) -> messageSendFailureHandlers.forEach(handler -> handler.onMessageSendFailure(address, message, t)));
+        newChannel.addWritabilityChangedHandler((address, isWritable) -> writabilityChangedHandlers.forEach(handler -> handler.onWritabilityChanged(address, isWritable)));
+        channel = newChannel;
+        if (isStopped) {
+            newChannel.disconnect();
+            return;
+        }
+        newChannel.connectAsync().whenComplete((ignored, t) -> {
+            if (t == null) {
+                onChannelConnected(newChannel);
+            } else {
+                scheduleAttempt();
+            }
+        });
+    }
+
+    private void scheduleAttempt() {
+        if (isStopped) {
+            return;
+        }
+        long backoffNanos = reconnectPolicy.getBackoffNanos(failedAttempts++);
+        LOGGER.info("Reconnecting to " + socketAddress + " in " + TimeUnit.NANOSECONDS.toMillis(backoffNanos) + " ms");
+        scheduledAttempt = SharedScheduler.schedule(this::attemptConnect, backoffNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * The new connection is only used once the messages of the lost connection have been taken back, until then the messages sent are kept pending
+     */
+    private void onChannelConnected(AbstractProtoSocketChannel newChannel) {
+        CompletableFuture<List<Object>> unsentMessages;
+        synchronized (lock) {
+            unsentMessages = lostMessages;
+            lostMessages = null;
+        }
+        if (unsentMessages == null) {
+            onChannelReady(newChannel, Collections.emptyList());
+        } else {
+            unsentMessages.thenAccept(unsent -> onChannelReady(newChannel, unsent));
+        }
+    }
+
+    private void onChannelReady(AbstractProtoSocketChannel newChannel, List<Object> unsentMessages) {
+        List<Object> notQueuedMessages;
+        synchronized (lock) {
+            if (isStopped) {
+                newChannel.disconnect();
+                failPendingMessages(unsentMessages);
+                return;
+            }
+            // The messages the lost connection did not write go first, then the messages sent while disconnected
+            List<Object> replayedMessages = new ArrayList<>(unsentMessages);
+            Object outboundEntry;
+            while ((outboundEntry = pendingMessages.poll()) != null) {
+                replayedMessages.add(outboundEntry);
+            }
+            int queuedCount = replay(newChannel, replayedMessages);
+            notQueuedMessages = replayedMessages.subList(queuedCount, replayedMessages.size());
+            if (notQueuedMessages.isEmpty()) {
+                connectedChannel.set(newChannel);
+            }
+        }
+        if (!notQueuedMessages.isEmpty()) {
+            // The new connection has been lost during the replay, before it was published: it is retried without notifying the handlers,
+            // and the messages it has not written are replayed on the next one
+            newChannel.disconnect();
+            takeBackMessages(newChannel, notQueuedMessages);
+            return;
+        }
+        failedAttempts = 0;
+        connectionHandlers.forEach(handler -> handler.onConnected(socketAddress));
+        connectFuture.complete(null);
+        // The connection may have been lost before it was published, in which case its disconnection handler has missed it
+        if (!newChannel.isOpen() && connectedChannel.compareAndSet(newChannel, null)) {
+            onConnectionLost(newChannel);
+        }
+    }
+
+    /**
+     * Queue the messages into the new connection in order, until it rejects one of them
+     * @return the number of messages that have been queued
+     */
+    private int replay(AbstractProtoSocketChannel newChannel, List<Object> outboundEntries) {
+        for (int i = 0; i < outboundEntries.size(); i++) {
+            try {
+                if (!newChannel.isOpen() || !queue(newChannel, outboundEntries.get(i))) {
+                    return i;
+                }
+            } catch (IllegalStateException e) {
+                LOGGER.error("Unable to replay the pending messages to " + socketAddress, e);
+                return i;
+            }
+        }
+        return outboundEntries.size();
+    }
+
+    /**
+     * Queue an entry into a connection
+     * @return false if the connection has been closed and has not taken the entry
+     * @throws IllegalStateException if the outbound message queue of the open connection is full
+     */
+    private static boolean queue(AbstractProtoSocketChannel channel, Object outboundEntry) {
+        try {
+            return channel.outboundMessageQueue.add(outboundEntry);
+        } catch (RejectedExecutionException e) {
+            // The entry has been queued, but the writer of the connection closed in the meantime could not be started.
+            // It is taken back together with the other messages the connection has not written
+            return true;
+        } catch (IllegalStateException e) {
+            if (channel.isOpen()) {
+                throw e;
+            }
+            return false;
+        }
+    }
+
+    private void onChannelDisconnected(AbstractProtoSocketChannel lostChannel) {
+        if (connectedChannel.compareAndSet(lostChannel, null)) {
+            onConnectionLost(lostChannel);
+        }
+    }
+
+    private void onConnectionLost(AbstractProtoSocketChannel lostChannel) {
+        disconnectionHandlers.forEach(handler -> handler.onDisconnected(socketAddress));
+        takeBackMessages(lostChannel, Collections.emptyList());
+    }
+
+    /**
+     * Take back the messages the lost connection has not written, followed by the given messages it has not taken, to replay them on the next connection
+     */
+    private void takeBackMessages(AbstractProtoSocketChannel lostChannel, List<Object> notQueuedMessages) {
+        // No message can be added to the lost connection from now on, the ones sent concurrently are kept pending instead
+        CompletableFuture<List<Object>> unsentMessages = lostChannel.drainUnsentMessages();
+        if (!notQueuedMessages.isEmpty()) {
+            List<Object> remainingMessages = new ArrayList<>(notQueuedMessages);
+            unsentMessages = unsentMessages.thenApply(unsent -> {
+                List<Object> allUnsent = new ArrayList<>(unsent);
+                allUnsent.addAll(remainingMessages);
+                return allUnsent;
+            });
+        }
+        synchronized (lock) {
+            if (isStopped) {
+                unsentMessages.thenAccept(this::failPendingMessages);
+                return;
+            }
+            lostMessages = unsentMessages;
+        }
+        scheduleAttempt();
+    }
+
+    @Override
+    @PreDestroy
+    public void disconnect() {
+        IllegalStateException closedException = new IllegalStateException("Socket channel " + socketAddress + " is closed");
+        synchronized (lock) {
+            if (isStopped) {
+                return;
+            }
+            isStopped = true;
+            if (lostMessages != null) {
+                lostMessages.thenAccept(this::failPendingMessages);
+                lostMessages = null;
+            }
+            Object outboundEntry;
+            while ((outboundEntry = pendingMessages.poll()) != null) {
+                failPendingMessage(outboundEntry, closedException);
+            }
+        }
+        ScheduledFuture<?> attempt = scheduledAttempt;
+        if (attempt != null) {
+            attempt.cancel(false);
+        }
+        AbstractProtoSocketChannel currentChannel = channel;
+        if (currentChannel != null) {
+            currentChannel.disconnect();
+        }
+        connectFuture.completeExceptionally(closedException);
+    }
+
+    private void failPendingMessages(List<Object> outboundEntries) {
+        IllegalStateException closedException = new IllegalStateException("Socket channel " + socketAddress + " is closed");
+        outboundEntries.forEach(outboundEntry -> failPendingMessage(outboundEntry, closedException));
+    }
+
+    private void failPendingMessage(Object outboundEntry, Throwable t) {
+        if (outboundEntry instanceof PendingMessage) {
+            PendingMessage pendingMessage = (PendingMessage) outboundEntry;
+            messageSendFailureHandlers.forEach(handler -> handler.onMessageSendFailure(socketAddress, pendingMessage.message, t));
+            if (pendingMessage.future != null) {
+                pendingMessage.future.completeExceptionally(t);
+            }
+        } else if (outboundEntry instanceof StreamMessage && ((StreamMessage) outboundEntry).isReported) {
+            Message message = ((StreamMessage) outboundEntry).message;
+            messageSendFailureHandlers.forEach(handler -> handler.onMessageSendFailure(socketAddress, message, t));
+        }
+    }
+
+    @Override
+    public void sendMessage(Message message) {
+        send(messageSentHandlers.isEmpty() && messageSendFailureHandlers.isEmpty() ? message : new PendingMessage(message, null));
+    }
+
+    @Override
+    public CompletableFuture<Void> sendAsync(Message message) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        try {
+            send(new PendingMessage(message, future));
+        } catch (IllegalStateException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    @Override
+    public void sendAndForget(Message message) {
+        send(message);
+    }
+
+    @Override
+    public void sendMessage(int streamId, Message message) {
+        if (streamId == ProtobufSerializer.DEFAULT_STREAM_ID) {
+            sendMessage(message);
+            return;
+        }
+        if (streamId < 0) {
+            throw new IllegalArgumentException("Invalid stream id: " + streamId);
+        }
+        send(new StreamMessage(message, streamId, !(messageSentHandlers.isEmpty() && messageSendFailureHandlers.isEmpty())));
+    }
+
+    private void send(Object outboundEntry) {
+        while (true) {
+            AbstractProtoSocketChannel currentChannel = connectedChannel.get();
+            // Queued straight into the connection. If it is lost in the meantime, the message is either taken back from its queue when reconnecting,
+            // or rejected by the closed queue and kept pending
+            if (currentChannel != null && currentChannel.isOpen() && queue(currentChannel, outboundEntry)) {
+                return;
+            }
+            if (offerPendingMessage(outboundEntry, currentChannel)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @param closedChannel the connection that has just been found closed, or null if there is no connection
+     * @return false if another connection has been established in the meantime
+     */
+    private boolean offerPendingMessage(Object outboundEntry, AbstractProtoSocketChannel closedChannel) {
+        synchronized (lock) {
+            if (isStopped) {
+                throw new IllegalStateException("Socket channel " + socketAddress + " is closed");
+            }
+            AbstractProtoSocketChannel currentChannel = connectedChannel.get();
+            if (currentChannel != null && currentChannel != closedChannel) {
+                return false;
+            }
+            if (!pendingMessages.offer(outboundEntry)) {
+                throw new IllegalStateException("Unable to accept more message due to pending message queue is too large (" + pendingMessages.size() + ")");
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Calls are only made while the client is connected, they fail straight away otherwise, and they fail if the connection is lost before their response
+     */
+    @Override
+    public <R extends Message> CompletableFuture<R> call(Message request, long timeout, TimeUnit unit) {
+        AbstractProtoSocketChannel currentChannel = connectedChannel.get();
+        if (currentChannel == null) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Socket channel " + socketAddress + " is not connected"));
+        }
+        return currentChannel.call(request, timeout, unit);
+    }
+
+    @Override
+    public void flush() {
+        AbstractProtoSocketChannel currentChannel = connectedChannel.get();
+        if (currentChannel != null) {
+            currentChannel.flush();
+        }
+    }
+
+    /**
+     * @return the writability of the connection, or whether more messages can be kept while there is no connection
+     */
+    @Override
+    public boolean isWritable() {
+        AbstractProtoSocketChannel currentChannel = connectedChannel.get();
+        return currentChannel != null ? currentChannel.isWritable() : pendingMessages.size() < pendingMessages.capacity();
+    }
+
+    /**
+     * @return the pending bytes of the connection, the messages kept while there is no connection are not counted
+     */
+    @Override
+    public long getPendingWriteBytes() {
+        AbstractProtoSocketChannel currentChannel = connectedChannel.get();
+        return currentChannel != null ? currentChannel.getPendingWriteBytes() : 0;
+    }
+
+    /**
+     * @return true if the client is currently connected
+     */
+    public boolean isConnected() {
+        return connectedChannel.get() != null;
+    }
+
+    @Override
+    public void addConnectionHandler(ConnectionHandler handler) {
+        connectionHandlers.add(handler);
+    }
+
+    @Override
+    public void removeConnectionHandler(ConnectionHandler handler) {
+        connectionHandlers.remove(handler);
+    }
+
+    @Override
+    public void addDisconnectionHandler(DisconnectionHandler handler) {
+        disconnectionHandlers.add(handler);
+    }
+
+    @Override
+    public void removeDisconnectionHandler(DisconnectionHandler handler) {
+        disconnectionHandlers.remove(handler);
+    }
+
+    @Override
+    public void addMessageReceivedHandler(MessageReceivedHandler handler) {
+        messageReceivedHandlers.add(handler);
+    }
+
+    @Override
+    public void removeMessageReceivedHandler(MessageReceivedHandler handler) {
+        messageReceivedHandlers.remove(handler);
+    }
+
+    @Override
+    public void addStreamMessageReceivedHandler(StreamMessageReceivedHandler handler) {
+        streamMessageReceivedHandlers.add(handler);
+    }
+
+    @Override
+    public void removeStreamMessageReceivedHandler(StreamMessageReceivedHandler handler) {
+        streamMessageReceivedHandlers.remove(handler);
+    }
+
+    @Override
+    public void addMessageSentHandler(MessageSentHandler handler) {
+        messageSentHandlers.add(handler);
+    }
+
+    @Override
+    public void removeMessageSentHandler(MessageSentHandler handler) {
+        messageSentHandlers.remove(handler);
+    }
+
+    @Override
+    public void addMessageSendFailureHandler(MessageSendFailureHandler handler) {
+        messageSendFailureHandlers.add(handler);
+    }
+
+    @Override
+    public void removeMessageSendFailureHandler(MessageSendFailureHandler handler) {
+        messageSendFailureHandlers.remove(handler);
+    }
+
+    @Override
+    public void addWritabilityChangedHandler(WritabilityChangedHandler handler) {
+        writabilityChangedHandlers.add(handler);
+    }
+
+    @Override
+    public void removeWritabilityChangedHandler(WritabilityChangedHandler handler) {
+        writabilityChangedHandlers.remove(handler);
+    }
+
+}
@@ -0,0 +1,80 @@
+package com.github.quantranuk.protobuf.nio.impl;
+
+import java.nio.ByteBuffer;
+
+/**
+ * <p>The latest datagrams sent by a {@link MulticastPublisherProtoDatagramChannel}, kept for retransmission in a ring indexed by their sequence.</p>
+ * <p>The datagrams are added by the writer and copied out by the reader, under a lock that is only held for the copy. A datagram that has just been
+ * retransmitted is not retransmitted again until the suppression time has elapsed, so that the subscribers that have lost the same datagram
+ * get a single retransmission</p>
+ */
+final class RetransmitHistory {
+
+    private final byte[][] datagrams;
+    private final int[] lengths;
+    private final long[] retransmitNanos;
+    private final long suppressionNanos;
+    private long oldestSequence = 1;
+    private long latestSequence = 0;
+
+    /**
+     * @param capacity the number of datagrams kept
+     * @param suppressionNanos the time during which a datagram is not retransmitted again
+     */
+    RetransmitHistory(int capacity, long suppressionNanos) {
+        this.datagrams = new byte[capacity][];
+        this.lengths = new int[capacity];
+        this.retransmitNanos = new long[capacity];
+        this.suppressionNanos = suppressionNanos;
+    }
+
+    /**
+     * Keep a copy of a datagram, evicting the oldest one if the history is full. The sequences must follow each other
+     * @param datagram the datagram, from its position to its limit, which is left unchanged
+     */
+    synchronized void add(long sequence, ByteBuffer datagram) {
+        int index = index(sequence);
+        int length = datagram.remaining();
+        if (datagrams[index] == null || datagrams[index].length < length) {
+            datagrams[index] = new byte[length];
+        }
+        datagram.get(datagram.position(), datagrams[index], 0, length);
+        lengths[index] = length;
+        retransmitNanos[index] = 0;
+        latestSequence = sequence;
+        oldestSequence = Long.max(oldestSequence, sequence - datagrams.length + 1);
+    }
+
+    /**
+     * Copy a datagram to retransmit it
+     * @param target the buffer to copy the datagram into, which is ready to be sent if the datagram has been copied
+     * @return false if the datagram is no longer (or not yet) in the history, or has just been retransmitted
+     */
+    synchronized boolean copy(long sequence, ByteBuffer target, long nowNanos) {
+        if (sequence < oldestSequence || sequence > latestSequence) {
+            return false;
+        }
+        int index = index(sequence);
+        if (retransmitNanos[index] != 0 && nowNanos - retransmitNanos[index] < suppressionNanos) {
+            return false;
+        }
+        retransmitNanos[index] = nowNanos;
+        target.clear();
+        target.put(datagrams[index], 0, lengths[index]);
+        target.flip();
+        return true;
+    }
+
+    synchronized long getOldestSequence() {
+        return oldestSequence;
+    }
+
+    synchronized long getLatestSequence() {
+        return latestSequence;
+    }
+
+    private int index(long sequence) {
+        return (int) (sequence % datagrams.length);
+    }
+
+}
@@ -0,0 +1,20 @@
+package com.github.quantranuk.protobuf.nio.impl;
+
+import com.google.protobuf.Message;
+
+/**
+ * An outgoing message that is part of a remote call, serialized with the RPC kind and the correlation id in its frame header.
+ * Its completion is not reported, a failed write fails the call when the connection is closed
+ */
+final class RpcMessage {
+
+    final Message message;
+    final int rpcKind;
+    final long correlationId;
+
+    RpcMessage(Message message, int rpcKind, long correlationId) {
+        this.message = message;
+        this.rpcKind = rpcKind;
+        this.correlationId = correlationId;
+    }
+}
@@ -0,0 +1,224 @@
+package com.github.quantranuk.protobuf.nio.impl;
+
+import com.github.quantranuk.protobuf.nio.WaitStrategy;
+import com.github.quantranuk.protobuf.nio.utils.MpscChunkedQueue;
+import com.github.quantranuk.protobuf.nio.utils.NamedThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * <p>An I/O event loop of the selector transport: a single thread that polls a selector for the non-blocking channels pinned to it,
+ * and runs the tasks submitted by other threads in between. Reads, writes and the handlers of the connections all run on this thread.</p>
+ * <p>The thread waits for I/O according to the {@link WaitStrategy}. A task submitted while the thread is waiting only wakes it up
+ * if it has actually gone to sleep, so that a busy event loop never pays for a wake-up</p>
+ */
+final class SelectorEventLoop extends AbstractEventLoop implements Executor {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SelectorEventLoop.class);
+    static final int BACK_OFF_SPIN_TRIES = 100;
+    static final int BACK_OFF_YIELD_TRIES = 200;
+    static final long BACK_OFF_MIN_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(1);
+    static final long BACK_OFF_MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final Selector selector;
+    private final Thread thread;
+    private final WaitStrategy waitStrategy;
+    private final MpscChunkedQueue<Runnable> tasks = new MpscChunkedQueue<>(Integer.MAX_VALUE);
+    private final AtomicBoolean isSleeping = new AtomicBoolean();
+    private final Consumer<SelectionKey> selectedKeyHandler = this::onSelected;
+    private volatile boolean isRunning = true;
+
+    SelectorEventLoop(String name, WaitStrategy waitStrategy) {
+        try {
+            this.selector = Selector.open();
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to open selector", e);
+        }
+        this.waitStrategy = waitStrategy;
+        this.thread = new NamedThreadFactory(name).newThread(this::run);
+        this.thread.start();
+    }
+
+    /**
+     * @return true if the current thread is the thread of this event loop
+     */
+    boolean inEventLoop() {
+        return Thread.currentThread() == thread;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        if (!isRunning) {
+            throw new RejectedExecutionException("Event loop " + thread.getName() + " has been shut down");
+        }
+        tasks.offer(task);
+        if (isSleeping.get() && isSleeping.compareAndSet(true, false)) {
+            wakeUp();
+        }
+    }
+
+    private void wakeUp() {
+        if (waitStrategy == WaitStrategy.BLOCKING) {
+            selector.wakeup();
+        } else {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * Register a channel with the selector of this event loop. This method must be called from the thread of this event loop
+     * @return the selection key of the channel
+     */
+    SelectionKey registerChannel(SelectableChannel channel, int interestOps, SelectorEventHandler handler) throws ClosedChannelException {
+        return channel.register(selector, interestOps, handler);
+    }
+
+    private void run() {
+        int idleCount = 0;
+        long parkNanos = BACK_OFF_MIN_PARK_NANOS;
+        while (isRunning) {
+            int selectedCount;
+            try {
+                selectedCount = select();
+            } catch (IOException e) {
+                LOGGER.error("Unable to select from event loop " + thread.getName(), e);
+                break;
+            }
+            boolean hasRunTasks = runTasks();
+            if (selectedCount > 0 || hasRunTasks) {
+                idleCount = 0;
+                parkNanos = BACK_OFF_MIN_PARK_NANOS;
+                continue;
+            }
+            switch (waitStrategy) {
+                case YIELD:
+                    Thread.yield();
+                    break;
+                case BACK_OFF:
+                    idleCount++;
+                    if (idleCount < BACK_OFF_SPIN_TRIES) {
+                        Thread.onSpinWait();
+                    } else if (idleCount < BACK_OFF_SPIN_TRIES + BACK_OFF_YIELD_TRIES) {
+                        Thread.yield();
+                    } else {
+                        // Parking does not wake up on I/O, hence the bounded park time
+                        isSleeping.set(true);
+                        if (tasks.isEmpty()) {
+                            LockSupport.parkNanos(parkNanos);
+                        }
+                        isSleeping.set(false);
+                        parkNanos = Long.min(parkNanos * 2, BACK_OFF_MAX_PARK_NANOS);
+                    }
+                    break;
+                default:
+                    Thread.onSpinWait();
+                    break;
+            }
+        }
+        // The tasks submitted before the shutdown (e.g. closing the writer of a disconnected channel) still run
+        runTasks();
+        closeChannels();
+    }
+
+    private int select() throws IOException {
+        if (waitStrategy != WaitStrategy.BLOCKING || !tasks.isEmpty()) {
+            return selector.selectNow(selectedKeyHandler);
+        }
+        // A task submitted after this flag is set wakes up the selector, a task submitted before is seen by the check below
+        isSleeping.set(true);
+        int selectedCount = tasks.isEmpty() ? selector.select(selectedKeyHandler) : selector.selectNow(selectedKeyHandler);
+        isSleeping.set(false);
+        return selectedCount;
+    }
+
+    /**
+     * An exception thrown while a channel handles its selection key (e.g. from a message handler) only fails that channel, the event loop carries on
+     * with the other channels pinned to it
+     */
+    private void onSelected(SelectionKey key) {
+        if (!key.isValid()) {
+            return;
+        }
+        SelectorEventHandler handler = (SelectorEventHandler) key.attachment();
+        try {
+            handler.onSelected(key);
+        } catch (RuntimeException e) {
+            LOGGER.error("Exception thrown from a channel of event loop " + thread.getName(), e);
+            try {
+                handler.onSelectFailed(e);
+            } catch (RuntimeException t) {
+                LOGGER.error("Exception thrown while failing a channel of event loop " + thread.getName(), t);
+            }
+        }
+    }
+
+    private boolean runTasks() {
+        Runnable task = tasks.poll();
+        if (task == null) {
+            return false;
+        }
+        do {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                LOGGER.error("Exception thrown from a task of event loop " + thread.getName(), e);
+            }
+        } while ((task = tasks.poll()) != null);
+        return true;
+    }
+
+    private void closeChannels() {
+        for (SelectionKey key : selector.keys()) {
+            ((SelectorEventHandler) key.attachment()).onEventLoopShutdown();
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            LOGGER.error("Unable to close selector of event loop " + thread.getName(), e);
+        }
+    }
+
+    /**
+     * Stop the thread of this event loop once its current iteration and the tasks already submitted are complete, the channels still registered are closed
+     */
+    @Override
+    void shutdown() {
+        isRunning = false;
+        selector.wakeup();
+        LockSupport.unpark(thread);
+    }
+
+    /**
+     * The attachment of the selection keys of an event loop, called from the thread of the event loop
+     */
+    interface SelectorEventHandler {
+
+        /**
+         * @param key the selection key of the channel, ready for at least one of its interest operations
+         */
+        void onSelected(SelectionKey key);
+
+        /**
+         * An exception has been thrown while the channel was handling its selection key, e.g. from one of its handlers
+         * @param e the exception, already logged
+         */
+        void onSelectFailed(RuntimeException e);
+
+        /**
+         * The event loop has been shut down while the channel was still registered
+         */
+        void onEventLoopShutdown();
+    }
+}
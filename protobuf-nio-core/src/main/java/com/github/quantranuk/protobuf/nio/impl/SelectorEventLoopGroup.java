@@ -0,0 +1,26 @@
+package com.github.quantranuk.protobuf.nio.impl;
+
+import com.github.quantranuk.protobuf.nio.EventLoopAssignment;
+import com.github.quantranuk.protobuf.nio.WaitStrategy;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A fixed set of I/O event loops of the selector transport. Each new connection is pinned to one of them according to the {@link EventLoopAssignment}
+ */
+public final class SelectorEventLoopGroup extends AbstractEventLoopGroup<SelectorEventLoop> {
+
+    public SelectorEventLoopGroup(String name, int eventLoopCount, EventLoopAssignment assignment, WaitStrategy waitStrategy) {
+        super(newEventLoops(name, eventLoopCount, waitStrategy), assignment);
+    }
+
+    private static List<SelectorEventLoop> newEventLoops(String name, int eventLoopCount, WaitStrategy waitStrategy) {
+        validateEventLoopCount(eventLoopCount);
+        List<SelectorEventLoop> eventLoops = new ArrayList<>(eventLoopCount);
+        for (int i = 0; i < eventLoopCount; i++) {
+            eventLoops.add(new SelectorEventLoop(name + "-Selector", waitStrategy));
+        }
+        return eventLoops;
+    }
+}
@@ -0,0 +1,164 @@
+package com.github.quantranuk.protobuf.nio.impl;
+
+import com.github.quantranuk.protobuf.nio.WaitStrategy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+
+/**
+ * <p>A {@link com.github.quantranuk.protobuf.nio.ProtoServerSocketChannel} on non-blocking socket channels polled by {@link SelectorEventLoop}s.</p>
+ * <p>New connections are accepted on one of the event loops, then each accepted connection is pinned to an event loop of the group for its lifetime</p>
+ */
+public class SelectorProtoServerSocketChannel extends AbstractProtoServerSocketChannel {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SelectorProtoServerSocketChannel.class);
+
+    private final SelectorEventLoop.SelectorEventHandler acceptHandler = new AcceptHandler();
+    private boolean isInitialized = false;
+    private WaitStrategy waitStrategy = WaitStrategy.BLOCKING;
+    private ServerSocketChannel serverSocketChannel;
+    private SelectorEventLoopGroup eventLoopGroup;
+    private SelectorEventLoop acceptEventLoop;
+    private boolean isInjectedEventLoopGroup = false;
+
+    public SelectorProtoServerSocketChannel(int port) {
+        super(port);
+    }
+
+    /**
+     * @param path the path of the Unix domain socket to listen to
+     */
+    public SelectorProtoServerSocketChannel(Path path) {
+        super(path);
+    }
+
+    @Override
+    @PostConstruct
+    public void init() {
+        if (isInitialized) {
+            return;
+        }
+        isInitialized = true;
+        if (eventLoopGroup == null) {
+            eventLoopGroup = new SelectorEventLoopGroup(SelectorProtoServerSocketChannel.class.getSimpleName() + "-" + serverName, eventLoopCount, eventLoopAssignment, waitStrategy);
+        }
+        try {
+            serverSocketChannel = openServerSocketChannel();
+            serverSocketChannel.configureBlocking(false);
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to open server socket channel", e);
+        }
+    }
+
+    @Override
+    public void start() throws IOException {
+        serverSocketChannel.bind(serverSocketAddress);
+        LOGGER.info("Bind to " + serverSocketAddress);
+        acceptEventLoop = eventLoopGroup.register();
+        acceptEventLoop.execute(() -> {
+            try {
+                acceptEventLoop.registerChannel(serverSocketChannel, SelectionKey.OP_ACCEPT, acceptHandler);
+            } catch (ClosedChannelException e) {
+                LOGGER.error("Unable to accept new connection at " + serverSocketAddress, e);
+            }
+        });
+    }
+
+    private void acceptNewConnections() {
+        while (true) {
+            SocketChannel socketChannel;
+            SocketAddress remoteAddress;
+            try {
+                socketChannel = serverSocketChannel.accept();
+                if (socketChannel == null) {
+                    return;
+                }
+                socketChannel.configureBlocking(false);
+                configureAcceptedSocketChannel(socketChannel);
+                remoteAddress = getRemoteAddress(socketChannel);
+            } catch (IOException e) {
+                LOGGER.error("Unable to accept new connection at " + serverSocketAddress, e);
+                return;
+            }
+            SelectorProtoSocketChannel protobufSocketChannel = createProtobufSocketChannel(socketChannel, remoteAddress);
+            try {
+                onAccepted(remoteAddress, protobufSocketChannel);
+            } catch (RuntimeException e) {
+                // e.g. thrown by a connection handler, the server keeps accepting
+                LOGGER.error("Exception thrown while accepting connection from " + remoteAddress, e);
+                protobufSocketChannel.disconnect();
+            }
+        }
+    }
+
+    private SelectorProtoSocketChannel createProtobufSocketChannel(SocketChannel socketChannel, SocketAddress remoteAddress) {
+        SelectorProtoSocketChannel protobufSocketChannel = new SelectorProtoSocketChannel(remoteAddress);
+        SelectorEventLoop eventLoop = eventLoopGroup.register();
+        configureChannel(protobufSocketChannel, eventLoop);
+        protobufSocketChannel.setEventLoop(eventLoop);
+        protobufSocketChannel.setSocketChannel(socketChannel);
+        protobufSocketChannel.init();
+        return protobufSocketChannel;
+    }
+
+    @Override
+    @PreDestroy
+    public void stop() {
+        disconnectAll();
+        deleteUnixDomainSocketFile(serverSocketChannel);
+        try {
+            serverSocketChannel.close();
+        } catch (IOException e) {
+            LOGGER.error("Unable to close server socket channel at " + serverSocketAddress, e);
+        }
+        if (acceptEventLoop != null) {
+            acceptEventLoop.deregister();
+            acceptEventLoop = null;
+        }
+        if (!isInjectedEventLoopGroup) {
+            eventLoopGroup.shutdown();
+        }
+    }
+
+    /**
+     * The wait strategy of the event loops created for this server, not used if the server is given an event loop group
+     */
+    public void setWaitStrategy(WaitStrategy waitStrategy) {
+        this.waitStrategy = waitStrategy;
+    }
+
+    public void setEventLoopGroup(SelectorEventLoopGroup eventLoopGroup) {
+        this.eventLoopGroup = eventLoopGroup;
+        this.isInjectedEventLoopGroup = eventLoopGroup != null;
+    }
+
+    private class AcceptHandler implements SelectorEventLoop.SelectorEventHandler {
+
+        @Override
+        public void onSelected(SelectionKey key) {
+            if (key.isAcceptable()) {
+                acceptNewConnections();
+            }
+        }
+
+        @Override
+        public void onSelectFailed(RuntimeException e) {
+            // The server keeps accepting, the connections that have failed while being accepted are already disconnected
+        }
+
+        @Override
+        public void onEventLoopShutdown() {
+            // The server socket channel is closed when the server is stopped
+        }
+    }
+
+}
@@ -0,0 +1,289 @@
+package com.github.quantranuk.protobuf.nio.impl;
+
+import com.github.quantranuk.protobuf.nio.WaitStrategy;
+import com.github.quantranuk.protobuf.nio.serializer.ProtobufFrameDecoder;
+import com.google.protobuf.Message;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * <p>A {@link com.github.quantranuk.protobuf.nio.ProtoSocketChannel} on a non-blocking socket channel polled by a {@link SelectorEventLoop}.</p>
+ * <p>Reading, writing and the handlers all run on the thread of the event loop. A message sent from that thread (e.g. from a message received handler)
+ * is written straight away instead of being handed over to another thread</p>
+ */
+public class SelectorProtoSocketChannel extends AbstractProtoSocketChannel {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SelectorProtoSocketChannel.class);
+
+    private final AtomicBoolean isDisconnected = new AtomicBoolean();
+    private final SelectorEventLoop.SelectorEventHandler selectorEventHandler = new SocketChannelEventHandler();
+    private SocketChannel socketChannel;
+    private NioSocketChannelWriter writer;
+    private ByteBuffer readBuffer;
+    private ProtobufFrameDecoder frameDecoder;
+    private Runnable writeTask;
+    private CompletableFuture<Void> connectFuture;
+
+    private boolean isInitialized = false;
+    private volatile boolean isShuttingDown = false;
+    private WaitStrategy waitStrategy = WaitStrategy.BLOCKING;
+    private SelectorEventLoopGroup eventLoopGroup;
+    private SelectorEventLoop eventLoop;
+    private boolean isOwnEventLoop = false;
+
+    public SelectorProtoSocketChannel(SocketAddress socketAddress) {
+        super(socketAddress);
+    }
+
+    public SelectorProtoSocketChannel(String host, int port) {
+        super(new InetSocketAddress(host, port));
+    }
+
+    @Override
+    @PostConstruct
+    public void init() {
+        if (isInitialized) {
+            return;
+        }
+        isInitialized = true;
+        if (eventLoop == null) {
+            if (eventLoopGroup != null) {
+                eventLoop = eventLoopGroup.register();
+            } else {
+                eventLoop = new SelectorEventLoop(SelectorProtoSocketChannel.class.getSimpleName(), waitStrategy);
+                isOwnEventLoop = true;
+            }
+        }
+        if (socketChannel == null) {
+            try {
+                socketChannel = openSocketChannel();
+            } catch (IOException e) {
+                throw new IllegalStateException("Unable to open socket channel", e);
+            }
+        }
+        readBuffer = isDirectReadBuffer ? ByteBuffer.allocateDirect(readBufferSize) : ByteBuffer.allocate(readBufferSize);
+        frameDecoder = newFrameDecoder();
+        writer = new NioSocketChannelWriter(socketChannel, writeBufferSize, this::onWriteFailed);
+        writeTask = writer::write;
+        outboundMessageQueue = newOutboundMessageQueue(this::startWriting, eventLoop);
+        writer.setOutboundMessageQueue(outboundMessageQueue);
+    }
+
+    private void startWriting() {
+        if (eventLoop.inEventLoop()) {
+            writer.write();
+        } else {
+            eventLoop.execute(writeTask);
+        }
+    }
+
+    @Override
+    protected void startConnecting(CompletableFuture<Void> connectFuture) {
+        eventLoop.execute(() -> {
+            try {
+                socketChannel.configureBlocking(false);
+                if (!isUnixDomainSocket()) {
+                    socketChannel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                }
+                if (socketChannel.connect(socketAddress)) {
+                    onConnected(connectFuture);
+                } else {
+                    this.connectFuture = connectFuture;
+                    eventLoop.registerChannel(socketChannel, SelectionKey.OP_CONNECT, selectorEventHandler);
+                }
+            } catch (IOException e) {
+                onConnectFailed(connectFuture, e);
+            }
+        });
+    }
+
+    private void finishConnecting(SelectionKey key) {
+        try {
+            socketChannel.finishConnect();
+            key.interestOps(0);
+            onConnected(connectFuture);
+        } catch (IOException e) {
+            onConnectFailed(connectFuture, e);
+        }
+    }
+
+    @Override
+    void startReading() {
+        eventLoop.execute(() -> {
+            try {
+                writer.setSelectionKey(eventLoop.registerChannel(socketChannel, SelectionKey.OP_READ, selectorEventHandler));
+            } catch (ClosedChannelException e) {
+                LOGGER.debug("Unable to register closed socket channel " + socketAddress, e);
+                disconnect();
+            }
+        });
+    }
+
+    private void read() {
+        while (true) {
+            readBuffer.clear();
+            int readLength;
+            try {
+                readLength = socketChannel.read(readBuffer);
+            } catch (IOException e) {
+                onReadFailed(e);
+                return;
+            }
+            if (readLength == -1) {
+                onReadFailed(new IllegalStateException("Reached end-of-stream of " + socketAddress));
+                return;
+            }
+            if (readLength == 0) {
+                return;
+            }
+            readBuffer.flip();
+            try {
+                // Complete frames are decoded straight from the read buffer, only a trailing partial frame is copied
+                frameDecoder.decode(readBuffer, this::onMessageDecoded);
+            } catch (IllegalStateException e) {
+                onReadFailed(e);
+                return;
+            }
+            if (readLength < readBuffer.capacity() || isShuttingDown) {
+                // The socket has been drained, no need for another read to find out
+                return;
+            }
+        }
+    }
+
+    private void onMessageDecoded(Message message) {
+        if (!isShuttingDown) {
+            fireMessageReceived(message, frameDecoder);
+        }
+    }
+
+    private void onReadFailed(Throwable t) {
+        if (!isShuttingDown) {
+            LOGGER.debug("Unable to read from " + socketAddress, t);
+            disconnect();
+        }
+    }
+
+    private void onWriteFailed(Throwable t) {
+        if (!isShuttingDown) {
+            LOGGER.debug("Unable to write to " + socketAddress, t);
+            disconnect();
+        }
+    }
+
+    @Override
+    @PreDestroy
+    public void disconnect() {
+        if (isDisconnected.getAndSet(true)) {
+            return;
+        }
+        isShuttingDown = true;
+        if (socketChannel != null) {
+            try {
+                // Closing the channel also cancels its selection key
+                socketChannel.close();
+            } catch (IOException e) {
+                LOGGER.error("Unable to close socket channel to " + socketAddress, e);
+            }
+        }
+        LOGGER.debug("Disconnected from " + socketAddress);
+        closeWriter();
+        if (isOwnEventLoop) {
+            eventLoop.shutdown();
+        } else if (eventLoopGroup != null) {
+            eventLoop.deregister();
+        }
+        fireDisconnected();
+    }
+
+    /**
+     * The selection key of the closed channel has been cancelled, so a writer waiting for the channel to become writable must be failed on the event loop
+     */
+    private void closeWriter() {
+        if (writer == null) {
+            return;
+        }
+        if (eventLoop.inEventLoop()) {
+            writer.close();
+            return;
+        }
+        try {
+            eventLoop.execute(writer::close);
+        } catch (RejectedExecutionException e) {
+            // The event loop is shutting down, it closes the writer of the channels still registered
+        }
+    }
+
+    @Override
+    protected boolean isOpen() {
+        return socketChannel.isOpen();
+    }
+
+    /**
+     * The wait strategy of the event loop created for this channel, not used if the channel is given an event loop group
+     */
+    public void setWaitStrategy(WaitStrategy waitStrategy) {
+        this.waitStrategy = waitStrategy;
+    }
+
+    public void setEventLoopGroup(SelectorEventLoopGroup eventLoopGroup) {
+        this.eventLoopGroup = eventLoopGroup;
+    }
+
+    /**
+     * @param eventLoop the event loop of a connection accepted by a server, which is responsible for deregistering it
+     */
+    void setEventLoop(SelectorEventLoop eventLoop) {
+        this.eventLoop = eventLoop;
+    }
+
+    /**
+     * @param socketChannel an accepted socket channel, already in non-blocking mode
+     */
+    void setSocketChannel(SocketChannel socketChannel) {
+        this.socketChannel = socketChannel;
+    }
+
+    private class SocketChannelEventHandler implements SelectorEventLoop.SelectorEventHandler {
+
+        @Override
+        public void onSelected(SelectionKey key) {
+            if (key.isConnectable()) {
+                finishConnecting(key);
+                return;
+            }
+            if (key.isReadable()) {
+                read();
+            }
+            if (key.isValid() && key.isWritable()) {
+                writer.write();
+            }
+        }
+
+        @Override
+        public void onSelectFailed(RuntimeException e) {
+            disconnect();
+        }
+
+        @Override
+        public void onEventLoopShutdown() {
+            disconnect();
+            writer.close();
+        }
+    }
+
+}
@@ -0,0 +1,43 @@
+package com.github.quantranuk.protobuf.nio.impl;
+
+import java.net.SocketAddress;
+import java.nio.file.Path;
+
+/**
+ * The address of a shared memory connection: the directory of the server for a client, the file of the connection for the server
+ */
+public final class SharedMemoryAddress extends SocketAddress {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String path;
+
+    public SharedMemoryAddress(Path path) {
+        this.path = path.toString();
+    }
+
+    public Path getPath() {
+        return Path.of(path);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof SharedMemoryAddress)) {
+            return false;
+        }
+        return path.equals(((SharedMemoryAddress) o).path);
+    }
+
+    @Override
+    public int hashCode() {
+        return path.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "shm:" + path;
+    }
+}
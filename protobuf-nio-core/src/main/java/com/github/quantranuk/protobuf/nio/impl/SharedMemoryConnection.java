@@ -0,0 +1,194 @@
+package com.github.quantranuk.protobuf.nio.impl;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.UUID;
+
+/**
+ * <p>A connection between two processes of the same host through a memory mapped file, with a {@link SharedMemoryRingBuffer} in each direction.</p>
+ * <p>A client offers a connection by creating a new file in the directory of the server: the file is initialized under a temporary name,
+ * then renamed so that the server never sees it half written. The server accepts the offer by switching the state in the header of the file,
+ * and deletes the file once both sides have mapped it. Either side closes the connection by setting the state to closed, the bytes already
+ * in the rings can still be read by the other side.</p>
+ * <p>The header also holds the process id of both sides, so that a side can find out that the other process has exited without closing the connection.
+ * The connection is read and written like a non-blocking socket channel, by a single thread on each side</p>
+ */
+final class SharedMemoryConnection implements ByteChannel {
+
+    static final String FILE_EXTENSION = ".shm";
+    private static final String TEMPORARY_FILE_EXTENSION = ".tmp";
+    private static final int MAGIC = 0x50524F54;
+    private static final int MAGIC_OFFSET = 0;
+    private static final int RING_CAPACITY_OFFSET = 4;
+    private static final int STATE_OFFSET = 8;
+    private static final int CLIENT_PID_OFFSET = 16;
+    private static final int SERVER_PID_OFFSET = 24;
+    private static final int HEADER_SIZE = 128;
+    private static final int STATE_OFFERED = 1;
+    private static final int STATE_ACCEPTED = 2;
+    private static final int STATE_CLOSED = 3;
+    private static final VarHandle INT = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+    private static final VarHandle LONG = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    private final Path file;
+    private final MappedByteBuffer buffer;
+    private final boolean isClient;
+    private final SharedMemoryRingBuffer inboundRing;
+    private final SharedMemoryRingBuffer outboundRing;
+    private volatile boolean isClosed = false;
+
+    private SharedMemoryConnection(Path file, MappedByteBuffer buffer, int ringCapacity, boolean isClient) {
+        this.file = file;
+        this.buffer = buffer;
+        this.isClient = isClient;
+        // The client to server ring comes first
+        SharedMemoryRingBuffer clientRing = new SharedMemoryRingBuffer(buffer, HEADER_SIZE, ringCapacity, isClient);
+        SharedMemoryRingBuffer serverRing = new SharedMemoryRingBuffer(buffer, HEADER_SIZE + SharedMemoryRingBuffer.getRegionSize(ringCapacity), ringCapacity, !isClient);
+        this.inboundRing = isClient ? serverRing : clientRing;
+        this.outboundRing = isClient ? clientRing : serverRing;
+    }
+
+    private static int getFileSize(int ringCapacity) {
+        return HEADER_SIZE + 2 * SharedMemoryRingBuffer.getRegionSize(ringCapacity);
+    }
+
+    /**
+     * Offer a new connection to the server of a directory
+     * @param ringCapacity the number of bytes of each ring, a power of two
+     * @return the connection, to be accepted by the server
+     */
+    static SharedMemoryConnection offer(Path directory, int ringCapacity) throws IOException {
+        String name = UUID.randomUUID().toString();
+        Path temporaryFile = directory.resolve(name + TEMPORARY_FILE_EXTENSION);
+        Path file = directory.resolve(name + FILE_EXTENSION);
+        try (FileChannel fileChannel = FileChannel.open(temporaryFile, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // The mapping outlives the file channel
+            MappedByteBuffer buffer = fileChannel.map(FileChannel.MapMode.READ_WRITE, 0, getFileSize(ringCapacity));
+            INT.set(buffer, RING_CAPACITY_OFFSET, ringCapacity);
+            LONG.set(buffer, CLIENT_PID_OFFSET, ProcessHandle.current().pid());
+            INT.set(buffer, STATE_OFFSET, STATE_OFFERED);
+            INT.setRelease(buffer, MAGIC_OFFSET, MAGIC);
+            Files.move(temporaryFile, file, StandardCopyOption.ATOMIC_MOVE);
+            return new SharedMemoryConnection(file, buffer, ringCapacity, true);
+        } catch (IOException e) {
+            Files.deleteIfExists(temporaryFile);
+            throw e;
+        }
+    }
+
+    /**
+     * Accept the connection offered by a client
+     * @param file a file of the directory of the server
+     * @return the connection, or null if the file is not a pending offer (e.g. it has already been accepted, or the client has given up)
+     */
+    static SharedMemoryConnection accept(Path file) throws IOException {
+        try (FileChannel fileChannel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long fileSize = fileChannel.size();
+            if (fileSize < HEADER_SIZE) {
+                return null;
+            }
+            MappedByteBuffer buffer = fileChannel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize);
+            if ((int) INT.getAcquire(buffer, MAGIC_OFFSET) != MAGIC) {
+                return null;
+            }
+            int ringCapacity = (int) INT.get(buffer, RING_CAPACITY_OFFSET);
+            if (ringCapacity <= 0 || Integer.bitCount(ringCapacity) != 1 || getFileSize(ringCapacity) != fileSize) {
+                throw new IOException("Invalid shared memory file " + file);
+            }
+            LONG.set(buffer, SERVER_PID_OFFSET, ProcessHandle.current().pid());
+            if (!INT.compareAndSet(buffer, STATE_OFFSET, STATE_OFFERED, STATE_ACCEPTED)) {
+                return null;
+            }
+            return new SharedMemoryConnection(file, buffer, ringCapacity, false);
+        }
+    }
+
+    /**
+     * @return true while the server has neither accepted nor refused the connection
+     */
+    boolean isOffered() {
+        return (int) INT.getVolatile(buffer, STATE_OFFSET) == STATE_OFFERED;
+    }
+
+    boolean isAccepted() {
+        return (int) INT.getVolatile(buffer, STATE_OFFSET) == STATE_ACCEPTED;
+    }
+
+    /**
+     * @return false if the process on the other side has exited, e.g. it has crashed without closing the connection
+     */
+    boolean isPeerAlive() {
+        long peerPid = (long) LONG.getVolatile(buffer, isClient ? SERVER_PID_OFFSET : CLIENT_PID_OFFSET);
+        return ProcessHandle.of(peerPid).map(ProcessHandle::isAlive).orElse(false);
+    }
+
+    /**
+     * @return true if there is room in the outbound ring
+     */
+    boolean canWrite() {
+        return outboundRing.getFreeSpace() > 0;
+    }
+
+    /**
+     * @return the number of bytes read, 0 if there is nothing to read, or -1 once the connection is closed and the inbound ring has been drained
+     */
+    @Override
+    public int read(ByteBuffer dst) {
+        int readLength = inboundRing.read(dst);
+        if (readLength > 0 || (int) INT.getVolatile(buffer, STATE_OFFSET) != STATE_CLOSED) {
+            return readLength;
+        }
+        // The bytes written before the connection was closed are visible once the closed state has been seen
+        readLength = inboundRing.read(dst);
+        return readLength > 0 ? readLength : -1;
+    }
+
+    /**
+     * @return the number of bytes written, 0 if the outbound ring is full
+     */
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        if (!isOpen()) {
+            throw new ClosedChannelException();
+        }
+        return outboundRing.write(src);
+    }
+
+    @Override
+    public boolean isOpen() {
+        return !isClosed && (int) INT.getVolatile(buffer, STATE_OFFSET) != STATE_CLOSED;
+    }
+
+    /**
+     * Close both directions of the connection, and delete the file if the server has not deleted it yet
+     */
+    @Override
+    public void close() throws IOException {
+        isClosed = true;
+        INT.setVolatile(buffer, STATE_OFFSET, STATE_CLOSED);
+        deleteFile();
+    }
+
+    /**
+     * The file is no longer needed once both sides have mapped it
+     */
+    void deleteFile() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    Path getFile() {
+        return file;
+    }
+
+}
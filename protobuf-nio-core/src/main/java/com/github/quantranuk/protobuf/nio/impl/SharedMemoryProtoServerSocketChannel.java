@@ -0,0 +1,112 @@
+package com.github.quantranuk.protobuf.nio.impl;
+
+import com.github.quantranuk.protobuf.nio.WaitStrategy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * <p>A {@link com.github.quantranuk.protobuf.nio.ProtoServerSocketChannel} accepting {@link SharedMemoryConnection}s from processes of the same host.</p>
+ * <p>The clients offer their connections by creating files in the directory of the server, which a virtual thread scans periodically.
+ * Each accepted connection is then polled by a thread of its own, see {@link SharedMemoryProtoSocketChannel}</p>
+ */
+public class SharedMemoryProtoServerSocketChannel extends AbstractProtoServerSocketChannel {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SharedMemoryProtoServerSocketChannel.class);
+    private static final long ACCEPT_POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final Path directory;
+    private WaitStrategy waitStrategy = WaitStrategy.BLOCKING;
+    private volatile boolean isRunning = false;
+    private Thread acceptorThread;
+
+    /**
+     * @param directory the directory where the clients offer their connections, created if it does not exist
+     */
+    public SharedMemoryProtoServerSocketChannel(Path directory) {
+        super(new SharedMemoryAddress(directory), directory.toString());
+        this.directory = directory;
+    }
+
+    @Override
+    @PostConstruct
+    public void init() {
+        // The directory is only needed once the server is started
+    }
+
+    @Override
+    public void start() throws IOException {
+        Files.createDirectories(directory);
+        isRunning = true;
+        LOGGER.info("Listening to " + serverSocketAddress);
+        acceptorThread = Thread.ofVirtual().name(SharedMemoryProtoServerSocketChannel.class.getSimpleName() + "-Acceptor-" + serverName).start(this::acceptNewConnections);
+    }
+
+    private void acceptNewConnections() {
+        while (isRunning) {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SharedMemoryConnection.FILE_EXTENSION)) {
+                for (Path file : files) {
+                    if (isRunning) {
+                        accept(file);
+                    }
+                }
+            } catch (IOException | DirectoryIteratorException e) {
+                LOGGER.error("Unable to accept new connection at " + serverSocketAddress, e);
+            }
+            LockSupport.parkNanos(ACCEPT_POLL_NANOS);
+        }
+    }
+
+    private void accept(Path file) {
+        SharedMemoryConnection connection;
+        try {
+            connection = SharedMemoryConnection.accept(file);
+            if (connection == null) {
+                return;
+            }
+            connection.deleteFile();
+        } catch (IOException e) {
+            // e.g. the client has given up and deleted the file in the meantime
+            LOGGER.debug("Unable to accept connection " + file, e);
+            return;
+        }
+        SharedMemoryAddress remoteAddress = new SharedMemoryAddress(file);
+        onAccepted(remoteAddress, createProtobufSocketChannel(connection, remoteAddress));
+    }
+
+    private SharedMemoryProtoSocketChannel createProtobufSocketChannel(SharedMemoryConnection connection, SharedMemoryAddress remoteAddress) {
+        SharedMemoryProtoSocketChannel protobufSocketChannel = new SharedMemoryProtoSocketChannel(remoteAddress);
+        configureChannel(protobufSocketChannel, null);
+        protobufSocketChannel.setWaitStrategy(waitStrategy);
+        protobufSocketChannel.setConnection(connection);
+        protobufSocketChannel.init();
+        return protobufSocketChannel;
+    }
+
+    @Override
+    @PreDestroy
+    public void stop() {
+        isRunning = false;
+        if (acceptorThread != null) {
+            LockSupport.unpark(acceptorThread);
+        }
+        disconnectAll();
+    }
+
+    /**
+     * How the threads of the accepted connections wait when there is nothing to read nor to write
+     */
+    public void setWaitStrategy(WaitStrategy waitStrategy) {
+        this.waitStrategy = waitStrategy;
+    }
+
+}
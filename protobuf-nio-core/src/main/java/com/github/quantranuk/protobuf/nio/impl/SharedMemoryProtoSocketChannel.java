@@ -0,0 +1,288 @@
+package com.github.quantranuk.protobuf.nio.impl;
+
+import com.github.quantranuk.protobuf.nio.WaitStrategy;
+import com.github.quantranuk.protobuf.nio.serializer.ProtobufFrameDecoder;
+import com.github.quantranuk.protobuf.nio.utils.DefaultSetting;
+import com.github.quantranuk.protobuf.nio.utils.MpscChunkedQueue;
+import com.github.quantranuk.protobuf.nio.utils.NamedThreadFactory;
+import com.google.protobuf.Message;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * <p>A {@link com.github.quantranuk.protobuf.nio.ProtoSocketChannel} on a {@link SharedMemoryConnection}, for processes of the same host.</p>
+ * <p>The connection is polled by a thread of its own, which reads, writes and runs the handlers, and runs the tasks submitted by other threads in between.
+ * A message sent from that thread is written straight away. There is nothing to block on, so the thread waits according to its {@link WaitStrategy},
+ * {@link WaitStrategy#BLOCKING} backing off like {@link WaitStrategy#BACK_OFF}</p>
+ */
+public class SharedMemoryProtoSocketChannel extends AbstractProtoSocketChannel {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SharedMemoryProtoSocketChannel.class);
+    private static final long CONNECT_POLL_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+    private static final long PEER_CHECK_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final AtomicBoolean isDisconnected = new AtomicBoolean();
+    private final AtomicBoolean isSleeping = new AtomicBoolean();
+    private final MpscChunkedQueue<Runnable> tasks = new MpscChunkedQueue<>(Integer.MAX_VALUE);
+    private volatile SharedMemoryConnection connection;
+    private NioSocketChannelWriter writer;
+    private ByteBuffer readBuffer;
+    private ProtobufFrameDecoder frameDecoder;
+    private Runnable writeTask;
+    private volatile Thread thread;
+
+    private boolean isInitialized = false;
+    private volatile boolean isShuttingDown = false;
+    private WaitStrategy waitStrategy = WaitStrategy.BLOCKING;
+    private int ringCapacity = DefaultSetting.DEFAULT_SHARED_MEMORY_RING_CAPACITY;
+
+    /**
+     * @param directory the directory of the server to connect to
+     */
+    public SharedMemoryProtoSocketChannel(Path directory) {
+        super(new SharedMemoryAddress(directory));
+    }
+
+    SharedMemoryProtoSocketChannel(SharedMemoryAddress socketAddress) {
+        super(socketAddress);
+    }
+
+    @Override
+    @PostConstruct
+    public void init() {
+        if (isInitialized) {
+            return;
+        }
+        isInitialized = true;
+        readBuffer = isDirectReadBuffer ? ByteBuffer.allocateDirect(readBufferSize) : ByteBuffer.allocate(readBufferSize);
+        frameDecoder = newFrameDecoder();
+        writeTask = () -> writer.write();
+        outboundMessageQueue = newOutboundMessageQueue(this::startWriting, this::execute);
+    }
+
+    private void startWriting() {
+        if (Thread.currentThread() == thread) {
+            writer.write();
+        } else {
+            execute(writeTask);
+        }
+    }
+
+    /**
+     * Run a task on the thread of the connection, once it has been started
+     */
+    private void execute(Runnable task) {
+        tasks.offer(task);
+        if (isSleeping.get() && isSleeping.compareAndSet(true, false)) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    @Override
+    protected void startConnecting(CompletableFuture<Void> connectFuture) {
+        Path directory = ((SharedMemoryAddress) socketAddress).getPath();
+        Thread.ofVirtual().name(SharedMemoryProtoSocketChannel.class.getSimpleName() + "-Connector-" + socketAddress).start(() -> {
+            try {
+                connection = SharedMemoryConnection.offer(directory, ringCapacity);
+                if (isShuttingDown) {
+                    // Disconnected (e.g. timed out) while the connection was being offered
+                    connection.close();
+                    return;
+                }
+                while (connection.isOffered() && !connectFuture.isDone()) {
+                    LockSupport.parkNanos(CONNECT_POLL_NANOS);
+                }
+                if (connection.isAccepted()) {
+                    onConnected(connectFuture);
+                } else {
+                    onConnectFailed(connectFuture, new ConnectException("Connection refused by " + socketAddress));
+                }
+            } catch (IOException e) {
+                onConnectFailed(connectFuture, e);
+            }
+        });
+    }
+
+    @Override
+    void startReading() {
+        Thread newThread = new NamedThreadFactory(SharedMemoryProtoSocketChannel.class.getSimpleName() + "-" + socketAddress).newThread(this::run);
+        thread = newThread;
+        newThread.start();
+    }
+
+    private void run() {
+        writer = new NioSocketChannelWriter(connection, writeBufferSize, this::onWriteFailed);
+        writer.setOutboundMessageQueue(outboundMessageQueue);
+        int idleCount = 0;
+        long parkNanos = SelectorEventLoop.BACK_OFF_MIN_PARK_NANOS;
+        long nextPeerCheckNanos = System.nanoTime() + PEER_CHECK_INTERVAL_NANOS;
+        while (!isShuttingDown) {
+            boolean isBusy = runTasks();
+            isBusy |= read();
+            if (writer.isWaitingForWritable() && connection.canWrite()) {
+                writer.write();
+                isBusy = true;
+            }
+            if (isBusy) {
+                idleCount = 0;
+                parkNanos = SelectorEventLoop.BACK_OFF_MIN_PARK_NANOS;
+                continue;
+            }
+            long now = System.nanoTime();
+            if (now - nextPeerCheckNanos >= 0) {
+                nextPeerCheckNanos = now + PEER_CHECK_INTERVAL_NANOS;
+                if (!connection.isPeerAlive()) {
+                    onReadFailed(new IllegalStateException("The process of " + socketAddress + " has exited"));
+                    break;
+                }
+            }
+            switch (waitStrategy) {
+                case BUSY_SPIN:
+                    Thread.onSpinWait();
+                    break;
+                case YIELD:
+                    Thread.yield();
+                    break;
+                default:
+                    idleCount++;
+                    if (idleCount < SelectorEventLoop.BACK_OFF_SPIN_TRIES) {
+                        Thread.onSpinWait();
+                    } else if (idleCount < SelectorEventLoop.BACK_OFF_SPIN_TRIES + SelectorEventLoop.BACK_OFF_YIELD_TRIES) {
+                        Thread.yield();
+                    } else {
+                        // Nothing wakes up the thread when the other side writes, hence the bounded park time
+                        isSleeping.set(true);
+                        if (tasks.isEmpty()) {
+                            LockSupport.parkNanos(parkNanos);
+                        }
+                        isSleeping.set(false);
+                        parkNanos = Long.min(parkNanos * 2, SelectorEventLoop.BACK_OFF_MAX_PARK_NANOS);
+                    }
+                    break;
+            }
+        }
+        // The tasks submitted before the disconnection still run, then a writer waiting for the ring to have room is failed as it is never resumed
+        runTasks();
+        writer.close();
+    }
+
+    private boolean runTasks() {
+        Runnable task = tasks.poll();
+        if (task == null) {
+            return false;
+        }
+        do {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                LOGGER.error("Exception thrown from a task of " + thread.getName(), e);
+            }
+        } while ((task = tasks.poll()) != null);
+        return true;
+    }
+
+    /**
+     * @return true if some bytes have been read
+     */
+    private boolean read() {
+        readBuffer.clear();
+        int readLength = connection.read(readBuffer);
+        if (readLength == -1) {
+            onReadFailed(new IllegalStateException("Reached end-of-stream of " + socketAddress));
+            return false;
+        }
+        if (readLength == 0) {
+            return false;
+        }
+        readBuffer.flip();
+        try {
+            // Complete frames are decoded straight from the read buffer, only a trailing partial frame is copied
+            frameDecoder.decode(readBuffer, this::onMessageDecoded);
+        } catch (IllegalStateException e) {
+            onReadFailed(e);
+            return false;
+        }
+        return true;
+    }
+
+    private void onMessageDecoded(Message message) {
+        if (!isShuttingDown) {
+            fireMessageReceived(message, frameDecoder);
+        }
+    }
+
+    private void onReadFailed(Throwable t) {
+        if (!isShuttingDown) {
+            LOGGER.debug("Unable to read from " + socketAddress, t);
+            disconnect();
+        }
+    }
+
+    private void onWriteFailed(Throwable t) {
+        if (!isShuttingDown) {
+            LOGGER.debug("Unable to write to " + socketAddress, t);
+            disconnect();
+        }
+    }
+
+    @Override
+    @PreDestroy
+    public void disconnect() {
+        if (isDisconnected.getAndSet(true)) {
+            return;
+        }
+        isShuttingDown = true;
+        SharedMemoryConnection currentConnection = connection;
+        if (currentConnection != null) {
+            try {
+                currentConnection.close();
+            } catch (IOException e) {
+                LOGGER.error("Unable to close shared memory connection to " + socketAddress, e);
+            }
+        }
+        Thread currentThread = thread;
+        if (currentThread != null) {
+            LockSupport.unpark(currentThread);
+        }
+        LOGGER.debug("Disconnected from " + socketAddress);
+        fireDisconnected();
+    }
+
+    @Override
+    protected boolean isOpen() {
+        return !isDisconnected.get();
+    }
+
+    /**
+     * How the thread of the connection waits when there is nothing to read nor to write
+     */
+    public void setWaitStrategy(WaitStrategy waitStrategy) {
+        this.waitStrategy = waitStrategy;
+    }
+
+    /**
+     * @param ringCapacity the number of bytes of the ring of each direction, a power of two. Only used by a client, which creates the connection
+     */
+    public void setRingCapacity(int ringCapacity) {
+        this.ringCapacity = ringCapacity;
+    }
+
+    /**
+     * @param connection a connection accepted by a server
+     */
+    void setConnection(SharedMemoryConnection connection) {
+        this.connection = connection;
+    }
+
+}
@@ -0,0 +1,137 @@
+package com.github.quantranuk.protobuf.nio.impl;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * <p>A single producer, single consumer ring of bytes in a region of a memory mapped file, shared by two processes (or two threads).</p>
+ * <p>The producer copies the bytes into the ring, then publishes its new tail position with a release store. The consumer loads the tail
+ * with acquire semantics before copying the bytes out, then publishes its new head position the same way. Both positions only grow,
+ * the bytes in the ring being their difference.</p>
+ * <p>The head and the tail are on separate cache lines. Each side remembers the last position it has seen of the other side, and only reads
+ * it again from the shared memory when that position does not leave room for (or does not hold) all the bytes to copy</p>
+ */
+final class SharedMemoryRingBuffer {
+
+    private static final int CACHE_LINE_SIZE = 64;
+    private static final int HEAD_OFFSET = 0;
+    private static final int TAIL_OFFSET = CACHE_LINE_SIZE;
+    private static final int DATA_OFFSET = 2 * CACHE_LINE_SIZE;
+    private static final VarHandle POSITION = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    private final ByteBuffer buffer;
+    private final int headIndex;
+    private final int tailIndex;
+    private final int dataIndex;
+    private final int capacity;
+    private final int mask;
+    // The tail for the producer, the head for the consumer
+    private long position;
+    // The last head seen by the producer, or the last tail seen by the consumer
+    private long peerPosition;
+
+    /**
+     * @param buffer the mapped buffer, the positions of a new ring must be zero
+     * @param offset the offset of the ring in the buffer, a multiple of the cache line size
+     * @param capacity the number of bytes the ring can hold, a power of two
+     * @param isProducer whether this side of the ring writes to it, or reads from it
+     */
+    SharedMemoryRingBuffer(ByteBuffer buffer, int offset, int capacity, boolean isProducer) {
+        this.buffer = buffer;
+        this.headIndex = offset + HEAD_OFFSET;
+        this.tailIndex = offset + TAIL_OFFSET;
+        this.dataIndex = offset + DATA_OFFSET;
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        long head = (long) POSITION.getAcquire(buffer, headIndex);
+        long tail = (long) POSITION.getAcquire(buffer, tailIndex);
+        this.position = isProducer ? tail : head;
+        this.peerPosition = isProducer ? head : tail;
+    }
+
+    /**
+     * @return the number of bytes of the buffer taken by a ring of this capacity, a multiple of the cache line size
+     */
+    static int getRegionSize(int capacity) {
+        return DATA_OFFSET + capacity;
+    }
+
+    /**
+     * Copy as many bytes as the ring can take, this method must only be called by the producer
+     * @return the number of bytes copied, 0 if the ring is full
+     */
+    int write(ByteBuffer src) {
+        int length = Integer.min(src.remaining(), getFreeSpace(src.remaining()));
+        if (length == 0) {
+            return 0;
+        }
+        int index = (int) position & mask;
+        int firstLength = Integer.min(length, capacity - index);
+        buffer.put(dataIndex + index, src, src.position(), firstLength);
+        if (firstLength < length) {
+            buffer.put(dataIndex, src, src.position() + firstLength, length - firstLength);
+        }
+        src.position(src.position() + length);
+        position += length;
+        POSITION.setRelease(buffer, tailIndex, position);
+        return length;
+    }
+
+    /**
+     * Copy as many bytes as the ring holds and the destination can take, this method must only be called by the consumer
+     * @return the number of bytes copied, 0 if the ring is empty
+     */
+    int read(ByteBuffer dst) {
+        int length = Integer.min(dst.remaining(), getAvailableBytes(dst.remaining()));
+        if (length == 0) {
+            return 0;
+        }
+        int index = (int) position & mask;
+        int firstLength = Integer.min(length, capacity - index);
+        dst.put(dst.position(), buffer, dataIndex + index, firstLength);
+        if (firstLength < length) {
+            dst.put(dst.position() + firstLength, buffer, dataIndex, length - firstLength);
+        }
+        dst.position(dst.position() + length);
+        position += length;
+        POSITION.setRelease(buffer, headIndex, position);
+        return length;
+    }
+
+    /**
+     * @return the number of bytes the producer can write without waiting for the consumer
+     */
+    int getFreeSpace() {
+        return getFreeSpace(1);
+    }
+
+    /**
+     * @return the number of bytes the consumer can read
+     */
+    int getAvailableBytes() {
+        return getAvailableBytes(1);
+    }
+
+    /**
+     * @param length the number of bytes to write, the head is only read again if the last head seen does not leave room for them
+     */
+    private int getFreeSpace(int length) {
+        if (capacity - (int) (position - peerPosition) < length) {
+            peerPosition = (long) POSITION.getAcquire(buffer, headIndex);
+        }
+        return capacity - (int) (position - peerPosition);
+    }
+
+    /**
+     * @param length the number of bytes to read, the tail is only read again if the last tail seen does not hold them
+     */
+    private int getAvailableBytes(int length) {
+        if ((int) (peerPosition - position) < length) {
+            peerPosition = (long) POSITION.getAcquire(buffer, tailIndex);
+        }
+        return (int) (peerPosition - position);
+    }
+
+}
@@ -1,7 +1,6 @@
 package com.github.quantranuk.protobuf.nio.impl;
 
-import com.github.quantranuk.protobuf.nio.serializer.ProtobufSerializer;
-import com.github.quantranuk.protobuf.nio.utils.ByteArrayDequeue;
+import com.github.quantranuk.protobuf.nio.serializer.ProtobufFrameDecoder;
 import com.google.protobuf.Message;
 
 import java.net.SocketAddress;
@@ -14,32 +13,30 @@ import java.util.concurrent.TimeUnit;
 class SocketChannelReader implements CompletionHandler<Integer, Object> {
 
     private final ByteBuffer readBuffer;
-    private final byte[] header;
-    private final ByteArrayDequeue readByteQueue;
+    private final ProtobufFrameDecoder frameDecoder;
     private final AsynchronousSocketChannel socketChannel;
     private final SocketAddress socketAddress;
     private final CompletionHandler<Long, Message> messageReadCompletionHandler;
     private final long readTimeoutMillis;
     private final ExecutorService readExecutor;
-    private int protobufClassNameLength;
-    private int protobufPayloadLength;
 
-    private enum ReadState {READING_MESSAGE_HEADER, READING_MESSAGE_BODY, STOPPED}
+    private enum ReadState {READING, STOPPED}
     private ReadState readState;
+    private Thread readThread;
 
-    SocketChannelReader(AsynchronousSocketChannel socketChannel, SocketAddress socketAddress, long readTimeoutMillis, int readBufferCapacity, ExecutorService readExecutor, CompletionHandler<Long, Message> messageReadCompletionHandler) {
+    SocketChannelReader(AsynchronousSocketChannel socketChannel, SocketAddress socketAddress, long readTimeoutMillis, int readBufferCapacity, boolean isDirectReadBuffer, ExecutorService readExecutor,
+                        ProtobufFrameDecoder frameDecoder, CompletionHandler<Long, Message> messageReadCompletionHandler) {
         this.socketChannel = socketChannel;
         this.socketAddress = socketAddress;
         this.readExecutor = readExecutor;
         this.readTimeoutMillis = readTimeoutMillis;
-        this.readBuffer = ByteBuffer.allocate(readBufferCapacity);
-        this.header = new byte[ProtobufSerializer.HEADER_LENGTH];
-        this.readByteQueue = new ByteArrayDequeue();
+        this.readBuffer = isDirectReadBuffer ? ByteBuffer.allocateDirect(readBufferCapacity) : ByteBuffer.allocate(readBufferCapacity);
+        this.frameDecoder = frameDecoder;
         this.messageReadCompletionHandler = messageReadCompletionHandler;
     }
 
     void start() {
-        readState = ReadState.READING_MESSAGE_HEADER;
+        readState = ReadState.READING;
         readExecutor.execute(this::readNextBlock);
     }
 
@@ -47,7 +44,15 @@ class SocketChannelReader implements CompletionHandler<Integer, Object> {
         readState = ReadState.STOPPED;
     }
 
+    /**
+     * @return the frame decoder of this reader, for the details of the frame of the message being passed to the completion handler
+     */
+    ProtobufFrameDecoder getFrameDecoder() {
+        return frameDecoder;
+    }
+
     private void readNextBlock() {
+        readThread = Thread.currentThread();
         if (readState == ReadState.STOPPED || !socketChannel.isOpen()) {
             return;
         }
@@ -59,63 +64,39 @@ class SocketChannelReader implements CompletionHandler<Integer, Object> {
         }
     }
 
+    /**
+     * The completion is handled straight away when it runs on the read thread already (e.g. a client whose channel group is backed by the read executor),
+     * and is only handed over to the read executor otherwise
+     */
     @Override
     public void completed(Integer readLength, Object attachment) {
-        readExecutor.execute(() -> {
-            if (readLength == -1) {
-                failed(new IllegalStateException("Reached end-of-stream of " + socketAddress), null);
-            } else if (readLength > 0) {
-                readBuffer.flip();
-                readByteQueue.push(readBuffer.array(), readBuffer.position(), readBuffer.limit());
-
-                boolean hasRemainingData = true;
-                while(hasRemainingData) {
-                    switch (readState) {
-                        case READING_MESSAGE_HEADER:
-                            hasRemainingData = processHeader();
-                            break;
-                        case READING_MESSAGE_BODY:
-                            hasRemainingData = processBody();
-                            break;
-                        case STOPPED:
-                            hasRemainingData = false;
-                            break;
-                        default:
-                            hasRemainingData = false;
-                    }
-                }
-
-                readNextBlock();
-            }
-        });
+        if (Thread.currentThread() == readThread) {
+            onReadCompleted(readLength);
+        } else {
+            readExecutor.execute(() -> onReadCompleted(readLength));
+        }
     }
 
-    private boolean processHeader() {
-        if (readByteQueue.getRemaining() < header.length) {
-            return false;
-        }
-        readByteQueue.popExactly(header);
-        if (ProtobufSerializer.hasValidHeaderSignature(header)) {
-            protobufClassNameLength = ProtobufSerializer.extractProtobufClassnameLength(header);
-            protobufPayloadLength = ProtobufSerializer.extractProtobufPayloadLength(header);
-            readState = ReadState.READING_MESSAGE_BODY;
-            return true;
-        } else {
-            failed(new IllegalStateException("Invalid header read"), null);
-            return false;
+    private void onReadCompleted(int readLength) {
+        if (readLength == -1) {
+            failed(new IllegalStateException("Reached end-of-stream of " + socketAddress), null);
+        } else if (readLength > 0) {
+            readBuffer.flip();
+            try {
+                // Complete frames are decoded straight from the read buffer, only a trailing partial frame is copied
+                frameDecoder.decode(readBuffer, this::onMessageDecoded);
+            } catch (IllegalStateException e) {
+                failed(e, null);
+                return;
+            }
+            readNextBlock();
         }
     }
 
-    private boolean processBody() {
-        if (readByteQueue.getRemaining() < protobufClassNameLength + protobufPayloadLength) {
-            return false;
+    private void onMessageDecoded(Message message) {
+        if (readState != ReadState.STOPPED) {
+            messageReadCompletionHandler.completed((long) frameDecoder.getPayloadLength(), message);
         }
-        ByteBuffer protobufClassNameBytes = readByteQueue.popExactly(protobufClassNameLength);
-        ByteBuffer protobufPayloadBytes = readByteQueue.popExactly(protobufPayloadLength);
-        Message message = ProtobufSerializer.deserialize(protobufClassNameBytes, protobufPayloadBytes);
-        messageReadCompletionHandler.completed((long) protobufPayloadLength, message);
-        readState = ReadState.READING_MESSAGE_HEADER;
-        return true;
     }
 
     @Override
@@ -1,123 +1,275 @@
 package com.github.quantranuk.protobuf.nio.impl;
 
-import com.github.quantranuk.protobuf.nio.serializer.ProtobufSerializer;
-import com.github.quantranuk.protobuf.nio.utils.ByteArrayDequeue;
-import com.google.protobuf.Message;
+import com.github.quantranuk.protobuf.nio.utils.DefaultSetting;
+import com.google.protobuf.CodedOutputStream;
 
+import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.AsynchronousSocketChannel;
 import java.nio.channels.CompletionHandler;
-import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
-import java.util.Queue;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
 
-class SocketChannelWriter implements CompletionHandler<Integer, List<Message>> {
+class SocketChannelWriter implements CompletionHandler<Integer, List<Object>> {
 
     private final AsynchronousSocketChannel socketChannel;
-    private final CompletionHandler<Long, Message> messageWriteCompletionHandler;
     private final ExecutorService writeExecutor;
-    private final Queue<Message> outboundMessageQueue;
+    private final Runnable writeTask;
     private final long writeTimeoutMillis;
-    private final ByteArrayDequeue writeBytesQueue;
     private final ByteBuffer writeBuffer;
     private final int writeBufferCapacity;
-    private final List<Message> messagesBeingWritten;
-    private final AtomicBoolean isWritingInProgress;
-    private final int maxMessageWriteQueueSize;
+    private final List<Object> messagesBeingWritten;
+    private final boolean isGatheringWrite;
+    private final ByteBuffer[] gatheringWriteBuffers;
+    private final ByteBuffer[] buffersToWrite;
+    private final GatheringWriteCompletionHandler gatheringWriteCompletionHandler;
+    private OutboundMessageQueue outboundMessageQueue;
+    private int buffersToWriteOffset;
+    private int buffersToWriteLength;
+    private ByteBuffer serializedFrame;
+    private Thread writeThread;
 
-    SocketChannelWriter(AsynchronousSocketChannel socketChannel, long writeTimeoutMillis, int writeBufferCapacity, int maxMessageWriteQueueSize, ExecutorService writeExecutor, CompletionHandler<Long, Message> messageWriteCompletionHandler) {
+    SocketChannelWriter(AsynchronousSocketChannel socketChannel, long writeTimeoutMillis, int writeBufferCapacity, boolean isGatheringWrite, ExecutorService writeExecutor) {
         this.socketChannel = socketChannel;
-        this.maxMessageWriteQueueSize = maxMessageWriteQueueSize;
-        this.messageWriteCompletionHandler = messageWriteCompletionHandler;
+        this.isGatheringWrite = isGatheringWrite;
+        this.gatheringWriteBuffers = new ByteBuffer[isGatheringWrite ? DefaultSetting.MAX_GATHERING_WRITE_BUFFERS : 0];
+        this.buffersToWrite = new ByteBuffer[gatheringWriteBuffers.length];
+        this.gatheringWriteCompletionHandler = new GatheringWriteCompletionHandler();
         this.writeExecutor = writeExecutor;
-        this.outboundMessageQueue = new ArrayDeque<>();
+        this.writeTask = this::checkMessageQueue;
         this.writeTimeoutMillis = writeTimeoutMillis;
-        this.isWritingInProgress = new AtomicBoolean();
-        this.writeBytesQueue = new ByteArrayDequeue();
         this.writeBufferCapacity = writeBufferCapacity;
         this.messagesBeingWritten = new ArrayList<>();
         this.writeBuffer = ByteBuffer.allocate(writeBufferCapacity);
     }
 
-    void addToWriteQueue(Message message) {
-        if (outboundMessageQueue.size() > maxMessageWriteQueueSize) {
-            throw new IllegalStateException("Unable to accept more message due to outbound message queue is too large (" + outboundMessageQueue.size() + ")");
-        }
+    /**
+     * @param outboundMessageQueue the queue to drain, whose write trigger must call {@link #startWriting()}
+     */
+    void setOutboundMessageQueue(OutboundMessageQueue outboundMessageQueue) {
+        this.outboundMessageQueue = outboundMessageQueue;
+    }
 
-        writeExecutor.execute(() -> {
-            outboundMessageQueue.add(message);
-            if (!isWritingInProgress.getAndSet(true)) {
-                checkMessageQueue();
-            }
-        });
+    void startWriting() {
+        writeExecutor.execute(writeTask);
     }
 
     private void checkMessageQueue() {
-        pollNextBatch();
-        if (messagesBeingWritten.isEmpty()) {
-            isWritingInProgress.set(false);
+        writeThread = Thread.currentThread();
+        do {
+            byte[] controlFrame = outboundMessageQueue.pollControlFrame();
+            if (controlFrame != null) {
+                writeSerializedFrame(controlFrame, Collections.emptyList());
+                return;
+            }
+            if (isGatheringWrite) {
+                if (writeNextGatheringBatch()) {
+                    return;
+                }
+                continue;
+            }
+            outboundMessageQueue.pollNextBatch(messagesBeingWritten, writeBufferCapacity);
+            if (!messagesBeingWritten.isEmpty()) {
+                writeMessages(messagesBeingWritten);
+                return;
+            }
+        } while (!outboundMessageQueue.stopWriting());
+    }
+
+    private void writeMessages(List<Object> messages) {
+        if (messages.size() == 1) {
+            Object outboundEntry = messages.get(0);
+            if (outboundMessageQueue.getSerializedSize(outboundEntry) > writeBufferCapacity) {
+                writeSerializedFrame(outboundMessageQueue.serialize(outboundEntry), messages);
+                return;
+            }
+        }
+
+        // Serialize the whole batch straight into the write buffer, the batch is guaranteed to fit
+        writeBuffer.clear();
+        CodedOutputStream output = CodedOutputStream.newInstance(writeBuffer);
+        try {
+            for (Object outboundEntry : messages) {
+                outboundMessageQueue.serialize(outboundEntry, output);
+            }
+            output.flush();
+        } catch (IOException e) {
+            failed(e, messages);
             return;
         }
-        writeMessages(messagesBeingWritten);
+        writeBuffer.flip();
+        socketChannel.write(writeBuffer, writeTimeoutMillis, TimeUnit.MILLISECONDS, messages, this);
     }
 
-    private void pollNextBatch() {
-        int bytesToWrite = 0;
-        int nextMessageSize = 0;
+    /**
+     * <p>Serialize the next batch into as many write buffers as needed (up to {@link DefaultSetting#MAX_GATHERING_WRITE_BUFFERS}) and write
+     * them all with a single gathering write.</p>
+     * <p>A frame that does not fit into a write buffer is written from its own buffer rather than being chunked</p>
+     * @return false if the queue was empty and nothing has been written
+     */
+    private boolean writeNextGatheringBatch() {
         messagesBeingWritten.clear();
-        while (bytesToWrite + nextMessageSize < writeBufferCapacity) {
-            Message message = outboundMessageQueue.poll();
-            if (message == null) {
-                break;
+        buffersToWriteOffset = 0;
+        buffersToWriteLength = 0;
+        ByteBuffer openBuffer = null;
+        CodedOutputStream output = null;
+        try {
+            Object outboundEntry;
+            while ((outboundEntry = outboundMessageQueue.peek()) != null) {
+                int serializedSize = outboundMessageQueue.getSerializedSize(outboundEntry);
+                boolean isOversized = serializedSize > writeBufferCapacity;
+                if (isOversized || output == null || output.spaceLeft() < serializedSize) {
+                    if (buffersToWriteLength == buffersToWrite.length) {
+                        break;
+                    }
+                    closeGatheringBuffer(openBuffer, output);
+                    openBuffer = null;
+                    output = null;
+                    if (isOversized) {
+                        buffersToWrite[buffersToWriteLength] = ByteBuffer.wrap(outboundMessageQueue.serialize(outboundEntry));
+                    } else {
+                        openBuffer = getGatheringWriteBuffer(buffersToWriteLength);
+                        output = CodedOutputStream.newInstance(openBuffer);
+                        buffersToWrite[buffersToWriteLength] = openBuffer;
+                    }
+                    buffersToWriteLength++;
+                }
+                if (!isOversized) {
+                    outboundMessageQueue.serialize(outboundEntry, output);
+                }
+                outboundMessageQueue.poll();
+                messagesBeingWritten.add(outboundEntry);
             }
-            messagesBeingWritten.add(message);
-            bytesToWrite += ProtobufSerializer.getSerializedSize(message);
-            nextMessageSize = outboundMessageQueue.isEmpty() ? 0 : ProtobufSerializer.getSerializedSize(outboundMessageQueue.peek());
+            closeGatheringBuffer(openBuffer, output);
+        } catch (IOException e) {
+            failed(e, messagesBeingWritten);
+            return true;
+        }
+
+        if (messagesBeingWritten.isEmpty()) {
+            return false;
         }
+        writeGatheringBuffers(messagesBeingWritten);
+        return true;
     }
 
-    private void writeMessages(List<Message> messages) {
-        writeBytesQueue.clear();
-        messages.forEach(message -> writeBytesQueue.push(ProtobufSerializer.serialize(message)));
-        writeNextBlock(messages);
+    private ByteBuffer getGatheringWriteBuffer(int index) {
+        if (gatheringWriteBuffers[index] == null) {
+            gatheringWriteBuffers[index] = ByteBuffer.allocate(writeBufferCapacity);
+        }
+        ByteBuffer buffer = gatheringWriteBuffers[index];
+        buffer.clear();
+        return buffer;
     }
 
-    private void writeNextBlock(List<Message> messages) {
-        ByteBuffer nextBlock = writeBytesQueue.popMaximum(writeBufferCapacity);
-        if (nextBlock == null) {
-            messages.forEach(message -> messageWriteCompletionHandler.completed((long) ProtobufSerializer.getSerializedSize(message), message));
-            checkMessageQueue();
-            return;
+    private static void closeGatheringBuffer(ByteBuffer buffer, CodedOutputStream output) throws IOException {
+        if (output != null) {
+            output.flush();
+            buffer.flip();
         }
+    }
 
+    private void writeGatheringBuffers(List<Object> messages) {
+        socketChannel.write(buffersToWrite, buffersToWriteOffset, buffersToWriteLength - buffersToWriteOffset, writeTimeoutMillis, TimeUnit.MILLISECONDS, messages, gatheringWriteCompletionHandler);
+    }
+
+    /**
+     * A pre-serialized frame (e.g. a message that does not fit into the write buffer) is written in chunks through the write buffer,
+     * so that the socket channel never has to copy a large heap buffer into a temporary direct buffer
+     */
+    private void writeSerializedFrame(byte[] frame, List<Object> messages) {
+        serializedFrame = ByteBuffer.wrap(frame);
+        writeNextChunk(messages);
+    }
+
+    private void writeNextChunk(List<Object> messages) {
         writeBuffer.clear();
-        writeBuffer.put(nextBlock);
+        int chunkLength = Integer.min(writeBuffer.remaining(), serializedFrame.remaining());
+        writeBuffer.put(serializedFrame.array(), serializedFrame.position(), chunkLength);
+        serializedFrame.position(serializedFrame.position() + chunkLength);
         writeBuffer.flip();
         socketChannel.write(writeBuffer, writeTimeoutMillis, TimeUnit.MILLISECONDS, messages, this);
     }
 
+    /**
+     * The completion is handled straight away when it runs on the write thread already (e.g. when the write executor also backs the channel group),
+     * and is only handed over to the write executor otherwise, unless the write executor has been shut down by the disconnection
+     */
     @Override
-    public void completed(Integer result, List<Message> messages) {
-        writeExecutor.execute(() -> {
-            int unwrittenBytes = writeBuffer.limit() - result;
-            if (unwrittenBytes > 0) {
-                writeBytesQueue.pushLast(writeBuffer.array(), result, unwrittenBytes);
-            }
-            writeNextBlock(messages);
-        });
+    public void completed(Integer result, List<Object> messages) {
+        if (Thread.currentThread() == writeThread) {
+            onWriteCompleted(messages);
+            return;
+        }
+        try {
+            writeExecutor.execute(() -> onWriteCompleted(messages));
+        } catch (RejectedExecutionException e) {
+            // The channel has been disconnected and its write executor shut down, the writer must still stop so that the queue can be drained
+            onWriteCompleted(messages);
+        }
+    }
+
+    private void onWriteCompleted(List<Object> messages) {
+        if (writeBuffer.hasRemaining()) {
+            socketChannel.write(writeBuffer, writeTimeoutMillis, TimeUnit.MILLISECONDS, messages, this);
+        } else if (serializedFrame != null && serializedFrame.hasRemaining()) {
+            writeNextChunk(messages);
+        } else {
+            serializedFrame = null;
+            outboundMessageQueue.onMessagesWritten(messages);
+            checkMessageQueue();
+        }
     }
 
     @Override
-    public void failed(Throwable exc, List<Message> messages) {
-        writeExecutor.execute(
-                () -> messages.forEach(
-                        message -> messageWriteCompletionHandler.failed(exc, message)));
+    public void failed(Throwable exc, List<Object> messages) {
+        try {
+            writeExecutor.execute(() -> outboundMessageQueue.onMessagesFailed(messages, exc));
+        } catch (RejectedExecutionException e) {
+            // The channel has been disconnected and its write executor shut down
+            outboundMessageQueue.onMessagesFailed(messages, exc);
+        }
     }
 
+    private class GatheringWriteCompletionHandler implements CompletionHandler<Long, List<Object>> {
 
+        @Override
+        public void completed(Long result, List<Object> messages) {
+            if (Thread.currentThread() == writeThread) {
+                onGatheringWriteCompleted(messages);
+                return;
+            }
+            try {
+                writeExecutor.execute(() -> onGatheringWriteCompleted(messages));
+            } catch (RejectedExecutionException e) {
+                // The channel has been disconnected and its write executor shut down
+                onGatheringWriteCompleted(messages);
+            }
+        }
+
+        private void onGatheringWriteCompleted(List<Object> messages) {
+            // Skip the buffers that have been fully written, the partially written one will resume from its position
+            while (buffersToWriteOffset < buffersToWriteLength && !buffersToWrite[buffersToWriteOffset].hasRemaining()) {
+                buffersToWriteOffset++;
+            }
+            if (buffersToWriteOffset < buffersToWriteLength) {
+                writeGatheringBuffers(messages);
+                return;
+            }
+            Arrays.fill(buffersToWrite, 0, buffersToWriteLength, null);
+            outboundMessageQueue.onMessagesWritten(messages);
+            checkMessageQueue();
+        }
+
+        @Override
+        public void failed(Throwable exc, List<Object> messages) {
+            SocketChannelWriter.this.failed(exc, messages);
+        }
+    }
 
 }
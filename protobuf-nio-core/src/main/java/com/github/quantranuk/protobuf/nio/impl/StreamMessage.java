@@ -0,0 +1,20 @@
+package com.github.quantranuk.protobuf.nio.impl;
+
+import com.google.protobuf.Message;
+
+/**
+ * An outgoing message sent on a logical stream of the connection, serialized with the stream id in its frame header.
+ * Its completion is reported to the message sent/send failure handlers of the channel only if it is flagged so
+ */
+final class StreamMessage {
+
+    final Message message;
+    final int streamId;
+    final boolean isReported;
+
+    StreamMessage(Message message, int streamId, boolean isReported) {
+        this.message = message;
+        this.streamId = streamId;
+        this.isReported = isReported;
+    }
+}
@@ -0,0 +1,396 @@
+package com.github.quantranuk.protobuf.nio.impl;
+
+import com.github.quantranuk.protobuf.nio.ProtoDatagramChannel;
+import com.github.quantranuk.protobuf.nio.WritePolicy;
+import com.github.quantranuk.protobuf.nio.handlers.MessageReceivedHandler;
+import com.github.quantranuk.protobuf.nio.handlers.SequenceGapHandler;
+import com.github.quantranuk.protobuf.nio.serializer.MessageTypeRegistry;
+import com.github.quantranuk.protobuf.nio.serializer.ProtobufFrameDecoder;
+import com.github.quantranuk.protobuf.nio.serializer.ProtobufSerializer;
+import com.github.quantranuk.protobuf.nio.utils.DefaultSetting;
+import com.github.quantranuk.protobuf.nio.utils.NamedThreadFactory;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.Message;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.CompletionHandler;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * <p>A {@link ProtoDatagramChannel} over a blocking {@link DatagramChannel}.</p>
+ * <p>The writer runs on the thread that starts it (see {@link OutboundMessageQueue}) and packs the queued frames into datagrams up to the MTU, a message
+ * larger than that being sent in a datagram of its own. Each datagram starts with a header made of the datagram signature, the session id of the sender
+ * (drawn at random when the channel is created, so that the receivers can tell when a sender has restarted) and the sequence number of the datagram.</p>
+ * <p>A platform thread receives the datagrams and runs the handlers. As datagrams can be lost, the type registry is not announced by a handshake frame:
+ * the receivers must be set up with the same type registry as the senders.</p>
+ * <p>The sockets and the handling of the datagrams can be customized by subclasses, see {@link MulticastPublisherProtoDatagramChannel} and
+ * {@link MulticastSubscriberProtoDatagramChannel}</p>
+ */
+public class UdpProtoDatagramChannel implements ProtoDatagramChannel {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(UdpProtoDatagramChannel.class);
+
+    private final SocketAddress bindAddress;
+    private final SocketAddress remoteAddress;
+    private final long sessionId = ThreadLocalRandom.current().nextLong();
+    private final List<MessageReceivedHandler> messageReceivedHandlers = new CopyOnWriteArrayList<>();
+    private final List<SequenceGapHandler> sequenceGapHandlers = new CopyOnWriteArrayList<>();
+    private final List<Object> messagesBeingWritten = new ArrayList<>();
+    // The latest sequence received from each sender, only used by the reader
+    private final Map<SocketAddress, ReceivedSequence> receivedSequences = new HashMap<>();
+
+    private int mtu = DefaultSetting.DEFAULT_DATAGRAM_MTU;
+    private int socketReceiveBufferSize = 0;
+    private WritePolicy writePolicy = WritePolicy.immediate();
+    private MessageTypeRegistry messageTypeRegistry = null;
+
+    private volatile boolean isRunning = false;
+    private DatagramChannel datagramChannel;
+    private OutboundMessageQueue outboundMessageQueue;
+    private ProtobufFrameDecoder frameDecoder;
+    private ByteBuffer writeBuffer;
+    private long nextSequence = 1;
+
+    /**
+     * @param localPort the local port to receive from, 0 for any free port
+     * @param remoteAddress the address to send the messages to, or null if the channel only receives
+     */
+    public UdpProtoDatagramChannel(int localPort, SocketAddress remoteAddress) {
+        this(new InetSocketAddress(localPort), remoteAddress);
+    }
+
+    protected UdpProtoDatagramChannel(SocketAddress bindAddress, SocketAddress remoteAddress) {
+        this.bindAddress = bindAddress;
+        this.remoteAddress = remoteAddress;
+    }
+
+    @Override
+    public void start() throws IOException {
+        if (datagramChannel != null) {
+            throw new IllegalStateException("The channel has already been started");
+        }
+        DatagramChannel newChannel = openChannel();
+        try {
+            if (socketReceiveBufferSize > 0) {
+                newChannel.setOption(StandardSocketOptions.SO_RCVBUF, socketReceiveBufferSize);
+            }
+            bind(newChannel);
+        } catch (IOException e) {
+            newChannel.close();
+            throw e;
+        }
+        datagramChannel = newChannel;
+        writeBuffer = ByteBuffer.allocateDirect(ProtobufSerializer.MAX_DATAGRAM_LENGTH);
+        frameDecoder = newFrameDecoder();
+        outboundMessageQueue = new OutboundMessageQueue(DefaultSetting.MAX_WRITE_MESSAGE_QUEUE_SIZE, DefaultSetting.DEFAULT_WRITE_LOW_WATERMARK,
+                DefaultSetting.DEFAULT_WRITE_HIGH_WATERMARK, writePolicy, messageTypeRegistry, 0, Collections.emptyMap(), this::write, Runnable::run,
+                new MessageWriteCompletionHandler(), isWritable -> {});
+        isRunning = true;
+        LOGGER.info("Bound datagram channel to " + getLocalAddress());
+        new NamedThreadFactory(UdpProtoDatagramChannel.class.getSimpleName() + "-Reader-" + getLocalAddress()).newThread(this::read).start();
+    }
+
+    /**
+     * @return a new channel, with the socket options to set before it is bound
+     */
+    protected DatagramChannel openChannel() throws IOException {
+        return DatagramChannel.open();
+    }
+
+    protected void bind(DatagramChannel channel) throws IOException {
+        channel.bind(bindAddress);
+    }
+
+    @Override
+    @PreDestroy
+    public void stop() {
+        if (!isRunning) {
+            return;
+        }
+        isRunning = false;
+        try {
+            // Also wakes up the reader blocked on the socket
+            datagramChannel.close();
+        } catch (IOException e) {
+            LOGGER.error("Unable to close datagram channel bound to " + bindAddress, e);
+        }
+        LOGGER.info("Stopped datagram channel bound to " + bindAddress);
+    }
+
+    @Override
+    public void sendMessage(Message message) {
+        if (remoteAddress == null) {
+            throw new IllegalStateException("The channel has no remote address to send to");
+        }
+        validateRunning();
+        int serializedSize = ProtobufSerializer.getSerializedSize(message, messageTypeRegistry);
+        if (serializedSize > ProtobufSerializer.MAX_DATAGRAM_LENGTH - ProtobufSerializer.DATAGRAM_HEADER_LENGTH) {
+            throw new IllegalArgumentException("Message of " + serializedSize + " bytes too large for a datagram: " + message.getClass().getName());
+        }
+        outboundMessageQueue.add(message);
+    }
+
+    @Override
+    public void flush() {
+        validateRunning();
+        outboundMessageQueue.flush();
+    }
+
+    private void validateRunning() {
+        if (!isRunning) {
+            throw new IllegalStateException("The channel is not started");
+        }
+    }
+
+    /**
+     * Pack the queued messages into datagrams until the queue is empty. This is called by one thread at a time, see {@link OutboundMessageQueue}
+     */
+    private void write() {
+        while (true) {
+            if (outboundMessageQueue.pollControlFrame() != null) {
+                // The handshake frame would not reach the receivers reliably, they know the type registry up front instead
+                continue;
+            }
+            outboundMessageQueue.pollNextBatch(messagesBeingWritten, mtu - ProtobufSerializer.DATAGRAM_HEADER_LENGTH);
+            if (messagesBeingWritten.isEmpty()) {
+                if (outboundMessageQueue.stopWriting()) {
+                    return;
+                }
+                continue;
+            }
+            // A datagram that cannot be sent still takes its sequence number, so that the receivers see the messages as lost
+            long sequence = nextSequence++;
+            try {
+                writeBuffer.clear();
+                writeBuffer.putInt(ProtobufSerializer.DATAGRAM_SIGNATURE).putLong(sessionId).putLong(sequence);
+                CodedOutputStream output = CodedOutputStream.newInstance(writeBuffer);
+                for (Object outboundEntry : messagesBeingWritten) {
+                    outboundMessageQueue.serialize(outboundEntry, output);
+                }
+                output.flush();
+                writeBuffer.flip();
+                onDatagramWritten(sequence, writeBuffer);
+                datagramChannel.send(writeBuffer, remoteAddress);
+                outboundMessageQueue.onMessagesWritten(messagesBeingWritten);
+            } catch (IOException e) {
+                if (isRunning) {
+                    LOGGER.debug("Unable to send datagram " + sequence + " to " + remoteAddress, e);
+                }
+                outboundMessageQueue.onMessagesFailed(messagesBeingWritten, e);
+            }
+            messagesBeingWritten.clear();
+        }
+    }
+
+    /**
+     * Called by the writer for each datagram, before it is sent
+     * @param datagram the whole datagram, from its position to its limit, which must be left unchanged
+     */
+    protected void onDatagramWritten(long sequence, ByteBuffer datagram) {
+    }
+
+    /**
+     * Send a datagram outside of the writer, e.g. a datagram of a recovery protocol
+     */
+    protected void send(ByteBuffer datagram, SocketAddress target) throws IOException {
+        datagramChannel.send(datagram, target);
+    }
+
+    private void read() {
+        ByteBuffer readBuffer = ByteBuffer.allocateDirect(ProtobufSerializer.MAX_DATAGRAM_LENGTH);
+        while (isRunning) {
+            readBuffer.clear();
+            SocketAddress sender;
+            try {
+                sender = datagramChannel.receive(readBuffer);
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                LOGGER.error("Unable to receive datagram on " + bindAddress, e);
+                stop();
+                return;
+            }
+            readBuffer.flip();
+            onDatagramReceived(sender, readBuffer);
+        }
+    }
+
+    private void onDatagramReceived(SocketAddress sender, ByteBuffer datagram) {
+        if (datagram.remaining() < ProtobufSerializer.DATAGRAM_HEADER_LENGTH) {
+            LOGGER.debug("Ignoring invalid datagram from " + sender);
+            return;
+        }
+        onDatagramReceived(sender, datagram.getInt(), datagram.getLong(), datagram.getLong(), datagram);
+    }
+
+    /**
+     * Handle a datagram received by the reader
+     * @param signature the signature of the datagram, which tells its kind
+     * @param senderSessionId the session id of the sender
+     * @param sequence the sequence of the datagram
+     * @param body the rest of the datagram after the header, e.g. the frames of a datagram of messages
+     */
+    protected void onDatagramReceived(SocketAddress sender, int signature, long senderSessionId, long sequence, ByteBuffer body) {
+        if (signature != ProtobufSerializer.DATAGRAM_SIGNATURE) {
+            LOGGER.debug("Ignoring datagram of unknown kind from " + sender);
+        } else if (isInSequence(sender, senderSessionId, sequence)) {
+            decodeFrames(sender, sequence, body);
+        }
+    }
+
+    /**
+     * Decode the frames of a datagram of messages and pass the messages to the handlers
+     */
+    protected void decodeFrames(SocketAddress sender, long sequence, ByteBuffer frames) {
+        try {
+            // The frames are decoded straight from the read buffer, a datagram always holds whole frames
+            frameDecoder.decode(frames, message -> fireMessageReceived(sender, message));
+            if (frameDecoder.hasPendingFrame()) {
+                throw new IllegalStateException("Truncated frame in datagram " + sequence);
+            }
+        } catch (IllegalStateException e) {
+            LOGGER.debug("Ignoring the rest of datagram " + sequence + " from " + sender, e);
+            frameDecoder = newFrameDecoder();
+        }
+    }
+
+    /**
+     * @return true if the datagram comes next in the sequence of its sender, possibly after a gap. An older datagram (late or duplicated) is stale
+     */
+    private boolean isInSequence(SocketAddress sender, long senderSessionId, long sequence) {
+        ReceivedSequence receivedSequence = receivedSequences.get(sender);
+        if (receivedSequence == null || receivedSequence.sessionId != senderSessionId) {
+            // The datagrams sent before the first one received from this session are unknown, so they do not count as a gap
+            receivedSequences.put(sender, new ReceivedSequence(senderSessionId, sequence));
+            return true;
+        }
+        long expectedSequence = receivedSequence.sequence + 1;
+        if (sequence < expectedSequence) {
+            LOGGER.debug("Dropping stale datagram " + sequence + " from " + sender + ", expected " + expectedSequence);
+            return false;
+        }
+        receivedSequence.sequence = sequence;
+        if (sequence > expectedSequence) {
+            fireSequenceGap(sender, expectedSequence, sequence);
+        }
+        return true;
+    }
+
+    protected void fireSequenceGap(SocketAddress sender, long expectedSequence, long receivedSequence) {
+        sequenceGapHandlers.forEach(handler -> handler.onSequenceGap(sender, expectedSequence, receivedSequence));
+    }
+
+    private ProtobufFrameDecoder newFrameDecoder() {
+        ProtobufFrameDecoder newFrameDecoder = new ProtobufFrameDecoder();
+        newFrameDecoder.setPeerTypeRegistry(messageTypeRegistry);
+        return newFrameDecoder;
+    }
+
+    private void fireMessageReceived(SocketAddress sender, Message message) {
+        messageReceivedHandlers.forEach(handler -> handler.onMessageReceived(sender, message));
+    }
+
+    protected long getSessionId() {
+        return sessionId;
+    }
+
+    protected boolean isRunning() {
+        return isRunning;
+    }
+
+    @Override
+    public SocketAddress getLocalAddress() {
+        try {
+            return datagramChannel == null ? null : datagramChannel.getLocalAddress();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public SocketAddress getRemoteAddress() {
+        return remoteAddress;
+    }
+
+    @Override
+    public void addMessageReceivedHandler(MessageReceivedHandler handler) {
+        messageReceivedHandlers.add(handler);
+    }
+
+    @Override
+    public void removeMessageReceivedHandler(MessageReceivedHandler handler) {
+        messageReceivedHandlers.remove(handler);
+    }
+
+    @Override
+    public void addSequenceGapHandler(SequenceGapHandler handler) {
+        sequenceGapHandlers.add(handler);
+    }
+
+    @Override
+    public void removeSequenceGapHandler(SequenceGapHandler handler) {
+        sequenceGapHandlers.remove(handler);
+    }
+
+    /**
+     * @param mtu the maximum size of a datagram in bytes, header included. The messages are packed into datagrams up to this size
+     */
+    public void setMtu(int mtu) {
+        this.mtu = mtu;
+    }
+
+    /**
+     * @param socketReceiveBufferSize the size of the receive buffer of the socket (SO_RCVBUF), or 0 for the default of the system.
+     *                                Datagrams arriving while the buffer is full are lost
+     */
+    public void setSocketReceiveBufferSize(int socketReceiveBufferSize) {
+        this.socketReceiveBufferSize = socketReceiveBufferSize;
+    }
+
+    public void setWritePolicy(WritePolicy writePolicy) {
+        this.writePolicy = writePolicy;
+    }
+
+    public void setMessageTypeRegistry(MessageTypeRegistry messageTypeRegistry) {
+        this.messageTypeRegistry = messageTypeRegistry;
+    }
+
+    private static final class ReceivedSequence {
+        private final long sessionId;
+        private long sequence;
+
+        private ReceivedSequence(long sessionId, long sequence) {
+            this.sessionId = sessionId;
+            this.sequence = sequence;
+        }
+    }
+
+    private static final class MessageWriteCompletionHandler implements CompletionHandler<Long, Message> {
+
+        @Override
+        public void completed(Long sentBytes, Message message) {
+            // The messages are sent without any completion notification
+        }
+
+        @Override
+        public void failed(Throwable exc, Message message) {
+            // Reported by the writer, per datagram
+        }
+    }
+
+}
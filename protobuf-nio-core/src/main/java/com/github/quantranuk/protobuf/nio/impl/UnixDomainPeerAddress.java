@@ -0,0 +1,44 @@
+package com.github.quantranuk.protobuf.nio.impl;
+
+import java.net.SocketAddress;
+import java.net.UnixDomainSocketAddress;
+import java.util.Objects;
+
+/**
+ * The address of a client connected to a server on a Unix domain socket. Such clients are unnamed, so that each accepted connection is given its own
+ * address, made of the path of the server socket and the number of the connection
+ */
+final class UnixDomainPeerAddress extends SocketAddress {
+
+    private static final long serialVersionUID = 1L;
+
+    private final UnixDomainSocketAddress serverSocketAddress;
+    private final long connectionNumber;
+
+    UnixDomainPeerAddress(UnixDomainSocketAddress serverSocketAddress, long connectionNumber) {
+        this.serverSocketAddress = serverSocketAddress;
+        this.connectionNumber = connectionNumber;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof UnixDomainPeerAddress)) {
+            return false;
+        }
+        UnixDomainPeerAddress that = (UnixDomainPeerAddress) o;
+        return connectionNumber == that.connectionNumber && serverSocketAddress.equals(that.serverSocketAddress);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(serverSocketAddress, connectionNumber);
+    }
+
+    @Override
+    public String toString() {
+        return serverSocketAddress + "#" + connectionNumber;
+    }
+}
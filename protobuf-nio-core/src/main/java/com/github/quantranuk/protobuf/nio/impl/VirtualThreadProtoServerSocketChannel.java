@@ -0,0 +1,96 @@
+package com.github.quantranuk.protobuf.nio.impl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+
+/**
+ * <p>A {@link com.github.quantranuk.protobuf.nio.ProtoServerSocketChannel} on blocking socket channels, with a virtual thread per connection.</p>
+ * <p>New connections are accepted by a virtual thread, then each accepted connection is read by its own virtual thread.
+ * There is no event loop to size: the virtual threads are scheduled on the carrier threads of the JVM</p>
+ */
+public class VirtualThreadProtoServerSocketChannel extends AbstractProtoServerSocketChannel {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(VirtualThreadProtoServerSocketChannel.class);
+
+    private boolean isInitialized = false;
+    private ServerSocketChannel serverSocketChannel;
+
+    public VirtualThreadProtoServerSocketChannel(int port) {
+        super(port);
+    }
+
+    /**
+     * @param path the path of the Unix domain socket to listen to
+     */
+    public VirtualThreadProtoServerSocketChannel(Path path) {
+        super(path);
+    }
+
+    @Override
+    @PostConstruct
+    public void init() {
+        if (isInitialized) {
+            return;
+        }
+        isInitialized = true;
+        try {
+            serverSocketChannel = openServerSocketChannel();
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to open server socket channel", e);
+        }
+    }
+
+    @Override
+    public void start() throws IOException {
+        serverSocketChannel.bind(serverSocketAddress);
+        LOGGER.info("Bind to " + serverSocketAddress);
+        Thread.ofVirtual().name(VirtualThreadProtoServerSocketChannel.class.getSimpleName() + "-Acceptor-" + serverName).start(this::acceptNewConnections);
+    }
+
+    private void acceptNewConnections() {
+        while (serverSocketChannel.isOpen()) {
+            SocketChannel socketChannel;
+            SocketAddress remoteAddress;
+            try {
+                socketChannel = serverSocketChannel.accept();
+                configureAcceptedSocketChannel(socketChannel);
+                remoteAddress = getRemoteAddress(socketChannel);
+            } catch (IOException e) {
+                if (serverSocketChannel.isOpen()) {
+                    LOGGER.error("Unable to accept new connection at " + serverSocketAddress, e);
+                }
+                continue;
+            }
+            onAccepted(remoteAddress, createProtobufSocketChannel(socketChannel, remoteAddress));
+        }
+    }
+
+    private VirtualThreadProtoSocketChannel createProtobufSocketChannel(SocketChannel socketChannel, SocketAddress remoteAddress) {
+        VirtualThreadProtoSocketChannel protobufSocketChannel = new VirtualThreadProtoSocketChannel(remoteAddress);
+        configureChannel(protobufSocketChannel, null);
+        protobufSocketChannel.setSocketChannel(socketChannel);
+        protobufSocketChannel.init();
+        return protobufSocketChannel;
+    }
+
+    @Override
+    @PreDestroy
+    public void stop() {
+        disconnectAll();
+        deleteUnixDomainSocketFile(serverSocketChannel);
+        try {
+            serverSocketChannel.close();
+        } catch (IOException e) {
+            LOGGER.error("Unable to close server socket channel at " + serverSocketAddress, e);
+        }
+    }
+
+}
@@ -0,0 +1,172 @@
+package com.github.quantranuk.protobuf.nio.impl;
+
+import com.github.quantranuk.protobuf.nio.serializer.ProtobufFrameDecoder;
+import com.google.protobuf.Message;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * <p>A {@link com.github.quantranuk.protobuf.nio.ProtoSocketChannel} on a blocking socket channel, read by its own virtual thread.</p>
+ * <p>The handlers run on the virtual thread of the connection, so a handler can block without stalling the other connections.
+ * Outgoing messages are written by a virtual thread started whenever the writer goes from idle to busy</p>
+ */
+public class VirtualThreadProtoSocketChannel extends AbstractProtoSocketChannel {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(VirtualThreadProtoSocketChannel.class);
+
+    private final AtomicBoolean isDisconnected = new AtomicBoolean();
+    private SocketChannel socketChannel;
+    private NioSocketChannelWriter writer;
+    private ByteBuffer readBuffer;
+    private ProtobufFrameDecoder frameDecoder;
+    private ThreadFactory readerThreadFactory;
+    private ThreadFactory writerThreadFactory;
+    private Runnable writeTask;
+
+    private boolean isInitialized = false;
+    private volatile boolean isShuttingDown = false;
+
+    public VirtualThreadProtoSocketChannel(SocketAddress socketAddress) {
+        super(socketAddress);
+    }
+
+    public VirtualThreadProtoSocketChannel(String host, int port) {
+        super(new InetSocketAddress(host, port));
+    }
+
+    @Override
+    @PostConstruct
+    public void init() {
+        if (isInitialized) {
+            return;
+        }
+        isInitialized = true;
+        if (socketChannel == null) {
+            try {
+                socketChannel = openSocketChannel();
+            } catch (IOException e) {
+                throw new IllegalStateException("Unable to open socket channel", e);
+            }
+        }
+        readerThreadFactory = Thread.ofVirtual().name(VirtualThreadProtoSocketChannel.class.getSimpleName() + "-Reader-" + socketAddress).factory();
+        writerThreadFactory = Thread.ofVirtual().name(VirtualThreadProtoSocketChannel.class.getSimpleName() + "-Writer-" + socketAddress).factory();
+        readBuffer = isDirectReadBuffer ? ByteBuffer.allocateDirect(readBufferSize) : ByteBuffer.allocate(readBufferSize);
+        frameDecoder = newFrameDecoder();
+        writer = new NioSocketChannelWriter(socketChannel, writeBufferSize, this::onWriteFailed);
+        writeTask = writer::write;
+        Executor notificationExecutor = task -> writerThreadFactory.newThread(task).start();
+        outboundMessageQueue = newOutboundMessageQueue(() -> notificationExecutor.execute(writeTask), notificationExecutor);
+        writer.setOutboundMessageQueue(outboundMessageQueue);
+    }
+
+    @Override
+    protected void startConnecting(CompletableFuture<Void> connectFuture) {
+        // A timeout closes the channel, which interrupts the blocked connect
+        readerThreadFactory.newThread(() -> {
+            try {
+                socketChannel.connect(socketAddress);
+                if (!isUnixDomainSocket()) {
+                    socketChannel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                }
+                onConnected(connectFuture);
+            } catch (IOException e) {
+                onConnectFailed(connectFuture, e);
+            }
+        }).start();
+    }
+
+    @Override
+    void startReading() {
+        readerThreadFactory.newThread(this::read).start();
+    }
+
+    private void read() {
+        while (!isShuttingDown) {
+            readBuffer.clear();
+            int readLength;
+            try {
+                readLength = socketChannel.read(readBuffer);
+            } catch (IOException e) {
+                onReadFailed(e);
+                return;
+            }
+            if (readLength == -1) {
+                onReadFailed(new IllegalStateException("Reached end-of-stream of " + socketAddress));
+                return;
+            }
+            readBuffer.flip();
+            try {
+                // Complete frames are decoded straight from the read buffer, only a trailing partial frame is copied
+                frameDecoder.decode(readBuffer, this::onMessageDecoded);
+            } catch (IllegalStateException e) {
+                onReadFailed(e);
+                return;
+            }
+        }
+    }
+
+    private void onMessageDecoded(Message message) {
+        if (!isShuttingDown) {
+            fireMessageReceived(message, frameDecoder);
+        }
+    }
+
+    private void onReadFailed(Throwable t) {
+        if (!isShuttingDown) {
+            LOGGER.debug("Unable to read from " + socketAddress, t);
+            disconnect();
+        }
+    }
+
+    private void onWriteFailed(Throwable t) {
+        if (!isShuttingDown) {
+            LOGGER.debug("Unable to write to " + socketAddress, t);
+            disconnect();
+        }
+    }
+
+    @Override
+    @PreDestroy
+    public void disconnect() {
+        if (isDisconnected.getAndSet(true)) {
+            return;
+        }
+        isShuttingDown = true;
+        if (socketChannel != null) {
+            try {
+                // Closing the channel also interrupts the blocked reader
+                socketChannel.close();
+            } catch (IOException e) {
+                LOGGER.error("Unable to close socket channel to " + socketAddress, e);
+            }
+        }
+        LOGGER.debug("Disconnected from " + socketAddress);
+        fireDisconnected();
+    }
+
+    @Override
+    protected boolean isOpen() {
+        return socketChannel.isOpen();
+    }
+
+    /**
+     * @param socketChannel an accepted socket channel, in blocking mode
+     */
+    void setSocketChannel(SocketChannel socketChannel) {
+        this.socketChannel = socketChannel;
+    }
+
+}
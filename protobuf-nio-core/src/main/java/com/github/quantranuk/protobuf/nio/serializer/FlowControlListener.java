@@ -0,0 +1,18 @@
+package com.github.quantranuk.protobuf.nio.serializer;
+
+/**
+ * Listener of the flow control frames decoded by a {@link ProtobufFrameDecoder}
+ */
+public interface FlowControlListener {
+
+    /**
+     * @param window the receive window announced by the remote peer, 0 if the remote peer does not use flow control
+     */
+    void onWindowAnnounced(int window);
+
+    /**
+     * @param credit the number of bytes the remote peer has consumed, and that can be sent again
+     */
+    void onCreditGranted(int credit);
+
+}
@@ -0,0 +1,158 @@
+package com.github.quantranuk.protobuf.nio.serializer;
+
+import com.google.protobuf.Message;
+import com.google.protobuf.Parser;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * <p>A registry that maps protobuf message classes to compact integer type ids.</p>
+ * <p>When a registry is configured on a channel, the channel announces the registry to the remote peer in a handshake frame before
+ * any other frame is written. After that, messages of a registered type are written with their type id instead of their full class name,
+ * and the remote peer resolves the id with a simple array lookup. Messages of types that are not registered are still written with their class name.</p>
+ * <p>Types must be registered before the channel is connected/started. Lookups are thread-safe.</p>
+ */
+public final class MessageTypeRegistry {
+
+    /**
+     * The value returned by {@link #getTypeId(Class)} for types that are not registered
+     */
+    public static final int NO_TYPE_ID = -1;
+
+    /**
+     * The largest type id that can be registered
+     */
+    public static final int MAX_TYPE_ID = 0xFFFF;
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private volatile Map<Class<?>, Integer> typeIdsByClass = Collections.emptyMap();
+    private volatile Class<?>[] classesByTypeId = new Class<?>[INITIAL_CAPACITY];
+    private volatile Parser<?>[] parsersByTypeId = new Parser<?>[INITIAL_CAPACITY];
+    private int nextTypeId = 0;
+
+    /**
+     * Register a protobuf message type using the next available type id
+     * @param messageClass the protobuf message class
+     * @return the type id of the message class
+     */
+    public synchronized int register(Class<? extends Message> messageClass) {
+        Integer existingTypeId = typeIdsByClass.get(messageClass);
+        if (existingTypeId != null) {
+            return existingTypeId;
+        }
+        while (nextTypeId < classesByTypeId.length && classesByTypeId[nextTypeId] != null) {
+            nextTypeId++;
+        }
+        int typeId = nextTypeId++;
+        register(messageClass, typeId);
+        return typeId;
+    }
+
+    /**
+     * Register a protobuf message type with an explicit type id
+     * @param messageClass the protobuf message class
+     * @param typeId the type id, between 0 and {@link #MAX_TYPE_ID}
+     * @throws IllegalArgumentException if the type id is out of range
+     * @throws IllegalStateException if the type id or the message class has already been registered
+     */
+    public synchronized void register(Class<? extends Message> messageClass, int typeId) {
+        if (typeId < 0 || typeId > MAX_TYPE_ID) {
+            throw new IllegalArgumentException("Invalid type id: " + typeId);
+        }
+        Integer existingTypeId = typeIdsByClass.get(messageClass);
+        if (existingTypeId != null) {
+            throw new IllegalStateException(messageClass.getName() + " is already registered with type id " + existingTypeId);
+        }
+        if (typeId < classesByTypeId.length && classesByTypeId[typeId] != null) {
+            throw new IllegalStateException("Type id " + typeId + " is already registered to " + classesByTypeId[typeId].getName());
+        }
+        ProtobufSerializer.registerMessageType(messageClass);
+        putTypeId(messageClass, typeId, ProtobufSerializer.getParser(messageClass));
+    }
+
+    private void putTypeId(Class<?> messageClass, int typeId, Parser<? extends Message> parser) {
+        Class<?>[] newClassesByTypeId = classesByTypeId;
+        Parser<?>[] newParsersByTypeId = parsersByTypeId;
+        if (typeId >= newClassesByTypeId.length) {
+            int newCapacity = Integer.max(typeId + 1, newClassesByTypeId.length * 2);
+            newClassesByTypeId = Arrays.copyOf(newClassesByTypeId, newCapacity);
+            newParsersByTypeId = Arrays.copyOf(newParsersByTypeId, newCapacity);
+        } else {
+            newClassesByTypeId = newClassesByTypeId.clone();
+            newParsersByTypeId = newParsersByTypeId.clone();
+        }
+        newClassesByTypeId[typeId] = messageClass;
+        newParsersByTypeId[typeId] = parser;
+
+        Map<Class<?>, Integer> newTypeIdsByClass = new HashMap<>(typeIdsByClass);
+        newTypeIdsByClass.put(messageClass, typeId);
+
+        parsersByTypeId = newParsersByTypeId;
+        classesByTypeId = newClassesByTypeId;
+        typeIdsByClass = newTypeIdsByClass;
+    }
+
+    /**
+     * Get the type id of a protobuf message class
+     * @param messageClass the protobuf message class
+     * @return the type id, or {@link #NO_TYPE_ID} if the class is not registered
+     */
+    public int getTypeId(Class<?> messageClass) {
+        Integer typeId = typeIdsByClass.get(messageClass);
+        return typeId == null ? NO_TYPE_ID : typeId;
+    }
+
+    /**
+     * Get the protobuf message class registered with a type id
+     * @param typeId the type id
+     * @return the message class, or null if no class is registered with the type id
+     */
+    public Class<?> getMessageClass(int typeId) {
+        Class<?>[] classes = classesByTypeId;
+        return typeId >= 0 && typeId < classes.length ? classes[typeId] : null;
+    }
+
+    /**
+     * @return true if no type has been registered
+     */
+    public boolean isEmpty() {
+        return typeIdsByClass.isEmpty();
+    }
+
+    Map<Class<?>, Integer> getTypeIds() {
+        return typeIdsByClass;
+    }
+
+    @SuppressWarnings("unchecked")
+    Parser<? extends Message> getParser(int typeId) {
+        Parser<?>[] parsers = parsersByTypeId;
+        return typeId >= 0 && typeId < parsers.length ? (Parser<? extends Message>) parsers[typeId] : null;
+    }
+
+    /**
+     * Build the registry of the remote peer from the type ids it has announced. Classes that are not available locally are skipped, so that
+     * the remote peer can still send all other types. A class is only initialized once it is known to be a protobuf message, as the class names
+     * come from the remote peer.
+     */
+    static MessageTypeRegistry fromAnnouncedTypes(Map<Integer, String> classNamesByTypeId) {
+        MessageTypeRegistry registry = new MessageTypeRegistry();
+        ClassLoader classLoader = MessageTypeRegistry.class.getClassLoader();
+        classNamesByTypeId.forEach((typeId, className) -> {
+            if (typeId < 0 || typeId > MAX_TYPE_ID) {
+                throw new IllegalStateException("Invalid type id " + typeId + " announced for " + className);
+            }
+            try {
+                Class<?> messageClass = Class.forName(className, false, classLoader);
+                registry.putTypeId(messageClass, typeId, ProtobufSerializer.getParser(messageClass));
+            } catch (ClassNotFoundException | IllegalStateException | LinkageError e) {
+                // Unknown to this side, not a protobuf class, or unable to load. Any frame using this type id will fail to be deserialized
+            }
+        });
+        return registry;
+    }
+
+}
@@ -0,0 +1,212 @@
+package com.github.quantranuk.protobuf.nio.serializer;
+
+import com.google.protobuf.Message;
+
+import java.nio.ByteBuffer;
+import java.util.function.Consumer;
+
+/**
+ * <p>A decoder that turns a stream of bytes, read in blocks of arbitrary size, back into protobuf messages. This class is not thread-safe,
+ * there must be one decoder per connection.</p>
+ * <p>Complete frames are deserialized in place from the block that has been read (heap or direct buffer), without copying. Only a frame
+ * that is split across blocks is copied into an internal buffer until it is complete.</p>
+ */
+public final class ProtobufFrameDecoder {
+
+    private static final int INITIAL_PENDING_FRAME_CAPACITY = 8192;
+    private static final int MAX_RETAINED_PENDING_FRAME_CAPACITY = 1024 * 1024;
+
+    private ByteBuffer pendingFrame = ByteBuffer.allocate(INITIAL_PENDING_FRAME_CAPACITY);
+    private int pendingFrameLength = 0;
+    private int frameLength;
+    private int payloadLength;
+    private int rpcKind;
+    private long correlationId;
+    private int streamId;
+    private MessageTypeRegistry peerTypeRegistry;
+    private FlowControlListener flowControlListener;
+
+    /**
+     * Decode all the complete frames available in the input and keep the trailing partial frame (if any) until the next block is decoded
+     * @param input the block that has been read, from its position to its limit. The input will be fully consumed.
+     * @param messageConsumer the consumer of the decoded messages
+     * @throws IllegalStateException if the input contains an invalid frame
+     */
+    public void decode(ByteBuffer input, Consumer<Message> messageConsumer) {
+        if (pendingFrame.position() > 0 && !completePendingFrame(input, messageConsumer)) {
+            return;
+        }
+        while (input.remaining() >= ProtobufSerializer.HEADER_LENGTH) {
+            int frameStart = input.position();
+            int frameLength = readFrameLength(input, frameStart);
+            if (input.remaining() < frameLength) {
+                break;
+            }
+            decodeFrame(input, frameStart, frameLength, messageConsumer);
+            input.position(frameStart + frameLength);
+        }
+        if (input.hasRemaining()) {
+            appendToPendingFrame(input, input.remaining());
+        }
+    }
+
+    /**
+     * @return true if the decoder holds a partial frame that has not been decoded yet
+     */
+    public boolean hasPendingFrame() {
+        return pendingFrame.position() > 0;
+    }
+
+    /**
+     * @param peerTypeRegistry the registry of type ids of the remote peer, when it is known up front instead of being announced by a handshake frame
+     *                         (e.g. for datagrams, which can be lost)
+     */
+    public void setPeerTypeRegistry(MessageTypeRegistry peerTypeRegistry) {
+        this.peerTypeRegistry = peerTypeRegistry;
+    }
+
+    /**
+     * @param flowControlListener the listener of the flow control frames sent by the remote peer
+     */
+    public void setFlowControlListener(FlowControlListener flowControlListener) {
+        this.flowControlListener = flowControlListener;
+    }
+
+    /**
+     * @return the length of the whole frame of the message being consumed, header included. This is only valid inside the message consumer.
+     */
+    public int getFrameLength() {
+        return frameLength;
+    }
+
+    /**
+     * @return the length of the protobuf payload of the message being consumed. This is only valid inside the message consumer.
+     */
+    public int getPayloadLength() {
+        return payloadLength;
+    }
+
+    /**
+     * @return the kind of RPC frame of the message being consumed, or {@link ProtobufSerializer#RPC_KIND_NONE} if the message is not part of a remote call.
+     * This is only valid inside the message consumer.
+     */
+    public int getRpcKind() {
+        return rpcKind;
+    }
+
+    /**
+     * @return the correlation id of the RPC frame of the message being consumed. This is only valid inside the message consumer.
+     */
+    public long getCorrelationId() {
+        return correlationId;
+    }
+
+    /**
+     * @return the id of the logical stream of the message being consumed, or {@link ProtobufSerializer#DEFAULT_STREAM_ID} if the message has not been sent
+     * on a stream. This is only valid inside the message consumer.
+     */
+    public int getStreamId() {
+        return streamId;
+    }
+
+    private boolean completePendingFrame(ByteBuffer input, Consumer<Message> messageConsumer) {
+        if (pendingFrameLength == 0) {
+            if (pendingFrame.position() < ProtobufSerializer.HEADER_LENGTH) {
+                appendToPendingFrame(input, Integer.min(ProtobufSerializer.HEADER_LENGTH - pendingFrame.position(), input.remaining()));
+                if (pendingFrame.position() < ProtobufSerializer.HEADER_LENGTH) {
+                    return false;
+                }
+            }
+            pendingFrameLength = readFrameLength(pendingFrame, 0);
+        }
+        appendToPendingFrame(input, Integer.min(pendingFrameLength - pendingFrame.position(), input.remaining()));
+        if (pendingFrame.position() < pendingFrameLength) {
+            return false;
+        }
+        pendingFrame.flip();
+        decodeFrame(pendingFrame, 0, pendingFrameLength, messageConsumer);
+        if (pendingFrame.capacity() > MAX_RETAINED_PENDING_FRAME_CAPACITY) {
+            pendingFrame = ByteBuffer.allocate(INITIAL_PENDING_FRAME_CAPACITY);
+        } else {
+            pendingFrame.clear();
+        }
+        pendingFrameLength = 0;
+        return true;
+    }
+
+    private void appendToPendingFrame(ByteBuffer input, int length) {
+        if (pendingFrame.remaining() < length) {
+            int newCapacity = Integer.max(pendingFrame.position() + length, Integer.max(pendingFrameLength, pendingFrame.capacity() * 2));
+            ByteBuffer newPendingFrame = ByteBuffer.allocate(newCapacity);
+            pendingFrame.flip();
+            newPendingFrame.put(pendingFrame);
+            pendingFrame = newPendingFrame;
+        }
+        int inputLimit = input.limit();
+        input.limit(input.position() + length);
+        pendingFrame.put(input);
+        input.limit(inputLimit);
+    }
+
+    private static int readFrameLength(ByteBuffer buffer, int frameStart) {
+        int signature = buffer.getInt(frameStart);
+        int protobufClassNameLength = buffer.getInt(frameStart + ProtobufSerializer.SIGNATURE_LENGTH);
+        int protobufPayloadLength = buffer.getInt(frameStart + ProtobufSerializer.SIGNATURE_LENGTH + ProtobufSerializer.PROTO_CLASSNAME_LENGTH);
+        long frameLength = (long) ProtobufSerializer.HEADER_LENGTH + protobufPayloadLength;
+        if (signature == ProtobufSerializer.SIGNATURE) {
+            frameLength += Integer.max(protobufClassNameLength, 0);
+        } else if (signature == ProtobufSerializer.RPC_SIGNATURE) {
+            frameLength += ProtobufSerializer.RPC_KIND_LENGTH + ProtobufSerializer.CORRELATION_ID_LENGTH + Integer.max(protobufClassNameLength, 0);
+        } else if (signature == ProtobufSerializer.STREAM_SIGNATURE) {
+            frameLength += ProtobufSerializer.STREAM_ID_LENGTH + Integer.max(protobufClassNameLength, 0);
+        } else if (signature != ProtobufSerializer.CONTROL_SIGNATURE) {
+            throw new IllegalStateException("Invalid header read");
+        }
+        if (protobufPayloadLength < 0 || frameLength > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Invalid header read");
+        }
+        return (int) frameLength;
+    }
+
+    private void decodeFrame(ByteBuffer buffer, int frameStart, int frameLength, Consumer<Message> messageConsumer) {
+        int signature = buffer.getInt(frameStart);
+        int protobufClassNameLength = buffer.getInt(frameStart + ProtobufSerializer.SIGNATURE_LENGTH);
+        int protobufPayloadLength = buffer.getInt(frameStart + ProtobufSerializer.SIGNATURE_LENGTH + ProtobufSerializer.PROTO_CLASSNAME_LENGTH);
+        int bodyStart = frameStart + ProtobufSerializer.HEADER_LENGTH;
+        this.frameLength = frameLength;
+        payloadLength = protobufPayloadLength;
+        if (signature == ProtobufSerializer.RPC_SIGNATURE) {
+            rpcKind = buffer.getInt(bodyStart);
+            correlationId = buffer.getLong(bodyStart + ProtobufSerializer.RPC_KIND_LENGTH);
+            bodyStart += ProtobufSerializer.RPC_KIND_LENGTH + ProtobufSerializer.CORRELATION_ID_LENGTH;
+        } else {
+            rpcKind = ProtobufSerializer.RPC_KIND_NONE;
+            correlationId = 0;
+        }
+        if (signature == ProtobufSerializer.STREAM_SIGNATURE) {
+            streamId = buffer.getInt(bodyStart);
+            bodyStart += ProtobufSerializer.STREAM_ID_LENGTH;
+        } else {
+            streamId = ProtobufSerializer.DEFAULT_STREAM_ID;
+        }
+
+        if (signature == ProtobufSerializer.CONTROL_SIGNATURE) {
+            if (protobufClassNameLength == ProtobufSerializer.CONTROL_TYPE_HANDSHAKE) {
+                peerTypeRegistry = ProtobufSerializer.deserializeTypeRegistry(buffer.slice(bodyStart, protobufPayloadLength));
+            } else if (protobufClassNameLength == ProtobufSerializer.CONTROL_TYPE_FLOW_CONTROL_WINDOW && flowControlListener != null) {
+                flowControlListener.onWindowAnnounced(buffer.getInt(bodyStart));
+            } else if (protobufClassNameLength == ProtobufSerializer.CONTROL_TYPE_FLOW_CONTROL_CREDIT && flowControlListener != null) {
+                flowControlListener.onCreditGranted(buffer.getInt(bodyStart));
+            }
+        } else if (protobufClassNameLength < 0) {
+            ByteBuffer protobufPayloadBuffer = buffer.slice(bodyStart, protobufPayloadLength);
+            int typeId = ProtobufSerializer.decodeTypeId(protobufClassNameLength);
+            messageConsumer.accept(ProtobufSerializer.deserialize(peerTypeRegistry, typeId, protobufPayloadBuffer));
+        } else {
+            ByteBuffer protobufClassNameBuffer = buffer.slice(bodyStart, protobufClassNameLength);
+            ByteBuffer protobufPayloadBuffer = buffer.slice(bodyStart + protobufClassNameLength, protobufPayloadLength);
+            messageConsumer.accept(ProtobufSerializer.deserialize(protobufClassNameBuffer, protobufPayloadBuffer));
+        }
+    }
+
+}
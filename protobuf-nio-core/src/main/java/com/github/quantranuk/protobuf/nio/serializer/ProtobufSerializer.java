@@ -1,31 +1,74 @@
 package com.github.quantranuk.protobuf.nio.serializer;
 
 import com.github.quantranuk.protobuf.nio.utils.ByteUtils;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.InvalidProtocolBufferException;
 import com.google.protobuf.Message;
+import com.google.protobuf.Parser;
 
+import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * <p>A serializer to serialize Protobuf messages into bytes array and deserialize bytes array back into Protobuf message</p>
  * <p>The class name of the protobuf is also serialized as part of the message. This is so that the deserialization process will be able to use the class name
- * to re-construct the protobuf message using reflection.</p>
+ * to look up the protobuf parser (using reflection only once per class).</p>
+ * <p>If the message type is registered in a {@link MessageTypeRegistry}, a compact type id is serialized instead of the class name.
+ * The type id is encoded as a negative value in the place of the class name length, so that both kind of frames share the same header.</p>
  */
 public final class ProtobufSerializer {
 
     public static final int SIGNATURE = 0x7A6B5C4D;
+    public static final int CONTROL_SIGNATURE = 0x7A6B5C4E;
+    public static final int CONTROL_TYPE_HANDSHAKE = 1;
+    public static final int CONTROL_TYPE_FLOW_CONTROL_WINDOW = 2;
+    public static final int CONTROL_TYPE_FLOW_CONTROL_CREDIT = 3;
     public static final int SIGNATURE_LENGTH = Integer.BYTES;
     public static final int PROTO_CLASSNAME_LENGTH = Integer.BYTES;
     public static final int PROTO_PAYLOAD_LENGTH = Integer.BYTES;
     public static final int HEADER_LENGTH = SIGNATURE_LENGTH + PROTO_CLASSNAME_LENGTH + PROTO_PAYLOAD_LENGTH;
+    public static final int RPC_SIGNATURE = 0x7A6B5C4F;
+    public static final int RPC_KIND_NONE = 0;
+    public static final int RPC_KIND_REQUEST = 1;
+    public static final int RPC_KIND_RESPONSE = 2;
+    public static final int RPC_KIND_ERROR = 3;
+    public static final int RPC_KIND_LENGTH = Integer.BYTES;
+    public static final int CORRELATION_ID_LENGTH = Long.BYTES;
+    public static final int RPC_HEADER_LENGTH = HEADER_LENGTH + RPC_KIND_LENGTH + CORRELATION_ID_LENGTH;
+    public static final int STREAM_SIGNATURE = 0x7A6B5C50;
+    public static final int DEFAULT_STREAM_ID = 0;
+    public static final int STREAM_ID_LENGTH = Integer.BYTES;
+    public static final int STREAM_HEADER_LENGTH = HEADER_LENGTH + STREAM_ID_LENGTH;
+    public static final int DATAGRAM_SIGNATURE = 0x7A6B5C51;
+    public static final int SESSION_ID_LENGTH = Long.BYTES;
+    public static final int SEQUENCE_LENGTH = Long.BYTES;
+    public static final int DATAGRAM_HEADER_LENGTH = SIGNATURE_LENGTH + SESSION_ID_LENGTH + SEQUENCE_LENGTH;
+    public static final int DATAGRAM_HEARTBEAT_SIGNATURE = 0x7A6B5C52;
+    public static final int DATAGRAM_NAK_SIGNATURE = 0x7A6B5C53;
+    public static final int DATAGRAM_LOST_SIGNATURE = 0x7A6B5C54;
+    public static final int DATAGRAM_RANGE_LENGTH = DATAGRAM_HEADER_LENGTH + SEQUENCE_LENGTH;
+    public static final int MAX_DATAGRAM_LENGTH = 65507;
 
     private static final Charset CHARSET = StandardCharsets.ISO_8859_1;
-    private static final Map<ByteBuffer, Method> CACHED_PARSE_PROTOBUF_METHODS = new ConcurrentHashMap<>();
+    private static final Map<ByteBuffer, Parser<? extends Message>> CACHED_PROTOBUF_PARSERS = new ConcurrentHashMap<>();
+    private static final ClassValue<Parser<? extends Message>> CACHED_PARSERS_BY_CLASS = new ClassValue<Parser<? extends Message>>() {
+        @Override
+        protected Parser<? extends Message> computeValue(Class<?> type) {
+            return lookupParser(type);
+        }
+    };
+    private static final ClassValue<byte[]> ENCODED_CLASS_NAMES = new ClassValue<byte[]>() {
+        @Override
+        protected byte[] computeValue(Class<?> type) {
+            return type.getName().getBytes(CHARSET);
+        }
+    };
 
     /**
      * <p>Serialize a protobuf message into bytes array. The bytes array will contains in this order:</p>
@@ -40,19 +83,162 @@ public final class ProtobufSerializer {
      * @return serialized byte arrays
      */
     public static byte[] serialize(Message message) {
-        ByteBuffer encodedProtobufClassName = CHARSET.encode(message.getClass().getName());
-        int protobufClassNameLength = encodedProtobufClassName.capacity();
-
-        byte[] protbufPayload = message.toByteArray();
-        int protbufPayloadLength = protbufPayload.length;
-
-        ByteBuffer buffer = ByteBuffer.allocate(HEADER_LENGTH + protobufClassNameLength + protbufPayloadLength);
-        buffer.putInt(SIGNATURE);
-        buffer.putInt(protobufClassNameLength);
-        buffer.putInt(protbufPayloadLength);
-        buffer.put(encodedProtobufClassName);
-        buffer.put(protbufPayload);
-        return buffer.array();
+        return serialize(message, null);
+    }
+
+    /**
+     * <p>Serialize a protobuf message into bytes array. If the message type is registered in the registry, the bytes array will contains in this order:</p>
+     * <ul>
+     *     <li>Integer: A simple signature so that the dezerialization can quickly detect corrupted data</li>
+     *     <li>Integer: The encoded type id (see {@link #encodeTypeId(int)})</li>
+     *     <li>Integer: The length of the protobuf payload</li>
+     *     <li>bytes[]: The protobuf payload in bytes</li>
+     * </ul>
+     * <p>Otherwise the message is serialized with its class name as in {@link #serialize(Message)}</p>
+     * @param message the protobuf message
+     * @param typeRegistry the registry of type ids, can be null
+     * @return serialized byte arrays
+     */
+    public static byte[] serialize(Message message, MessageTypeRegistry typeRegistry) {
+        byte[] serializedBytes = new byte[getSerializedSize(message, typeRegistry)];
+        CodedOutputStream output = CodedOutputStream.newInstance(serializedBytes);
+        try {
+            serialize(message, typeRegistry, output);
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to serialize " + message.getClass().getName(), e);
+        }
+        output.checkNoSpaceLeft();
+        return serializedBytes;
+    }
+
+    /**
+     * <p>Serialize a protobuf message directly into an output stream, in the same format as {@link #serialize(Message, MessageTypeRegistry)}.</p>
+     * <p>This allows the message to be written straight into a pre-allocated buffer (see {@link CodedOutputStream#newInstance(ByteBuffer)})
+     * without any intermediate copy. The caller must make sure that there are at least {@link #getSerializedSize(Message, MessageTypeRegistry)}
+     * bytes left in the output stream.</p>
+     * @param message the protobuf message
+     * @param typeRegistry the registry of type ids, can be null
+     * @param output the output stream to write into
+     * @throws IOException if the message cannot be written into the output stream
+     */
+    public static void serialize(Message message, MessageTypeRegistry typeRegistry, CodedOutputStream output) throws IOException {
+        serializeFrame(SIGNATURE, message, typeRegistry, output, RPC_KIND_NONE, 0, DEFAULT_STREAM_ID);
+    }
+
+    /**
+     * <p>Serialize a protobuf message that is part of a remote call into bytes array. The bytes array will contains in this order:</p>
+     * <ul>
+     *     <li>Integer: The RPC signature ({@link #RPC_SIGNATURE})</li>
+     *     <li>Integer: The length of the protobuf class name, or the encoded type id</li>
+     *     <li>Integer: The length of the protobuf payload</li>
+     *     <li>Integer: The kind of RPC frame ({@link #RPC_KIND_REQUEST}, {@link #RPC_KIND_RESPONSE} or {@link #RPC_KIND_ERROR})</li>
+     *     <li>Long: The correlation id, which is the same in a request and in its response</li>
+     *     <li>bytes[]: The decoded protobuf class name in bytes (ISO_8859_1), unless the type id is used</li>
+     *     <li>bytes[]: The protobuf payload in bytes</li>
+     * </ul>
+     * @param message the protobuf message
+     * @param rpcKind the kind of RPC frame
+     * @param correlationId the correlation id
+     * @param typeRegistry the registry of type ids, can be null
+     * @return serialized byte arrays
+     */
+    public static byte[] serializeRpc(Message message, int rpcKind, long correlationId, MessageTypeRegistry typeRegistry) {
+        byte[] serializedBytes = new byte[getRpcSerializedSize(message, typeRegistry)];
+        CodedOutputStream output = CodedOutputStream.newInstance(serializedBytes);
+        try {
+            serializeRpc(message, rpcKind, correlationId, typeRegistry, output);
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to serialize " + message.getClass().getName(), e);
+        }
+        output.checkNoSpaceLeft();
+        return serializedBytes;
+    }
+
+    /**
+     * Serialize a protobuf message that is part of a remote call directly into an output stream, in the same format as
+     * {@link #serializeRpc(Message, int, long, MessageTypeRegistry)}
+     * @param message the protobuf message
+     * @param rpcKind the kind of RPC frame
+     * @param correlationId the correlation id
+     * @param typeRegistry the registry of type ids, can be null
+     * @param output the output stream to write into
+     * @throws IOException if the message cannot be written into the output stream
+     */
+    public static void serializeRpc(Message message, int rpcKind, long correlationId, MessageTypeRegistry typeRegistry, CodedOutputStream output) throws IOException {
+        serializeFrame(RPC_SIGNATURE, message, typeRegistry, output, rpcKind, correlationId, DEFAULT_STREAM_ID);
+    }
+
+    /**
+     * <p>Serialize a protobuf message sent on a logical stream of the connection into bytes array. The bytes array will contains in this order:</p>
+     * <ul>
+     *     <li>Integer: The stream signature ({@link #STREAM_SIGNATURE})</li>
+     *     <li>Integer: The length of the protobuf class name, or the encoded type id</li>
+     *     <li>Integer: The length of the protobuf payload</li>
+     *     <li>Integer: The stream id</li>
+     *     <li>bytes[]: The decoded protobuf class name in bytes (ISO_8859_1), unless the type id is used</li>
+     *     <li>bytes[]: The protobuf payload in bytes</li>
+     * </ul>
+     * @param message the protobuf message
+     * @param streamId the stream id
+     * @param typeRegistry the registry of type ids, can be null
+     * @return serialized byte arrays
+     */
+    public static byte[] serializeStream(Message message, int streamId, MessageTypeRegistry typeRegistry) {
+        byte[] serializedBytes = new byte[getStreamSerializedSize(message, typeRegistry)];
+        CodedOutputStream output = CodedOutputStream.newInstance(serializedBytes);
+        try {
+            serializeStream(message, streamId, typeRegistry, output);
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to serialize " + message.getClass().getName(), e);
+        }
+        output.checkNoSpaceLeft();
+        return serializedBytes;
+    }
+
+    /**
+     * Serialize a protobuf message sent on a logical stream directly into an output stream, in the same format as
+     * {@link #serializeStream(Message, int, MessageTypeRegistry)}
+     * @param message the protobuf message
+     * @param streamId the stream id
+     * @param typeRegistry the registry of type ids, can be null
+     * @param output the output stream to write into
+     * @throws IOException if the message cannot be written into the output stream
+     */
+    public static void serializeStream(Message message, int streamId, MessageTypeRegistry typeRegistry, CodedOutputStream output) throws IOException {
+        serializeFrame(STREAM_SIGNATURE, message, typeRegistry, output, RPC_KIND_NONE, 0, streamId);
+    }
+
+    private static void serializeFrame(int signature, Message message, MessageTypeRegistry typeRegistry, CodedOutputStream output,
+                                       int rpcKind, long correlationId, int streamId) throws IOException {
+        writeInteger(output, signature);
+        int typeId = getTypeId(message, typeRegistry);
+        byte[] encodedProtobufClassName = null;
+        if (typeId == MessageTypeRegistry.NO_TYPE_ID) {
+            encodedProtobufClassName = ENCODED_CLASS_NAMES.get(message.getClass());
+            writeInteger(output, encodedProtobufClassName.length);
+        } else {
+            writeInteger(output, encodeTypeId(typeId));
+        }
+        writeInteger(output, message.getSerializedSize());
+        if (signature == RPC_SIGNATURE) {
+            writeInteger(output, rpcKind);
+            writeInteger(output, (int) (correlationId >>> 32));
+            writeInteger(output, (int) correlationId);
+        } else if (signature == STREAM_SIGNATURE) {
+            writeInteger(output, streamId);
+        }
+        if (encodedProtobufClassName != null) {
+            output.writeRawBytes(encodedProtobufClassName);
+        }
+        message.writeTo(output);
+    }
+
+    private static void writeInteger(CodedOutputStream output, int value) throws IOException {
+        // CodedOutputStream only writes fixed-length integers in little-endian order, but the header is big-endian
+        output.writeRawByte((byte) (value >>> 24));
+        output.writeRawByte((byte) (value >>> 16));
+        output.writeRawByte((byte) (value >>> 8));
+        output.writeRawByte((byte) value);
     }
 
     /**
@@ -61,7 +247,117 @@ public final class ProtobufSerializer {
      * @return the size of a fully serialized message in bytes (including the header size)
      */
     public static int getSerializedSize(Message message) {
-        return HEADER_LENGTH + message.getClass().getName().length() + message.getSerializedSize();
+        return HEADER_LENGTH + ENCODED_CLASS_NAMES.get(message.getClass()).length + message.getSerializedSize();
+    }
+
+    /**
+     * Get the size (in number of bytes) of a fully serialized protobut message, including all the header information.
+     * @param message the protobuf message
+     * @param typeRegistry the registry of type ids, can be null
+     * @return the size of a fully serialized message in bytes (including the header size)
+     */
+    public static int getSerializedSize(Message message, MessageTypeRegistry typeRegistry) {
+        if (getTypeId(message, typeRegistry) == MessageTypeRegistry.NO_TYPE_ID) {
+            return getSerializedSize(message);
+        }
+        return HEADER_LENGTH + message.getSerializedSize();
+    }
+
+    /**
+     * Get the size (in number of bytes) of a protobuf message that is part of a remote call, including all the header information.
+     * @param message the protobuf message
+     * @param typeRegistry the registry of type ids, can be null
+     * @return the size of a fully serialized message in bytes (including the RPC header size)
+     */
+    public static int getRpcSerializedSize(Message message, MessageTypeRegistry typeRegistry) {
+        return getSerializedSize(message, typeRegistry) + RPC_KIND_LENGTH + CORRELATION_ID_LENGTH;
+    }
+
+    /**
+     * Get the size (in number of bytes) of a protobuf message sent on a logical stream, including all the header information.
+     * @param message the protobuf message
+     * @param typeRegistry the registry of type ids, can be null
+     * @return the size of a fully serialized message in bytes (including the stream id)
+     */
+    public static int getStreamSerializedSize(Message message, MessageTypeRegistry typeRegistry) {
+        return getSerializedSize(message, typeRegistry) + STREAM_ID_LENGTH;
+    }
+
+    private static int getTypeId(Message message, MessageTypeRegistry typeRegistry) {
+        return typeRegistry == null ? MessageTypeRegistry.NO_TYPE_ID : typeRegistry.getTypeId(message.getClass());
+    }
+
+    /**
+     * <p>Serialize a type registry into a handshake control frame. The bytes array will contains in this order:</p>
+     * <ul>
+     *     <li>Integer: The control signature</li>
+     *     <li>Integer: The control type ({@link #CONTROL_TYPE_HANDSHAKE})</li>
+     *     <li>Integer: The length of the payload</li>
+     *     <li>Integer: The number of registered types</li>
+     *     <li>For each registered type: the type id (Integer), the length of the class name (Integer) and the class name in bytes (ISO_8859_1)</li>
+     * </ul>
+     * @param typeRegistry the registry to announce to the remote peer
+     * @return serialized byte arrays
+     */
+    public static byte[] serializeTypeRegistry(MessageTypeRegistry typeRegistry) {
+        Map<Class<?>, Integer> typeIds = typeRegistry.getTypeIds();
+        int payloadLength = Integer.BYTES;
+        for (Class<?> messageClass : typeIds.keySet()) {
+            payloadLength += Integer.BYTES + Integer.BYTES + messageClass.getName().length();
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_LENGTH + payloadLength);
+        buffer.putInt(CONTROL_SIGNATURE);
+        buffer.putInt(CONTROL_TYPE_HANDSHAKE);
+        buffer.putInt(payloadLength);
+        buffer.putInt(typeIds.size());
+        typeIds.forEach((messageClass, typeId) -> {
+            ByteBuffer encodedClassName = CHARSET.encode(messageClass.getName());
+            buffer.putInt(typeId);
+            buffer.putInt(encodedClassName.remaining());
+            buffer.put(encodedClassName);
+        });
+        return buffer.array();
+    }
+
+    /**
+     * <p>Serialize a flow control frame. The bytes array will contains in this order:</p>
+     * <ul>
+     *     <li>Integer: The control signature</li>
+     *     <li>Integer: The control type ({@link #CONTROL_TYPE_FLOW_CONTROL_WINDOW} or {@link #CONTROL_TYPE_FLOW_CONTROL_CREDIT})</li>
+     *     <li>Integer: The length of the payload</li>
+     *     <li>Integer: The receive window announced to the remote peer, or the number of bytes it is granted to send</li>
+     * </ul>
+     * @param controlType the control type
+     * @param bytes the window or the credit, in bytes
+     * @return serialized byte arrays
+     */
+    public static byte[] serializeFlowControl(int controlType, int bytes) {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_LENGTH + Integer.BYTES);
+        buffer.putInt(CONTROL_SIGNATURE);
+        buffer.putInt(controlType);
+        buffer.putInt(Integer.BYTES);
+        buffer.putInt(bytes);
+        return buffer.array();
+    }
+
+    /**
+     * Deserialize the type registry announced by the remote peer in a handshake control frame
+     * @param payloadBuffer the buffer that contains the payload of the handshake frame
+     * @return the type registry of the remote peer
+     */
+    public static MessageTypeRegistry deserializeTypeRegistry(ByteBuffer payloadBuffer) {
+        int numberOfTypes = payloadBuffer.getInt();
+        Map<Integer, String> classNamesByTypeId = new HashMap<>();
+        for (int i = 0; i < numberOfTypes; i++) {
+            int typeId = payloadBuffer.getInt();
+            int classNameLength = payloadBuffer.getInt();
+            ByteBuffer classNameBuffer = payloadBuffer.slice();
+            classNameBuffer.limit(classNameLength);
+            payloadBuffer.position(payloadBuffer.position() + classNameLength);
+            classNamesByTypeId.put(typeId, CHARSET.decode(classNameBuffer).toString());
+        }
+        return MessageTypeRegistry.fromAnnouncedTypes(classNamesByTypeId);
     }
 
     /**
@@ -73,15 +369,69 @@ public final class ProtobufSerializer {
         return ByteUtils.readInteger(header, 0) == SIGNATURE;
     }
 
+    /**
+     * Check if the header started with the signature of a control frame
+     * @param header the message header
+     * @return true if the header is the header of a control frame
+     */
+    public static boolean hasControlHeaderSignature(byte[] header) {
+        return ByteUtils.readInteger(header, 0) == CONTROL_SIGNATURE;
+    }
+
+    /**
+     * Get the control type of a control frame
+     * @param header the control frame header
+     * @return the control type
+     */
+    public static int extractControlType(byte[] header) {
+        return ByteUtils.readInteger(header, Integer.BYTES);
+    }
+
     /**
      * Get the length of the protobuf class name
      * @param header the message header
-     * @return the length of the protobuf class name
+     * @return the length of the protobuf class name, or a negative value if the message is serialized with a type id
      */
     public static int extractProtobufClassnameLength(byte[] header) {
         return ByteUtils.readInteger(header, Integer.BYTES);
     }
 
+    /**
+     * Check if the message is serialized with a type id instead of the class name
+     * @param header the message header
+     * @return true if the message is serialized with a type id
+     */
+    public static boolean hasMessageTypeId(byte[] header) {
+        return extractProtobufClassnameLength(header) < 0;
+    }
+
+    /**
+     * Get the type id of a message that is serialized with a type id
+     * @param header the message header
+     * @return the type id
+     */
+    public static int extractMessageTypeId(byte[] header) {
+        return decodeTypeId(extractProtobufClassnameLength(header));
+    }
+
+    /**
+     * Encode a type id so that it can be written in place of the class name length
+     * @param typeId the type id
+     * @return the encoded type id, which is always negative
+     */
+    public static int encodeTypeId(int typeId) {
+        return -typeId - 1;
+    }
+
+    /**
+     * Decode a type id that is written in place of the class name length
+     * @param encodedTypeId the encoded type id
+     * @return the type id
+     */
+    public static int decodeTypeId(int encodedTypeId) {
+        return -encodedTypeId - 1;
+    }
+
     /**
      * Get the length of the protobuf payload
      * @param header the message header
@@ -91,6 +441,16 @@ public final class ProtobufSerializer {
         return ByteUtils.readInteger(header, Integer.BYTES + Integer.BYTES);
     }
 
+    /**
+     * <p>Register a protobuf message type so that its parser is cached before the first message of this type is received.</p>
+     * <p>Registration is optional, unknown types are resolved (using reflection) and cached when they are first received.</p>
+     * @param protobufClass the protobuf message class
+     */
+    public static void registerMessageType(Class<? extends Message> protobufClass) {
+        Parser<? extends Message> parser = getParser(protobufClass);
+        CACHED_PROTOBUF_PARSERS.putIfAbsent(ByteBuffer.wrap(ENCODED_CLASS_NAMES.get(protobufClass)), parser);
+    }
+
     /**
      * Deserialized a protobuf message using protobuf payload and the class name information
      * @param protobufClassNameBuffer the buffer that contains the class name of the protobuf
@@ -98,18 +458,37 @@ public final class ProtobufSerializer {
      * @return the protobuf message
      */
     public static Message deserialize(ByteBuffer protobufClassNameBuffer, ByteBuffer protobufPayloadBuffer) {
-        final Method protobufParseMethod = getParseMethod(protobufClassNameBuffer);
+        final Parser<? extends Message> protobufParser = getParser(protobufClassNameBuffer);
         try {
-            return (Message) protobufParseMethod.invoke(null, (Object) protobufPayloadBuffer);
-        } catch (IllegalAccessException | InvocationTargetException e) {
+            return protobufParser.parseFrom(protobufPayloadBuffer);
+        } catch (InvalidProtocolBufferException e) {
             throw new IllegalStateException("Unable to parse protobuf payload of " + CHARSET.decode(protobufClassNameBuffer).toString(), e);
         }
     }
 
-    private static Method getParseMethod(ByteBuffer protobufClassNameBuffer) {
-        Method parseMethod = CACHED_PARSE_PROTOBUF_METHODS.get(protobufClassNameBuffer);
-        if (parseMethod == null) {
-            String protobufClassName = CHARSET.decode(protobufClassNameBuffer).toString();
+    /**
+     * Deserialized a protobuf message using protobuf payload and the type id announced by the remote peer
+     * @param typeRegistry the type registry announced by the remote peer
+     * @param typeId the type id of the message
+     * @param protobufPayloadBuffer the buffer that contains the protobuf payload
+     * @return the protobuf message
+     */
+    public static Message deserialize(MessageTypeRegistry typeRegistry, int typeId, ByteBuffer protobufPayloadBuffer) {
+        final Parser<? extends Message> protobufParser = typeRegistry == null ? null : typeRegistry.getParser(typeId);
+        if (protobufParser == null) {
+            throw new IllegalStateException("Unknown protobuf type id: " + typeId);
+        }
+        try {
+            return protobufParser.parseFrom(protobufPayloadBuffer);
+        } catch (InvalidProtocolBufferException e) {
+            throw new IllegalStateException("Unable to parse protobuf payload of type id " + typeId, e);
+        }
+    }
+
+    private static Parser<? extends Message> getParser(ByteBuffer protobufClassNameBuffer) {
+        Parser<? extends Message> parser = CACHED_PROTOBUF_PARSERS.get(protobufClassNameBuffer);
+        if (parser == null) {
+            String protobufClassName = CHARSET.decode(protobufClassNameBuffer.duplicate()).toString();
             final Class<?> protobufClass;
             try {
                 protobufClass = Class.forName(protobufClassName);
@@ -117,19 +496,28 @@ public final class ProtobufSerializer {
                 throw new IllegalStateException("Invalid protobuf class name: " + protobufClassName, e);
             }
 
-            if (!Message.class.isAssignableFrom(protobufClass)) {
-                throw new IllegalStateException(protobufClassName + " is not a protobuf class");
-            }
+            parser = getParser(protobufClass);
+            // The class name buffer is a view of the reader's buffer which will be overwritten, so the cache key must be a copy
+            CACHED_PROTOBUF_PARSERS.putIfAbsent(ByteBuffer.wrap(ENCODED_CLASS_NAMES.get(protobufClass)), parser);
+        }
+        return parser;
+    }
 
-            try {
-                parseMethod = protobufClass.getMethod("parseFrom", ByteBuffer.class);
-                protobufClassNameBuffer.flip();
-                CACHED_PARSE_PROTOBUF_METHODS.put(protobufClassNameBuffer, parseMethod);
-            } catch (NoSuchMethodException e) {
-                throw new IllegalStateException("Unable to get parse method from : " + protobufClassName, e);
-            }
+    static Parser<? extends Message> getParser(Class<?> protobufClass) {
+        return CACHED_PARSERS_BY_CLASS.get(protobufClass);
+    }
+
+    private static Parser<? extends Message> lookupParser(Class<?> protobufClass) {
+        if (!Message.class.isAssignableFrom(protobufClass)) {
+            throw new IllegalStateException(protobufClass.getName() + " is not a protobuf class");
+        }
+
+        try {
+            Message defaultInstance = (Message) protobufClass.getMethod("getDefaultInstance").invoke(null);
+            return defaultInstance.getParserForType();
+        } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
+            throw new IllegalStateException("Unable to get parser from : " + protobufClass.getName(), e);
         }
-        return parseMethod;
     }
 
 }
@@ -6,8 +6,18 @@ public final class DefaultSetting {
     public static final int DEFAULT_CLIENT_BUFFER_SIZE = 8192;
     public static final int DEFAULT_READ_TIMEOUT_MILLIS = 0;
     public static final int DEFAULT_WRITE_TIMEOUT_MILLIS = 10000;
+    public static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 0;
+    public static final int DEFAULT_SERVER_EVENT_LOOP_COUNT = 1;
 
     public static final int MAX_WRITE_MESSAGE_QUEUE_SIZE = 10_000_000;
+    public static final int MAX_GATHERING_WRITE_BUFFERS = 16;
+    public static final long DEFAULT_WRITE_LOW_WATERMARK = 512 * 1024;
+    public static final long DEFAULT_WRITE_HIGH_WATERMARK = 1024 * 1024;
+    public static final int DEFAULT_FLOW_CONTROL_WINDOW = 0;
+    public static final int DEFAULT_SHARED_MEMORY_RING_CAPACITY = 1024 * 1024;
+    public static final int DEFAULT_IN_PROCESS_RECEIVE_BUFFER_SIZE = 256 * 1024;
+    public static final int DEFAULT_DATAGRAM_MTU = 1472;
+    public static final int DEFAULT_MULTICAST_RECOVERY_WINDOW = 4096;
 
     private DefaultSetting() {
     }
@@ -0,0 +1,151 @@
+package com.github.quantranuk.protobuf.nio.utils;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * <p>A bounded lock-free queue for multiple producers and a single consumer.</p>
+ * <p>Elements are stored in fixed-size array chunks which are linked together as the queue grows, so that an idle queue only holds a single
+ * small chunk no matter how large its capacity is. Producers claim a slot in the current chunk with a single atomic increment and never block
+ * each other. Only one thread at a time may call {@link #poll()} and {@link #peek()}.</p>
+ * @param <E> the type of elements
+ */
+public final class MpscChunkedQueue<E> {
+
+    private static final int DEFAULT_CHUNK_SIZE = 512;
+
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<MpscChunkedQueue, Chunk> PRODUCER_CHUNK = AtomicReferenceFieldUpdater.newUpdater(MpscChunkedQueue.class, Chunk.class, "producerChunk");
+
+    private final int chunkSize;
+    private final int capacity;
+    private final AtomicInteger size = new AtomicInteger();
+    private volatile Chunk<E> producerChunk;
+    private Chunk<E> consumerChunk;
+    private int consumerIndex;
+
+    public MpscChunkedQueue(int capacity) {
+        this(capacity, DEFAULT_CHUNK_SIZE);
+    }
+
+    MpscChunkedQueue(int capacity, int chunkSize) {
+        if (capacity <= 0 || chunkSize <= 0) {
+            throw new IllegalArgumentException("Invalid capacity: " + capacity + " chunk size: " + chunkSize);
+        }
+        this.capacity = capacity;
+        this.chunkSize = chunkSize;
+        this.producerChunk = new Chunk<>(chunkSize);
+        this.consumerChunk = producerChunk;
+    }
+
+    /**
+     * Add an element to the tail of the queue. This method can be called by any thread.
+     * @param element the element, must not be null
+     * @return false if the queue is full
+     */
+    @SuppressWarnings("unchecked")
+    public boolean offer(E element) {
+        if (element == null) {
+            throw new NullPointerException();
+        }
+        if (size.getAndIncrement() >= capacity) {
+            size.getAndDecrement();
+            return false;
+        }
+        while (true) {
+            Chunk<E> chunk = producerChunk;
+            int index = chunk.producerIndex.getAndIncrement();
+            if (index < chunkSize) {
+                chunk.elements.lazySet(index, element);
+                return true;
+            }
+            // The chunk is full, link a new one (or help the producer that is already doing so) and retry
+            Chunk<E> next = chunk.next;
+            if (next == null) {
+                Chunk<E> newChunk = new Chunk<>(chunkSize);
+                next = Chunk.NEXT.compareAndSet(chunk, null, newChunk) ? newChunk : chunk.next;
+            }
+            PRODUCER_CHUNK.compareAndSet(this, chunk, next);
+        }
+    }
+
+    /**
+     * Remove the element at the head of the queue. This method must only be called by the consumer thread.
+     * @return the element, or null if the queue is empty
+     */
+    public E poll() {
+        E element = peek();
+        if (element != null) {
+            consumerChunk.elements.lazySet(consumerIndex, null);
+            consumerIndex++;
+            size.getAndDecrement();
+        }
+        return element;
+    }
+
+    /**
+     * Get the element at the head of the queue without removing it. This method must only be called by the consumer thread.
+     * @return the element, or null if the queue is empty
+     */
+    @SuppressWarnings("unchecked")
+    public E peek() {
+        Chunk<E> chunk = consumerChunk;
+        if (consumerIndex == chunkSize) {
+            Chunk<E> next = chunk.next;
+            if (next == null) {
+                return null;
+            }
+            consumerChunk = chunk = next;
+            consumerIndex = 0;
+        }
+        E element = chunk.elements.get(consumerIndex);
+        if (element == null) {
+            if (chunk.producerIndex.get() <= consumerIndex) {
+                return null;
+            }
+            // The slot has been claimed by a producer which has not published the element yet
+            do {
+                Thread.onSpinWait();
+                element = chunk.elements.get(consumerIndex);
+            } while (element == null);
+        }
+        return element;
+    }
+
+    /**
+     * @return the number of elements in the queue. This method can be called by any thread.
+     */
+    public int size() {
+        return Integer.max(size.get(), 0);
+    }
+
+    /**
+     * @return true if the queue is empty. This method can be called by any thread.
+     */
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * @return the maximum number of elements in the queue
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+    private static final class Chunk<E> {
+
+        @SuppressWarnings("rawtypes")
+        private static final AtomicReferenceFieldUpdater<Chunk, Chunk> NEXT = AtomicReferenceFieldUpdater.newUpdater(Chunk.class, Chunk.class, "next");
+
+        private final AtomicReferenceArray<E> elements;
+        private final AtomicInteger producerIndex = new AtomicInteger();
+        private volatile Chunk<E> next;
+
+        private Chunk(int chunkSize) {
+            this.elements = new AtomicReferenceArray<>(chunkSize);
+        }
+    }
+
+}
@@ -7,7 +7,7 @@ import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * A simple non-deamon thread factory that print out uncaught exceptions
+ * A simple thread factory (non-deamon by default) that print out uncaught exceptions
  */
 public class NamedThreadFactory implements ThreadFactory {
 
@@ -19,17 +19,23 @@ public class NamedThreadFactory implements ThreadFactory {
     private final ThreadGroup group;
     private final AtomicInteger threadNumber = new AtomicInteger(1);
     private final String namePrefix;
+    private final boolean isDaemon;
 
     public NamedThreadFactory(String prefix) {
+        this(prefix, false);
+    }
+
+    public NamedThreadFactory(String prefix, boolean isDaemon) {
         group = Thread.currentThread().getThreadGroup();
         namePrefix = prefix + "-pool-" + POOL_NUMBER.getAndIncrement() + "-thread-";
+        this.isDaemon = isDaemon;
     }
 
     @Override
     public Thread newThread(Runnable r) {
         Thread t = new Thread(group, r,namePrefix + threadNumber.getAndIncrement(), STACK_SIZE);
-        if (t.isDaemon())
-            t.setDaemon(false);
+        if (t.isDaemon() != isDaemon)
+            t.setDaemon(isDaemon);
         if (t.getPriority() != Thread.NORM_PRIORITY)
             t.setPriority(Thread.NORM_PRIORITY);
         t.setUncaughtExceptionHandler(UNCAUGHT_EXCEPTION_HANDLER);
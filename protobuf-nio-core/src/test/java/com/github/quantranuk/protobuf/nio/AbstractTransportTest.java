@@ -0,0 +1,117 @@
+package com.github.quantranuk.protobuf.nio;
+
+import com.github.quantranuk.protobuf.nio.proto.TestHeartBeat;
+import com.google.protobuf.Message;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.quantranuk.protobuf.nio.TestUtils.await;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * The connect, send, receive and disconnect round trip that every transport must pass, see the subclasses for each transport
+ */
+public abstract class AbstractTransportTest {
+
+    protected ProtoServerSocketChannel server;
+    protected ProtoSocketChannel client;
+
+    /**
+     * @return a builder of a server of the transport under test
+     */
+    protected abstract ProtoChannelFactory.ServerBuilder newServer() throws Exception;
+
+    /**
+     * @return a builder of a client connecting to the server of {@link #newServer()}
+     */
+    protected abstract ProtoChannelFactory.ClientBuilder newClient() throws Exception;
+
+    @AfterEach
+    public void tearDown() {
+        if (client != null) {
+            client.disconnect();
+        }
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        List<SocketAddress> connectedAddresses = new CopyOnWriteArrayList<>();
+        List<SocketAddress> disconnectedAddresses = new CopyOnWriteArrayList<>();
+        server = newServer().build();
+        server.addConnectionHandler(connectedAddresses::add);
+        server.addDisconnectionHandler(disconnectedAddresses::add);
+        // Echo the messages back to the client
+        server.addMessageReceivedHandler((socketAddress, message) -> server.sendMessage(socketAddress, message));
+        server.addRequestHandler(TestHeartBeat.HeartBeatRequest.class, (socketAddress, request) -> CompletableFuture.completedFuture(
+                TestHeartBeat.HeartBeatResponse.newBuilder().setResponseMessage("pong " + request.getRequestTimeMillis()).build()));
+        server.start();
+
+        List<Long> receivedValues = new CopyOnWriteArrayList<>();
+        List<SocketAddress> clientEvents = new CopyOnWriteArrayList<>();
+        client = newClient().build();
+        client.addConnectionHandler(clientEvents::add);
+        client.addDisconnectionHandler(clientEvents::add);
+        client.addMessageReceivedHandler((socketAddress, message) -> receivedValues.add(((TestHeartBeat.HeartBeatRequest) message).getRequestTimeMillis()));
+        client.connect();
+        assertEquals(1, clientEvents.size());
+        await(() -> connectedAddresses.size() == 1);
+
+        List<Long> sentValues = new ArrayList<>();
+        for (long i = 0; i < 1000; i++) {
+            client.sendMessage(TestHeartBeat.HeartBeatRequest.newBuilder().setRequestTimeMillis(i).setRequestMessage("ping").build());
+            sentValues.add(i);
+        }
+        await(() -> receivedValues.size() == sentValues.size());
+        assertEquals(sentValues, receivedValues);
+
+        TestHeartBeat.HeartBeatResponse response = client.<TestHeartBeat.HeartBeatResponse>call(
+                TestHeartBeat.HeartBeatRequest.newBuilder().setRequestTimeMillis(42).build(), TestUtils.TIMEOUT_MILLIS, TimeUnit.MILLISECONDS).get();
+        assertEquals("pong 42", response.getResponseMessage());
+
+        client.disconnect();
+        await(() -> clientEvents.size() == 2);
+        await(() -> disconnectedAddresses.size() == 1);
+        assertEquals(connectedAddresses, disconnectedAddresses);
+        assertFalse(server.isConnected(connectedAddresses.get(0)));
+    }
+
+    @Test
+    public void testSendAsync() throws Exception {
+        List<Long> receivedValues = new CopyOnWriteArrayList<>();
+        server = newServer().build();
+        server.addMessageReceivedHandler((socketAddress, message) -> receivedValues.add(((TestHeartBeat.HeartBeatRequest) message).getRequestTimeMillis()));
+        server.start();
+
+        List<Message> sentMessages = new CopyOnWriteArrayList<>();
+        client = newClient().build();
+        client.addMessageSentHandler((socketAddress, message) -> sentMessages.add(message));
+        client.connect();
+        TestHeartBeat.HeartBeatRequest forgottenMessage = TestHeartBeat.HeartBeatRequest.newBuilder().setRequestTimeMillis(1).build();
+        TestHeartBeat.HeartBeatRequest asyncMessage = TestHeartBeat.HeartBeatRequest.newBuilder().setRequestTimeMillis(2).build();
+        client.sendAndForget(forgottenMessage);
+        client.sendAsync(asyncMessage).get(TestUtils.TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        await(() -> receivedValues.size() == 2);
+        assertEquals(List.of(1L, 2L), receivedValues);
+        assertEquals(List.of(asyncMessage), sentMessages, "The message sent and forgotten is not reported");
+
+        client.disconnect();
+        CompletableFuture<Void> closedFuture = client.sendAsync(asyncMessage);
+        ExecutionException e = assertThrows(ExecutionException.class, () -> closedFuture.get(TestUtils.TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        assertInstanceOf(IllegalStateException.class, e.getCause());
+    }
+
+}
@@ -0,0 +1,197 @@
+package com.github.quantranuk.protobuf.nio;
+
+import com.github.quantranuk.protobuf.nio.proto.TestHeartBeat;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.github.quantranuk.protobuf.nio.TestUtils.await;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class AsyncTransportTest extends AbstractTransportTest {
+
+    private final List<ProtoSocketChannel> otherClients = new ArrayList<>();
+    private int port;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        port = TestUtils.findFreePort();
+    }
+
+    @AfterEach
+    public void disconnectOtherClients() {
+        otherClients.forEach(ProtoSocketChannel::disconnect);
+    }
+
+    @Override
+    protected ProtoChannelFactory.ServerBuilder newServer() {
+        return ProtoChannelFactory.newServer(port);
+    }
+
+    @Override
+    protected ProtoChannelFactory.ClientBuilder newClient() {
+        return ProtoChannelFactory.newClient("localhost", port);
+    }
+
+    @Test
+    public void testConnectionsPinnedToEventLoops() throws Exception {
+        // Each connection only ever runs on the read thread of its event loop
+        Map<SocketAddress, Set<Thread>> readThreads = new ConcurrentHashMap<>();
+        AtomicInteger receivedCount = new AtomicInteger();
+        server = newServer().setEventLoopCount(2).setEventLoopAssignment(EventLoopAssignment.ROUND_ROBIN).build();
+        server.addMessageReceivedHandler((socketAddress, message) -> {
+            readThreads.computeIfAbsent(socketAddress, address -> ConcurrentHashMap.newKeySet()).add(Thread.currentThread());
+            receivedCount.incrementAndGet();
+        });
+        server.start();
+
+        int clientCount = 4;
+        int messageCount = 100;
+        for (int i = 0; i < clientCount; i++) {
+            ProtoSocketChannel otherClient = newClient().build();
+            otherClients.add(otherClient);
+            otherClient.connect();
+        }
+        for (int i = 0; i < messageCount; i++) {
+            for (ProtoSocketChannel otherClient : otherClients) {
+                otherClient.sendMessage(TestHeartBeat.HeartBeatRequest.newBuilder().setRequestTimeMillis(i).build());
+            }
+        }
+        await(() -> receivedCount.get() == clientCount * messageCount);
+
+        assertEquals(clientCount, readThreads.size());
+        Set<Thread> allReadThreads = new HashSet<>();
+        for (Set<Thread> connectionReadThreads : readThreads.values()) {
+            assertEquals(1, connectionReadThreads.size());
+            allReadThreads.addAll(connectionReadThreads);
+        }
+        assertEquals(2, allReadThreads.size(), "The connections are spread across both event loops");
+    }
+
+    @Test
+    public void testSharedEventLoopGroup() throws Exception {
+        Set<Thread> threadsBefore = Thread.getAllStackTraces().keySet();
+        ProtoEventLoopGroup eventLoopGroup = ProtoChannelFactory.newEventLoopGroup(2, EventLoopAssignment.LEAST_LOADED);
+        try {
+            AtomicInteger receivedCount = new AtomicInteger();
+            server = newServer().setEventLoopGroup(eventLoopGroup).build();
+            // Echo the messages back to the client
+            server.addMessageReceivedHandler((socketAddress, message) -> server.sendMessage(socketAddress, message));
+            server.start();
+
+            int clientCount = 10;
+            for (int i = 0; i < clientCount; i++) {
+                ProtoSocketChannel otherClient = newClient().setEventLoopGroup(eventLoopGroup).build();
+                otherClient.addMessageReceivedHandler((socketAddress, message) -> receivedCount.incrementAndGet());
+                otherClients.add(otherClient);
+                otherClient.connect();
+            }
+            otherClients.forEach(otherClient -> otherClient.sendMessage(TestHeartBeat.HeartBeatRequest.getDefaultInstance()));
+            await(() -> receivedCount.get() == clientCount);
+            // The server and all the clients share the threads of the 2 event loops: their read and write threads, and the internal thread
+            // of the channel group of each event loop. Neither the server nor the clients start any other thread
+            Set<Thread> newThreads = new HashSet<>(Thread.getAllStackTraces().keySet());
+            newThreads.removeAll(threadsBefore);
+            long eventLoopThreadCount = newThreads.stream()
+                    .filter(thread -> thread.getName().startsWith(ProtoEventLoopGroup.class.getSimpleName()))
+                    .count();
+            assertEquals(4, eventLoopThreadCount, "New threads: " + newThreads);
+            assertEquals(6, newThreads.size(), "New threads: " + newThreads);
+
+            // The group outlives the channels using it
+            otherClients.get(0).disconnect();
+            client = newClient().setEventLoopGroup(eventLoopGroup).build();
+            client.addMessageReceivedHandler((socketAddress, message) -> receivedCount.incrementAndGet());
+            client.connect();
+            client.sendMessage(TestHeartBeat.HeartBeatRequest.getDefaultInstance());
+            await(() -> receivedCount.get() == clientCount + 1);
+        } finally {
+            eventLoopGroup.shutdown();
+        }
+    }
+
+    @Test
+    public void testClientReadCompletionsHandledInline() throws Exception {
+        server = newServer().build();
+        // Echo the messages back to the client
+        server.addMessageReceivedHandler((socketAddress, message) -> server.sendMessage(socketAddress, message));
+        server.start();
+
+        // Whether each message has been decoded straight in the completion callback, rather than in a task handed over to the read executor
+        List<Boolean> inlineCompletions = new CopyOnWriteArrayList<>();
+        Set<Thread> readThreads = ConcurrentHashMap.newKeySet();
+        client = newClient().build();
+        client.addMessageReceivedHandler((socketAddress, message) -> {
+            readThreads.add(Thread.currentThread());
+            inlineCompletions.add(Arrays.stream(Thread.currentThread().getStackTrace())
+                    .anyMatch(element -> element.getClassName().endsWith(".SocketChannelReader") && element.getMethodName().equals("completed")));
+        });
+        client.connect();
+        int messageCount = 100;
+        for (int i = 0; i < messageCount; i++) {
+            client.sendMessage(TestHeartBeat.HeartBeatRequest.newBuilder().setRequestTimeMillis(i).build());
+            int expectedCount = i + 1;
+            await(() -> inlineCompletions.size() == expectedCount);
+        }
+        assertEquals(1, readThreads.size());
+        // The first read may be started by the connecting thread, the next ones are started on the read thread that backs the channel group of the client
+        assertFalse(inlineCompletions.subList(1, messageCount).contains(false), "Completions handed over: " + inlineCompletions);
+    }
+
+    @Test
+    public void testConnectTimeout() throws Exception {
+        List<Socket> pendingSockets = new ArrayList<>();
+        try (ServerSocket backlogFullServer = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            // Nothing is ever accepted, once the backlog is full the connection requests are left unanswered
+            while (true) {
+                Socket socket = new Socket();
+                pendingSockets.add(socket);
+                try {
+                    socket.connect(backlogFullServer.getLocalSocketAddress(), 200);
+                } catch (SocketTimeoutException e) {
+                    break;
+                }
+            }
+
+            List<String> clientEvents = new CopyOnWriteArrayList<>();
+            client = ProtoChannelFactory.newClient(backlogFullServer.getInetAddress().getHostAddress(), backlogFullServer.getLocalPort())
+                    .setConnectTimeoutMillis(200)
+                    .build();
+            client.addConnectionHandler(socketAddress -> clientEvents.add("connected"));
+            client.addDisconnectionHandler(socketAddress -> clientEvents.add("disconnected"));
+            CompletableFuture<Void> connectFuture = client.connectAsync();
+            ExecutionException e = assertThrows(ExecutionException.class, () -> connectFuture.get(TestUtils.TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+            assertInstanceOf(TimeoutException.class, e.getCause());
+            assertEquals(List.of("disconnected"), clientEvents);
+            assertThrows(IllegalStateException.class, () -> client.sendMessage(TestHeartBeat.HeartBeatRequest.getDefaultInstance()));
+        } finally {
+            for (Socket socket : pendingSockets) {
+                socket.close();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,13 @@
+package com.github.quantranuk.protobuf.nio;
+
+/**
+ * The in-process transport serializing the messages into frames
+ */
+public class InProcessSerializingTransportTest extends InProcessTransportTest {
+
+    @Override
+    protected boolean isSerializing() {
+        return true;
+    }
+
+}
@@ -0,0 +1,75 @@
+package com.github.quantranuk.protobuf.nio;
+
+import com.github.quantranuk.protobuf.nio.proto.TestHeartBeat;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.github.quantranuk.protobuf.nio.TestUtils.await;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * The in-process transport handing over the messages as they are, see {@link InProcessSerializingTransportTest} for serialized frames
+ */
+public class InProcessTransportTest extends AbstractTransportTest {
+
+    private final String name = UUID.randomUUID().toString();
+
+    protected boolean isSerializing() {
+        return false;
+    }
+
+    @Override
+    protected ProtoChannelFactory.ServerBuilder newServer() {
+        return ProtoChannelFactory.newInProcessServer(name).setInProcessSerialization(isSerializing());
+    }
+
+    @Override
+    protected ProtoChannelFactory.ClientBuilder newClient() {
+        return ProtoChannelFactory.newInProcessClient(name).setInProcessSerialization(isSerializing());
+    }
+
+    @Test
+    public void testSlowPeerMakesChannelUnwritable() throws Exception {
+        CountDownLatch handlerLatch = new CountDownLatch(1);
+        AtomicInteger receivedCount = new AtomicInteger();
+        server = newServer().build();
+        server.addMessageReceivedHandler((socketAddress, message) -> {
+            try {
+                handlerLatch.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            receivedCount.incrementAndGet();
+        });
+        server.start();
+
+        List<Boolean> writabilityChanges = new CopyOnWriteArrayList<>();
+        client = newClient().setWriteWatermarks(100_000, 200_000).build();
+        client.addWritabilityChangedHandler((socketAddress, isWritable) -> writabilityChanges.add(isWritable));
+        client.connect();
+        TestHeartBeat.HeartBeatRequest message = TestHeartBeat.HeartBeatRequest.newBuilder().setRequestMessage("x".repeat(100)).build();
+        int sentCount = 0;
+        // The messages the server does not consume fill its inbound queue, then the outbound queue of the client
+        while (client.isWritable()) {
+            client.sendMessage(message);
+            sentCount++;
+            if (sentCount > 100_000) {
+                break;
+            }
+        }
+        await(() -> writabilityChanges.size() == 1);
+        assertEquals(List.of(false), writabilityChanges);
+
+        handlerLatch.countDown();
+        int expectedCount = sentCount;
+        await(() -> receivedCount.get() == expectedCount);
+        await(() -> writabilityChanges.size() == 2);
+        assertEquals(List.of(false, true), writabilityChanges);
+    }
+
+}
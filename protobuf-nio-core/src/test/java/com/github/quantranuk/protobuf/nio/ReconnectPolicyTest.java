@@ -0,0 +1,132 @@
+package com.github.quantranuk.protobuf.nio;
+
+import com.github.quantranuk.protobuf.nio.proto.TestHeartBeat;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.quantranuk.protobuf.nio.TestUtils.await;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ReconnectPolicyTest {
+
+    private int port;
+    private ProtoServerSocketChannel server;
+    private ProtoSocketChannel client;
+    private final List<Long> receivedValues = new CopyOnWriteArrayList<>();
+    private final List<String> clientEvents = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        port = TestUtils.findFreePort();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        if (client != null) {
+            client.disconnect();
+        }
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testQueuedMessagesReplayedInOrderAfterServerRestart() throws Exception {
+        startServer();
+        client = ProtoChannelFactory.newClient("localhost", port)
+                .setReconnectPolicy(ReconnectPolicy.exponentialBackoff(10, 100, TimeUnit.MILLISECONDS, 1000))
+                .build();
+        client.addConnectionHandler(socketAddress -> clientEvents.add("connected"));
+        client.addDisconnectionHandler(socketAddress -> clientEvents.add("disconnected"));
+        client.connect();
+        List<Long> sentValues = new ArrayList<>();
+        send(sentValues, 10);
+        await(() -> receivedValues.size() == 10);
+
+        server.stop();
+        await(() -> clientEvents.size() == 2);
+        // Queued by the client until it has reconnected
+        send(sentValues, 100);
+        startServer();
+        await(() -> receivedValues.size() == sentValues.size());
+        assertEquals(sentValues, receivedValues);
+        assertEquals(List.of("connected", "disconnected", "connected"), clientEvents);
+
+        // Still delivered through the new connection
+        send(sentValues, 1);
+        await(() -> receivedValues.size() == sentValues.size());
+        assertEquals(sentValues, receivedValues);
+    }
+
+    @Test
+    public void testUnsentMessagesOfLostConnectionReplayed() throws Exception {
+        String name = UUID.randomUUID().toString();
+        CountDownLatch handlerLatch = new CountDownLatch(1);
+        ProtoServerSocketChannel blockedServer = ProtoChannelFactory.newInProcessServer(name).build();
+        blockedServer.addMessageReceivedHandler((socketAddress, message) -> {
+            try {
+                handlerLatch.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        blockedServer.start();
+        client = ProtoChannelFactory.newInProcessClient(name)
+                .setReconnectPolicy(ReconnectPolicy.exponentialBackoff(10, 100, TimeUnit.MILLISECONDS, 1000))
+                .build();
+        client.addDisconnectionHandler(socketAddress -> clientEvents.add("disconnected"));
+        client.connect();
+        List<Long> sentValues = new ArrayList<>();
+        // More than the inbound queue of the server takes, the rest stays in the outbound queue of the client
+        send(sentValues, 10_000);
+        await(() -> client.getPendingWriteBytes() > 0);
+
+        blockedServer.stop();
+        handlerLatch.countDown();
+        await(() -> clientEvents.size() == 1);
+        server = ProtoChannelFactory.newInProcessServer(name).build();
+        server.addMessageReceivedHandler((socketAddress, message) -> receivedValues.add(((TestHeartBeat.HeartBeatRequest) message).getRequestTimeMillis()));
+        server.start();
+        await(() -> !receivedValues.isEmpty() && receivedValues.get(receivedValues.size() - 1) == sentValues.size() - 1);
+        // The messages handed over to the stopped server are gone, the ones after them are replayed in order
+        long firstValue = receivedValues.get(0);
+        assertTrue(firstValue > 0);
+        assertEquals(sentValues.subList((int) firstValue, sentValues.size()), receivedValues);
+    }
+
+    @Test
+    public void testSendAfterDisconnectThrows() {
+        client = ProtoChannelFactory.newClient("localhost", port)
+                .setReconnectPolicy(ReconnectPolicy.exponentialBackoff(10, 100, TimeUnit.MILLISECONDS, 1000))
+                .build();
+        client.connectAsync();
+        client.disconnect();
+        assertThrows(IllegalStateException.class, () -> client.sendMessage(TestHeartBeat.HeartBeatRequest.getDefaultInstance()));
+    }
+
+    private void startServer() throws IOException {
+        server = ProtoChannelFactory.newServer(port).build();
+        server.addMessageReceivedHandler((socketAddress, message) -> receivedValues.add(((TestHeartBeat.HeartBeatRequest) message).getRequestTimeMillis()));
+        server.start();
+    }
+
+    private void send(List<Long> sentValues, int count) {
+        for (int i = 0; i < count; i++) {
+            long value = sentValues.size();
+            client.sendMessage(TestHeartBeat.HeartBeatRequest.newBuilder().setRequestTimeMillis(value).build());
+            sentValues.add(value);
+        }
+    }
+
+}
@@ -0,0 +1,119 @@
+package com.github.quantranuk.protobuf.nio;
+
+import com.github.quantranuk.protobuf.nio.proto.TestHeartBeat;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static com.github.quantranuk.protobuf.nio.TestUtils.await;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The remote calls of {@link ProtoSocketChannel#call(com.google.protobuf.Message, long, TimeUnit)}, over serialized in-process frames
+ * so that the correlation ids go through the frame headers
+ */
+public class RemoteCallTest {
+
+    private final String name = UUID.randomUUID().toString();
+    private final List<CompletableFuture<TestHeartBeat.HeartBeatResponse>> pendingResponses = new CopyOnWriteArrayList<>();
+    private ProtoServerSocketChannel server;
+    private ProtoSocketChannel client;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        server = ProtoChannelFactory.newInProcessServer(name).setInProcessSerialization(true).build();
+        // The responses are completed by the tests, in any order
+        server.addRequestHandler(TestHeartBeat.HeartBeatRequest.class, (socketAddress, request) -> {
+            CompletableFuture<TestHeartBeat.HeartBeatResponse> response = new CompletableFuture<>();
+            pendingResponses.add(response);
+            return response;
+        });
+        server.start();
+        client = ProtoChannelFactory.newInProcessClient(name).setInProcessSerialization(true).build();
+        client.connect();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        client.disconnect();
+        server.stop();
+    }
+
+    @Test
+    public void testResponsesMatchedToTheirCalls() throws Exception {
+        int callCount = 10;
+        List<CompletableFuture<TestHeartBeat.HeartBeatResponse>> calls = new ArrayList<>();
+        for (int i = 0; i < callCount; i++) {
+            calls.add(client.call(request(i), TestUtils.TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        }
+        await(() -> pendingResponses.size() == callCount);
+        // Respond in the reverse order of the requests, each response must still complete the call of its own request
+        for (int i = callCount - 1; i >= 0; i--) {
+            pendingResponses.get(i).complete(TestHeartBeat.HeartBeatResponse.newBuilder().setResponseMessage("pong " + i).build());
+        }
+        for (int i = 0; i < callCount; i++) {
+            assertEquals("pong " + i, calls.get(i).get(TestUtils.TIMEOUT_MILLIS, TimeUnit.MILLISECONDS).getResponseMessage());
+        }
+    }
+
+    @Test
+    public void testCallTimesOut() throws Exception {
+        CompletableFuture<TestHeartBeat.HeartBeatResponse> call = client.call(request(1), 50, TimeUnit.MILLISECONDS);
+        ExecutionException e = assertThrows(ExecutionException.class, () -> call.get(TestUtils.TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        assertInstanceOf(TimeoutException.class, e.getCause());
+
+        // The late response is ignored, and the next call still gets its own response
+        await(() -> pendingResponses.size() == 1);
+        pendingResponses.get(0).complete(TestHeartBeat.HeartBeatResponse.newBuilder().setResponseMessage("late").build());
+        CompletableFuture<TestHeartBeat.HeartBeatResponse> nextCall = client.call(request(2), TestUtils.TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        await(() -> pendingResponses.size() == 2);
+        pendingResponses.get(1).complete(TestHeartBeat.HeartBeatResponse.newBuilder().setResponseMessage("pong 2").build());
+        assertEquals("pong 2", nextCall.get(TestUtils.TIMEOUT_MILLIS, TimeUnit.MILLISECONDS).getResponseMessage());
+    }
+
+    @Test
+    public void testRemoteErrorFailsCall() throws Exception {
+        CompletableFuture<TestHeartBeat.HeartBeatResponse> call = client.call(request(1), TestUtils.TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        await(() -> pendingResponses.size() == 1);
+        pendingResponses.get(0).completeExceptionally(new IllegalArgumentException("bad request"));
+        ExecutionException e = assertThrows(ExecutionException.class, () -> call.get(TestUtils.TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        assertInstanceOf(IllegalStateException.class, e.getCause());
+        assertTrue(e.getCause().getMessage().contains("bad request"), e.getCause().getMessage());
+    }
+
+    @Test
+    public void testNoRequestHandlerFailsCall() throws Exception {
+        CompletableFuture<TestHeartBeat.HeartBeatRequest> call = client.call(TestHeartBeat.HeartBeatResponse.getDefaultInstance(),
+                TestUtils.TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        ExecutionException e = assertThrows(ExecutionException.class, () -> call.get(TestUtils.TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        assertInstanceOf(IllegalStateException.class, e.getCause());
+        assertTrue(e.getCause().getMessage().contains("No request handler for " + TestHeartBeat.HeartBeatResponse.class.getName()), e.getCause().getMessage());
+    }
+
+    @Test
+    public void testDisconnectFailsPendingCalls() {
+        CompletableFuture<TestHeartBeat.HeartBeatResponse> call = client.call(request(1), 0, TimeUnit.MILLISECONDS);
+        await(() -> pendingResponses.size() == 1);
+        client.disconnect();
+        ExecutionException e = assertThrows(ExecutionException.class, () -> call.get(TestUtils.TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        assertInstanceOf(IllegalStateException.class, e.getCause());
+    }
+
+    private static TestHeartBeat.HeartBeatRequest request(long value) {
+        return TestHeartBeat.HeartBeatRequest.newBuilder().setRequestTimeMillis(value).build();
+    }
+
+}
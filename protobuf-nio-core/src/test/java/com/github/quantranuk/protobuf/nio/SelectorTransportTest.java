@@ -0,0 +1,77 @@
+package com.github.quantranuk.protobuf.nio;
+
+import com.github.quantranuk.protobuf.nio.proto.TestHeartBeat;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static com.github.quantranuk.protobuf.nio.TestUtils.await;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SelectorTransportTest extends AbstractTransportTest {
+
+    private int port;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        port = TestUtils.findFreePort();
+    }
+
+    @Override
+    protected ProtoChannelFactory.ServerBuilder newServer() {
+        return ProtoChannelFactory.newServer(port).setTransport(Transport.SELECTOR);
+    }
+
+    @Override
+    protected ProtoChannelFactory.ClientBuilder newClient() {
+        return ProtoChannelFactory.newClient("localhost", port).setTransport(Transport.SELECTOR);
+    }
+
+    @Test
+    public void testHandlerExceptionOnlyDisconnectsItsChannel() throws Exception {
+        List<SocketAddress> connectedAddresses = new CopyOnWriteArrayList<>();
+        List<SocketAddress> disconnectedAddresses = new CopyOnWriteArrayList<>();
+        server = newServer().build();
+        server.addConnectionHandler(connectedAddresses::add);
+        server.addDisconnectionHandler(disconnectedAddresses::add);
+        server.addMessageReceivedHandler((socketAddress, message) -> {
+            if (((TestHeartBeat.HeartBeatRequest) message).getRequestMessage().equals("throw")) {
+                throw new IllegalStateException("Failing handler");
+            }
+            server.sendMessage(socketAddress, message);
+        });
+        server.start();
+
+        List<String> failingClientEvents = new CopyOnWriteArrayList<>();
+        client = newClient().build();
+        client.addDisconnectionHandler(socketAddress -> failingClientEvents.add("disconnected"));
+        client.connect();
+        await(() -> connectedAddresses.size() == 1);
+        ProtoSocketChannel otherClient = newClient().build();
+        List<String> otherClientMessages = new CopyOnWriteArrayList<>();
+        otherClient.addMessageReceivedHandler((socketAddress, message) -> otherClientMessages.add(((TestHeartBeat.HeartBeatRequest) message).getRequestMessage()));
+        try {
+            otherClient.connect();
+            await(() -> connectedAddresses.size() == 2);
+
+            client.sendMessage(TestHeartBeat.HeartBeatRequest.newBuilder().setRequestMessage("throw").build());
+            await(() -> disconnectedAddresses.size() == 1);
+            assertEquals(connectedAddresses.get(0), disconnectedAddresses.get(0));
+            await(() -> failingClientEvents.size() == 1);
+
+            // The event loop has survived the exception, and still serves the other connection
+            otherClient.sendMessage(TestHeartBeat.HeartBeatRequest.newBuilder().setRequestMessage("echo").build());
+            await(() -> otherClientMessages.size() == 1);
+            assertEquals("echo", otherClientMessages.get(0));
+            assertTrue(server.isConnected(connectedAddresses.get(1)));
+        } finally {
+            otherClient.disconnect();
+        }
+    }
+
+}
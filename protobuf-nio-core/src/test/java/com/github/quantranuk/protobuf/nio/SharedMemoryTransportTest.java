@@ -0,0 +1,23 @@
+package com.github.quantranuk.protobuf.nio;
+
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+
+public class SharedMemoryTransportTest extends AbstractTransportTest {
+
+    @TempDir
+    Path directory;
+
+    @Override
+    protected ProtoChannelFactory.ServerBuilder newServer() {
+        return ProtoChannelFactory.newServer(directory).setTransport(Transport.SHARED_MEMORY);
+    }
+
+    @Override
+    protected ProtoChannelFactory.ClientBuilder newClient() {
+        // A small ring, so that the messages wrap around it many times
+        return ProtoChannelFactory.newClient(directory).setTransport(Transport.SHARED_MEMORY).setSharedMemoryRingCapacity(4096);
+    }
+
+}
@@ -0,0 +1,43 @@
+package com.github.quantranuk.protobuf.nio;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.fail;
+
+public final class TestUtils {
+
+    public static final long TIMEOUT_MILLIS = 5000;
+
+    private TestUtils() {
+    }
+
+    /**
+     * Wait until the condition holds, failing the test after {@link #TIMEOUT_MILLIS}
+     */
+    public static void await(BooleanSupplier condition) {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("Timed out");
+            }
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                fail(e);
+            }
+        }
+    }
+
+    /**
+     * @return a port that was free a moment ago, for the transports listening to a TCP port
+     */
+    public static int findFreePort() throws IOException {
+        try (ServerSocket serverSocket = new ServerSocket(0)) {
+            return serverSocket.getLocalPort();
+        }
+    }
+
+}
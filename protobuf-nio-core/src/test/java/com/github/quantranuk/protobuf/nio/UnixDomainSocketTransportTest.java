@@ -0,0 +1,40 @@
+package com.github.quantranuk.protobuf.nio;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class UnixDomainSocketTransportTest extends AbstractTransportTest {
+
+    @TempDir
+    Path directory;
+
+    @Override
+    protected ProtoChannelFactory.ServerBuilder newServer() {
+        return ProtoChannelFactory.newServer(getSocketPath());
+    }
+
+    @Override
+    protected ProtoChannelFactory.ClientBuilder newClient() {
+        return ProtoChannelFactory.newClient(getSocketPath());
+    }
+
+    @Test
+    public void testSocketFileDeletedOnStop() throws Exception {
+        server = newServer().build();
+        server.start();
+        assertTrue(Files.exists(getSocketPath()));
+        server.stop();
+        assertFalse(Files.exists(getSocketPath()));
+    }
+
+    private Path getSocketPath() {
+        return directory.resolve("server.sock");
+    }
+
+}
@@ -0,0 +1,26 @@
+package com.github.quantranuk.protobuf.nio;
+
+import org.junit.jupiter.api.BeforeEach;
+
+import java.io.IOException;
+
+public class VirtualThreadTransportTest extends AbstractTransportTest {
+
+    private int port;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        port = TestUtils.findFreePort();
+    }
+
+    @Override
+    protected ProtoChannelFactory.ServerBuilder newServer() {
+        return ProtoChannelFactory.newServer(port).setTransport(Transport.VIRTUAL_THREAD);
+    }
+
+    @Override
+    protected ProtoChannelFactory.ClientBuilder newClient() {
+        return ProtoChannelFactory.newClient("localhost", port).setTransport(Transport.VIRTUAL_THREAD);
+    }
+
+}
@@ -0,0 +1,98 @@
+package com.github.quantranuk.protobuf.nio.impl;
+
+import com.github.quantranuk.protobuf.nio.EventLoopAssignment;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AbstractEventLoopGroupTest {
+
+    @Test
+    public void testRoundRobin() {
+        TestEventLoopGroup group = new TestEventLoopGroup(3, EventLoopAssignment.ROUND_ROBIN);
+        List<TestEventLoop> assigned = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            assigned.add(group.register());
+        }
+        assertEquals(List.of(group.eventLoops.get(0), group.eventLoops.get(1), group.eventLoops.get(2), group.eventLoops.get(0)), assigned);
+
+        // The load is ignored, the turns carry on
+        group.eventLoops.get(1).deregister();
+        assertSame(group.eventLoops.get(1), group.register());
+        assertSame(group.eventLoops.get(2), group.register());
+        assertEquals(List.of(2, 1, 2), channelCounts(group));
+    }
+
+    @Test
+    public void testLeastLoaded() {
+        TestEventLoopGroup group = new TestEventLoopGroup(3, EventLoopAssignment.LEAST_LOADED);
+        for (int i = 0; i < 6; i++) {
+            group.register();
+        }
+        assertEquals(List.of(2, 2, 2), channelCounts(group));
+
+        // The loop whose connections have been disconnected takes the next ones
+        group.eventLoops.get(2).deregister();
+        group.eventLoops.get(2).deregister();
+        assertSame(group.eventLoops.get(2), group.register());
+        assertSame(group.eventLoops.get(2), group.register());
+        assertSame(group.eventLoops.get(0), group.register());
+        assertEquals(List.of(3, 2, 2), channelCounts(group));
+    }
+
+    @Test
+    public void testShutdown() {
+        TestEventLoopGroup group = new TestEventLoopGroup(2, EventLoopAssignment.ROUND_ROBIN);
+        assertEquals(2, group.getEventLoopCount());
+        group.shutdown();
+        assertTrue(group.eventLoops.stream().allMatch(eventLoop -> eventLoop.isShutdown));
+    }
+
+    @Test
+    public void testInvalidEventLoopCount() {
+        assertThrows(IllegalArgumentException.class, () -> new AsyncEventLoopGroup("Test", 0, EventLoopAssignment.ROUND_ROBIN));
+    }
+
+    private static List<Integer> channelCounts(TestEventLoopGroup group) {
+        List<Integer> channelCounts = new ArrayList<>();
+        group.eventLoops.forEach(eventLoop -> channelCounts.add(eventLoop.getChannelCount()));
+        return channelCounts;
+    }
+
+    private static final class TestEventLoop extends AbstractEventLoop {
+        private boolean isShutdown;
+
+        @Override
+        void shutdown() {
+            isShutdown = true;
+        }
+    }
+
+    private static final class TestEventLoopGroup extends AbstractEventLoopGroup<TestEventLoop> {
+        private final List<TestEventLoop> eventLoops;
+
+        private TestEventLoopGroup(int eventLoopCount, EventLoopAssignment assignment) {
+            this(newEventLoops(eventLoopCount), assignment);
+        }
+
+        private TestEventLoopGroup(List<TestEventLoop> eventLoops, EventLoopAssignment assignment) {
+            super(eventLoops, assignment);
+            this.eventLoops = eventLoops;
+        }
+
+        private static List<TestEventLoop> newEventLoops(int eventLoopCount) {
+            List<TestEventLoop> eventLoops = new ArrayList<>();
+            for (int i = 0; i < eventLoopCount; i++) {
+                eventLoops.add(new TestEventLoop());
+            }
+            return eventLoops;
+        }
+    }
+
+}
@@ -0,0 +1,215 @@
+package com.github.quantranuk.protobuf.nio.impl;
+
+import com.github.quantranuk.protobuf.nio.proto.TestHeartBeat;
+import com.github.quantranuk.protobuf.nio.serializer.ProtobufSerializer;
+import com.github.quantranuk.protobuf.nio.utils.DefaultSetting;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+public class MulticastProtoDatagramChannelTest {
+
+    private static final long TIMEOUT_MILLIS = 5000;
+
+    private InetAddress group;
+    private int port;
+    private NetworkInterface networkInterface;
+    private RecordingPublisher publisher;
+    private LossySubscriber subscriber;
+    private final List<String> events = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        group = InetAddress.getByName("239.255.10.10");
+        try (DatagramSocket socket = new DatagramSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        networkInterface = NetworkInterface.getByInetAddress(InetAddress.getLoopbackAddress());
+    }
+
+    @AfterEach
+    public void tearDown() {
+        if (publisher != null) {
+            publisher.stop();
+        }
+        if (subscriber != null) {
+            subscriber.stop();
+        }
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        start(DefaultSetting.DEFAULT_MULTICAST_RECOVERY_WINDOW, DefaultSetting.DEFAULT_MULTICAST_RECOVERY_WINDOW);
+        List<String> expectedEvents = new ArrayList<>();
+        for (int i = 1; i <= 1000; i++) {
+            publisher.sendMessage(message(i));
+            expectedEvents.add("m" + i);
+        }
+        awaitEvents(expectedEvents);
+    }
+
+    @Test
+    public void testDroppedDatagramRecoveredByNak() throws Exception {
+        start(DefaultSetting.DEFAULT_MULTICAST_RECOVERY_WINDOW, DefaultSetting.DEFAULT_MULTICAST_RECOVERY_WINDOW);
+        subscriber.droppedOnceSequences.add(2L);
+        publish(1, 5);
+        awaitEvents(List.of("m1", "m2", "m3", "m4", "m5"));
+        assertTrue(publisher.sentSignatures.contains(ProtobufSerializer.DATAGRAM_SIGNATURE), "The dropped datagram has been retransmitted");
+    }
+
+    @Test
+    public void testLostReplyOnceDatagramHasLeftHistory() throws Exception {
+        start(4, DefaultSetting.DEFAULT_MULTICAST_RECOVERY_WINDOW);
+        subscriber.droppedSequences.add(2L);
+        subscriber.isNakBlocked = true;
+        publish(1, 10);
+        await(() -> events.size() == 1);
+        // The NAK only reaches the publisher once datagram 2 has been evicted from its history of 4 datagrams
+        subscriber.isNakBlocked = false;
+        awaitEvents(List.of("m1", "gap2-3", "m3", "m4", "m5", "m6", "m7", "m8", "m9", "m10"));
+        assertTrue(publisher.sentSignatures.contains(ProtobufSerializer.DATAGRAM_LOST_SIGNATURE), "The publisher has reported the datagram as lost");
+    }
+
+    @Test
+    public void testLostFinalDatagramDetectedByHeartbeat() throws Exception {
+        start(DefaultSetting.DEFAULT_MULTICAST_RECOVERY_WINDOW, DefaultSetting.DEFAULT_MULTICAST_RECOVERY_WINDOW);
+        subscriber.droppedOnceSequences.add(3L);
+        publish(1, 3);
+        // Nothing follows the last datagram, only the heartbeats tell the subscriber that it is missing
+        awaitEvents(List.of("m1", "m2", "m3"));
+        assertTrue(publisher.sentSignatures.contains(ProtobufSerializer.DATAGRAM_HEARTBEAT_SIGNATURE), "The publisher has sent heartbeats");
+        assertTrue(publisher.sentSignatures.contains(ProtobufSerializer.DATAGRAM_SIGNATURE), "The dropped datagram has been retransmitted");
+    }
+
+    @Test
+    public void testGapReportedWhenRecoveryWindowOverflows() throws Exception {
+        start(DefaultSetting.DEFAULT_MULTICAST_RECOVERY_WINDOW, 2);
+        subscriber.droppedSequences.add(2L);
+        publish(1, 5);
+        // Datagrams 3 and 4 are held while datagram 2 is missing, datagram 5 overflows the window of 2
+        awaitEvents(List.of("m1", "gap2-3", "m3", "m4", "m5"));
+        assertFalse(publisher.sentSignatures.contains(ProtobufSerializer.DATAGRAM_LOST_SIGNATURE));
+    }
+
+    private void start(int publisherRecoveryWindow, int subscriberRecoveryWindow) throws IOException {
+        subscriber = new LossySubscriber(group, port, networkInterface);
+        subscriber.setRecoveryWindow(subscriberRecoveryWindow);
+        subscriber.addMessageReceivedHandler((socketAddress, message) -> events.add("m" + ((TestHeartBeat.HeartBeatRequest) message).getRequestTimeMillis()));
+        subscriber.addSequenceGapHandler((socketAddress, expectedSequence, receivedSequence) -> events.add("gap" + expectedSequence + "-" + receivedSequence));
+        subscriber.start();
+        publisher = new RecordingPublisher(new InetSocketAddress(group, port), networkInterface);
+        publisher.setRecoveryWindow(publisherRecoveryWindow);
+        publisher.start();
+    }
+
+    /**
+     * Publish each message in its own datagram, so that the sequence of the datagram of a message is its value
+     */
+    private void publish(int firstValue, int lastValue) {
+        for (int i = firstValue; i <= lastValue; i++) {
+            publisher.sendMessage(message(i));
+            long sequence = i;
+            await(() -> publisher.latestWrittenSequence == sequence);
+        }
+    }
+
+    private void awaitEvents(List<String> expectedEvents) {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (events.size() < expectedEvents.size() && System.currentTimeMillis() < deadline) {
+            sleep();
+        }
+        assertEquals(expectedEvents, events);
+    }
+
+    private static void await(BooleanSupplier condition) {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("Timed out");
+            }
+            sleep();
+        }
+    }
+
+    private static void sleep() {
+        try {
+            Thread.sleep(1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            fail(e);
+        }
+    }
+
+    private static TestHeartBeat.HeartBeatRequest message(long value) {
+        return TestHeartBeat.HeartBeatRequest.newBuilder().setRequestTimeMillis(value).build();
+    }
+
+    private static final class RecordingPublisher extends MulticastPublisherProtoDatagramChannel {
+        private final List<Integer> sentSignatures = new CopyOnWriteArrayList<>();
+        private volatile long latestWrittenSequence;
+
+        private RecordingPublisher(InetSocketAddress groupAddress, NetworkInterface networkInterface) {
+            super(groupAddress, networkInterface);
+        }
+
+        @Override
+        protected void onDatagramWritten(long sequence, ByteBuffer datagram) {
+            super.onDatagramWritten(sequence, datagram);
+            latestWrittenSequence = sequence;
+        }
+
+        @Override
+        protected void send(ByteBuffer datagram, SocketAddress target) throws IOException {
+            sentSignatures.add(datagram.getInt(datagram.position()));
+            super.send(datagram, target);
+        }
+    }
+
+    /**
+     * A subscriber losing the datagrams of the given sequences, and the NAKs it sends while they are blocked
+     */
+    private static final class LossySubscriber extends MulticastSubscriberProtoDatagramChannel {
+        private final Set<Long> droppedSequences = ConcurrentHashMap.newKeySet();
+        private final Set<Long> droppedOnceSequences = ConcurrentHashMap.newKeySet();
+        private volatile boolean isNakBlocked;
+
+        private LossySubscriber(InetAddress group, int port, NetworkInterface networkInterface) {
+            super(group, port, networkInterface);
+        }
+
+        @Override
+        protected void onDatagramReceived(SocketAddress sender, int signature, long senderSessionId, long sequence, ByteBuffer body) {
+            if (signature == ProtobufSerializer.DATAGRAM_SIGNATURE && (droppedSequences.contains(sequence) || droppedOnceSequences.remove(sequence))) {
+                return;
+            }
+            super.onDatagramReceived(sender, signature, senderSessionId, sequence, body);
+        }
+
+        @Override
+        protected void send(ByteBuffer datagram, SocketAddress target) throws IOException {
+            if (!isNakBlocked) {
+                super.send(datagram, target);
+            }
+        }
+    }
+
+}
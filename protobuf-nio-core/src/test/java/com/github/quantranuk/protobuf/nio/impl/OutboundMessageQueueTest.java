@@ -0,0 +1,314 @@
+package com.github.quantranuk.protobuf.nio.impl;
+
+import com.github.quantranuk.protobuf.nio.TestUtils;
+import com.github.quantranuk.protobuf.nio.WritePolicy;
+import com.github.quantranuk.protobuf.nio.proto.TestHeartBeat;
+import com.github.quantranuk.protobuf.nio.serializer.ProtobufSerializer;
+import com.github.quantranuk.protobuf.nio.utils.DefaultSetting;
+import com.google.protobuf.Message;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.channels.CompletionHandler;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The writer is played by the tests: they poll the queue and mark the writer idle, and the write trigger only counts the times the writer is started
+ */
+public class OutboundMessageQueueTest {
+
+    private static final int LARGE_WRITE_BUFFER = 1024 * 1024;
+
+    private final AtomicInteger writerStartCount = new AtomicInteger();
+    private final List<Object> batch = new ArrayList<>();
+    private final List<Boolean> writabilityChanges = new ArrayList<>();
+    private final List<Message> sentMessages = new ArrayList<>();
+    private final List<Message> failedMessages = new ArrayList<>();
+    private final CompletionHandler<Long, Message> messageWriteCompletionHandler = new CompletionHandler<>() {
+        @Override
+        public void completed(Long result, Message message) {
+            sentMessages.add(message);
+        }
+
+        @Override
+        public void failed(Throwable exc, Message message) {
+            failedMessages.add(message);
+        }
+    };
+
+    @Test
+    public void testMessagesHeldUntilWindowAnnounced() {
+        int window = 1000;
+        OutboundMessageQueue queue = newQueue(window, Collections.emptyMap());
+        for (int i = 0; i < 5; i++) {
+            queue.add(message(i));
+        }
+        // Only the announcement of the own window can be sent, the messages wait for the window of the remote peer
+        assertNotNull(queue.pollControlFrame());
+        queue.pollNextBatch(batch, LARGE_WRITE_BUFFER);
+        assertTrue(batch.isEmpty());
+        assertTrue(queue.stopWriting());
+
+        int startCount = writerStartCount.get();
+        queue.onFlowControlWindowAnnounced(window);
+        assertEquals(startCount + 1, writerStartCount.get());
+        queue.pollNextBatch(batch, LARGE_WRITE_BUFFER);
+        assertEquals(List.of(0L, 1L, 2L, 3L, 4L), values(batch));
+    }
+
+    @Test
+    public void testMessagesHeldUntilCreditsGranted() {
+        int window = 1000;
+        OutboundMessageQueue queue = newQueue(window, Collections.emptyMap());
+        queue.pollControlFrame();
+        queue.onFlowControlWindowAnnounced(window);
+        queue.stopWriting();
+        // All of the same size
+        for (int i = 1; i <= 30; i++) {
+            queue.add(message(i));
+        }
+        int messageSize = queue.getSerializedSize(message(1));
+        int messagesPerWindow = window / messageSize;
+
+        // The credits of the window run out
+        List<Long> sentValues = new ArrayList<>();
+        queue.pollNextBatch(batch, LARGE_WRITE_BUFFER);
+        assertEquals(messagesPerWindow, batch.size());
+        sentValues.addAll(values(batch));
+        queue.pollNextBatch(batch, LARGE_WRITE_BUFFER);
+        assertTrue(batch.isEmpty());
+        assertTrue(queue.stopWriting(), "The writer goes idle while the messages are held");
+
+        // The remote peer grants back what it has consumed, which resumes the writer
+        int startCount = writerStartCount.get();
+        queue.onFlowControlCreditGranted(messagesPerWindow * messageSize);
+        assertEquals(startCount + 1, writerStartCount.get());
+        queue.pollNextBatch(batch, LARGE_WRITE_BUFFER);
+        assertEquals(messagesPerWindow, batch.size());
+        sentValues.addAll(values(batch));
+        assertEquals(range(1, 2 * messagesPerWindow + 1), sentValues);
+    }
+
+    @Test
+    public void testNoFlowControlWhenRemotePeerHasNoWindow() {
+        OutboundMessageQueue queue = newQueue(1000, Collections.emptyMap());
+        queue.pollControlFrame();
+        queue.onFlowControlWindowAnnounced(0);
+        for (int i = 0; i < 100; i++) {
+            queue.add(message(i));
+        }
+        queue.pollNextBatch(batch, LARGE_WRITE_BUFFER);
+        assertEquals(100, batch.size());
+        assertNull(queue.pollControlFrame());
+    }
+
+    @Test
+    public void testWritabilityChangedOncePerTransition() {
+        int messageSize = ProtobufSerializer.getSerializedSize(message(1));
+        OutboundMessageQueue queue = newQueue(10L * messageSize, 20L * messageSize, WritePolicy.immediate());
+        addMessages(queue, 1, 20);
+        assertTrue(queue.isWritable());
+        addMessages(queue, 21, 30);
+        // Only the message crossing the high watermark changes the writability
+        assertFalse(queue.isWritable());
+        assertEquals(List.of(false), writabilityChanges);
+
+        writeMessages(queue, 15);
+        assertEquals(List.of(false), writabilityChanges, "Still above the low watermark");
+        writeMessages(queue, 10);
+        assertTrue(queue.isWritable());
+        assertEquals(List.of(false, true), writabilityChanges);
+        writeMessages(queue, 5);
+        assertEquals(List.of(false, true), writabilityChanges);
+
+        addMessages(queue, 31, 60);
+        assertEquals(List.of(false, true, false), writabilityChanges);
+    }
+
+    @Test
+    public void testSendCompletionNotified() {
+        OutboundMessageQueue queue = newQueue(0, Collections.emptyMap());
+        CompletableFuture<Void> writtenFuture = new CompletableFuture<>();
+        CompletableFuture<Void> failedFuture = new CompletableFuture<>();
+        // As queued by sendAsync, sendMessage with completion handlers, then sendAndForget
+        queue.add(message(1), writtenFuture);
+        queue.add(message(2), null);
+        queue.add(message(3));
+        queue.add(message(4), failedFuture);
+        writeMessages(queue, 3);
+        assertTrue(writtenFuture.isDone() && !writtenFuture.isCompletedExceptionally());
+        assertEquals(List.of(message(1), message(2)), sentMessages, "The message sent and forgotten is not reported");
+
+        IOException exception = new IOException("Broken pipe");
+        queue.pollNextBatch(batch, 1);
+        queue.onMessagesFailed(batch, exception);
+        ExecutionException e = assertThrows(ExecutionException.class, failedFuture::get);
+        assertSame(exception, e.getCause());
+        assertEquals(List.of(message(4)), failedMessages);
+        assertEquals(0, queue.getPendingWriteBytes());
+    }
+
+    @Test
+    public void testExplicitFlush() {
+        OutboundMessageQueue queue = newQueue(DefaultSetting.DEFAULT_WRITE_LOW_WATERMARK, DefaultSetting.DEFAULT_WRITE_HIGH_WATERMARK, WritePolicy.explicitFlush());
+        addMessages(queue, 1, 100);
+        assertEquals(0, writerStartCount.get());
+        queue.flush();
+        assertEquals(1, writerStartCount.get());
+        queue.pollNextBatch(batch, LARGE_WRITE_BUFFER);
+        assertEquals(100, batch.size());
+    }
+
+    @Test
+    public void testLingerFlushesOnBytes() {
+        int messageSize = ProtobufSerializer.getSerializedSize(message(1));
+        OutboundMessageQueue queue = newQueue(DefaultSetting.DEFAULT_WRITE_LOW_WATERMARK, DefaultSetting.DEFAULT_WRITE_HIGH_WATERMARK,
+                WritePolicy.linger(1, TimeUnit.HOURS, 10 * messageSize));
+        addMessages(queue, 1, 9);
+        assertEquals(0, writerStartCount.get());
+        addMessages(queue, 10, 10);
+        assertEquals(1, writerStartCount.get());
+    }
+
+    @Test
+    public void testLingerFlushesOnTime() {
+        OutboundMessageQueue queue = newQueue(DefaultSetting.DEFAULT_WRITE_LOW_WATERMARK, DefaultSetting.DEFAULT_WRITE_HIGH_WATERMARK,
+                WritePolicy.linger(100, TimeUnit.MILLISECONDS, Integer.MAX_VALUE));
+        long startNanos = System.nanoTime();
+        addMessages(queue, 1, 10);
+        assertEquals(0, writerStartCount.get());
+        TestUtils.await(() -> writerStartCount.get() == 1);
+        assertTrue(System.nanoTime() - startNanos >= TimeUnit.MILLISECONDS.toNanos(100));
+        queue.pollNextBatch(batch, LARGE_WRITE_BUFFER);
+        assertEquals(10, batch.size());
+    }
+
+    @Test
+    public void testStreamsTakeTurns() {
+        OutboundMessageQueue queue = newQueue(0, Collections.emptyMap());
+        addStreamMessages(queue, 1, 100);
+        addStreamMessages(queue, 2, 100);
+        // Stream 2 does not wait for the backlog of stream 1, both get the same share of the bytes
+        long[] writtenBytes = pollStreamMessages(queue, 100);
+        assertTrue(writtenBytes[2] > 0);
+        double ratio = (double) writtenBytes[2] / writtenBytes[1];
+        assertTrue(ratio > 0.8 && ratio < 1.25, "Bytes written by stream 1 and 2: " + writtenBytes[1] + ", " + writtenBytes[2]);
+    }
+
+    @Test
+    public void testWeightedStreams() {
+        OutboundMessageQueue queue = newQueue(0, Map.of(2, 3));
+        addStreamMessages(queue, 1, 200);
+        addStreamMessages(queue, 2, 200);
+        long[] writtenBytes = pollStreamMessages(queue, 160);
+        double ratio = (double) writtenBytes[2] / writtenBytes[1];
+        assertTrue(ratio > 2.5 && ratio < 3.5, "Bytes written by stream 1 and 2: " + writtenBytes[1] + ", " + writtenBytes[2]);
+    }
+
+    @Test
+    public void testStreamKeepsItsOrder() {
+        OutboundMessageQueue queue = newQueue(0, Collections.emptyMap());
+        addStreamMessages(queue, 1, 50);
+        addStreamMessages(queue, 2, 50);
+        List<Long> stream1Values = new ArrayList<>();
+        List<Long> stream2Values = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            queue.pollNextBatch(batch, 1);
+            StreamMessage streamMessage = (StreamMessage) batch.get(0);
+            long value = ((TestHeartBeat.HeartBeatRequest) streamMessage.message).getRequestTimeMillis();
+            (streamMessage.streamId == 1 ? stream1Values : stream2Values).add(value);
+        }
+        assertEquals(range(1, 51), stream1Values);
+        assertEquals(range(1, 51), stream2Values);
+        queue.pollNextBatch(batch, 1);
+        assertTrue(batch.isEmpty());
+    }
+
+    private OutboundMessageQueue newQueue(int flowControlWindow, Map<Integer, Integer> streamWeights) {
+        return newQueue(DefaultSetting.DEFAULT_WRITE_LOW_WATERMARK, DefaultSetting.DEFAULT_WRITE_HIGH_WATERMARK, WritePolicy.immediate(), flowControlWindow, streamWeights);
+    }
+
+    private OutboundMessageQueue newQueue(long writeLowWatermark, long writeHighWatermark, WritePolicy writePolicy) {
+        return newQueue(writeLowWatermark, writeHighWatermark, writePolicy, 0, Collections.emptyMap());
+    }
+
+    private OutboundMessageQueue newQueue(long writeLowWatermark, long writeHighWatermark, WritePolicy writePolicy, int flowControlWindow, Map<Integer, Integer> streamWeights) {
+        return new OutboundMessageQueue(DefaultSetting.MAX_WRITE_MESSAGE_QUEUE_SIZE, writeLowWatermark, writeHighWatermark, writePolicy, null, flowControlWindow, streamWeights,
+                writerStartCount::incrementAndGet, Runnable::run, messageWriteCompletionHandler, writabilityChanges::add);
+    }
+
+    private static void addMessages(OutboundMessageQueue queue, int firstValue, int lastValue) {
+        for (int i = firstValue; i <= lastValue; i++) {
+            queue.add(message(i));
+        }
+    }
+
+    /**
+     * Write the next messages as the writer would, and release their bytes
+     */
+    private void writeMessages(OutboundMessageQueue queue, int messageCount) {
+        List<Object> writtenEntries = new ArrayList<>();
+        for (int i = 0; i < messageCount; i++) {
+            queue.pollNextBatch(batch, 1);
+            writtenEntries.addAll(batch);
+        }
+        queue.onMessagesWritten(writtenEntries);
+    }
+
+    private static void addStreamMessages(OutboundMessageQueue queue, int streamId, int messageCount) {
+        for (int i = 1; i <= messageCount; i++) {
+            queue.add(new StreamMessage(TestHeartBeat.HeartBeatRequest.newBuilder().setRequestTimeMillis(i).setRequestMessage("x".repeat(1000)).build(), streamId, false));
+        }
+    }
+
+    /**
+     * Poll the messages one at a time, as the writer would with a small write buffer
+     * @return the bytes written by each stream, by stream id
+     */
+    private long[] pollStreamMessages(OutboundMessageQueue queue, int messageCount) {
+        long[] writtenBytes = new long[3];
+        for (int i = 0; i < messageCount; i++) {
+            queue.pollNextBatch(batch, 1);
+            assertEquals(1, batch.size());
+            StreamMessage streamMessage = (StreamMessage) batch.get(0);
+            writtenBytes[streamMessage.streamId] += queue.getSerializedSize(streamMessage);
+        }
+        return writtenBytes;
+    }
+
+    private static TestHeartBeat.HeartBeatRequest message(long value) {
+        return TestHeartBeat.HeartBeatRequest.newBuilder().setRequestTimeMillis(value).setRequestMessage("x".repeat(50)).build();
+    }
+
+    private static List<Long> values(List<Object> outboundEntries) {
+        List<Long> values = new ArrayList<>();
+        for (Object outboundEntry : outboundEntries) {
+            values.add(((TestHeartBeat.HeartBeatRequest) PendingMessage.getMessage(outboundEntry)).getRequestTimeMillis());
+        }
+        return values;
+    }
+
+    private static List<Long> range(long from, long to) {
+        List<Long> values = new ArrayList<>();
+        for (long value = from; value < to; value++) {
+            values.add(value);
+        }
+        return values;
+    }
+
+}
@@ -0,0 +1,113 @@
+package com.github.quantranuk.protobuf.nio.impl;
+
+import com.github.quantranuk.protobuf.nio.PoolDistribution;
+import com.github.quantranuk.protobuf.nio.ProtoSocketChannel;
+import com.github.quantranuk.protobuf.nio.proto.TestHeartBeat;
+import com.google.protobuf.Message;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ProtoSocketChannelPoolTest {
+
+    private ProtoSocketChannel channel0;
+    private ProtoSocketChannel channel1;
+    private ProtoSocketChannel channel2;
+
+    @BeforeEach
+    public void setUp() {
+        channel0 = mock(ProtoSocketChannel.class);
+        channel1 = mock(ProtoSocketChannel.class);
+        channel2 = mock(ProtoSocketChannel.class);
+    }
+
+    @Test
+    public void testRoundRobin() {
+        ProtoSocketChannelPool pool = new ProtoSocketChannelPool(List.of(channel0, channel1, channel2), PoolDistribution.roundRobin());
+        for (int i = 0; i < 6; i++) {
+            pool.sendMessage(message("key", i));
+        }
+        verify(channel0).sendMessage(message("key", 0));
+        verify(channel1).sendMessage(message("key", 1));
+        verify(channel2).sendMessage(message("key", 2));
+        verify(channel0).sendMessage(message("key", 3));
+        verify(channel1).sendMessage(message("key", 4));
+        verify(channel2).sendMessage(message("key", 5));
+    }
+
+    @Test
+    public void testLeastPendingBytes() {
+        when(channel0.getPendingWriteBytes()).thenReturn(100L);
+        when(channel1.getPendingWriteBytes()).thenReturn(10L);
+        when(channel2.getPendingWriteBytes()).thenReturn(50L);
+        ProtoSocketChannelPool pool = new ProtoSocketChannelPool(List.of(channel0, channel1, channel2), PoolDistribution.leastPendingBytes());
+        for (int i = 0; i < 3; i++) {
+            pool.sendMessage(message("key", i));
+        }
+        verify(channel1, times(3)).sendMessage(any(Message.class));
+        verify(channel0, never()).sendMessage(any(Message.class));
+        verify(channel2, never()).sendMessage(any(Message.class));
+    }
+
+    @Test
+    public void testLeastPendingBytesSpreadsIdleChannels() {
+        ProtoSocketChannelPool pool = new ProtoSocketChannelPool(List.of(channel0, channel1, channel2), PoolDistribution.leastPendingBytes());
+        for (int i = 0; i < 3; i++) {
+            pool.sendMessage(message("key", i));
+        }
+        // With no pending bytes anywhere, the first channel does not take all the messages
+        verify(channel0).sendMessage(message("key", 0));
+        verify(channel1).sendMessage(message("key", 1));
+        verify(channel2).sendMessage(message("key", 2));
+    }
+
+    @Test
+    public void testKeyHashKeepsOrderPerKey() {
+        ProtoSocketChannelPool pool = new ProtoSocketChannelPool(List.of(channel0, channel1, channel2),
+                PoolDistribution.keyHash(message -> ((TestHeartBeat.HeartBeatRequest) message).getRequestMessage()));
+        List<String> keys = List.of("a", "b", "c", "d");
+        for (int i = 0; i < 20; i++) {
+            pool.sendMessage(message(keys.get(i % keys.size()), i));
+        }
+        ProtoSocketChannel[] channels = {channel0, channel1, channel2};
+        for (String key : keys) {
+            ProtoSocketChannel keyChannel = channels[Math.floorMod(key.hashCode(), channels.length)];
+            InOrder inOrder = inOrder(keyChannel);
+            for (int i = keys.indexOf(key); i < 20; i += keys.size()) {
+                inOrder.verify(keyChannel).sendMessage(message(key, i));
+            }
+            for (ProtoSocketChannel otherChannel : channels) {
+                if (otherChannel != keyChannel) {
+                    verify(otherChannel, never()).sendMessage(message(key, keys.indexOf(key)));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testStreamMessagesStayOnOneChannel() {
+        ProtoSocketChannelPool pool = new ProtoSocketChannelPool(List.of(channel0, channel1, channel2), PoolDistribution.roundRobin());
+        for (int i = 0; i < 3; i++) {
+            pool.sendMessage(4, message("key", i));
+        }
+        InOrder inOrder = inOrder(channel1);
+        for (int i = 0; i < 3; i++) {
+            inOrder.verify(channel1).sendMessage(4, message("key", i));
+        }
+    }
+
+    private static TestHeartBeat.HeartBeatRequest message(String key, long value) {
+        return TestHeartBeat.HeartBeatRequest.newBuilder().setRequestMessage(key).setRequestTimeMillis(value).build();
+    }
+
+}
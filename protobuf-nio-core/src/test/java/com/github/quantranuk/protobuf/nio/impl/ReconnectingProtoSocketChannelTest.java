@@ -0,0 +1,193 @@
+package com.github.quantranuk.protobuf.nio.impl;
+
+import com.github.quantranuk.protobuf.nio.ReconnectPolicy;
+import com.github.quantranuk.protobuf.nio.proto.TestHeartBeat;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * The replay of the pending messages by {@link ReconnectingProtoSocketChannel}, over connections that are lost on a given write
+ */
+public class ReconnectingProtoSocketChannelTest {
+
+    private static final long TIMEOUT_MILLIS = 5000;
+
+    private final List<Long> writtenValues = new CopyOnWriteArrayList<>();
+    private final List<TestChannel> channels = new CopyOnWriteArrayList<>();
+    private final List<String> clientEvents = new CopyOnWriteArrayList<>();
+    // The connections that only complete once released by the test, by their index
+    private final Map<Integer, CompletableFuture<Void>> connectGates = new ConcurrentHashMap<>();
+    private ReconnectingProtoSocketChannel client;
+
+    @AfterEach
+    public void tearDown() {
+        if (client != null) {
+            client.disconnect();
+        }
+    }
+
+    @Test
+    public void testConnectionLostDuringReplay() {
+        // The second connection is lost on its 5th write, while the messages sent during the first disconnection are being replayed
+        CompletableFuture<Void> reconnectGate = new CompletableFuture<>();
+        connectGates.put(1, reconnectGate);
+        connect(0, 5, 0);
+        sendMessages(0, 10);
+        channels.get(0).disconnect();
+        await(() -> channels.size() == 2);
+        sendMessages(10, 30);
+        reconnectGate.complete(null);
+
+        // The lost connection has not been published, the messages it has not written are replayed on the next one
+        await(() -> writtenValues.size() == 30);
+        assertEquals(expectedValues(30), writtenValues);
+        assertEquals(3, channels.size());
+        assertEquals(List.of("connected", "disconnected", "connected"), clientEvents);
+
+        sendMessages(30, 40);
+        await(() -> writtenValues.size() == 40);
+        assertEquals(expectedValues(40), writtenValues);
+    }
+
+    @Test
+    public void testConnectionLostDuringSend() {
+        // The first connection is lost on its 3rd write: the message that could not be written is not reported to the caller, it is replayed
+        connect(3, 0);
+        sendMessages(0, 10);
+
+        await(() -> writtenValues.size() == 10);
+        assertEquals(expectedValues(10), writtenValues);
+        assertEquals(2, channels.size());
+        assertEquals(List.of("connected", "disconnected", "connected"), clientEvents);
+    }
+
+    /**
+     * @param failingWrites the write losing each successive connection, 0 if it is never lost
+     */
+    private void connect(int... failingWrites) {
+        Deque<Integer> remainingFailingWrites = new ArrayDeque<>();
+        for (int failingWrite : failingWrites) {
+            remainingFailingWrites.add(failingWrite);
+        }
+        InetSocketAddress socketAddress = new InetSocketAddress("localhost", 0);
+        client = new ReconnectingProtoSocketChannel(socketAddress, () -> {
+            Integer failingWrite = remainingFailingWrites.poll();
+            CompletableFuture<Void> connectGate = connectGates.getOrDefault(channels.size(), CompletableFuture.completedFuture(null));
+            TestChannel channel = new TestChannel(socketAddress, failingWrite == null ? 0 : failingWrite, connectGate);
+            channel.init();
+            channels.add(channel);
+            return channel;
+        }, ReconnectPolicy.exponentialBackoff(1, 10, TimeUnit.MILLISECONDS, 1000));
+        client.addConnectionHandler(address -> clientEvents.add("connected"));
+        client.addDisconnectionHandler(address -> clientEvents.add("disconnected"));
+        client.connect();
+    }
+
+    private void sendMessages(int fromValue, int toValue) {
+        for (int i = fromValue; i < toValue; i++) {
+            client.sendMessage(TestHeartBeat.HeartBeatRequest.newBuilder().setRequestTimeMillis(i).build());
+        }
+    }
+
+    private static List<Long> expectedValues(int count) {
+        return LongStream.range(0, count).boxed().collect(Collectors.toList());
+    }
+
+    private static void await(BooleanSupplier condition) {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("Timed out after " + TIMEOUT_MILLIS + " ms");
+            }
+            Thread.yield();
+        }
+    }
+
+    /**
+     * Writes the messages straight away on the thread queuing them, until the given write finds the connection lost and its writer shut down
+     */
+    private final class TestChannel extends AbstractProtoSocketChannel {
+
+        private final int failingWrite;
+        private final CompletableFuture<Void> connectGate;
+        private final List<Object> batch = new ArrayList<>();
+        private volatile boolean isOpen;
+        private int writeCount;
+
+        private TestChannel(InetSocketAddress socketAddress, int failingWrite, CompletableFuture<Void> connectGate) {
+            super(socketAddress);
+            this.failingWrite = failingWrite;
+            this.connectGate = connectGate;
+        }
+
+        @Override
+        public void init() {
+            outboundMessageQueue = newOutboundMessageQueue(this::write, Runnable::run);
+        }
+
+        @Override
+        void startReading() {
+        }
+
+        @Override
+        protected boolean isOpen() {
+            return isOpen;
+        }
+
+        @Override
+        protected void startConnecting(CompletableFuture<Void> connectFuture) {
+            connectGate.thenRun(() -> {
+                isOpen = true;
+                onConnected(connectFuture);
+            });
+        }
+
+        @Override
+        public void disconnect() {
+            if (!isOpen) {
+                return;
+            }
+            isOpen = false;
+            fireDisconnected();
+        }
+
+        private void write() {
+            if (++writeCount == failingWrite) {
+                disconnect();
+                throw new RejectedExecutionException("The write executor has been shut down");
+            }
+            while (true) {
+                outboundMessageQueue.pollNextBatch(batch, Integer.MAX_VALUE);
+                if (batch.isEmpty()) {
+                    if (outboundMessageQueue.stopWriting()) {
+                        return;
+                    }
+                    continue;
+                }
+                for (Object outboundEntry : batch) {
+                    writtenValues.add(((TestHeartBeat.HeartBeatRequest) PendingMessage.getMessage(outboundEntry)).getRequestTimeMillis());
+                }
+                outboundMessageQueue.onMessagesWritten(batch);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,156 @@
+package com.github.quantranuk.protobuf.nio.impl;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SharedMemoryRingBufferTest {
+
+    private static final int CAPACITY = 16;
+
+    @TempDir
+    Path directory;
+
+    private FileChannel fileChannel;
+    private SharedMemoryRingBuffer producer;
+    private SharedMemoryRingBuffer consumer;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        fileChannel = FileChannel.open(directory.resolve("ring"), StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer buffer = fileChannel.map(FileChannel.MapMode.READ_WRITE, 0, SharedMemoryRingBuffer.getRegionSize(CAPACITY));
+        producer = new SharedMemoryRingBuffer(buffer, 0, CAPACITY, true);
+        consumer = new SharedMemoryRingBuffer(buffer, 0, CAPACITY, false);
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        fileChannel.close();
+    }
+
+    @Test
+    public void testWrapAround() {
+        assertEquals(10, producer.write(bytes(0, 10)));
+        assertEquals("0123456789", read(10));
+        // The next 10 bytes go from index 10 to the end of the ring, then from its start
+        assertEquals(10, producer.write(bytes(10, 10)));
+        assertEquals(10, consumer.getAvailableBytes());
+        assertEquals("abcdefghij", read(10));
+        assertEquals(0, consumer.getAvailableBytes());
+    }
+
+    @Test
+    public void testFullRing() {
+        ByteBuffer src = bytes(0, 20);
+        assertEquals(CAPACITY, producer.write(src));
+        assertEquals(4, src.remaining());
+        assertEquals(0, producer.getFreeSpace());
+        assertEquals(0, producer.write(src));
+        assertEquals("0123", read(4));
+        assertEquals(4, producer.write(src));
+        assertEquals("456789abcdefghij", read(CAPACITY));
+        assertEquals(0, consumer.read(ByteBuffer.allocate(1)));
+    }
+
+    @Test
+    public void testProducerAndConsumerThreads() throws Exception {
+        int length = 100_000;
+        Thread producerThread = new Thread(() -> {
+            ByteBuffer src = ByteBuffer.allocate(7);
+            int value = 0;
+            while (value < length) {
+                src.clear();
+                while (src.hasRemaining()) {
+                    src.put((byte) value++);
+                }
+                src.flip();
+                while (src.hasRemaining()) {
+                    if (producer.write(src) == 0) {
+                        // Let the other thread run on a single core
+                        Thread.yield();
+                    }
+                }
+            }
+        });
+        AtomicReference<String> error = new AtomicReference<>();
+        Thread consumerThread = new Thread(() -> {
+            ByteBuffer dst = ByteBuffer.allocate(5);
+            int value = 0;
+            while (value < length) {
+                dst.clear();
+                if (consumer.read(dst) == 0) {
+                    Thread.yield();
+                    continue;
+                }
+                dst.flip();
+                while (dst.hasRemaining()) {
+                    byte b = dst.get();
+                    if (b != (byte) value && error.get() == null) {
+                        error.set("Expected " + (byte) value + " at " + value + " but read " + b);
+                    }
+                    value++;
+                }
+            }
+        });
+        producerThread.start();
+        consumerThread.start();
+        producerThread.join(10_000);
+        consumerThread.join(10_000);
+        assertFalse(producerThread.isAlive());
+        assertFalse(consumerThread.isAlive());
+        assertNull(error.get());
+    }
+
+    @Test
+    public void testReadAfterClose() throws IOException {
+        SharedMemoryConnection client = SharedMemoryConnection.offer(directory, CAPACITY);
+        SharedMemoryConnection server = SharedMemoryConnection.accept(client.getFile());
+        assertNotNull(server);
+        assertTrue(client.isAccepted());
+        ByteBuffer dst = ByteBuffer.allocate(CAPACITY);
+        assertEquals(0, server.read(dst));
+        assertEquals(10, client.write(bytes(0, 10)));
+        client.close();
+        assertFalse(server.isOpen());
+        assertThrows(IOException.class, () -> server.write(bytes(0, 1)));
+        // The bytes written before the close are still read, then the end of the stream
+        dst.limit(4);
+        assertEquals(4, server.read(dst));
+        dst.limit(CAPACITY);
+        assertEquals(6, server.read(dst));
+        assertEquals(-1, server.read(dst));
+        assertFalse(Files.exists(client.getFile()));
+    }
+
+    private static ByteBuffer bytes(int from, int length) {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        for (int i = from; i < from + length; i++) {
+            buffer.put((byte) Character.forDigit(i, 36));
+        }
+        return buffer.flip();
+    }
+
+    private String read(int length) {
+        ByteBuffer dst = ByteBuffer.allocate(length);
+        assertEquals(length, consumer.read(dst));
+        return new String(dst.array());
+    }
+
+}
@@ -0,0 +1,166 @@
+package com.github.quantranuk.protobuf.nio.impl;
+
+import com.github.quantranuk.protobuf.nio.TestUtils;
+import com.github.quantranuk.protobuf.nio.WritePolicy;
+import com.github.quantranuk.protobuf.nio.proto.TestHeartBeat;
+import com.github.quantranuk.protobuf.nio.serializer.ProtobufFrameDecoder;
+import com.github.quantranuk.protobuf.nio.utils.DefaultSetting;
+import com.google.protobuf.Message;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousSocketChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.quantranuk.protobuf.nio.TestUtils.await;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Gathering writes of batches much larger than the socket buffers, to a peer that only starts reading once the batch has been queued,
+ * so that the writes of the batch are partial
+ */
+public class SocketChannelWriterTest {
+
+    private static final int SOCKET_BUFFER_SIZE = 4096;
+    private static final int WRITE_BUFFER_CAPACITY = 1024;
+    private static final int MESSAGE_COUNT = 2000;
+
+    private final List<Message> sentMessages = new CopyOnWriteArrayList<>();
+    private final List<Message> failedMessages = new CopyOnWriteArrayList<>();
+    private final List<CompletableFuture<Void>> futures = new ArrayList<>();
+    private ExecutorService writeExecutor;
+    private ServerSocketChannel serverSocketChannel;
+    private AsynchronousSocketChannel socketChannel;
+    private SocketChannel peer;
+    private OutboundMessageQueue outboundMessageQueue;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        serverSocketChannel = ServerSocketChannel.open();
+        serverSocketChannel.setOption(StandardSocketOptions.SO_RCVBUF, SOCKET_BUFFER_SIZE);
+        serverSocketChannel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        socketChannel = AsynchronousSocketChannel.open();
+        socketChannel.setOption(StandardSocketOptions.SO_SNDBUF, SOCKET_BUFFER_SIZE);
+        socketChannel.connect(serverSocketChannel.getLocalAddress()).get(TestUtils.TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        peer = serverSocketChannel.accept();
+
+        writeExecutor = Executors.newSingleThreadExecutor();
+        SocketChannelWriter writer = new SocketChannelWriter(socketChannel, TestUtils.TIMEOUT_MILLIS, WRITE_BUFFER_CAPACITY, true, writeExecutor);
+        outboundMessageQueue = new OutboundMessageQueue(DefaultSetting.MAX_WRITE_MESSAGE_QUEUE_SIZE, DefaultSetting.DEFAULT_WRITE_LOW_WATERMARK,
+                DefaultSetting.DEFAULT_WRITE_HIGH_WATERMARK, WritePolicy.explicitFlush(), null, 0, Collections.emptyMap(), writer::startWriting, writeExecutor,
+                new CompletionHandler<>() {
+                    @Override
+                    public void completed(Long result, Message message) {
+                        sentMessages.add(message);
+                    }
+
+                    @Override
+                    public void failed(Throwable exc, Message message) {
+                        failedMessages.add(message);
+                    }
+                }, isWritable -> {});
+        writer.setOutboundMessageQueue(outboundMessageQueue);
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        socketChannel.close();
+        peer.close();
+        serverSocketChannel.close();
+        writeExecutor.shutdown();
+    }
+
+    @Test
+    public void testLargeBatchWrittenIntact() throws Exception {
+        List<Message> messages = queueMessages();
+        outboundMessageQueue.flush();
+        // The writes stall on the full socket buffers until the peer reads
+        Thread.sleep(100);
+        assertTrue(sentMessages.size() < MESSAGE_COUNT, "Sent before reading: " + sentMessages.size());
+
+        List<Message> receivedMessages = new ArrayList<>();
+        ProtobufFrameDecoder frameDecoder = new ProtobufFrameDecoder();
+        ByteBuffer readBuffer = ByteBuffer.allocate(SOCKET_BUFFER_SIZE);
+        while (receivedMessages.size() < MESSAGE_COUNT) {
+            readBuffer.clear();
+            if (peer.read(readBuffer) < 0) {
+                break;
+            }
+            readBuffer.flip();
+            frameDecoder.decode(readBuffer, receivedMessages::add);
+        }
+        assertEquals(messages, receivedMessages);
+        assertFalse(frameDecoder.hasPendingFrame());
+
+        await(() -> sentMessages.size() == MESSAGE_COUNT);
+        assertEquals(messages, sentMessages);
+        assertTrue(failedMessages.isEmpty());
+        for (CompletableFuture<Void> future : futures) {
+            future.get(TestUtils.TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Test
+    public void testConnectionClosedDuringBatch() throws Exception {
+        List<Message> messages = queueMessages();
+        outboundMessageQueue.flush();
+        Thread.sleep(100);
+        // The peer never reads, the batch being written fails once the connection is closed
+        socketChannel.close();
+        await(() -> !failedMessages.isEmpty());
+        List<Object> unsentEntries = outboundMessageQueue.drainUnsent().get(TestUtils.TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+
+        // Each message has either been sent, failed with the batch, or is left in the queue, in the order they have been queued
+        List<Message> allMessages = new ArrayList<>(sentMessages);
+        allMessages.addAll(failedMessages);
+        unsentEntries.forEach(outboundEntry -> allMessages.add(PendingMessage.getMessage(outboundEntry)));
+        assertEquals(messages, allMessages);
+        for (int i = 0; i < MESSAGE_COUNT; i++) {
+            CompletableFuture<Void> future = futures.get(i);
+            if (i < sentMessages.size()) {
+                assertTrue(future.isDone() && !future.isCompletedExceptionally(), "Message " + i);
+            } else if (i < sentMessages.size() + failedMessages.size()) {
+                assertTrue(future.isCompletedExceptionally(), "Message " + i);
+            } else {
+                assertFalse(future.isDone(), "Message " + i);
+            }
+        }
+    }
+
+    /**
+     * Queue messages of various sizes, a few of them larger than the write buffer
+     */
+    private List<Message> queueMessages() {
+        List<Message> messages = new ArrayList<>();
+        for (int i = 0; i < MESSAGE_COUNT; i++) {
+            Message message = TestHeartBeat.HeartBeatRequest.newBuilder()
+                    .setRequestTimeMillis(i)
+                    .setRequestMessage("x".repeat(i % 50 == 0 ? 3 * WRITE_BUFFER_CAPACITY : i % 300))
+                    .build();
+            CompletableFuture<Void> future = new CompletableFuture<>();
+            outboundMessageQueue.add(new PendingMessage(message, future));
+            messages.add(message);
+            futures.add(future);
+        }
+        return messages;
+    }
+
+}
@@ -0,0 +1,215 @@
+package com.github.quantranuk.protobuf.nio.impl;
+
+import com.github.quantranuk.protobuf.nio.WritePolicy;
+import com.github.quantranuk.protobuf.nio.proto.TestHeartBeat;
+import com.github.quantranuk.protobuf.nio.serializer.ProtobufSerializer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.BindException;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class UdpProtoDatagramChannelTest {
+
+    private static final long TIMEOUT_MILLIS = 5000;
+
+    private int senderPort;
+    private LossyReceiver receiver;
+    private InetSocketAddress receiverAddress;
+    private RecordingSender sender;
+    private final List<String> events = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        try (DatagramSocket socket = new DatagramSocket(0)) {
+            senderPort = socket.getLocalPort();
+        }
+        receiver = new LossyReceiver();
+        receiver.addMessageReceivedHandler((socketAddress, message) -> events.add("m" + ((TestHeartBeat.HeartBeatRequest) message).getRequestTimeMillis()));
+        receiver.addSequenceGapHandler((socketAddress, expectedSequence, receivedSequence) -> events.add("gap" + expectedSequence + "-" + receivedSequence));
+        receiver.start();
+        receiverAddress = new InetSocketAddress(InetAddress.getLoopbackAddress(), ((InetSocketAddress) receiver.getLocalAddress()).getPort());
+    }
+
+    @AfterEach
+    public void tearDown() {
+        if (sender != null) {
+            sender.stop();
+        }
+        receiver.stop();
+    }
+
+    @Test
+    public void testGapDetected() throws Exception {
+        startSender(WritePolicy.immediate());
+        receiver.droppedSequences.add(2L);
+        receiver.droppedSequences.add(4L);
+        receiver.droppedSequences.add(5L);
+        publish(1, 6);
+        awaitEvents(List.of("m1", "gap2-3", "m3", "gap4-6", "m6"));
+    }
+
+    @Test
+    public void testStaleAndDuplicateDatagramsDropped() throws Exception {
+        startSender(WritePolicy.immediate());
+        receiver.droppedSequences.add(2L);
+        publish(1, 3);
+        awaitEvents(List.of("m1", "gap2-3", "m3"));
+
+        // Datagram 2 arrives late, after datagram 3, and datagram 3 is duplicated: both are dropped, the next datagram is still in sequence
+        receiver.droppedSequences.clear();
+        sender.send(sender.writtenDatagrams.get(2L).duplicate(), receiverAddress);
+        sender.send(sender.writtenDatagrams.get(3L).duplicate(), receiverAddress);
+        publish(4, 4);
+        awaitEvents(List.of("m1", "gap2-3", "m3", "m4"));
+        assertEquals(List.of(1L, 3L, 2L, 3L, 4L), receiver.receivedSequences);
+    }
+
+    @Test
+    public void testFramesPackedIntoDatagrams() throws Exception {
+        // Each datagram has room for exactly 5 frames of the test messages, whose values all take a single byte
+        int frameLength = ProtobufSerializer.getSerializedSize(message(1), null);
+        int mtu = ProtobufSerializer.DATAGRAM_HEADER_LENGTH + 5 * frameLength + 1;
+        startSender(WritePolicy.explicitFlush(), mtu);
+        List<String> expectedEvents = new ArrayList<>();
+        for (int i = 1; i <= 50; i++) {
+            sender.sendMessage(message(i));
+            expectedEvents.add("m" + i);
+        }
+        sender.flush();
+        awaitEvents(expectedEvents);
+
+        assertEquals(10, sender.writtenDatagrams.size());
+        for (ByteBuffer datagram : sender.writtenDatagrams.values()) {
+            assertEquals(ProtobufSerializer.DATAGRAM_HEADER_LENGTH + 5 * frameLength, datagram.remaining());
+        }
+    }
+
+    @Test
+    public void testSenderRestart() throws Exception {
+        startSender(WritePolicy.immediate());
+        publish(1, 5);
+        awaitEvents(List.of("m1", "m2", "m3", "m4", "m5"));
+
+        // The restarted sender has a new session, from the same address: its sequences start over without being seen as stale
+        sender.stop();
+        restartSender();
+        publish(6, 8);
+        awaitEvents(List.of("m1", "m2", "m3", "m4", "m5", "m6", "m7", "m8"));
+        assertEquals(List.of(1L, 2L, 3L, 4L, 5L, 1L, 2L, 3L), receiver.receivedSequences);
+    }
+
+    private void startSender(WritePolicy writePolicy) throws IOException {
+        startSender(writePolicy, 0);
+    }
+
+    private void startSender(WritePolicy writePolicy, int mtu) throws IOException {
+        sender = new RecordingSender(senderPort, receiverAddress);
+        sender.setWritePolicy(writePolicy);
+        if (mtu > 0) {
+            sender.setMtu(mtu);
+        }
+        sender.start();
+    }
+
+    /**
+     * Start a new sender on the port of the stopped one, which is only released once its reader has woken up from the closed socket
+     */
+    private void restartSender() throws IOException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (true) {
+            try {
+                startSender(WritePolicy.immediate());
+                return;
+            } catch (BindException e) {
+                if (System.currentTimeMillis() > deadline) {
+                    throw e;
+                }
+                sleep();
+            }
+        }
+    }
+
+    /**
+     * Send each message in its own datagram, written by the calling thread
+     */
+    private void publish(int firstValue, int lastValue) {
+        for (int i = firstValue; i <= lastValue; i++) {
+            sender.sendMessage(message(i));
+        }
+    }
+
+    private void awaitEvents(List<String> expectedEvents) {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (events.size() < expectedEvents.size() && System.currentTimeMillis() < deadline) {
+            sleep();
+        }
+        assertEquals(expectedEvents, events);
+    }
+
+    private static void sleep() {
+        try {
+            Thread.sleep(1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static TestHeartBeat.HeartBeatRequest message(long value) {
+        return TestHeartBeat.HeartBeatRequest.newBuilder().setRequestTimeMillis(value).build();
+    }
+
+    /**
+     * A sender keeping a copy of each datagram it writes, by sequence
+     */
+    private static final class RecordingSender extends UdpProtoDatagramChannel {
+        private final Map<Long, ByteBuffer> writtenDatagrams = new ConcurrentHashMap<>();
+
+        private RecordingSender(int localPort, SocketAddress remoteAddress) {
+            super(localPort, remoteAddress);
+        }
+
+        @Override
+        protected void onDatagramWritten(long sequence, ByteBuffer datagram) {
+            ByteBuffer copy = ByteBuffer.allocate(datagram.remaining());
+            copy.put(datagram.duplicate()).flip();
+            writtenDatagrams.put(sequence, copy);
+        }
+    }
+
+    /**
+     * A receiver recording the sequence of each datagram it receives, and losing the datagrams of the given sequences
+     */
+    private static final class LossyReceiver extends UdpProtoDatagramChannel {
+        private final Set<Long> droppedSequences = ConcurrentHashMap.newKeySet();
+        private final List<Long> receivedSequences = new CopyOnWriteArrayList<>();
+
+        private LossyReceiver() {
+            super(0, null);
+        }
+
+        @Override
+        protected void onDatagramReceived(SocketAddress sender, int signature, long senderSessionId, long sequence, ByteBuffer body) {
+            if (droppedSequences.contains(sequence)) {
+                return;
+            }
+            receivedSequences.add(sequence);
+            super.onDatagramReceived(sender, signature, senderSessionId, sequence, body);
+        }
+    }
+
+}
@@ -0,0 +1,57 @@
+package com.github.quantranuk.protobuf.nio.serializer;
+
+import com.github.quantranuk.protobuf.nio.proto.TestHeartBeat;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class MessageTypeRegistryTest {
+
+    @Test
+    public void testRegisterWithNextAvailableTypeId() {
+        MessageTypeRegistry typeRegistry = new MessageTypeRegistry();
+        typeRegistry.register(TestHeartBeat.HeartBeatRequest.class, 0);
+        assertEquals(1, typeRegistry.register(TestHeartBeat.HeartBeatResponse.class));
+        assertEquals(1, typeRegistry.register(TestHeartBeat.HeartBeatResponse.class));
+        assertEquals(0, typeRegistry.getTypeId(TestHeartBeat.HeartBeatRequest.class));
+        assertEquals(TestHeartBeat.HeartBeatResponse.class, typeRegistry.getMessageClass(1));
+        assertNull(typeRegistry.getMessageClass(2));
+        assertEquals(MessageTypeRegistry.NO_TYPE_ID, typeRegistry.getTypeId(String.class));
+    }
+
+    @Test
+    public void testRegisterDuplicateTypeId() {
+        MessageTypeRegistry typeRegistry = new MessageTypeRegistry();
+        typeRegistry.register(TestHeartBeat.HeartBeatRequest.class, 100);
+        assertEquals(TestHeartBeat.HeartBeatRequest.class, typeRegistry.getMessageClass(100));
+        assertThrows(IllegalStateException.class, () -> typeRegistry.register(TestHeartBeat.HeartBeatResponse.class, 100));
+        assertThrows(IllegalArgumentException.class, () -> typeRegistry.register(TestHeartBeat.HeartBeatResponse.class, MessageTypeRegistry.MAX_TYPE_ID + 1));
+    }
+
+    @Test
+    public void testFromAnnouncedTypesSkipsUnusableClasses() {
+        Map<Integer, String> classNamesByTypeId = new HashMap<>();
+        classNamesByTypeId.put(0, TestHeartBeat.HeartBeatRequest.class.getName());
+        classNamesByTypeId.put(1, FailingInitializer.class.getName());
+        classNamesByTypeId.put(2, "com.github.quantranuk.protobuf.nio.proto.Unknown");
+        MessageTypeRegistry typeRegistry = MessageTypeRegistry.fromAnnouncedTypes(classNamesByTypeId);
+        assertEquals(TestHeartBeat.HeartBeatRequest.class, typeRegistry.getMessageClass(0));
+        // Not a protobuf class, which must not even be initialized
+        assertNull(typeRegistry.getMessageClass(1));
+        assertNull(typeRegistry.getMessageClass(2));
+    }
+
+    public static class FailingInitializer {
+        static {
+            if (true) {
+                throw new IllegalStateException("Initialized from an announced class name");
+            }
+        }
+    }
+
+}
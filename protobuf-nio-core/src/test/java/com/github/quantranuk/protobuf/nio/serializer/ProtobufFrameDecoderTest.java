@@ -0,0 +1,178 @@
+package com.github.quantranuk.protobuf.nio.serializer;
+
+import com.github.quantranuk.protobuf.nio.proto.TestHeartBeat;
+import com.google.protobuf.Message;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class ProtobufFrameDecoderTest {
+
+    @Test
+    public void testDecodingBlocksOfAnySize() {
+        MessageTypeRegistry typeRegistry = new MessageTypeRegistry();
+        typeRegistry.register(TestHeartBeat.HeartBeatResponse.class);
+        List<Message> messages = Arrays.asList(
+                TestHeartBeat.HeartBeatRequest.newBuilder().setRequestMessage("HB_REQUEST_1").build(),
+                TestHeartBeat.HeartBeatResponse.newBuilder().setResponseMessage("HB_RESPONSE_1").build(),
+                TestHeartBeat.HeartBeatRequest.newBuilder().setRequestMessage(repeat('x', 20000)).build(),
+                TestHeartBeat.HeartBeatResponse.newBuilder().setResponseMessage("HB_RESPONSE_2").build());
+
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        stream.writeBytes(ProtobufSerializer.serializeTypeRegistry(typeRegistry));
+        messages.forEach(message -> stream.writeBytes(ProtobufSerializer.serialize(message, typeRegistry)));
+        byte[] bytes = stream.toByteArray();
+
+        for (int blockSize : new int[] {1, 7, 12, 13, 100, 8192, bytes.length}) {
+            for (boolean isDirect : new boolean[] {false, true}) {
+                ProtobufFrameDecoder decoder = new ProtobufFrameDecoder();
+                List<Message> decodedMessages = new ArrayList<>();
+                ByteBuffer block = isDirect ? ByteBuffer.allocateDirect(blockSize) : ByteBuffer.allocate(blockSize);
+                for (int offset = 0; offset < bytes.length; offset += blockSize) {
+                    block.clear();
+                    block.put(bytes, offset, Integer.min(blockSize, bytes.length - offset));
+                    block.flip();
+                    decoder.decode(block, decodedMessages::add);
+                    assertFalse(block.hasRemaining());
+                }
+                assertEquals(messages, decodedMessages, "Block size " + blockSize);
+                assertFalse(decoder.hasPendingFrame());
+            }
+        }
+    }
+
+    @Test
+    public void testDecodingRpcFrames() {
+        MessageTypeRegistry typeRegistry = new MessageTypeRegistry();
+        typeRegistry.register(TestHeartBeat.HeartBeatResponse.class);
+        Message request = TestHeartBeat.HeartBeatRequest.newBuilder().setRequestMessage("HB_REQUEST").build();
+        Message response = TestHeartBeat.HeartBeatResponse.newBuilder().setResponseMessage("HB_RESPONSE").build();
+
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        stream.writeBytes(ProtobufSerializer.serializeTypeRegistry(typeRegistry));
+        stream.writeBytes(ProtobufSerializer.serializeRpc(request, ProtobufSerializer.RPC_KIND_REQUEST, 1, typeRegistry));
+        stream.writeBytes(ProtobufSerializer.serialize(request, typeRegistry));
+        stream.writeBytes(ProtobufSerializer.serializeRpc(response, ProtobufSerializer.RPC_KIND_RESPONSE, Long.MAX_VALUE, typeRegistry));
+        byte[] bytes = stream.toByteArray();
+
+        for (int blockSize : new int[] {1, 13, bytes.length}) {
+            ProtobufFrameDecoder decoder = new ProtobufFrameDecoder();
+            List<Message> decodedMessages = new ArrayList<>();
+            List<String> decodedRpcHeaders = new ArrayList<>();
+            ByteBuffer block = ByteBuffer.allocate(blockSize);
+            for (int offset = 0; offset < bytes.length; offset += blockSize) {
+                block.clear();
+                block.put(bytes, offset, Integer.min(blockSize, bytes.length - offset));
+                block.flip();
+                decoder.decode(block, message -> {
+                    decodedMessages.add(message);
+                    decodedRpcHeaders.add(decoder.getRpcKind() + ":" + decoder.getCorrelationId());
+                });
+            }
+            assertEquals(Arrays.asList(request, request, response), decodedMessages, "Block size " + blockSize);
+            assertEquals(Arrays.asList(
+                    ProtobufSerializer.RPC_KIND_REQUEST + ":1",
+                    ProtobufSerializer.RPC_KIND_NONE + ":0",
+                    ProtobufSerializer.RPC_KIND_RESPONSE + ":" + Long.MAX_VALUE), decodedRpcHeaders, "Block size " + blockSize);
+        }
+    }
+
+    @Test
+    public void testDecodingStreamFrames() {
+        MessageTypeRegistry typeRegistry = new MessageTypeRegistry();
+        typeRegistry.register(TestHeartBeat.HeartBeatResponse.class);
+        Message request = TestHeartBeat.HeartBeatRequest.newBuilder().setRequestMessage("HB_REQUEST").build();
+        Message response = TestHeartBeat.HeartBeatResponse.newBuilder().setResponseMessage("HB_RESPONSE").build();
+
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        stream.writeBytes(ProtobufSerializer.serializeTypeRegistry(typeRegistry));
+        stream.writeBytes(ProtobufSerializer.serializeStream(request, 7, typeRegistry));
+        stream.writeBytes(ProtobufSerializer.serialize(request, typeRegistry));
+        stream.writeBytes(ProtobufSerializer.serializeStream(response, Integer.MAX_VALUE, typeRegistry));
+        byte[] bytes = stream.toByteArray();
+
+        for (int blockSize : new int[] {1, 13, bytes.length}) {
+            ProtobufFrameDecoder decoder = new ProtobufFrameDecoder();
+            List<Message> decodedMessages = new ArrayList<>();
+            List<Integer> decodedStreamIds = new ArrayList<>();
+            ByteBuffer block = ByteBuffer.allocate(blockSize);
+            for (int offset = 0; offset < bytes.length; offset += blockSize) {
+                block.clear();
+                block.put(bytes, offset, Integer.min(blockSize, bytes.length - offset));
+                block.flip();
+                decoder.decode(block, message -> {
+                    decodedMessages.add(message);
+                    decodedStreamIds.add(decoder.getStreamId());
+                    assertEquals(ProtobufSerializer.RPC_KIND_NONE, decoder.getRpcKind());
+                });
+            }
+            assertEquals(Arrays.asList(request, request, response), decodedMessages, "Block size " + blockSize);
+            assertEquals(Arrays.asList(7, ProtobufSerializer.DEFAULT_STREAM_ID, Integer.MAX_VALUE), decodedStreamIds, "Block size " + blockSize);
+        }
+    }
+
+    @Test
+    public void testDecodingFlowControlFrames() {
+        Message message = TestHeartBeat.HeartBeatRequest.newBuilder().setRequestMessage("HB_REQUEST").build();
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        stream.writeBytes(ProtobufSerializer.serializeFlowControl(ProtobufSerializer.CONTROL_TYPE_FLOW_CONTROL_WINDOW, 65536));
+        stream.writeBytes(ProtobufSerializer.serialize(message));
+        stream.writeBytes(ProtobufSerializer.serializeFlowControl(ProtobufSerializer.CONTROL_TYPE_FLOW_CONTROL_CREDIT, 32768));
+        ByteBuffer block = ByteBuffer.wrap(stream.toByteArray());
+
+        List<String> events = new ArrayList<>();
+        ProtobufFrameDecoder decoder = new ProtobufFrameDecoder();
+        decoder.setFlowControlListener(new FlowControlListener() {
+            @Override
+            public void onWindowAnnounced(int window) {
+                events.add("window:" + window);
+            }
+
+            @Override
+            public void onCreditGranted(int credit) {
+                events.add("credit:" + credit);
+            }
+        });
+        decoder.decode(block, decodedMessage -> events.add("message:" + decoder.getFrameLength()));
+
+        assertEquals(Arrays.asList("window:65536", "message:" + ProtobufSerializer.getSerializedSize(message), "credit:32768"), events);
+    }
+
+    @Test
+    public void testDecodingWithPeerTypeRegistrySetUpFront() {
+        MessageTypeRegistry typeRegistry = new MessageTypeRegistry();
+        typeRegistry.register(TestHeartBeat.HeartBeatRequest.class);
+        Message message = TestHeartBeat.HeartBeatRequest.newBuilder().setRequestMessage("HB_REQUEST").build();
+        ByteBuffer block = ByteBuffer.wrap(ProtobufSerializer.serialize(message, typeRegistry));
+
+        List<Message> decodedMessages = new ArrayList<>();
+        ProtobufFrameDecoder decoder = new ProtobufFrameDecoder();
+        decoder.setPeerTypeRegistry(typeRegistry);
+        decoder.decode(block, decodedMessages::add);
+
+        assertEquals(Arrays.asList(message), decodedMessages);
+    }
+
+    @Test
+    public void testDecodingInvalidHeader() {
+        ProtobufFrameDecoder decoder = new ProtobufFrameDecoder();
+        ByteBuffer block = ByteBuffer.allocate(ProtobufSerializer.HEADER_LENGTH);
+        block.putInt(0x12345678).putInt(0).putInt(0).flip();
+        assertThrows(IllegalStateException.class, () -> decoder.decode(block, message -> {}));
+    }
+
+    private static String repeat(char c, int count) {
+        char[] chars = new char[count];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+
+}
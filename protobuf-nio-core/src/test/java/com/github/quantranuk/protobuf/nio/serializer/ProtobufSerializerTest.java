@@ -1,13 +1,17 @@
 package com.github.quantranuk.protobuf.nio.serializer;
 
 import com.github.quantranuk.protobuf.nio.proto.TestHeartBeat;
+import com.google.protobuf.CodedOutputStream;
 import com.google.protobuf.Message;
 import org.junit.jupiter.api.Test;
 
+import java.io.IOException;
 import java.nio.ByteBuffer;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 
 public class ProtobufSerializerTest {
@@ -45,4 +49,114 @@ public class ProtobufSerializerTest {
         assertEquals(requestMessage, ((TestHeartBeat.HeartBeatRequest) deserializedMessage).getRequestMessage());
     }
 
+    @Test
+    public void testRoundTripSerializationWithTypeId() {
+        MessageTypeRegistry typeRegistry = new MessageTypeRegistry();
+        typeRegistry.register(TestHeartBeat.HeartBeatResponse.class);
+        int typeId = typeRegistry.register(TestHeartBeat.HeartBeatRequest.class);
+
+        TestHeartBeat.HeartBeatRequest message = TestHeartBeat.HeartBeatRequest.newBuilder()
+                .setRequestTimeMillis(System.currentTimeMillis())
+                .setRequestMessage("HB_REQUEST")
+                .build();
+
+        byte[] handshakeBytes = ProtobufSerializer.serializeTypeRegistry(typeRegistry);
+        byte[] handshakeHeader = new byte[ProtobufSerializer.HEADER_LENGTH];
+        ByteBuffer handshakeBuffer = ByteBuffer.wrap(handshakeBytes);
+        handshakeBuffer.get(handshakeHeader);
+        assertTrue(ProtobufSerializer.hasControlHeaderSignature(handshakeHeader));
+        assertEquals(ProtobufSerializer.CONTROL_TYPE_HANDSHAKE, ProtobufSerializer.extractControlType(handshakeHeader));
+        assertEquals(handshakeBuffer.remaining(), ProtobufSerializer.extractProtobufPayloadLength(handshakeHeader));
+        MessageTypeRegistry peerTypeRegistry = ProtobufSerializer.deserializeTypeRegistry(handshakeBuffer);
+
+        byte[] serializedBytes = ProtobufSerializer.serialize(message, typeRegistry);
+        assertEquals(ProtobufSerializer.getSerializedSize(message, typeRegistry), serializedBytes.length);
+
+        byte[] header = new byte[ProtobufSerializer.HEADER_LENGTH];
+        ByteBuffer serializedByteBuffer = ByteBuffer.wrap(serializedBytes);
+        serializedByteBuffer.get(header);
+        assertTrue(ProtobufSerializer.hasValidHeaderSignature(header));
+        assertTrue(ProtobufSerializer.hasMessageTypeId(header));
+        assertEquals(typeId, ProtobufSerializer.extractMessageTypeId(header));
+        assertEquals(message.getSerializedSize(), ProtobufSerializer.extractProtobufPayloadLength(header));
+
+        Message deserializedMessage = ProtobufSerializer.deserialize(peerTypeRegistry, typeId, serializedByteBuffer);
+        assertEquals(message, deserializedMessage);
+    }
+
+    @Test
+    public void testRpcSerialization() {
+        MessageTypeRegistry typeRegistry = new MessageTypeRegistry();
+        typeRegistry.register(TestHeartBeat.HeartBeatRequest.class);
+
+        TestHeartBeat.HeartBeatRequest message = TestHeartBeat.HeartBeatRequest.newBuilder()
+                .setRequestTimeMillis(System.currentTimeMillis())
+                .setRequestMessage("HB_REQUEST")
+                .build();
+        long correlationId = 0x123456789ABCL;
+
+        for (MessageTypeRegistry registry : new MessageTypeRegistry[] {null, typeRegistry}) {
+            byte[] serializedBytes = ProtobufSerializer.serializeRpc(message, ProtobufSerializer.RPC_KIND_REQUEST, correlationId, registry);
+            assertEquals(ProtobufSerializer.getRpcSerializedSize(message, registry), serializedBytes.length);
+            assertEquals(ProtobufSerializer.getSerializedSize(message, registry) + ProtobufSerializer.RPC_HEADER_LENGTH - ProtobufSerializer.HEADER_LENGTH, serializedBytes.length);
+
+            ByteBuffer serializedByteBuffer = ByteBuffer.wrap(serializedBytes);
+            assertEquals(ProtobufSerializer.RPC_SIGNATURE, serializedByteBuffer.getInt());
+            serializedByteBuffer.getInt();
+            assertEquals(message.getSerializedSize(), serializedByteBuffer.getInt());
+            assertEquals(ProtobufSerializer.RPC_KIND_REQUEST, serializedByteBuffer.getInt());
+            assertEquals(correlationId, serializedByteBuffer.getLong());
+        }
+    }
+
+    @Test
+    public void testSerializationIntoBuffer() throws IOException {
+        MessageTypeRegistry typeRegistry = new MessageTypeRegistry();
+        typeRegistry.register(TestHeartBeat.HeartBeatResponse.class);
+
+        TestHeartBeat.HeartBeatRequest request = TestHeartBeat.HeartBeatRequest.newBuilder().setRequestMessage("HB_REQUEST").build();
+        TestHeartBeat.HeartBeatResponse response = TestHeartBeat.HeartBeatResponse.newBuilder().setResponseMessage("HB_RESPONSE").build();
+
+        ByteBuffer buffer = ByteBuffer.allocate(1024);
+        buffer.put((byte) 1);
+        CodedOutputStream output = CodedOutputStream.newInstance(buffer);
+        ProtobufSerializer.serialize(request, typeRegistry, output);
+        ProtobufSerializer.serialize(response, typeRegistry, output);
+        output.flush();
+        buffer.flip();
+        buffer.get();
+
+        byte[] serializedRequest = new byte[ProtobufSerializer.getSerializedSize(request, typeRegistry)];
+        byte[] serializedResponse = new byte[ProtobufSerializer.getSerializedSize(response, typeRegistry)];
+        buffer.get(serializedRequest);
+        buffer.get(serializedResponse);
+        assertEquals(0, buffer.remaining());
+        assertArrayEquals(ProtobufSerializer.serialize(request, typeRegistry), serializedRequest);
+        assertArrayEquals(ProtobufSerializer.serialize(response, typeRegistry), serializedResponse);
+    }
+
+    @Test
+    public void testDeserializationFromReusedBuffer() {
+        ProtobufSerializer.registerMessageType(TestHeartBeat.HeartBeatResponse.class);
+        TestHeartBeat.HeartBeatRequest request = TestHeartBeat.HeartBeatRequest.newBuilder().setRequestMessage("HB_REQUEST").build();
+        TestHeartBeat.HeartBeatResponse response = TestHeartBeat.HeartBeatResponse.newBuilder().setResponseMessage("HB_RESPONSE").build();
+
+        // The same backing array is reused for both messages, as the socket reader does
+        byte[] readBuffer = new byte[1024];
+        assertEquals(request, deserializeFrom(readBuffer, ProtobufSerializer.serialize(request)));
+        assertEquals(response, deserializeFrom(readBuffer, ProtobufSerializer.serialize(response)));
+        assertEquals(request, deserializeFrom(readBuffer, ProtobufSerializer.serialize(request)));
+    }
+
+    private static Message deserializeFrom(byte[] readBuffer, byte[] serializedBytes) {
+        System.arraycopy(serializedBytes, 0, readBuffer, 0, serializedBytes.length);
+        byte[] header = new byte[ProtobufSerializer.HEADER_LENGTH];
+        System.arraycopy(readBuffer, 0, header, 0, header.length);
+        int protobufClassnameLength = ProtobufSerializer.extractProtobufClassnameLength(header);
+        int protobufPayloadLength = ProtobufSerializer.extractProtobufPayloadLength(header);
+        ByteBuffer protobufClassNameBuffer = ByteBuffer.wrap(readBuffer, header.length, protobufClassnameLength).slice();
+        ByteBuffer protobufPayloadBuffer = ByteBuffer.wrap(readBuffer, header.length + protobufClassnameLength, protobufPayloadLength).slice();
+        return ProtobufSerializer.deserialize(protobufClassNameBuffer, protobufPayloadBuffer);
+    }
+
 }
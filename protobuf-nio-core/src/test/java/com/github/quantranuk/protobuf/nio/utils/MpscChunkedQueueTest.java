@@ -0,0 +1,68 @@
+package com.github.quantranuk.protobuf.nio.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MpscChunkedQueueTest {
+
+    @Test
+    public void testOfferAndPollAcrossChunks() {
+        MpscChunkedQueue<Integer> queue = new MpscChunkedQueue<>(10, 3);
+        for (int i = 0; i < 10; i++) {
+            assertTrue(queue.offer(i));
+        }
+        assertFalse(queue.offer(10));
+        assertEquals(10, queue.size());
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals(i, queue.peek());
+            assertEquals(i, queue.poll());
+        }
+        assertNull(queue.poll());
+        assertTrue(queue.isEmpty());
+        assertTrue(queue.offer(10));
+        assertEquals(10, queue.poll());
+    }
+
+    @Test
+    public void testConcurrentProducers() throws InterruptedException {
+        int producerCount = 4;
+        int messagesPerProducer = 100_000;
+        MpscChunkedQueue<long[]> queue = new MpscChunkedQueue<>(Integer.MAX_VALUE, 64);
+
+        List<Thread> producers = new ArrayList<>();
+        for (int p = 0; p < producerCount; p++) {
+            long producerId = p;
+            producers.add(new Thread(() -> {
+                for (int i = 0; i < messagesPerProducer; i++) {
+                    queue.offer(new long[] {producerId, i});
+                }
+            }));
+        }
+        producers.forEach(Thread::start);
+
+        long[] nextSequences = new long[producerCount];
+        int received = 0;
+        while (received < producerCount * messagesPerProducer) {
+            long[] element = queue.poll();
+            if (element == null) {
+                Thread.onSpinWait();
+                continue;
+            }
+            assertEquals(nextSequences[(int) element[0]]++, element[1]);
+            received++;
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        assertTrue(queue.isEmpty());
+    }
+
+}